@@ -1,25 +1,37 @@
 package acquisto;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import storage.OffertaDAO;
-
-public class Carrello {
+import java.util.Map;
+
+/*
+ Il carrello viene letto dal database una volta per sessione e poi tenuto nella sessione:
+ aggiunte e rimozioni modificano solo la lista in memoria e vengono ricordate offerta per offerta,
+ cosi' che CarrelloDAO.doUpdateOfferte scriva solo quelle (vedi ScritturaCarrelli) e non cancelli
+ le offerte aggiunte allo stesso carrello da un'altra sessione dell'utente. I metodi sono
+ sincronizzati perche' piu' richieste della stessa sessione possono usare il carrello insieme.
+*/
+public class Carrello implements Serializable {
+    private static final long serialVersionUID = 1L;
 
     private int idCarrello;
     private int idUtente;
     private List<Offerta> offerte;
-    private double totale;
+    // Id delle offerte aggiunte (true) o rimosse (false) e non ancora scritte nel database
+    private Map<Integer, Boolean> modifiche;
 
     public Carrello(int idCarrello, int idUtente) {
         this.idCarrello = idCarrello;
         this.idUtente = idUtente;
         this.offerte = new ArrayList<>();
-        this.totale = 0;
+        this.modifiche = new LinkedHashMap<>();
     }
 
     public Carrello() {
-
+        this.offerte = new ArrayList<>();
+        this.modifiche = new LinkedHashMap<>();
     }
 
     public int getIdCarrello() {
@@ -38,27 +50,63 @@ public class Carrello {
         this.idUtente = idUtente;
     }
 
-    public List<Offerta> getOfferte() {
-        // Recupera le offerte presenti nel carrello dal database
-        // utilizzando il metodo getOfferte del DAO OffertaDAO
-        OffertaDAO offertaDAO = new OffertaDAO();
-        return offertaDAO.getOfferteByIdUtente(this.idUtente);
+    // Restituisce una copia delle offerte presenti nel carrello, senza leggere il database
+    public synchronized List<Offerta> getOfferte() {
+        return new ArrayList<>(offerte);
     }
 
-    public void setOfferte(List<Offerta> offerte) {
-        this.offerte = offerte;
+    // Imposta le offerte lette dal database: le modifiche non ancora scritte vengono scartate
+    public synchronized void setOfferte(List<Offerta> offerte) {
+        this.offerte = new ArrayList<>(offerte);
+        this.modifiche.clear();
     }
 
-    public void aggiungiOfferta(Offerta offerta) {
-        offerte.add(offerta);
+    // Restituisce le modifiche non ancora scritte e le dimentica
+    public synchronized Map<Integer, Boolean> prelevaModifiche() {
+        Map<Integer, Boolean> prelevate = modifiche;
+        modifiche = new LinkedHashMap<>();
+        return prelevate;
     }
 
-    public void rimuoviOfferta(Offerta offerta) {
-        offerte.remove(offerta);
+    // Restituisce una copia delle modifiche non ancora scritte, senza dimenticarle
+    public synchronized Map<Integer, Boolean> getModifiche() {
+        return new LinkedHashMap<>(modifiche);
     }
-    public void svuotaCarrello() {
+
+    // Restituisce gli id delle offerte presenti nel carrello, nell'ordine in cui sono state aggiunte
+    public synchronized List<Integer> getIdOfferte() {
+        List<Integer> idOfferte = new ArrayList<>(offerte.size());
+        for (Offerta offerta : offerte)
+            idOfferte.add(offerta.getIdOfferta());
+        return idOfferte;
+    }
+
+    // Aggiunge l'offerta, se non e' gia' nel carrello, e restituisce true se il carrello e' cambiato
+    public synchronized boolean aggiungiOfferta(Offerta offerta) {
+        for (Offerta presente : offerte) {
+            if (presente.getIdOfferta() == offerta.getIdOfferta())
+                return false;
+        }
+        modifiche.put(offerta.getIdOfferta(), true);
+        return offerte.add(offerta);
+    }
+
+    // Rimuove l'offerta con l'id indicato e restituisce true se il carrello e' cambiato
+    public synchronized boolean rimuoviOfferta(int idOfferta) {
+        if (!offerte.removeIf(offerta -> offerta.getIdOfferta() == idOfferta))
+            return false;
+        modifiche.put(idOfferta, false);
+        return true;
+    }
+
+    public boolean rimuoviOfferta(Offerta offerta) {
+        return rimuoviOfferta(offerta.getIdOfferta());
+    }
+
+    public synchronized void svuotaCarrello() {
+        for (Offerta offerta : offerte)
+            modifiche.put(offerta.getIdOfferta(), false);
         offerte.clear();
-        totale = 0.00;
     }
 
   /*
@@ -67,7 +115,7 @@ public class Carrello {
    Non è necessario implementare un setter per il totale, poiché il totale dovrebbe essere calcolato automaticamente
    a partire dalle offerte presenti nel carrello e non dovrebbe essere modificato direttamente.
   */
-    public double getTotale() {
+    public synchronized double getTotale() {
         double totale = 0;
         for (Offerta offerta : offerte) {
             totale += offerta.getPrezzo();
@@ -75,4 +123,4 @@ public class Carrello {
         return totale;
     }
 
-}
\ No newline at end of file
+}
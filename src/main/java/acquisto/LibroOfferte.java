@@ -0,0 +1,80 @@
+package acquisto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * La classe modella il libro delle offerte di una carta: le offerte sono
+ * mantenute ordinate per prezzo crescente, a parita' di prezzo dalla condizione
+ * migliore alla peggiore e infine per id, cosi' che la migliore offerta, il prezzo
+ * minimo, massimo e mediano si leggano direttamente per posizione
+ */
+
+class LibroOfferte {
+    //condizioni riconosciute, dalla migliore alla peggiore: le altre seguono in ordine alfabetico
+    private static final List<String> CONDIZIONI = Collections.unmodifiableList(Arrays.asList(
+            "mint", "near mint", "excellent", "good", "light played", "played", "poor"));
+
+    private static final Comparator<Offerta> ORDINE = Comparator.comparingDouble(Offerta::getPrezzo)
+            .thenComparingInt(offerta -> rangoCondizione(offerta.getCondizione()))
+            .thenComparing(offerta -> offerta.getCondizione() == null ? "" : offerta.getCondizione())
+            .thenComparingInt(Offerta::getIdOfferta);
+
+    private final List<Offerta> offerte = new ArrayList<>();
+
+    /**
+     * Il metodo permette di inserire un' offerta nella posizione che le spetta
+     * @param offerta l' offerta da inserire
+     * */
+    void aggiungi(Offerta offerta){
+        int posizione = Collections.binarySearch(offerte, offerta, ORDINE);
+        offerte.add(posizione < 0 ? -posizione - 1 : posizione, offerta);
+    }
+
+    /**
+     * Il metodo permette di rimuovere un' offerta dal libro
+     * @param offerta l' offerta da rimuovere, con gli stessi valori con cui e' stata inserita
+     * */
+    void rimuovi(Offerta offerta){
+        int posizione = Collections.binarySearch(offerte, offerta, ORDINE);
+        if (posizione >= 0)
+            offerte.remove(posizione);
+    }
+
+    boolean isVuoto(){
+        return offerte.isEmpty();
+    }
+
+    /**
+     * Il metodo permette di ottenere le migliori offerte e la distribuzione dei prezzi
+     * @param idCarta id della carta a cui appartiene il libro
+     * @param numero numero massimo di offerte restituite
+     * @return la quotazione della carta
+     * */
+    Quotazione quotazione(int idCarta, int numero){
+        int totale = offerte.size();
+        List<Offerta> migliori = new ArrayList<>(Math.min(numero, totale));
+
+        for (int i = 0; i < totale && i < numero; i++){
+            Offerta offerta = offerte.get(i);
+            migliori.add(new Offerta(offerta.getIdOfferta(), offerta.getCondizione(), offerta.getPrezzo(), offerta.getIdUtente(), idCarta));
+        }
+
+        if (totale == 0)
+            return new Quotazione(idCarta, migliori, 0, null, null, null);
+
+        double mediano = totale % 2 == 1 ? offerte.get(totale / 2).getPrezzo() :
+                (offerte.get(totale / 2 - 1).getPrezzo() + offerte.get(totale / 2).getPrezzo()) / 2;
+
+        return new Quotazione(idCarta, migliori, totale, offerte.get(0).getPrezzo(), mediano, offerte.get(totale - 1).getPrezzo());
+    }
+
+    private static int rangoCondizione(String condizione){
+        int rango = condizione == null ? -1 : CONDIZIONI.indexOf(condizione.trim().toLowerCase(Locale.ROOT));
+        return rango < 0 ? CONDIZIONI.size() : rango;
+    }
+}
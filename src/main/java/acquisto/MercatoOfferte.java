@@ -0,0 +1,128 @@
+package acquisto;
+
+import storage.OffertaDAO;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * La classe mantiene in memoria un libro delle offerte per ogni carta, cosi'
+ * che le offerte piu' convenienti e la distribuzione dei prezzi di una carta
+ * si ottengano senza leggere l' intera tabella Offerta.
+ * Il mercato viene caricato al primo utilizzo e aggiornato dalla classe
+ * OffertaDAO ad ogni inserimento, modifica o cancellazione, anche quando la
+ * modifica e' avvenuta su un altro nodo (vedi storage.RegistroModifiche)
+ */
+
+public class MercatoOfferte {
+    private static final MercatoOfferte ISTANZA = new MercatoOfferte();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, LibroOfferte> libriPerIdCarta = new HashMap<>();
+    private final Map<Integer, Offerta> offertePerId = new HashMap<>();
+    private volatile boolean caricato;
+
+    private MercatoOfferte(){}
+
+    public static MercatoOfferte getInstance(){
+        return ISTANZA;
+    }
+
+    /**
+     * Il metodo permette di ottenere le offerte piu' convenienti per una carta
+     * e i prezzi minimo, mediano e massimo delle sue offerte
+     * @param idCarta id della carta
+     * @param numero numero massimo di offerte restituite
+     * @return la quotazione della carta, senza offerte se la carta non ne ha
+     * */
+    public Quotazione quotazione(int idCarta, int numero){
+        caricaSeNecessario();
+
+        lock.readLock().lock();
+        try {
+            LibroOfferte libro = libriPerIdCarta.get(idCarta);
+            return (libro == null ? new LibroOfferte() : libro).quotazione(idCarta, numero);
+        }
+
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Il metodo permette di inserire una nuova offerta nel mercato o di
+     * sostituire quella con lo stesso id
+     * @param offerta l' offerta inserita o modificata nel database
+     * */
+    public void aggiorna(Offerta offerta){
+        lock.writeLock().lock();
+        try {
+            if (caricato){
+                rimuoviOfferta(offerta.getIdOfferta());
+                aggiungiOfferta(new Offerta(offerta.getIdOfferta(), offerta.getCondizione(), offerta.getPrezzo(),
+                        offerta.getIdUtente(), offerta.getIdCarta()));
+            }
+        }
+
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Il metodo permette di rimuovere un' offerta dal mercato
+     * @param idOfferta id dell' offerta cancellata dal database
+     * */
+    public void rimuovi(int idOfferta){
+        lock.writeLock().lock();
+        try {
+            if (caricato)
+                rimuoviOfferta(idOfferta);
+        }
+
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void aggiungiOfferta(Offerta offerta){
+        offertePerId.put(offerta.getIdOfferta(), offerta);
+        libriPerIdCarta.computeIfAbsent(offerta.getIdCarta(), idCarta -> new LibroOfferte()).aggiungi(offerta);
+    }
+
+    private void rimuoviOfferta(int idOfferta){
+        Offerta offerta = offertePerId.remove(idOfferta);
+        if (offerta == null)
+            return;
+
+        LibroOfferte libro = libriPerIdCarta.get(offerta.getIdCarta());
+        libro.rimuovi(offerta);
+
+        if (libro.isVuoto())
+            libriPerIdCarta.remove(offerta.getIdCarta());
+    }
+
+    private void caricaSeNecessario(){
+        if (caricato)
+            return;
+
+        lock.writeLock().lock();
+        try {
+            if (caricato)
+                return;
+
+            libriPerIdCarta.clear();
+            offertePerId.clear();
+
+            for (Offerta offerta : new OffertaDAO().doRetrieveAll())
+                aggiungiOfferta(offerta);
+
+            caricato = true;
+        }
+
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package acquisto;
 
-public class Offerta {
+import java.io.Serializable;
+
+public class Offerta implements Serializable {
+  private static final long serialVersionUID = 1L;
   private int idOfferta;
   private String condizione;
   private double prezzo;
@@ -0,0 +1,57 @@
+package acquisto;
+
+import java.util.List;
+
+/**
+ * La classe modella la quotazione di mercato di una carta: le migliori offerte
+ * presenti, il loro numero totale e i prezzi minimo, mediano e massimo
+ */
+
+public class Quotazione {
+    private final int idCarta;
+    private final List<Offerta> migliori;
+    private final int numeroOfferte;
+    private final Double prezzoMinimo, prezzoMediano, prezzoMassimo;
+
+    /**
+     * Costruttore della classe Quotazione
+     * @param idCarta id della carta
+     * @param migliori le offerte piu' convenienti, ordinate per prezzo e condizione
+     * @param numeroOfferte numero totale di offerte per la carta
+     * @param prezzoMinimo prezzo piu' basso, null se non ci sono offerte
+     * @param prezzoMediano prezzo mediano, null se non ci sono offerte
+     * @param prezzoMassimo prezzo piu' alto, null se non ci sono offerte
+     * */
+    public Quotazione(int idCarta, List<Offerta> migliori, int numeroOfferte, Double prezzoMinimo, Double prezzoMediano, Double prezzoMassimo) {
+        this.idCarta = idCarta;
+        this.migliori = migliori;
+        this.numeroOfferte = numeroOfferte;
+        this.prezzoMinimo = prezzoMinimo;
+        this.prezzoMediano = prezzoMediano;
+        this.prezzoMassimo = prezzoMassimo;
+    }
+
+    public int getIdCarta() {
+        return idCarta;
+    }
+
+    public List<Offerta> getMigliori() {
+        return migliori;
+    }
+
+    public int getNumeroOfferte() {
+        return numeroOfferte;
+    }
+
+    public Double getPrezzoMinimo() {
+        return prezzoMinimo;
+    }
+
+    public Double getPrezzoMediano() {
+        return prezzoMediano;
+    }
+
+    public Double getPrezzoMassimo() {
+        return prezzoMassimo;
+    }
+}
@@ -19,38 +19,30 @@ public class AggiungiOffertaInCarrelloServlet extends HttpServlet {
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
 
-        // Recupera l'id dell'utente corrente dalla sessione
-        int idUtente = (int) request.getSession().getAttribute("idUtente");
-
         // Recupera l'id dell'offerta da aggiungere al carrello dalla request
         int idOfferta = Integer.parseInt(request.getParameter("idOfferta"));
 
-        CarrelloDAO carrelloDAO=new CarrelloDAO();
-        // Recupera il carrello dell'utente corrente dal database utilizzando il metodo
-        // getCarrelloByIdUtente del DAO CarrelloDAO
-        Carrello carrello = carrelloDAO.getCarrelloByIdUtente(idUtente);
-
-        // Se il carrello non esiste, lo crea nel database utilizzando il metodo
-        // doSave del DAO CarrelloDAO
-        if (carrello == null) {
-            carrello = new Carrello(0, idUtente);
-            carrelloDAO.doSave(carrello);
-        }
+        // Recupera il carrello dell'utente corrente dalla sessione, letto dal database
+        // (o creato, se l'utente non ne ha ancora uno) solo alla prima richiesta
+        Carrello carrello = CarrelloSessione.ottieni(request);
 
         OffertaDAO offertaDAO=new OffertaDAO();
         // Recupera l'offerta da aggiungere al carrello dal database utilizzando il metodo
         // getOffertaById del DAO OffertaDAO
         Offerta offerta = offertaDAO.doRetrieveById(idOfferta);
+        if (offerta == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
 
-        // Aggiunge l'offerta al carrello dell'utente
-        carrello.aggiungiOfferta(offerta);
-
-        // Aggiorna il carrello nel database
-        carrelloDAO.doUpdate(carrello);
+        // Aggiunge l'offerta al carrello dell'utente e, se il carrello e' cambiato,
+        // ne rimanda la scrittura nel database
+        if (carrello.aggiungiOfferta(offerta))
+            new CarrelloDAO().doUpdateOfferte(carrello);
 
         // Reindirizza l'utente alla pagina del carrello
-        response.sendRedirect("/WEB-INF/results/carrello.jsp"); //provvisorio
+        response.sendRedirect(request.getContextPath() + "/mostraPaginaCarrello");
 
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,57 @@
+package acquisto.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+
+import acquisto.Carrello;
+import storage.CarrelloDAO;
+import storage.OffertaDAO;
+
+/**
+ * La classe permette alle servlet del carrello di usare il carrello dell' utente tenuto nella
+ * sessione: viene letto dal database, con le sue offerte, alla prima richiesta della sessione
+ * e poi modificato in memoria; le modifiche vanno scritte con CarrelloDAO.doUpdateOfferte
+ */
+
+final class CarrelloSessione {
+    private static final String ATTRIBUTO = "carrello";
+
+    private CarrelloSessione(){}
+
+    /**
+     * Il metodo permette di ottenere il carrello dell' utente autenticato, creandolo
+     * nel database se l' utente non ne ha ancora uno
+     * @param request la richiesta, con l' id dell' utente nella sessione
+     * @return il carrello della sessione
+     * */
+    static Carrello ottieni(HttpServletRequest request) {
+        HttpSession session = request.getSession();
+        int idUtente = (int) session.getAttribute("idUtente");
+
+        Object attributo = session.getAttribute(ATTRIBUTO);
+        //un carrello di un altro utente resta nella sessione se l' utente cambia senza logout
+        if (attributo instanceof Carrello && ((Carrello) attributo).getIdUtente() == idUtente)
+            return (Carrello) attributo;
+
+        CarrelloDAO carrelloDAO = new CarrelloDAO();
+        Carrello carrello = carrelloDAO.getCarrelloByIdUtente(idUtente);
+        if (carrello == null) {
+            carrello = new Carrello(0, idUtente);
+            carrelloDAO.doSave(carrello);
+        }
+
+        else
+            carrello.setOfferte(new OffertaDAO().getOfferteByIdUtente(idUtente));
+
+        //due richieste contemporanee possono leggere entrambe il carrello: resta il primo salvato
+        synchronized (CarrelloSessione.class) {
+            attributo = session.getAttribute(ATTRIBUTO);
+            if (attributo instanceof Carrello && ((Carrello) attributo).getIdUtente() == idUtente)
+                return (Carrello) attributo;
+
+            session.setAttribute(ATTRIBUTO, carrello);
+        }
+
+        return carrello;
+    }
+}
@@ -1,6 +1,7 @@
 package acquisto.controller;
 
 import java.io.IOException;
+import java.sql.SQLException;
 import java.util.*;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -15,6 +16,7 @@ import jakarta.servlet.http.HttpSession;
 import storage.CarrelloDAO;
 import storage.OrdineDAO;
 import storage.OffertaDAO;
+import storage.UnitaDiLavoro;
 
 
 @WebServlet("/checkout")
@@ -26,13 +28,6 @@ protected void doPost(HttpServletRequest request, HttpServletResponse response)
         // Recupera l'id dell'utente corrente dalla sessione
         int idUtente = (int) session.getAttribute("idUtente");
 
-        CarrelloDAO carrelloDAO = new CarrelloDAO();
-        OffertaDAO offertaDAO = new OffertaDAO();
-        OrdineDAO ordineDAO = new OrdineDAO();
-        // Recupera il carrello dell'utente corrente dal database utilizzando il metodo
-        // getCarrelloByIdUtente del DAO CarrelloDAO
-        Carrello carrello = carrelloDAO.getCarrelloByIdUtente(idUtente);
-
         // Recupera i dati del form di checkout dalla request
         String nome = request.getParameter("nome");
         String cognome = request.getParameter("cognome");
@@ -44,28 +39,73 @@ protected void doPost(HttpServletRequest request, HttpServletResponse response)
         String tipoSpedizione = request.getParameter("tipoSpedizione");
         String metodoPagamento = request.getParameter("metodoPagamento");
 
-        // Calcola il totale del carrello
-        double totale = 0;
-        if (carrello != null) {
-                totale = carrello.getTotale();
-        }
         // Calcola la data attuale
         java.util.Date data = new java.util.Date();
 
         String indirizzoCompleto= nome.trim()+" "+" "+ cognome.trim()+"\n"+indirizzo.trim()+" "+numeroCivico.trim()+"\n"+cap.trim()+" "+citta.trim()+" "+paese.trim();
 
-        // Crea un nuovo oggetto Ordine con le offerte recuperate dal carrello
-        Ordine ordine = new Ordine(0, data, indirizzoCompleto, idUtente,totale);
+        CarrelloDAO carrelloDAO = new CarrelloDAO();
+        OffertaDAO offertaDAO = new OffertaDAO();
+        OrdineDAO ordineDAO = new OrdineDAO();
+
+        // Recupera il carrello dell'utente corrente dalla sessione
+        Carrello carrello = CarrelloSessione.ottieni(request);
+
+        // Le richieste della stessa sessione fanno il checkout una alla volta: un secondo invio del form
+        // aspetta e poi trova il carrello vuoto invece di acquistare di nuovo le stesse offerte
+        synchronized (carrello) {
+                if (carrello.getOfferte().isEmpty()) {
+                        response.sendRedirect(request.getContextPath() + "/mostraPaginaCarrello");
+                        return;
+                }
+
+                // Tutti i DAO usano la connessione e la transazione dell'unita' di lavoro: l'ordine, le sue righe
+                // e lo svuotamento del carrello vengono confermati insieme, oppure non viene scritto nulla
+                try (UnitaDiLavoro unita = UnitaDiLavoro.inizia()) {
+                        // Il carrello resta bloccato nel database fino al commit, anche per le richieste di altri nodi
+                        carrelloDAO.bloccaCarrelloByIdUtente(idUtente);
+                        // Le modifiche al carrello non ancora scritte nel database vengono scritte ora, nella stessa transazione
+                        carrelloDAO.doUpdateOfferteSubito(carrello);
+
+                        // Le offerte e i loro prezzi vengono letti dal database: un'offerta cancellata nel frattempo non viene acquistata
+                        List<Offerta> offerte = offertaDAO.getOfferteByIdUtente(idUtente);
+                        if (offerte.isEmpty()) {
+                                response.sendRedirect(request.getContextPath() + "/mostraPaginaCarrello");
+                                return;
+                        }
 
-        // Aggiunge l'ordine al database
-        ordineDAO.doSave(ordine);
+                        // Calcola il totale del carrello
+                        double totale = 0;
+                        List<Integer> idOfferte = new ArrayList<>(offerte.size());
+                        for (Offerta offerta : offerte) {
+                                totale += offerta.getPrezzo();
+                                idOfferte.add(offerta.getIdOfferta());
+                        }
 
+                        // Crea un nuovo ordine con le offerte recuperate dal carrello e lo aggiunge al database
+                        Ordine ordine = new Ordine(0, data, indirizzoCompleto, idUtente, totale);
+                        ordineDAO.doSave(ordine);
+                        ordineDAO.addOfferteToOrdine(ordine.getIdOrdine(), idOfferte);
+                        carrelloDAO.svuotaCarrello(carrello.getIdCarrello());
+
+                        unita.conferma();
+                }
+
+                catch (SQLException e) {
+                        throw new ServletException(e);
+                }
+
+                // Anche il carrello della sessione viene svuotato, come quello nel database: le modifiche
+                // in attesa sono state scritte nella transazione e non vanno scritte di nuovo
+                carrello.setOfferte(Collections.emptyList());
+        }
 
         //messaggio di successo in una variabile di sessione
         session.setAttribute("successMessage", "Checkout effettuato con successo! Il tuo ordine è andato a buon fine. Ecco tutti gli ordini da te effettuati su CardExchange!");
 
-        // Reindirizza l'utente alla pagina di conferma dell'ordine
-        response.sendRedirect("/WEB-INF/results/myorders.jsp");
+        // Reindirizza l'utente alla pagina degli ordini, che mostra il messaggio di conferma
+        // (le pagine sotto WEB-INF non sono raggiungibili con un redirect)
+        response.sendRedirect(request.getContextPath() + "/mostraOrdini");
 
 
         }
@@ -0,0 +1,77 @@
+package acquisto.controller;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.SQLException;
+
+import storage.EsportazioneOrdini;
+import storage.EsportazioneOrdini.Formato;
+
+/**
+ * La classe permette di scaricare gli ordini di tutti gli utenti, con le offerte acquistate,
+ * in un file CSV o JSON Lines compresso con gzip. La risposta viene scritta man mano che gli
+ * ordini sono letti dal database, senza conoscerne prima la lunghezza.
+ * Parametri: formato (csv, predefinito, o jsonl), dal e al (date aaaa-mm-gg, facoltative)
+ */
+
+@WebServlet("/esportaOrdini")
+public class EsportaOrdiniServlet extends HttpServlet {
+
+    /**
+     * Il metodo permette di gestire la richiesta del client tramite una response
+     * che contiene l' esportazione degli ordini, riservata agli utenti ammessi
+     * @param request oggetto che modella una richiesta HTTP
+     * @param response oggetto che modella una risposta HTTP
+     * */
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        HttpSession session = request.getSession(false);
+        Object idUtente = session != null ? session.getAttribute("idUtente") : null;
+        if (!(idUtente instanceof Integer) || !EsportazioneOrdini.ammesso((Integer) idUtente)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        String parametroFormato = request.getParameter("formato");
+        Formato formato = parametroFormato == null ? Formato.CSV : Formato.perNome(parametroFormato);
+        Date dal, al;
+        try {
+            dal = data(request.getParameter("dal"));
+            al = data(request.getParameter("al"));
+        }
+
+        catch (IllegalArgumentException e) {
+            formato = null;
+            dal = al = null;
+        }
+
+        if (formato == null) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        String nome = "ordini" + (dal != null ? "-dal-" + dal : "") + (al != null ? "-al-" + al : "") + formato.getEstensione();
+        response.setContentType("application/gzip");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + nome + "\"");
+        response.setHeader("Cache-Control", "no-store");
+
+        try {
+            EsportazioneOrdini.esporta(response.getOutputStream(), formato, dal, al);
+        }
+
+        catch (SQLException e) {
+            throw new ServletException(e);
+        }
+    }
+
+    private static Date data(String valore) {
+        return valore == null || valore.isEmpty() ? null : Date.valueOf(valore);
+    }
+}
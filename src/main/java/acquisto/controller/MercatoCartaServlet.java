@@ -0,0 +1,76 @@
+package acquisto.controller;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+
+import acquisto.MercatoOfferte;
+import acquisto.Offerta;
+import acquisto.Quotazione;
+import utils.Json;
+
+/**
+ * La classe permette di consultare il mercato di una carta tramite
+ * una servlet che restituisce le offerte piu' convenienti e la
+ * distribuzione dei prezzi
+ */
+
+@WebServlet("/mercato-carta")
+public class MercatoCartaServlet extends HttpServlet {
+    private static final int OFFERTE_PREDEFINITE = 5;
+    private static final int OFFERTE_MASSIME = 50;
+
+    /**
+     * Il metodo permette di gestire la richiesta del client tramite una response JSON
+     * che contiene le migliori offerte della carta indicata dal parametro idCarta,
+     * al piu' n, e i prezzi minimo, mediano e massimo delle sue offerte
+     * @param request oggetto che modella una richiesta HTTP
+     * @param response oggetto che modella una risposta HTTP
+     * */
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        int cardId, number = OFFERTE_PREDEFINITE;
+
+        try {
+            cardId = Integer.parseInt(request.getParameter("idCarta"));
+
+            if (request.getParameter("n") != null)
+                number = Math.max(1, Math.min(OFFERTE_MASSIME, Integer.parseInt(request.getParameter("n"))));
+        }
+
+        catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        Quotazione quotation = MercatoOfferte.getInstance().quotazione(cardId, number);
+
+        StringBuilder json = new StringBuilder("{\"idCarta\":").append(quotation.getIdCarta())
+                .append(",\"numeroOfferte\":").append(quotation.getNumeroOfferte())
+                .append(",\"prezzoMinimo\":").append(quotation.getPrezzoMinimo())
+                .append(",\"prezzoMediano\":").append(quotation.getPrezzoMediano())
+                .append(",\"prezzoMassimo\":").append(quotation.getPrezzoMassimo())
+                .append(",\"migliori\":[");
+
+        for (int i = 0; i < quotation.getMigliori().size(); i++){
+            Offerta offer = quotation.getMigliori().get(i);
+            if (i > 0)
+                json.append(',');
+
+            json.append("{\"idOfferta\":").append(offer.getIdOfferta())
+                    .append(",\"condizione\":").append(Json.stringa(offer.getCondizione()))
+                    .append(",\"prezzo\":").append(offer.getPrezzo())
+                    .append(",\"idUtente\":").append(offer.getIdUtente())
+                    .append('}');
+        }
+        json.append("]}");
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(json.toString());
+    }
+}
@@ -0,0 +1,77 @@
+package acquisto.controller;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import acquisto.Carta;
+import acquisto.Offerta;
+import acquisto.Ordine;
+import registrazione.Utente;
+import storage.FacadeDAO;
+import storage.FacadeDAOAsincrona;
+
+@WebServlet("/mostraOrdini")
+public class MostraOrdiniServlet extends HttpServlet {
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        // Recupera l'id dell'utente corrente dalla sessione
+        int idUtente = (int) request.getSession().getAttribute("idUtente");
+
+        List<Ordine> ordini = new FacadeDAO().getOrdiniByIdUtente(Ordine.class, idUtente);
+        FacadeDAOAsincrona facadeDAOAsincrona = new FacadeDAOAsincrona();
+
+        try {
+            // Le offerte dei vari ordini sono indipendenti: vengono lette in parallelo
+            Map<Integer, CompletableFuture<List<Offerta>>> offerteInLettura = new LinkedHashMap<>();
+            for (Ordine ordine : ordini)
+                offerteInLettura.put(ordine.getIdOrdine(), facadeDAOAsincrona.getOfferteByIdOrdine(Offerta.class, ordine.getIdOrdine()));
+
+            Map<Integer, List<Offerta>> offerte = new HashMap<>();
+            Map<Integer, CompletableFuture<Object>> carteInLettura = new HashMap<>();
+            Map<Integer, CompletableFuture<Object>> venditoriInLettura = new HashMap<>();
+            for (Map.Entry<Integer, CompletableFuture<List<Offerta>>> offerteOrdine : offerteInLettura.entrySet()) {
+                List<Offerta> offerteDellOrdine = offerteOrdine.getValue().join();
+                offerte.put(offerteOrdine.getKey(), offerteDellOrdine);
+
+                // Ogni carta e ogni venditore viene letto una sola volta, anche se compare in piu' offerte
+                for (Offerta offerta : offerteDellOrdine) {
+                    carteInLettura.computeIfAbsent(offerta.getIdCarta(),
+                            idCarta -> facadeDAOAsincrona.doRetrieveById(Carta.class, idCarta));
+                    venditoriInLettura.computeIfAbsent(offerta.getIdUtente(),
+                            idVenditore -> facadeDAOAsincrona.doRetrieveById(Utente.class, idVenditore));
+                }
+            }
+
+            request.setAttribute("ordini", ordini);
+            request.setAttribute("offerte", offerte);
+            request.setAttribute("carte", completa(carteInLettura));
+            request.setAttribute("venditori", completa(venditoriInLettura));
+        }
+
+        catch (CompletionException e) {
+            throw new ServletException(e.getCause());
+        }
+
+        request.getRequestDispatcher("/WEB-INF/results/myorders.jsp").forward(request, response);
+    }
+
+    private static Map<Integer, Object> completa(Map<Integer, CompletableFuture<Object>> letture){
+        Map<Integer, Object> risultati = new HashMap<>();
+        for (Map.Entry<Integer, CompletableFuture<Object>> lettura : letture.entrySet())
+            risultati.put(lettura.getKey(), lettura.getValue().join());
+
+        return risultati;
+    }
+}
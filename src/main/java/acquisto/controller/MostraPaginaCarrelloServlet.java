@@ -8,7 +8,6 @@ import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
 import acquisto.Carrello;
-import storage.CarrelloDAO;
 
 @WebServlet("/mostraPaginaCarrello")
 public class MostraPaginaCarrelloServlet extends HttpServlet {
@@ -16,13 +15,9 @@ public class MostraPaginaCarrelloServlet extends HttpServlet {
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
 
-        // Recupera l'id dell'utente corrente dalla sessione
-        int idUtente = (int) request.getSession().getAttribute("idUtente");
-
-        CarrelloDAO carrelloDAO = new CarrelloDAO();
-        // Recupera il carrello dell'utente corrente dal database utilizzando il metodo
-        // getCarrelloByIdUtente del DAO CarrelloDAO
-        Carrello carrello = carrelloDAO.getCarrelloByIdUtente(idUtente);
+        // Recupera il carrello dell'utente corrente dalla sessione: il database viene letto
+        // solo alla prima richiesta della sessione
+        Carrello carrello = CarrelloSessione.ottieni(request);
 
         // Imposta il carrello come attributo della request
         request.setAttribute("carrello", carrello);
@@ -32,4 +27,4 @@ public class MostraPaginaCarrelloServlet extends HttpServlet {
     }
 
 
-}
\ No newline at end of file
+}
@@ -8,43 +8,29 @@ import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
 import acquisto.Carrello;
-import acquisto.Offerta;
 import storage.CarrelloDAO;
-import storage.OffertaDAO;
 
 @WebServlet("/rimuoviOffertaDalCarrello")
 public class RimuoviOffertaDalCarrelloServlet extends HttpServlet {
 
+    // Il form di carrello.jsp invia la richiesta con il metodo POST
     @Override
-    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
 
-        // Recupera l'id dell'utente corrente dalla sessione
-        int idUtente = (int) request.getSession().getAttribute("idUtente");
-
         // Recupera l'id dell'offerta da rimuovere dal carrello dalla request
         int idOfferta = Integer.parseInt(request.getParameter("idOfferta"));
 
-        // Recupera il carrello dell'utente corrente dal database utilizzando il metodo
-        // getCarrelloByIdUtente del DAO CarrelloDAO
-        CarrelloDAO carrelloDAO = new CarrelloDAO();
-        Carrello carrello = carrelloDAO.getCarrelloByIdUtente(idUtente);
-
-        // Recupera l'offerta da rimuovere al carrello dal database utilizzando il metodo
-        // getOffertaById del DAO OffertaDAO
-        OffertaDAO offertaDAO= new OffertaDAO();
-        Offerta offerta = offertaDAO.doRetrieveById(idOfferta);
-
-        // Rimuove l'offerta al carrello dell'utente
-        carrello.rimuoviOfferta(offerta);
-
-        carrello.getTotale();
+        // Recupera il carrello dell'utente corrente dalla sessione
+        Carrello carrello = CarrelloSessione.ottieni(request);
 
-        // Aggiorna il carrello nel database
-        carrelloDAO.doUpdate(carrello);
+        // Rimuove l'offerta dal carrello dell'utente e, se il carrello e' cambiato,
+        // ne rimanda la scrittura nel database
+        if (carrello.rimuoviOfferta(idOfferta))
+            new CarrelloDAO().doUpdateOfferte(carrello);
 
         // Reindirizza l'utente alla pagina del carrello
-        request.getRequestDispatcher("/WEB-INF/results/carrello.jsp").forward(request, response);
+        response.sendRedirect(request.getContextPath() + "/mostraPaginaCarrello");
 
     }
 
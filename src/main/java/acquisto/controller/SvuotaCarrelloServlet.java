@@ -16,19 +16,16 @@ public class SvuotaCarrelloServlet extends HttpServlet {
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
 
-        // Recupera l'id dell'utente corrente dalla sessione
-        int idUtente = (int) request.getSession().getAttribute("idUtente");
+        // Recupera il carrello dell'utente corrente dalla sessione
+        Carrello carrello = CarrelloSessione.ottieni(request);
 
-        CarrelloDAO carrelloDAO = new CarrelloDAO();
-        // Recupera il carrello dell'utente corrente dal database utilizzando il metodo
-        // getCarrelloByIdUtente del DAO CarrelloDAO
-        Carrello carrello = carrelloDAO.getCarrelloByIdUtente(idUtente);
-
-        //Svuota il carrello delle sue offerte utilizzando il metodo svuotaCarrello della classe Carrello.
+        //Svuota il carrello delle sue offerte utilizzando il metodo svuotaCarrello della classe Carrello
+        //e ne rimanda la scrittura nel database
         carrello.svuotaCarrello();
+        new CarrelloDAO().doUpdateOfferte(carrello);
 
         // Reindirizza l'utente alla pagina del carrello
-        request.getRequestDispatcher("/WEB-INF/results/carrello.jsp").forward(request, response);
+        response.sendRedirect(request.getContextPath() + "/mostraPaginaCarrello");
     }
 
 }
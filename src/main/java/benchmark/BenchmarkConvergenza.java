@@ -0,0 +1,192 @@
+package benchmark;
+
+import acquisto.Carta;
+import storage.CartaDAO;
+import storage.ConPool;
+import storage.RegistroModifiche;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * La classe misura il tempo di convergenza delle cache tra due nodi: il tempo tra la
+ * modifica di una carta su un nodo e il momento in cui l' altro nodo, che aveva la carta
+ * nella propria cache, legge il nuovo nome. I due nodi sono due JVM distinte che usano
+ * lo stesso database H2 in memoria, servito via TCP da questo processo; il secondo nodo
+ * e' un processo figlio avviato con la stessa classpath, che riceve i comandi su stdin.
+ * Per ogni giro il secondo nodo legge la carta, cosi' che finisca nella sua cache,
+ * poi questo nodo la modifica e attende che l' altro veda il nuovo nome. Il tempo atteso
+ * e' compreso tra zero e l' intervallo di lettura del registro, in media la sua meta'.
+ * Uso: java benchmark.BenchmarkConvergenza [giri] [intervalloMillis]
+ * mvn -Ph2 compile exec:java -Dexec.mainClass=benchmark.BenchmarkConvergenza
+ */
+
+public class BenchmarkConvergenza {
+    private static final String IMPOSTAZIONI = ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String URL_DATABASE = "jdbc:h2:tcp://localhost:%d/mem:convergenza" + IMPOSTAZIONI;
+    private static final String URL_LOCALE = "jdbc:h2:mem:convergenza" + IMPOSTAZIONI;
+    private static final long ATTESA_MASSIMA_MILLIS = 60000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("nodo")) {
+            nodo(Integer.parseInt(args[1]));
+            return;
+        }
+
+        int giri = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int intervallo = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int porta = portaLibera();
+
+        //il server TCP non crea database: quello in memoria viene creato qui, nella stessa JVM del server
+        DriverManager.getConnection(URL_LOCALE, "sa", "").close();
+
+        //il server H2 e' nella classpath solo con il profilo h2: viene caricato per riflessione
+        Class<?> classeServer = Class.forName("org.h2.tools.Server");
+        Object server = classeServer.getMethod("createTcpServer", String[].class)
+                .invoke(null, (Object) new String[]{"-tcpPort", String.valueOf(porta)});
+        classeServer.getMethod("start").invoke(server);
+
+        try {
+            misura(porta, giri, intervallo);
+        }
+
+        finally {
+            classeServer.getMethod("stop").invoke(server);
+        }
+    }
+
+    private static void misura(int porta, int giri, int intervallo) throws Exception {
+        String url = String.format(Locale.ROOT, URL_DATABASE, porta);
+        System.setProperty("db.profilo", "h2");
+        System.setProperty("h2.url", url);
+        System.setProperty("cache.sincronizzazione.intervalloMillis", String.valueOf(intervallo));
+        ConPool.inizializza();
+        RegistroModifiche.avvia();
+
+        Process figlio = new ProcessBuilder(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-cp", classpath(), "-Ddb.profilo=h2", "-Dh2.url=" + url,
+                "-Dcache.sincronizzazione.intervalloMillis=" + intervallo,
+                BenchmarkConvergenza.class.getName(), "nodo", String.valueOf(intervallo))
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+
+        try (BufferedReader risposte = new BufferedReader(new InputStreamReader(figlio.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter comandi = new PrintWriter(figlio.getOutputStream(), true)) {
+            attendi(risposte, "pronto");
+
+            CartaDAO cartaDAO = new CartaDAO();
+            Random casuale = new Random(42);
+            List<Double> tempi = new ArrayList<>();
+
+            for (int giro = 0; giro < giri; giro++) {
+                int idCarta = 1 + casuale.nextInt(1000);
+                Carta carta = cartaDAO.doRetrieveById(idCarta);
+                String nome = "convergenza " + giro;
+
+                comandi.println("attendi " + idCarta + " " + nome);
+                attendi(risposte, "letta");
+                //il giro inizia subito dopo una lettura del registro dell' altro nodo: un ritardo casuale
+                //evita di misurare sempre l' intervallo intero
+                Thread.sleep(casuale.nextInt(intervallo));
+
+                long inizio = System.nanoTime();
+                cartaDAO.doUpdate(idCarta, new Carta(idCarta, nome, carta.getCategoria(), carta.getRarita(), carta.getImmagine()));
+                attendi(risposte, "vista");
+                tempi.add((System.nanoTime() - inizio) / 1e6);
+            }
+
+            comandi.println("fine");
+            Collections.sort(tempi);
+            System.out.println("== " + giri + " modifiche, lettura del registro ogni " + intervallo + " ms");
+            System.out.println(String.format(Locale.ROOT, "convergenza  min %7.1f ms  mediana %7.1f ms  p95 %7.1f ms  max %7.1f ms",
+                    tempi.get(0), tempi.get(tempi.size() / 2), tempi.get((int) Math.ceil(tempi.size() * 0.95) - 1),
+                    tempi.get(tempi.size() - 1)));
+        }
+
+        finally {
+            figlio.destroy();
+            RegistroModifiche.ferma();
+            ConPool.chiudi();
+        }
+    }
+
+    //il secondo nodo: risponde ai comandi del primo finche' non riceve "fine"
+    private static void nodo(int intervallo) throws IOException, InterruptedException, SQLException {
+        ConPool.inizializza();
+        RegistroModifiche.avvia();
+        //la prima lettura del registro fissa il punto di partenza: le modifiche successive vanno applicate
+        Thread.sleep(2L * intervallo);
+        System.out.println("pronto");
+
+        CartaDAO cartaDAO = new CartaDAO();
+        BufferedReader comandi = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String comando;
+
+        while ((comando = comandi.readLine()) != null && !comando.equals("fine")) {
+            String[] parti = comando.split(" ", 3);
+            int idCarta = Integer.parseInt(parti[1]);
+
+            cartaDAO.doRetrieveById(idCarta);
+            System.out.println("letta");
+
+            long scadenza = System.currentTimeMillis() + ATTESA_MASSIMA_MILLIS;
+            while (!cartaDAO.doRetrieveById(idCarta).getNome().equals(parti[2])) {
+                if (System.currentTimeMillis() > scadenza)
+                    throw new IllegalStateException("La modifica della carta " + idCarta + " non e' arrivata al nodo");
+
+                Thread.sleep(1);
+            }
+
+            System.out.println("vista");
+        }
+
+        RegistroModifiche.ferma();
+        ConPool.chiudi();
+    }
+
+    private static void attendi(BufferedReader risposte, String atteso) throws IOException {
+        String riga;
+        while ((riga = risposte.readLine()) != null) {
+            if (riga.equals(atteso))
+                return;
+        }
+
+        throw new IllegalStateException("Il secondo nodo e' terminato prima di rispondere " + atteso);
+    }
+
+    //con exec:java le classi del progetto sono caricate da un URLClassLoader e non sono in java.class.path
+    private static String classpath() throws URISyntaxException {
+        ClassLoader loader = BenchmarkConvergenza.class.getClassLoader();
+        if (!(loader instanceof URLClassLoader))
+            return System.getProperty("java.class.path");
+
+        StringBuilder classpath = new StringBuilder();
+        for (URL url : ((URLClassLoader) loader).getURLs()) {
+            if (classpath.length() > 0)
+                classpath.append(File.pathSeparatorChar);
+            classpath.append(new File(url.toURI()).getPath());
+        }
+
+        return classpath.toString();
+    }
+
+    private static int portaLibera() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package benchmark;
+
+import acquisto.Carta;
+import storage.CartaDAO;
+import storage.ConPool;
+import storage.ImportazioneCarte;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Locale;
+
+/**
+ * La classe confronta due modi di caricare un catalogo di carte: un CartaDAO.doSave per
+ * carta, come farebbe un ciclo sulle righe del file, e ImportazioneCarte, che legge il file
+ * in streaming e scrive a blocchi su una sola connessione. Il catalogo viene generato in un
+ * file CSV temporaneo, importato una volta come inserimento e una volta come aggiornamento
+ * delle stesse carte. Va eseguita su un database di prova, ad esempio H2:
+ * mvn -Ph2 compile exec:java -Dexec.mainClass=benchmark.BenchmarkImportazione -Ddb.profilo=h2
+ * Uso: java benchmark.BenchmarkImportazione [carte]
+ */
+
+public class BenchmarkImportazione {
+    private static final String[] CATEGORIE = {"Mostro", "Magia", "Trappola"};
+    private static final String[] RARITA = {"Comune", "Rara", "Super Rara", "Ultra Rara"};
+
+    public static void main(String[] args) throws IOException, SQLException {
+        int numero = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        Path file = Files.createTempFile("catalogo", ".csv");
+        ConPool.inizializza();
+
+        try {
+            CartaDAO cartaDAO = new CartaDAO();
+            long inizio = System.nanoTime();
+            for (int i = 0; i < numero; i++)
+                cartaDAO.doSave(carta(0, i));
+            stampa("CartaDAO.doSave per carta", numero, System.nanoTime() - inizio);
+
+            scrivi(file, numero, 0);
+            ImportazioneCarte.Risultato inserimento = ImportazioneCarte.importa(file, null);
+            stampa("ImportazioneCarte, inserimento", inserimento.getImportate(), (long) (inserimento.getSecondi() * 1e9));
+
+            //le carte appena inserite sono le ultime: l' id della prima e' il massimo meno numero - 1
+            int primoId = 0;
+            for (Carta carta : cartaDAO.doRetrieveAll())
+                primoId = Math.max(primoId, carta.getIdCarta());
+            scrivi(file, numero, primoId - numero + 1);
+            ImportazioneCarte.Risultato aggiornamento = ImportazioneCarte.importa(file, null);
+            stampa("ImportazioneCarte, aggiornamento", aggiornamento.getImportate(), (long) (aggiornamento.getSecondi() * 1e9));
+            System.out.println(String.format(Locale.ROOT, "== file di %.1f MB", Files.size(file) / 1e6));
+        }
+
+        finally {
+            Files.deleteIfExists(file);
+            ConPool.chiudi();
+        }
+    }
+
+    private static Carta carta(int idCarta, int i) {
+        return new Carta(idCarta, "Carta di prova " + i, CATEGORIE[i % CATEGORIE.length], RARITA[i % RARITA.length],
+                "img/prova/" + i + ".png");
+    }
+
+    //con primoId 0 le righe non hanno id e vengono inserite, altrimenti aggiornano le carte da primoId in poi
+    private static void scrivi(Path file, int numero, int primoId) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("idCarta,nome,categoria,rarita,immagine\n");
+            for (int i = 0; i < numero; i++) {
+                Carta carta = carta(0, i);
+                writer.write((primoId > 0 ? String.valueOf(primoId + i) : "") + ",\"" + carta.getNome() + " (aggiornata)\"," +
+                        carta.getCategoria() + "," + carta.getRarita() + "," + carta.getImmagine() + "\n");
+            }
+        }
+    }
+
+    private static void stampa(String nome, long righe, long nanosecondi) {
+        System.out.println(String.format(Locale.ROOT, "%-34s %8d carte in %8.1f ms  %10.0f carte/s",
+                nome, righe, nanosecondi / 1e6, righe / (nanosecondi / 1e9)));
+    }
+}
@@ -0,0 +1,137 @@
+package benchmark;
+
+import monitoraggio.IstogrammaLatenze;
+import registrazione.Utente;
+import storage.CarrelloDAO;
+import storage.CartaDAO;
+import storage.ConPool;
+import storage.MessaggioDAO;
+import storage.Migrazioni;
+import storage.OffertaDAO;
+import storage.OrdineDAO;
+import storage.ScambioDAO;
+import storage.UtenteDAO;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntConsumer;
+
+/**
+ * La classe misura la latenza delle query dei DAO che filtrano per colonne diverse dalla
+ * chiave primaria, prima e dopo le migrazioni dello schema che aggiungono gli indici.
+ * Il pool viene creato senza applicare le migrazioni, ogni query viene misurata, poi le
+ * migrazioni vengono applicate e le stesse query, con gli stessi valori, misurate di nuovo.
+ * Serve un database a cui le migrazioni non sono ancora state applicate, ad esempio H2:
+ * mvn -Ph2 compile exec:java -Dexec.mainClass=benchmark.BenchmarkIndici -Ddb.profilo=h2
+ * Uso: java benchmark.BenchmarkIndici [chiamate per query]
+ */
+
+public class BenchmarkIndici {
+    private static final int DIMENSIONE_PAGINA = 20;
+
+    public static void main(String[] args) throws SQLException {
+        int chiamate = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        System.setProperty("db.migrazioni.automatiche", "false");
+        ConPool.inizializza();
+
+        try {
+            Map<String, IntConsumer> query = query();
+            Map<String, IstogrammaLatenze> prima = misura(query, chiamate);
+
+            long inizio = System.nanoTime();
+            int applicate = Migrazioni.esegui();
+            System.out.println(String.format(Locale.ROOT, "== %d migrazioni applicate in %.0f ms",
+                    applicate, (System.nanoTime() - inizio) / 1e6));
+            if (applicate == 0)
+                System.out.println("Le migrazioni erano gia' applicate: i due tempi misurano lo stesso schema");
+
+            Map<String, IstogrammaLatenze> dopo = misura(query, chiamate);
+
+            System.out.println("== " + chiamate + " chiamate per query, tempi medi e p95 in microsecondi");
+            System.out.println(String.format(Locale.ROOT, "%-44s %10s %10s %10s %10s %9s",
+                    "query", "prima", "p95", "dopo", "p95", "rapporto"));
+            for (String nome : query.keySet()) {
+                double mediaPrima = media(prima.get(nome)), mediaDopo = media(dopo.get(nome));
+                System.out.println(String.format(Locale.ROOT, "%-44s %10.1f %10.1f %10.1f %10.1f %8.1fx", nome,
+                        mediaPrima, prima.get(nome).percentile(0.95) / 1000.0,
+                        mediaDopo, dopo.get(nome).percentile(0.95) / 1000.0, mediaPrima / mediaDopo));
+            }
+        }
+
+        finally {
+            ConPool.chiudi();
+        }
+    }
+
+    private static Map<String, IntConsumer> query() {
+        OffertaDAO offertaDAO = new OffertaDAO();
+        OrdineDAO ordineDAO = new OrdineDAO();
+        ScambioDAO scambioDAO = new ScambioDAO();
+        MessaggioDAO messaggioDAO = new MessaggioDAO();
+        UtenteDAO utenteDAO = new UtenteDAO();
+        CarrelloDAO carrelloDAO = new CarrelloDAO();
+
+        List<Utente> utenti = utenteDAO.doRetrieveAll();
+        int offerte = offertaDAO.doRetrieveAll().size();
+        int carte = new CartaDAO().doRetrieveAll().size();
+        //il DAO non legge tutte le discussioni: il loro numero si ricava dai messaggi
+        int[] discussioni = {1};
+        messaggioDAO.doRetrieveAll(messaggio -> discussioni[0] = Math.max(discussioni[0], messaggio.getIdDiscussione()));
+
+        int numeroUtenti = utenti.size();
+        int numeroDiscussioni = discussioni[0];
+
+        //i valori dipendono solo dall' intero ricevuto, estratto con lo stesso seme prima e dopo le migrazioni
+        Map<String, IntConsumer> query = new LinkedHashMap<>();
+        query.put("UtenteDAO.getUtenteByEmail", i -> utenteDAO.getUtenteByEmail(utenti.get(i % numeroUtenti).getEmail()));
+        query.put("UtenteDAO.getUtenteByUsername", i -> utenteDAO.getUtenteByUsername(utenti.get(i % numeroUtenti).getUsername()));
+        query.put("UtenteDAO.getUtenteByEmailPassword", i -> {
+            Utente utente = utenti.get(i % numeroUtenti);
+            utenteDAO.getUtenteByEmailPassword(utente.getEmail(), utente.getPassword());
+        });
+        query.put("OffertaDAO.getOfferteByIdUtente", i -> offertaDAO.getOfferteByIdUtente(utenti.get(i % numeroUtenti).getIdUtente()));
+        query.put("OffertaDAO.doRetrievePaginaByIdCarta", i -> offertaDAO.doRetrievePaginaByIdCarta(1 + i % carte, 0, DIMENSIONE_PAGINA));
+        query.put("OffertaDAO.doRetrievePaginaByIdUtente", i -> offertaDAO.doRetrievePaginaByIdUtente(utenti.get(i % numeroUtenti).getIdUtente(), 0, DIMENSIONE_PAGINA));
+        query.put("CarrelloDAO.getCarrelloByIdUtente", i -> carrelloDAO.getCarrelloByIdUtente(utenti.get(i % numeroUtenti).getIdUtente()));
+        query.put("OrdineDAO.doRetrieveByIdUtente", i -> ordineDAO.doRetrieveByIdUtente(utenti.get(i % numeroUtenti).getIdUtente()));
+        query.put("OrdineDAO.doRetrievePaginaByIdUtente", i -> ordineDAO.doRetrievePaginaByIdUtente(utenti.get(i % numeroUtenti).getIdUtente(), 0, DIMENSIONE_PAGINA));
+        query.put("ScambioDAO.getAllScambiByIdMittente", i -> scambioDAO.getAllScambiByIdMittente(utenti.get(i % numeroUtenti).getIdUtente()));
+        query.put("ScambioDAO.getAllScambiByIdDestinatario", i -> scambioDAO.getAllScambiByIdDestinatario(utenti.get(i % numeroUtenti).getIdUtente()));
+        query.put("ScambioDAO.getAllScambiByIdOfferta", i -> scambioDAO.getAllScambiByIdOfferta(1 + i % Math.max(1, offerte)));
+        query.put("MessaggioDAO.doRetrievePaginaByIdDiscussione", i -> messaggioDAO.doRetrievePaginaByIdDiscussione(1 + i % numeroDiscussioni, 0, DIMENSIONE_PAGINA));
+        return query;
+    }
+
+    private static Map<String, IstogrammaLatenze> misura(Map<String, IntConsumer> query, int chiamate) {
+        Map<String, IstogrammaLatenze> tempi = new LinkedHashMap<>();
+
+        for (Map.Entry<String, IntConsumer> voce : query.entrySet()) {
+            IntConsumer esecuzione = voce.getValue();
+            Random random = new Random(42);
+
+            //riscaldamento della JVM e della cache degli statement, non misurato
+            for (int i = 0; i < Math.min(chiamate, 200); i++)
+                esecuzione.accept(random.nextInt(Integer.MAX_VALUE));
+
+            IstogrammaLatenze istogramma = new IstogrammaLatenze();
+            for (int i = 0; i < chiamate; i++) {
+                int valore = random.nextInt(Integer.MAX_VALUE);
+                long inizio = System.nanoTime();
+                esecuzione.accept(valore);
+                istogramma.registra(System.nanoTime() - inizio);
+            }
+
+            tempi.put(voce.getKey(), istogramma);
+        }
+
+        return tempi;
+    }
+
+    private static double media(IstogrammaLatenze istogramma) {
+        return istogramma.getSommaNanosecondi() / 1000.0 / istogramma.getNumero();
+    }
+}
@@ -0,0 +1,94 @@
+package benchmark;
+
+import acquisto.Offerta;
+import storage.ConPool;
+import storage.Mappatore;
+import storage.Mappatori;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Locale;
+
+/**
+ * La classe misura il costo della conversione delle righe di un ResultSet in
+ * oggetti Offerta, leggendo le colonne per nome come facevano i DAO oppure
+ * per posizione con il mappatore. La tabella Offerta viene letta piu' volte
+ * finche' non si raggiunge il numero di righe richiesto; le due strategie si
+ * alternano a ogni giro cosi' che riscaldamento e cache del database pesino
+ * allo stesso modo su entrambe.
+ * Uso: java benchmark.BenchmarkMappatura [righe]
+ * Senza MySQL si puo' usare il database H2 in memoria:
+ * mvn -Ph2 compile exec:java -Dexec.mainClass=benchmark.BenchmarkMappatura -Ddb.profilo=h2
+ */
+
+public class BenchmarkMappatura {
+    private static final String QUERY = "SELECT * FROM Offerta";
+    private static final int GIRI = 5;
+
+    public static void main(String[] args) throws SQLException {
+        int righe = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        ConPool.inizializza();
+
+        try (Connection connessione = ConPool.getConnection()) {
+            //riscaldamento della JVM, non misurato
+            leggi(connessione, Math.min(righe, 200000), false);
+            leggi(connessione, Math.min(righe, 200000), true);
+
+            long perNome = Long.MAX_VALUE, perPosizione = Long.MAX_VALUE;
+            for (int i = 0; i < GIRI; i++) {
+                perNome = Math.min(perNome, leggi(connessione, righe, false));
+                perPosizione = Math.min(perPosizione, leggi(connessione, righe, true));
+            }
+
+            System.out.println("== " + righe + " righe di Offerta, miglior tempo su " + GIRI + " giri");
+            stampa("colonne per nome", perNome, righe);
+            stampa("Mappatori.OFFERTA", perPosizione, righe);
+        }
+
+        finally {
+            ConPool.chiudi();
+        }
+    }
+
+    //restituisce i nanosecondi impiegati per leggere e convertire il numero di righe indicato
+    private static long leggi(Connection connessione, int righe, boolean mappatore) throws SQLException {
+        long controllo = 0, inizio = System.nanoTime();
+        int lette = 0;
+
+        while (lette < righe) {
+            int prima = lette;
+            try (PreparedStatement ps = connessione.prepareStatement(QUERY);
+                 ResultSet rs = ps.executeQuery()) {
+                Mappatore<Offerta> offerta = Mappatori.OFFERTA;
+                int[] colonne = mappatore ? offerta.colonne(QUERY, rs) : null;
+
+                while (lette < righe && rs.next()) {
+                    Offerta o = mappatore ? offerta.riga(rs, colonne) : perNome(rs);
+                    controllo += o.getIdOfferta();
+                    lette++;
+                }
+            }
+
+            if (lette == prima)
+                throw new IllegalStateException("La tabella Offerta e' vuota: impossibile eseguire il benchmark");
+        }
+
+        long durata = System.nanoTime() - inizio;
+        //il controllo impedisce al compilatore JIT di eliminare la lettura
+        if (controllo == 42)
+            System.out.print("");
+        return durata;
+    }
+
+    private static Offerta perNome(ResultSet rs) throws SQLException {
+        return new Offerta(rs.getInt("idOfferta"), rs.getString("condizione"), rs.getDouble("prezzo"),
+                rs.getInt("idUtente"), rs.getInt("idCarta"));
+    }
+
+    private static void stampa(String strategia, long nanosecondi, int righe) {
+        System.out.println(String.format(Locale.ROOT, "%-20s %8.1f ms  %6.1f ns/riga  %8.2f M righe/s",
+                strategia, nanosecondi / 1e6, (double) nanosecondi / righe, righe * 1e3 / nanosecondi));
+    }
+}
@@ -0,0 +1,94 @@
+package benchmark;
+
+import acquisto.Carta;
+import monitoraggio.IstogrammaLatenze;
+import registrazione.Utente;
+import storage.CartaDAO;
+import storage.ConPool;
+import storage.UtenteDAO;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * La classe misura la latenza delle chiamate ai DAO con e senza la cache degli
+ * statement preparati, sul database configurato in database.properties.
+ * Le due configurazioni vengono eseguite una dopo l' altra ricreando il pool:
+ * prima senza l' intercettore StatementCache e, su MySQL, senza statement
+ * preparati lato server, poi con la configurazione del file.
+ * Uso: java benchmark.BenchmarkStatement [chiamate]
+ * Senza MySQL si puo' usare il database H2 in memoria:
+ * mvn -Ph2 compile exec:java -Dexec.mainClass=benchmark.BenchmarkStatement -Ddb.profilo=h2
+ */
+
+public class BenchmarkStatement {
+    private static final String INTERCETTORI = "pool.jdbcInterceptors";
+    private static final String PROPRIETA_DRIVER = "db.connectionProperties";
+
+    public static void main(String[] args) throws SQLException {
+        int chiamate = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        String intercettori = System.getProperty(INTERCETTORI);
+        String proprietaDriver = System.getProperty(PROPRIETA_DRIVER);
+
+        System.setProperty(INTERCETTORI, "ConnectionState;StatementFinalizer");
+        System.setProperty(PROPRIETA_DRIVER, "useServerPrepStmts=false;cachePrepStmts=false");
+        esegui("senza cache degli statement", chiamate);
+
+        ripristina(INTERCETTORI, intercettori);
+        ripristina(PROPRIETA_DRIVER, proprietaDriver);
+        esegui("con cache degli statement", chiamate);
+
+        ConPool.chiudi();
+    }
+
+    private static void esegui(String nome, int chiamate) throws SQLException {
+        ConPool.chiudi();
+        ConPool.inizializza();
+
+        CartaDAO cartaDAO = new CartaDAO();
+        UtenteDAO utenteDAO = new UtenteDAO();
+        List<Carta> carte = cartaDAO.doRetrieveAll();
+        List<Utente> utenti = utenteDAO.doRetrieveAll();
+
+        if (carte.isEmpty() || utenti.isEmpty()) {
+            System.out.println("Il database non contiene carte o utenti: impossibile eseguire il benchmark");
+            return;
+        }
+
+        //riscaldamento della JVM e del pool, non misurato
+        for (int i = 0; i < Math.min(chiamate, 2000); i++) {
+            cartaDAO.doRetrieveById(carte.get(i % carte.size()).getIdCarta());
+            utenteDAO.getUtenteByEmail(utenti.get(i % utenti.size()).getEmail());
+        }
+
+        IstogrammaLatenze perId = new IstogrammaLatenze(), perEmail = new IstogrammaLatenze();
+        for (int i = 0; i < chiamate; i++) {
+            long inizio = System.nanoTime();
+            cartaDAO.doRetrieveById(carte.get(i % carte.size()).getIdCarta());
+            perId.registra(System.nanoTime() - inizio);
+
+            inizio = System.nanoTime();
+            utenteDAO.getUtenteByEmail(utenti.get(i % utenti.size()).getEmail());
+            perEmail.registra(System.nanoTime() - inizio);
+        }
+
+        System.out.println("== " + nome + " (" + chiamate + " chiamate)");
+        stampa("CartaDAO.doRetrieveById", perId);
+        stampa("UtenteDAO.getUtenteByEmail", perEmail);
+    }
+
+    private static void stampa(String metodo, IstogrammaLatenze istogramma) {
+        System.out.println(String.format(Locale.ROOT, "%-28s media %8.1f us  p50 %8.1f us  p95 %8.1f us  p99 %8.1f us",
+                metodo, istogramma.getSommaNanosecondi() / 1000.0 / istogramma.getNumero(),
+                istogramma.percentile(0.5) / 1000.0, istogramma.percentile(0.95) / 1000.0, istogramma.percentile(0.99) / 1000.0));
+    }
+
+    private static void ripristina(String chiave, String valore) {
+        if (valore == null)
+            System.clearProperty(chiave);
+        else
+            System.setProperty(chiave, valore);
+    }
+}
@@ -10,20 +10,41 @@ import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import registrazione.Utente;
 import storage.FacadeDAO;
+import storage.Pagina;
 
 import java.io.IOException;
-import java.util.List;
 
 @WebServlet("/forum-servlet")
 public class ForumServlet extends HttpServlet {
     @Override
     public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        int cursor, pageSize;
+        try {
+            cursor = intParameter(request, "cursore", 0);
+            pageSize = intParameter(request, "dimensione", Pagina.DIMENSIONE_PREDEFINITA);
+        }
+
+        catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
         FacadeDAO facadeDAO = new FacadeDAO();
 
-        List<Discussione> topics = (List<Discussione>) facadeDAO.doRetrieveAll(Discussione.class);
-        request.setAttribute("topics-list", topics);
+        //le discussioni vengono lette una pagina alla volta, a partire da quella successiva al cursore
+        Pagina<Discussione> page = (Pagina<Discussione>) facadeDAO.doRetrievePagina(Discussione.class, cursor, pageSize);
+        request.setAttribute("topics-list", page.getElementi());
+
+        if (page.getCursoreSuccessivo() != null)
+            request.setAttribute("next-page", "forum-servlet?cursore=" + page.getCursoreSuccessivo() +
+                    "&dimensione=" + Pagina.limita(pageSize));
 
         RequestDispatcher requestDispatcher = request.getRequestDispatcher("/WEB-INF/results/forum.jsp");
         requestDispatcher.forward(request, response);
     }
+
+    private static int intParameter(HttpServletRequest request, String name, int defaultValue){
+        String value = request.getParameter(name);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
 }
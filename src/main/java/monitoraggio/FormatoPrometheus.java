@@ -0,0 +1,104 @@
+package monitoraggio;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * La classe permette di scrivere le metriche nel formato testuale di Prometheus,
+ * cosi' che la servlet delle metriche possa essere letta da un collettore
+ */
+
+public class FormatoPrometheus {
+    private static final double[] QUANTILI = {0.5, 0.9, 0.95, 0.99};
+
+    private final StringBuilder testo = new StringBuilder();
+
+    /**
+     * Il metodo permette di scrivere le righe di descrizione di una famiglia di metriche
+     * @param nome nome della metrica
+     * @param tipo gauge, counter o summary
+     * @param descrizione descrizione della metrica
+     * */
+    public void intestazione(String nome, String tipo, String descrizione) {
+        testo.append("# HELP ").append(nome).append(' ').append(descrizione).append('\n');
+        testo.append("# TYPE ").append(nome).append(' ').append(tipo).append('\n');
+    }
+
+    /**
+     * Il metodo permette di scrivere un valore di una metrica
+     * @param nome nome della metrica
+     * @param etichette etichette del valore, null se non ce ne sono
+     * @param valore il valore
+     * */
+    public void campione(String nome, Map<String, String> etichette, double valore) {
+        testo.append(nome);
+
+        if (etichette != null && !etichette.isEmpty()) {
+            testo.append('{');
+            boolean primo = true;
+
+            for (Map.Entry<String, String> etichetta : etichette.entrySet()) {
+                if (!primo)
+                    testo.append(',');
+
+                testo.append(etichetta.getKey()).append("=\"").append(valoreEtichetta(etichetta.getValue())).append('"');
+                primo = false;
+            }
+
+            testo.append('}');
+        }
+
+        testo.append(' ').append(formatta(valore)).append('\n');
+    }
+
+    public void gauge(String nome, String descrizione, double valore) {
+        intestazione(nome, "gauge", descrizione);
+        campione(nome, null, valore);
+    }
+
+    public void contatore(String nome, String descrizione, double valore) {
+        intestazione(nome, "counter", descrizione);
+        campione(nome, null, valore);
+    }
+
+    /**
+     * Il metodo permette di scrivere un istogramma come summary, con i quantili in secondi
+     * @param nome nome della metrica, senza i suffissi _sum e _count
+     * @param etichette etichette comuni a tutti i valori, null se non ce ne sono
+     * @param istogramma l' istogramma delle durate
+     * */
+    public void riepilogo(String nome, Map<String, String> etichette, IstogrammaLatenze istogramma) {
+        for (double quantile : QUANTILI) {
+            Map<String, String> etichetteQuantile = new LinkedHashMap<>();
+            if (etichette != null)
+                etichetteQuantile.putAll(etichette);
+            etichetteQuantile.put("quantile", formatta(quantile));
+
+            campione(nome, etichetteQuantile, secondi(istogramma.percentile(quantile)));
+        }
+
+        campione(nome + "_sum", etichette, secondi(istogramma.getSommaNanosecondi()));
+        campione(nome + "_count", etichette, istogramma.getNumero());
+    }
+
+    @Override
+    public String toString() {
+        return testo.toString();
+    }
+
+    private static double secondi(long nanosecondi) {
+        return nanosecondi / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private static String formatta(double valore) {
+        if (valore == Math.rint(valore) && !Double.isInfinite(valore) && Math.abs(valore) < 1e15)
+            return Long.toString((long) valore);
+
+        return Double.toString(valore);
+    }
+
+    private static String valoreEtichetta(String valore) {
+        return valore == null ? "" : valore.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
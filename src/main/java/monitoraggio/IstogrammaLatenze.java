@@ -0,0 +1,103 @@
+package monitoraggio;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * La classe modella un istogramma delle latenze condiviso tra i thread.
+ * Le durate sono raccolte in intervalli logaritmici, ciascuno diviso in otto
+ * parti uguali, cosi' che i percentili abbiano un errore relativo inferiore al
+ * 12.5% con una memoria fissa e una registrazione senza lock
+ */
+
+public class IstogrammaLatenze {
+    private static final int SUDDIVISIONI = 8;
+    private static final int BIT_SUDDIVISIONI = 3;
+    private static final int INTERVALLI = (64 - BIT_SUDDIVISIONI + 1) * SUDDIVISIONI;
+
+    private final AtomicLongArray conteggi = new AtomicLongArray(INTERVALLI);
+    private final LongAdder numero = new LongAdder();
+    private final LongAdder somma = new LongAdder();
+    private final LongAccumulator massimo = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Il metodo permette di registrare una durata
+     * @param nanosecondi la durata misurata in nanosecondi
+     * */
+    public void registra(long nanosecondi) {
+        long valore = Math.max(0, nanosecondi);
+
+        conteggi.incrementAndGet(indice(valore));
+        numero.increment();
+        somma.add(valore);
+        massimo.accumulate(valore);
+    }
+
+    public long getNumero() {
+        return numero.sum();
+    }
+
+    public long getSommaNanosecondi() {
+        return somma.sum();
+    }
+
+    public long getMassimoNanosecondi() {
+        return massimo.get();
+    }
+
+    /**
+     * Il metodo permette di stimare un percentile delle durate registrate
+     * @param percentile valore compreso tra 0 e 1, ad esempio 0.99
+     * @return la durata stimata in nanosecondi, 0 se non ci sono durate registrate
+     * */
+    public long percentile(double percentile) {
+        long[] istantanea = new long[INTERVALLI];
+        long totale = 0;
+
+        for (int i = 0; i < INTERVALLI; i++) {
+            istantanea[i] = conteggi.get(i);
+            totale += istantanea[i];
+        }
+
+        if (totale == 0)
+            return 0;
+
+        long posizione = Math.max(1, (long) Math.ceil(percentile * totale));
+        long cumulato = 0;
+
+        for (int i = 0; i < INTERVALLI; i++) {
+            cumulato += istantanea[i];
+
+            if (cumulato >= posizione)
+                return Math.min(valoreMedio(i), massimo.get());
+        }
+
+        return massimo.get();
+    }
+
+    public double percentileMillisecondi(double percentile) {
+        return percentile(percentile) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static int indice(long valore) {
+        if (valore < SUDDIVISIONI)
+            return (int) valore;
+
+        int esponente = 63 - Long.numberOfLeadingZeros(valore);
+        int parte = (int) (valore >>> (esponente - BIT_SUDDIVISIONI)) & (SUDDIVISIONI - 1);
+        return (esponente - BIT_SUDDIVISIONI + 1) * SUDDIVISIONI + parte;
+    }
+
+    //valore centrale dell' intervallo, usato come stima delle durate che vi ricadono
+    private static long valoreMedio(int indice) {
+        if (indice < SUDDIVISIONI)
+            return indice;
+
+        int esponente = indice / SUDDIVISIONI + BIT_SUDDIVISIONI - 1;
+        long ampiezza = 1L << (esponente - BIT_SUDDIVISIONI);
+        long inizio = (1L << esponente) + (indice % SUDDIVISIONI) * ampiezza;
+        return inizio + ampiezza / 2;
+    }
+}
@@ -0,0 +1,43 @@
+package monitoraggio;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * La classe raccoglie i componenti che espongono metriche, cosi' che la
+ * servlet delle metriche non debba conoscerli uno per uno
+ */
+
+public class RegistroMetriche {
+    private static final RegistroMetriche ISTANZA = new RegistroMetriche();
+
+    private final List<SorgenteMetriche> sorgenti = new CopyOnWriteArrayList<>();
+
+    private RegistroMetriche(){}
+
+    public static RegistroMetriche getInstance(){
+        return ISTANZA;
+    }
+
+    public void registra(SorgenteMetriche sorgente){
+        if (!sorgenti.contains(sorgente))
+            sorgenti.add(sorgente);
+    }
+
+    public void rimuovi(SorgenteMetriche sorgente){
+        sorgenti.remove(sorgente);
+    }
+
+    /**
+     * Il metodo permette di ottenere i valori correnti di tutte le metriche registrate
+     * @return il testo delle metriche nel formato di Prometheus
+     * */
+    public String scrivi(){
+        FormatoPrometheus formato = new FormatoPrometheus();
+
+        for (SorgenteMetriche sorgente : sorgenti)
+            sorgente.scrivi(formato);
+
+        return formato.toString();
+    }
+}
@@ -0,0 +1,15 @@
+package monitoraggio;
+
+/**
+ * L' interfaccia modella un componente che espone metriche
+ * attraverso la servlet delle metriche
+ */
+
+public interface SorgenteMetriche {
+
+    /**
+     * Il metodo permette di scrivere i valori correnti delle metriche del componente
+     * @param formato il testo delle metriche in costruzione
+     * */
+    void scrivi(FormatoPrometheus formato);
+}
@@ -0,0 +1,34 @@
+package monitoraggio.controller;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+
+import monitoraggio.RegistroMetriche;
+
+/**
+ * La classe permette di leggere le metriche dell' applicazione tramite
+ * una servlet che le restituisce nel formato testuale di Prometheus
+ */
+
+@WebServlet("/metrics")
+public class MetricheServlet extends HttpServlet {
+
+    /**
+     * Il metodo permette di gestire la richiesta del client tramite una response
+     * che contiene i valori correnti di tutte le metriche registrate
+     * @param request oggetto che modella una richiesta HTTP
+     * @param response oggetto che modella una risposta HTTP
+     * */
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        response.setContentType("text/plain; version=0.0.4");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+        response.getWriter().write(RegistroMetriche.getInstance().scrivi());
+    }
+}
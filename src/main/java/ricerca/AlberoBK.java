@@ -0,0 +1,152 @@
+package ricerca;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * La classe modella un BK-tree sui nomi normalizzati delle carte, con la
+ * distanza di Levenshtein come metrica. Per la disuguaglianza triangolare una
+ * ricerca con distanza massima k visita solo i figli a distanza [d - k, d + k]
+ * dal nodo corrente, invece di confrontare il testo con tutti i nomi
+ */
+
+class AlberoBK {
+    private Nodo radice;
+
+    /**
+     * Il metodo permette di aggiungere all' albero il nome di una carta
+     * @param slot posizione della carta nel catalogo
+     * @param nome nome normalizzato della carta
+     * */
+    void aggiungi(int slot, String nome){
+        if (radice == null){
+            radice = new Nodo(nome);
+            radice.slot.add(slot);
+            return;
+        }
+
+        Levenshtein levenshtein = new Levenshtein();
+        Nodo nodo = radice;
+
+        while (true){
+            int distanza = levenshtein.distanza(nome, nodo.nome);
+
+            if (distanza == 0){
+                nodo.slot.add(slot);
+                return;
+            }
+
+            Nodo figlio = nodo.figli.get(distanza);
+            if (figlio == null){
+                figlio = new Nodo(nome);
+                figlio.slot.add(slot);
+                nodo.figli.put(distanza, figlio);
+                return;
+            }
+
+            nodo = figlio;
+        }
+    }
+
+    /**
+     * Il metodo permette di rimuovere dall' albero il nome di una carta. Il nodo
+     * resta nell' albero anche se non ha piu' carte, perche' serve ad instradare le ricerche
+     * @param slot posizione della carta nel catalogo
+     * @param nome nome normalizzato con cui la carta era stata aggiunta
+     * */
+    void rimuovi(int slot, String nome){
+        Levenshtein levenshtein = new Levenshtein();
+        Nodo nodo = radice;
+
+        while (nodo != null){
+            int distanza = levenshtein.distanza(nome, nodo.nome);
+
+            if (distanza == 0){
+                nodo.slot.remove(slot);
+                return;
+            }
+
+            nodo = nodo.figli.get(distanza);
+        }
+    }
+
+    /**
+     * Il metodo permette di ottenere le carte il cui nome dista dal testo
+     * al piu' la distanza massima specificata
+     * @param testo testo normalizzato
+     * @param distanzaMassima numero massimo di inserimenti, cancellazioni e sostituzioni
+     * @return le posizioni delle carte trovate
+     * */
+    RoaringBitmap cerca(String testo, int distanzaMassima){
+        RoaringBitmap risultato = new RoaringBitmap();
+        if (radice == null)
+            return risultato;
+
+        Levenshtein levenshtein = new Levenshtein();
+        Deque<Nodo> daVisitare = new ArrayDeque<>();
+        daVisitare.push(radice);
+
+        while (!daVisitare.isEmpty()){
+            Nodo nodo = daVisitare.pop();
+            int distanza = levenshtein.distanza(testo, nodo.nome);
+
+            if (distanza <= distanzaMassima)
+                risultato.or(nodo.slot);
+
+            for (Map.Entry<Integer, Nodo> figlio : nodo.figli.entrySet()){
+                if (Math.abs(figlio.getKey() - distanza) <= distanzaMassima)
+                    daVisitare.push(figlio.getValue());
+            }
+        }
+
+        return risultato;
+    }
+
+    private static class Nodo {
+        private final String nome;
+        private final RoaringBitmap slot = new RoaringBitmap();
+        private final Map<Integer, Nodo> figli = new HashMap<>(4);
+
+        Nodo(String nome){
+            this.nome = nome;
+        }
+    }
+
+    /**
+     * Calcolo della distanza di Levenshtein con due sole righe della matrice,
+     * riutilizzate per tutti i confronti di una stessa operazione
+     */
+    private static class Levenshtein {
+        private int[] precedente = new int[32], corrente = new int[32];
+
+        int distanza(String a, String b){
+            if (precedente.length <= b.length()){
+                precedente = new int[b.length() + 1];
+                corrente = new int[b.length() + 1];
+            }
+
+            for (int j = 0; j <= b.length(); j++)
+                precedente[j] = j;
+
+            for (int i = 1; i <= a.length(); i++){
+                corrente[0] = i;
+                char carattere = a.charAt(i - 1);
+
+                for (int j = 1; j <= b.length(); j++){
+                    int sostituzione = precedente[j - 1] + (carattere == b.charAt(j - 1) ? 0 : 1);
+                    corrente[j] = Math.min(sostituzione, Math.min(precedente[j], corrente[j - 1]) + 1);
+                }
+
+                int[] scambio = precedente;
+                precedente = corrente;
+                corrente = scambio;
+            }
+
+            return precedente[b.length()];
+        }
+    }
+}
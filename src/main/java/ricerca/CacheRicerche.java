@@ -0,0 +1,142 @@
+package ricerca;
+
+import acquisto.Carta;
+import utils.CacheLRU;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * La classe mantiene in memoria i risultati delle ricerche piu' frequenti,
+ * indicizzati per testo normalizzato, filtri e pagina richiesta.
+ * Quando una carta viene inserita, modificata o cancellata vengono eliminati
+ * solo i risultati delle ricerche il cui testo corrisponde alla carta
+ */
+
+public class CacheRicerche {
+    private static final int CAPACITA = 1000;
+    private static final long VITA_MILLIS = 5 * 60 * 1000;
+    private static final CacheRicerche ISTANZA = new CacheRicerche();
+
+    private final CacheLRU<Chiave, RisultatoRicerca> cache = new CacheLRU<>(CAPACITA, VITA_MILLIS);
+    private final AtomicLong versione = new AtomicLong();
+
+    private CacheRicerche(){}
+
+    public static CacheRicerche getInstance(){
+        return ISTANZA;
+    }
+
+    /**
+     * Il metodo permette di ottenere il risultato di una ricerca dalla cache, oppure
+     * di calcolarlo e memorizzarlo se non e' presente
+     * @param testo testo ricercato
+     * @param categorie categorie selezionate
+     * @param rarita rarita' selezionate
+     * @param approssimata true se e' stata richiesta la ricerca approssimata
+     * @param cursore id dell' ultima carta della pagina precedente
+     * @param dimensione numero massimo di carte della pagina
+     * @param ricerca la ricerca da eseguire se il risultato non e' in cache
+     * @return il risultato della ricerca
+     * */
+    public RisultatoRicerca cerca(String testo, Collection<String> categorie, Collection<String> rarita, boolean approssimata,
+                                  int cursore, int dimensione, Supplier<RisultatoRicerca> ricerca){
+        Chiave chiave = new Chiave(testo, categorie, rarita, approssimata, cursore, dimensione);
+        RisultatoRicerca risultato = cache.get(chiave);
+
+        if (risultato == null){
+            long versioneLettura = versione.get();
+            risultato = ricerca.get();
+
+            //se nel frattempo una carta e' stata modificata il risultato potrebbe essere gia' superato;
+            //un' invalidazione arrivata tra il controllo e l' inserimento viene vista dal secondo controllo
+            if (versione.get() == versioneLettura) {
+                cache.put(chiave, risultato);
+                if (versione.get() != versioneLettura)
+                    cache.rimuovi(chiave);
+            }
+        }
+
+        return risultato;
+    }
+
+    /**
+     * Il metodo permette di eliminare i risultati che potrebbero cambiare per la modifica di una carta:
+     * quelli delle ricerche il cui testo corrisponde alla versione precedente o a quella nuova della carta,
+     * e quelli ottenuti con la ricerca approssimata, che possono contenere anche nomi diversi dal testo
+     * @param precedente la carta prima della modifica, null se la carta e' stata inserita
+     * @param nuova la carta dopo la modifica, null se la carta e' stata cancellata
+     * */
+    public void invalida(Carta precedente, Carta nuova){
+        String nomePrecedente = precedente == null ? null : CatalogoCarte.normalizza(precedente.getNome());
+        String nomeNuovo = nuova == null ? null : CatalogoCarte.normalizza(nuova.getNome());
+
+        versione.incrementAndGet();
+        cache.rimuoviSe((chiave, risultato) -> chiave.approssimata || risultato.isApprossimata() ||
+                chiave.corrisponde(nomePrecedente) || chiave.corrisponde(nomeNuovo));
+    }
+
+    /**
+     * Il metodo permette di eliminare tutti i risultati memorizzati
+     * */
+    public void svuota(){
+        versione.incrementAndGet();
+        cache.svuota();
+    }
+
+    private static class Chiave {
+        private final String testo;
+        private final String[] parole;
+        private final SortedSet<String> categorie, rarita;
+        private final boolean approssimata;
+        private final int cursore, dimensione;
+
+        Chiave(String testo, Collection<String> categorie, Collection<String> rarita, boolean approssimata, int cursore, int dimensione){
+            this.testo = CatalogoCarte.normalizza(testo);
+            this.parole = this.testo.split(" ");
+            this.categorie = new TreeSet<>(categorie == null ? Collections.emptySet() : categorie);
+            this.rarita = new TreeSet<>(rarita == null ? Collections.emptySet() : rarita);
+            this.approssimata = approssimata;
+            this.cursore = cursore;
+            this.dimensione = dimensione;
+        }
+
+        /*
+        Una carta corrisponde alla ricerca se il suo nome contiene ogni parola del testo: la condizione
+        comprende sia la ricerca per sottostringa del catalogo in memoria sia la ricerca FULLTEXT per prefissi
+        */
+        boolean corrisponde(String nome){
+            if (nome == null)
+                return false;
+
+            for (String parola : parole){
+                if (!nome.contains(parola))
+                    return false;
+            }
+
+            return true;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if (this == o)
+                return true;
+            if (!(o instanceof Chiave))
+                return false;
+
+            Chiave altra = (Chiave) o;
+            return approssimata == altra.approssimata && cursore == altra.cursore && dimensione == altra.dimensione &&
+                    testo.equals(altra.testo) && categorie.equals(altra.categorie) && rarita.equals(altra.rarita);
+        }
+
+        @Override
+        public int hashCode(){
+            return Objects.hash(testo, categorie, rarita, approssimata, cursore, dimensione);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package ricerca;
+
+import acquisto.Carta;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import storage.CartaDAO;
+import storage.OffertaDAO;
+import storage.Pagina;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * La classe mantiene in memoria il catalogo delle carte e l' indice
+ * di trigrammi sui loro nomi, cosi' che la ricerca per sottostringa non
+ * debba leggere l' intera tabella Carta ad ogni richiesta. Sugli stessi nomi
+ * viene mantenuto un trie per l' autocompletamento, ordinato per popolarita'
+ * (numero di offerte presenti per la carta al caricamento del catalogo).
+ * Per la ricerca a faccette il catalogo mantiene una bitmap compressa delle
+ * carte per ogni categoria e per ogni rarita'. Per la ricerca tollerante agli
+ * errori di battitura i nomi sono inseriti anche in un BK-tree.
+ * Le posizioni delle carte seguono l' ordine degli id, cosi' che i risultati
+ * possano essere restituiti una pagina alla volta a partire da un id.
+ * Il catalogo viene caricato al primo utilizzo e aggiornato dalla classe
+ * CartaDAO ad ogni inserimento, modifica o cancellazione, anche quando la
+ * modifica e' avvenuta su un altro nodo (vedi storage.RegistroModifiche)
+ */
+
+public class CatalogoCarte {
+    private static final CatalogoCarte ISTANZA = new CatalogoCarte();
+    public static final int MAX_SUGGERIMENTI = 10;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Carta> carte = new ArrayList<>();
+    private final List<String> nomi = new ArrayList<>();
+    private final List<Integer> idPerSlot = new ArrayList<>();
+    private final Map<Integer, Integer> slotPerIdCarta = new HashMap<>();
+    private Map<Integer, Integer> popolaritaPerIdCarta = new HashMap<>();
+    private IndiceTrigrammi trigrammi = new IndiceTrigrammi();
+    private AlberoBK alberoBK = new AlberoBK();
+    private TrieNomi trie = new TrieNomi(MAX_SUGGERIMENTI);
+    private IndiceFaccette categorie = new IndiceFaccette(), rarita = new IndiceFaccette();
+    private RoaringBitmap slotOccupati = new RoaringBitmap();
+    private volatile boolean caricato;
+
+    private CatalogoCarte(){}
+
+    public static CatalogoCarte getInstance(){
+        return ISTANZA;
+    }
+
+    /**
+     * Il metodo permette di ottenere le carte il cui nome contiene il testo ricercato
+     * e che appartengono ad una delle categorie e ad una delle rarita' selezionate,
+     * insieme al numero di carte per ogni valore delle due faccette. Il nome viene
+     * confrontato ignorando maiuscole, spazi iniziali e finali e spazi ripetuti
+     * @param testo testo ricercato
+     * @param categorieSelezionate categorie ammesse, tutte se null o vuota
+     * @param raritaSelezionate rarita' ammesse, tutte se null o vuota
+     * @param dopoIdCarta id dell' ultima carta della pagina precedente, 0 per la prima pagina
+     * @param dimensione numero massimo di carte della pagina
+     * @return il risultato della ricerca con una pagina di carte ordinate per id
+     * */
+    public RisultatoRicerca cerca(String testo, Collection<String> categorieSelezionate, Collection<String> raritaSelezionate,
+                                  int dopoIdCarta, int dimensione){
+        caricaSeNecessario();
+
+        lock.readLock().lock();
+        try {
+            return filtra(cercaPerNome(normalizza(testo)), categorieSelezionate, raritaSelezionate, dopoIdCarta, dimensione, false);
+        }
+
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Il metodo permette di ottenere le carte il cui nome differisce dal testo ricercato
+     * per pochi caratteri inseriti, cancellati o sostituiti, cosi' da trovare le carte
+     * anche quando il nome viene scritto in modo errato. La distanza ammessa cresce
+     * con la lunghezza del testo, fino ad un massimo di tre caratteri
+     * @param testo testo ricercato
+     * @param categorieSelezionate categorie ammesse, tutte se null o vuota
+     * @param raritaSelezionate rarita' ammesse, tutte se null o vuota
+     * @param dopoIdCarta id dell' ultima carta della pagina precedente, 0 per la prima pagina
+     * @param dimensione numero massimo di carte della pagina
+     * @return il risultato della ricerca con una pagina di carte ordinate per id
+     * */
+    public RisultatoRicerca cercaApprossimata(String testo, Collection<String> categorieSelezionate, Collection<String> raritaSelezionate,
+                                              int dopoIdCarta, int dimensione){
+        caricaSeNecessario();
+
+        String testoNormalizzato = normalizza(testo);
+        int distanzaMassima = Math.max(1, Math.min(3, testoNormalizzato.length() / 4));
+
+        lock.readLock().lock();
+        try {
+            return filtra(alberoBK.cerca(testoNormalizzato, distanzaMassima), categorieSelezionate, raritaSelezionate,
+                    dopoIdCarta, dimensione, true);
+        }
+
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Il metodo permette di ottenere i nomi di carta piu' popolari che iniziano
+     * con il prefisso specificato
+     * @param prefisso prefisso digitato dall' utente
+     * @param numero numero massimo di nomi, al piu' MAX_SUGGERIMENTI
+     * @return una lista di nomi distinti ordinati per popolarita' decrescente
+     * */
+    public List<String> suggerimenti(String prefisso, int numero){
+        caricaSeNecessario();
+
+        lock.readLock().lock();
+        try {
+            return trie.suggerimenti(normalizza(prefisso), Math.min(numero, MAX_SUGGERIMENTI));
+        }
+
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Il metodo permette di inserire una nuova carta nel catalogo o di
+     * sostituire quella con lo stesso id
+     * @param carta la carta inserita o modificata nel database
+     * */
+    public void aggiorna(Carta carta){
+        lock.writeLock().lock();
+        try {
+            if (caricato)
+                indicizza(carta);
+        }
+
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Il metodo permette di scartare il catalogo, che verra' ricaricato dal database alla
+     * prossima ricerca, ad esempio dopo un' importazione che modifica molte carte insieme
+     * */
+    public void ricarica(){
+        lock.writeLock().lock();
+        try {
+            caricato = false;
+        }
+
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Il metodo permette di rimuovere una carta dal catalogo
+     * @param idCarta id della carta cancellata dal database
+     * */
+    public void rimuovi(int idCarta){
+        lock.writeLock().lock();
+        try {
+            Integer slot = caricato ? slotPerIdCarta.remove(idCarta) : null;
+
+            if (slot != null){
+                Carta carta = carte.get(slot);
+                trigrammi.rimuovi(slot, nomi.get(slot));
+                alberoBK.rimuovi(slot, nomi.get(slot));
+                trie.rimuovi(nomi.get(slot), popolarita(idCarta));
+                categorie.rimuovi(slot, carta.getCategoria());
+                rarita.rimuovi(slot, carta.getRarita());
+                slotOccupati.remove(slot);
+                carte.set(slot, null);
+                nomi.set(slot, "");
+            }
+        }
+
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Il metodo permette di ottenere una carta del catalogo
+     * @param idCarta id della carta
+     * @return la carta, null se non e' nel catalogo o se il catalogo non e' ancora stato caricato
+     * */
+    public Carta getCarta(int idCarta){
+        lock.readLock().lock();
+        try {
+            Integer slot = caricato ? slotPerIdCarta.get(idCarta) : null;
+            return slot == null ? null : carte.get(slot);
+        }
+
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static String normalizza(String testo){
+        return testo == null ? "" : testo.toLowerCase(Locale.ROOT).trim().replaceAll("\\s+", " ");
+    }
+
+    private RisultatoRicerca filtra(RoaringBitmap perNome, Collection<String> categorieSelezionate, Collection<String> raritaSelezionate,
+                                    int dopoIdCarta, int dimensione, boolean approssimata){
+        RoaringBitmap filtroCategoria = categorie.filtro(categorieSelezionate);
+        RoaringBitmap filtroRarita = rarita.filtro(raritaSelezionate);
+
+        RoaringBitmap perNomeERarita = filtroRarita == null ? perNome : RoaringBitmap.and(perNome, filtroRarita);
+        RoaringBitmap perNomeECategoria = filtroCategoria == null ? perNome : RoaringBitmap.and(perNome, filtroCategoria);
+        RoaringBitmap risultato = filtroRarita == null ? perNomeECategoria : RoaringBitmap.and(perNomeECategoria, filtroRarita);
+
+        dimensione = Pagina.limita(dimensione);
+        int primoSlot = Collections.binarySearch(idPerSlot, dopoIdCarta + 1);
+        PeekableIntIterator iteratore = risultato.getIntIterator();
+        iteratore.advanceIfNeeded(primoSlot < 0 ? -primoSlot - 1 : primoSlot);
+
+        List<Carta> risultati = new ArrayList<>(dimensione);
+        while (iteratore.hasNext() && risultati.size() < dimensione)
+            risultati.add(carte.get(iteratore.next()));
+
+        Integer cursoreSuccessivo = iteratore.hasNext() ? risultati.get(risultati.size() - 1).getIdCarta() : null;
+
+        return new RisultatoRicerca(new Pagina<>(risultati, cursoreSuccessivo), risultato.getCardinality(),
+                categorie.conteggi(perNomeERarita), rarita.conteggi(perNomeECategoria), approssimata);
+    }
+
+    private RoaringBitmap cercaPerNome(String testo){
+        if (testo.isEmpty())
+            return slotOccupati;
+
+        RoaringBitmap risultato = new RoaringBitmap();
+
+        if (testo.length() < 3){
+            IntIterator iteratore = slotOccupati.getIntIterator();
+            while (iteratore.hasNext()){
+                int slot = iteratore.next();
+
+                if (nomi.get(slot).contains(testo))
+                    risultato.add(slot);
+            }
+        }
+
+        else {
+            for (int slot : trigrammi.candidati(testo)){
+                if (nomi.get(slot).contains(testo))
+                    risultato.add(slot);
+            }
+        }
+
+        return risultato;
+    }
+
+    private void indicizza(Carta carta){
+        String nome = normalizza(carta.getNome());
+        Integer slot = slotPerIdCarta.get(carta.getIdCarta());
+
+        if (slot == null){
+            slot = carte.size();
+            carte.add(carta);
+            nomi.add(nome);
+            slotPerIdCarta.put(carta.getIdCarta(), slot);
+            slotOccupati.add(slot);
+
+            //una carta con id inferiore all' ultimo romperebbe l' ordine delle posizioni:
+            //il catalogo verra' ricaricato dal database alla prossima ricerca
+            if (!idPerSlot.isEmpty() && carta.getIdCarta() < idPerSlot.get(idPerSlot.size() - 1))
+                caricato = false;
+
+            idPerSlot.add(carta.getIdCarta());
+        }
+
+        else {
+            Carta precedente = carte.get(slot);
+            trigrammi.rimuovi(slot, nomi.get(slot));
+            alberoBK.rimuovi(slot, nomi.get(slot));
+            trie.rimuovi(nomi.get(slot), popolarita(carta.getIdCarta()));
+            categorie.rimuovi(slot, precedente.getCategoria());
+            rarita.rimuovi(slot, precedente.getRarita());
+            carte.set(slot, carta);
+            nomi.set(slot, nome);
+        }
+
+        trigrammi.aggiungi(slot, nome);
+        alberoBK.aggiungi(slot, nome);
+        trie.aggiungi(nome, carta.getNome().trim(), popolarita(carta.getIdCarta()));
+        categorie.aggiungi(slot, carta.getCategoria());
+        rarita.aggiungi(slot, carta.getRarita());
+    }
+
+    private int popolarita(int idCarta){
+        return popolaritaPerIdCarta.getOrDefault(idCarta, 0);
+    }
+
+    private void caricaSeNecessario(){
+        if (caricato)
+            return;
+
+        lock.writeLock().lock();
+        try {
+            if (caricato)
+                return;
+
+            carte.clear();
+            nomi.clear();
+            idPerSlot.clear();
+            slotPerIdCarta.clear();
+            trigrammi = new IndiceTrigrammi();
+            alberoBK = new AlberoBK();
+            trie = new TrieNomi(MAX_SUGGERIMENTI);
+            categorie = new IndiceFaccette();
+            rarita = new IndiceFaccette();
+            slotOccupati = new RoaringBitmap();
+            popolaritaPerIdCarta = new OffertaDAO().countOfferteByIdCarta();
+
+            for (Carta carta : new CartaDAO().doRetrieveAll())
+                indicizza(carta);
+
+            caricato = true;
+        }
+
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
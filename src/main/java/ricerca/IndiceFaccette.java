@@ -0,0 +1,85 @@
+package ricerca;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * La classe modella l' indice di una faccetta del catalogo (ad esempio la
+ * categoria o la rarita' delle carte), con una bitmap compressa delle
+ * posizioni delle carte per ogni valore della faccetta
+ */
+
+class IndiceFaccette {
+    private final Map<String, RoaringBitmap> bitmapPerValore = new TreeMap<>();
+
+    /**
+     * Il metodo permette di indicizzare il valore della faccetta di una carta
+     * @param slot posizione della carta nel catalogo
+     * @param valore valore della faccetta per la carta
+     * */
+    void aggiungi(int slot, String valore){
+        if (valore != null)
+            bitmapPerValore.computeIfAbsent(valore, k -> new RoaringBitmap()).add(slot);
+    }
+
+    /**
+     * Il metodo permette di rimuovere dall' indice il valore della faccetta di una carta
+     * @param slot posizione della carta nel catalogo
+     * @param valore valore con cui la carta era stata indicizzata
+     * */
+    void rimuovi(int slot, String valore){
+        RoaringBitmap bitmap = valore == null ? null : bitmapPerValore.get(valore);
+
+        if (bitmap != null){
+            bitmap.remove(slot);
+
+            if (bitmap.isEmpty())
+                bitmapPerValore.remove(valore);
+        }
+    }
+
+    /**
+     * Il metodo permette di ottenere le posizioni delle carte che hanno
+     * almeno uno dei valori selezionati
+     * @param valori i valori selezionati dall' utente
+     * @return l' unione delle bitmap dei valori, oppure null se non e' selezionato
+     *                      alcun valore e quindi la faccetta non filtra
+     * */
+    RoaringBitmap filtro(Collection<String> valori){
+        if (valori == null || valori.isEmpty())
+            return null;
+
+        RoaringBitmap unione = new RoaringBitmap();
+        for (String valore : valori){
+            RoaringBitmap bitmap = bitmapPerValore.get(valore);
+
+            if (bitmap != null)
+                unione.or(bitmap);
+        }
+
+        return unione;
+    }
+
+    /**
+     * Il metodo permette di contare, per ogni valore della faccetta, le carte
+     * dell' insieme specificato che hanno quel valore
+     * @param insieme le posizioni delle carte da contare
+     * @return una mappa ordinata dai valori al numero di carte, senza i valori a zero
+     * */
+    Map<String, Integer> conteggi(RoaringBitmap insieme){
+        Map<String, Integer> conteggi = new LinkedHashMap<>();
+
+        for (Map.Entry<String, RoaringBitmap> voce : bitmapPerValore.entrySet()){
+            int conteggio = RoaringBitmap.andCardinality(voce.getValue(), insieme);
+
+            if (conteggio > 0)
+                conteggi.put(voce.getKey(), conteggio);
+        }
+
+        return conteggi;
+    }
+}
@@ -0,0 +1,119 @@
+package ricerca;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * La classe modella un indice invertito di trigrammi sui nomi delle carte.
+ * Ogni trigramma del nome normalizzato punta alla lista ordinata delle
+ * posizioni (slot) delle carte che lo contengono nel catalogo
+ */
+
+class IndiceTrigrammi {
+    private final Map<Long, ListaPosizioni> posizioniPerTrigramma = new HashMap<>();
+
+    /**
+     * Il metodo permette di indicizzare il nome di una carta
+     * @param slot posizione della carta nel catalogo
+     * @param nome nome normalizzato della carta
+     * */
+    void aggiungi(int slot, String nome){
+        for (int i = 0; i + 3 <= nome.length(); i++)
+            posizioniPerTrigramma.computeIfAbsent(trigramma(nome, i), k -> new ListaPosizioni()).aggiungi(slot);
+    }
+
+    /**
+     * Il metodo permette di rimuovere dall' indice il nome di una carta
+     * @param slot posizione della carta nel catalogo
+     * @param nome nome normalizzato con cui la carta era stata indicizzata
+     * */
+    void rimuovi(int slot, String nome){
+        for (int i = 0; i + 3 <= nome.length(); i++){
+            Long chiave = trigramma(nome, i);
+            ListaPosizioni lista = posizioniPerTrigramma.get(chiave);
+
+            if (lista != null && lista.rimuovi(slot) && lista.dimensione == 0)
+                posizioniPerTrigramma.remove(chiave);
+        }
+    }
+
+    /**
+     * Il metodo permette di ottenere le posizioni delle carte che contengono
+     * tutti i trigrammi del testo ricercato. Le posizioni restituite sono
+     * candidati da verificare, poiche' i trigrammi potrebbero non essere contigui
+     * @param testo testo normalizzato di almeno tre caratteri
+     * @return un array ordinato di posizioni candidate
+     * */
+    int[] candidati(String testo){
+        int numeroTrigrammi = testo.length() - 2;
+        ListaPosizioni[] liste = new ListaPosizioni[numeroTrigrammi];
+
+        for (int i = 0; i < numeroTrigrammi; i++){
+            liste[i] = posizioniPerTrigramma.get(trigramma(testo, i));
+
+            if (liste[i] == null)
+                return new int[0];
+        }
+
+        Arrays.sort(liste, (a, b) -> Integer.compare(a.dimensione, b.dimensione));
+
+        int[] risultato = Arrays.copyOf(liste[0].valori, liste[0].dimensione);
+        int dimensione = risultato.length;
+
+        for (int i = 1; i < liste.length && dimensione > 0; i++){
+            if (liste[i] == liste[i - 1])
+                continue;
+
+            int nuovaDimensione = 0;
+            for (int j = 0; j < dimensione; j++){
+                if (liste[i].contiene(risultato[j]))
+                    risultato[nuovaDimensione++] = risultato[j];
+            }
+            dimensione = nuovaDimensione;
+        }
+
+        return Arrays.copyOf(risultato, dimensione);
+    }
+
+    private static Long trigramma(String testo, int inizio){
+        return ((long) testo.charAt(inizio) << 32) | ((long) testo.charAt(inizio + 1) << 16) | testo.charAt(inizio + 2);
+    }
+
+    /**
+     * Lista ordinata e senza duplicati di posizioni, memorizzata
+     * in un array di interi primitivi
+     */
+    private static class ListaPosizioni {
+        private int[] valori = new int[4];
+        private int dimensione;
+
+        void aggiungi(int valore){
+            int indice = Arrays.binarySearch(valori, 0, dimensione, valore);
+            if (indice >= 0)
+                return;
+
+            indice = -indice - 1;
+            if (dimensione == valori.length)
+                valori = Arrays.copyOf(valori, dimensione * 2);
+
+            System.arraycopy(valori, indice, valori, indice + 1, dimensione - indice);
+            valori[indice] = valore;
+            dimensione++;
+        }
+
+        boolean rimuovi(int valore){
+            int indice = Arrays.binarySearch(valori, 0, dimensione, valore);
+            if (indice < 0)
+                return false;
+
+            System.arraycopy(valori, indice + 1, valori, indice, dimensione - indice - 1);
+            dimensione--;
+            return true;
+        }
+
+        boolean contiene(int valore){
+            return Arrays.binarySearch(valori, 0, dimensione, valore) >= 0;
+        }
+    }
+}
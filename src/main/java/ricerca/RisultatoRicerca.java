@@ -0,0 +1,64 @@
+package ricerca;
+
+import acquisto.Carta;
+import storage.Pagina;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * La classe modella il risultato di una ricerca nel catalogo: una pagina
+ * delle carte trovate, il loro numero totale e, per ogni faccetta, il numero
+ * di carte per ciascun valore
+ */
+
+public class RisultatoRicerca {
+    private final Pagina<Carta> pagina;
+    private final int totale;
+    private final boolean approssimata;
+    private final Map<String, Integer> faccetteCategoria, faccetteRarita;
+
+    /**
+     * Costruttore della classe RisultatoRicerca
+     * @param pagina la pagina richiesta delle carte che soddisfano il testo e tutti i filtri
+     * @param totale il numero totale di carte che soddisfano il testo e tutti i filtri,
+     *               -1 se non e' noto
+     * @param faccetteCategoria numero di carte per categoria, calcolato applicando
+     *                          il testo e il filtro sulla rarita'
+     * @param faccetteRarita numero di carte per rarita', calcolato applicando
+     *                       il testo e il filtro sulla categoria
+     * @param approssimata true se le carte sono state trovate con la ricerca approssimata
+     * */
+    public RisultatoRicerca(Pagina<Carta> pagina, int totale, Map<String, Integer> faccetteCategoria, Map<String, Integer> faccetteRarita,
+                            boolean approssimata) {
+        this.pagina = pagina;
+        this.totale = totale;
+        this.approssimata = approssimata;
+        this.faccetteCategoria = faccetteCategoria;
+        this.faccetteRarita = faccetteRarita;
+    }
+
+    public List<Carta> getCarte() {
+        return pagina.getElementi();
+    }
+
+    public Pagina<Carta> getPagina() {
+        return pagina;
+    }
+
+    public int getTotale() {
+        return totale;
+    }
+
+    public boolean isApprossimata() {
+        return approssimata;
+    }
+
+    public Map<String, Integer> getFaccetteCategoria() {
+        return faccetteCategoria;
+    }
+
+    public Map<String, Integer> getFaccetteRarita() {
+        return faccetteRarita;
+    }
+}
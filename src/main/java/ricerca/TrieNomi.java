@@ -0,0 +1,252 @@
+package ricerca;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * La classe modella un radix trie compatto sui nomi normalizzati delle carte.
+ * Ogni nodo conserva le voci piu' popolari del proprio sottoalbero, cosi' che
+ * i suggerimenti per un prefisso si ottengano visitando solo i nodi del prefisso
+ */
+
+class TrieNomi {
+    private final int maxSuggerimenti;
+    private final Nodo radice = new Nodo("");
+
+    /**
+     * Costruttore della classe TrieNomi
+     * @param maxSuggerimenti numero di voci piu' popolari conservate in ogni nodo
+     * */
+    TrieNomi(int maxSuggerimenti){
+        this.maxSuggerimenti = maxSuggerimenti;
+    }
+
+    /**
+     * Il metodo permette di aggiungere al trie un nome di carta. Piu' carte con lo
+     * stesso nome condividono la stessa voce, la cui popolarita' e' la somma delle loro
+     * @param chiave nome normalizzato della carta
+     * @param nome nome della carta da mostrare nei suggerimenti
+     * @param popolarita popolarita' della carta
+     * */
+    void aggiungi(String chiave, String nome, int popolarita){
+        List<Nodo> percorso = new ArrayList<>();
+        Nodo nodo = radice;
+        int posizione = 0;
+        percorso.add(nodo);
+
+        while (posizione < chiave.length()){
+            int indice = nodo.indiceFiglio(chiave.charAt(posizione));
+
+            if (indice < 0){
+                Nodo foglia = new Nodo(chiave.substring(posizione));
+                nodo.aggiungiFiglio(foglia);
+                nodo = foglia;
+                posizione = chiave.length();
+            }
+
+            else {
+                Nodo figlio = nodo.figli[indice];
+                int comuni = prefissoComune(figlio.etichetta, chiave, posizione);
+
+                if (comuni < figlio.etichetta.length()){
+                    Nodo intermedio = new Nodo(figlio.etichetta.substring(0, comuni));
+                    figlio.etichetta = figlio.etichetta.substring(comuni);
+                    intermedio.aggiungiFiglio(figlio);
+                    intermedio.aggiornaMigliori(maxSuggerimenti);
+                    nodo.figli[indice] = intermedio;
+                    figlio = intermedio;
+                }
+
+                nodo = figlio;
+                posizione += comuni;
+            }
+
+            percorso.add(nodo);
+        }
+
+        if (nodo.voce == null)
+            nodo.voce = new Voce(nome);
+
+        nodo.voce.occorrenze++;
+        nodo.voce.popolarita += popolarita;
+        aggiornaPercorso(percorso);
+    }
+
+    /**
+     * Il metodo permette di rimuovere dal trie un' occorrenza di un nome di carta
+     * @param chiave nome normalizzato della carta
+     * @param popolarita popolarita' con cui la carta era stata aggiunta
+     * */
+    void rimuovi(String chiave, int popolarita){
+        List<Nodo> percorso = trovaPercorso(chiave);
+        if (percorso == null)
+            return;
+
+        Nodo nodo = percorso.get(percorso.size() - 1);
+        if (nodo.voce == null)
+            return;
+
+        nodo.voce.popolarita -= popolarita;
+        if (--nodo.voce.occorrenze == 0)
+            nodo.voce = null;
+
+        for (int i = percorso.size() - 1; i > 0; i--){
+            Nodo corrente = percorso.get(i), padre = percorso.get(i - 1);
+
+            if (corrente.voce == null && corrente.figli.length == 0)
+                padre.rimuoviFiglio(corrente);
+
+            else if (corrente.voce == null && corrente.figli.length == 1){
+                Nodo unico = corrente.figli[0];
+                unico.etichetta = corrente.etichetta + unico.etichetta;
+                padre.figli[padre.indiceFiglio(unico.etichetta.charAt(0))] = unico;
+            }
+        }
+
+        aggiornaPercorso(percorso);
+    }
+
+    /**
+     * Il metodo permette di ottenere i nomi piu' popolari che iniziano con il prefisso
+     * @param prefisso prefisso normalizzato
+     * @param numero numero massimo di nomi da restituire
+     * @return una lista di nomi ordinati per popolarita' decrescente
+     * */
+    List<String> suggerimenti(String prefisso, int numero){
+        Nodo nodo = radice;
+        int posizione = 0;
+
+        while (posizione < prefisso.length()){
+            int indice = nodo.indiceFiglio(prefisso.charAt(posizione));
+            if (indice < 0)
+                return Collections.emptyList();
+
+            nodo = nodo.figli[indice];
+            int comuni = prefissoComune(nodo.etichetta, prefisso, posizione);
+
+            if (comuni < nodo.etichetta.length() && posizione + comuni < prefisso.length())
+                return Collections.emptyList();
+
+            posizione += comuni;
+        }
+
+        List<String> nomi = new ArrayList<>(Math.min(numero, nodo.migliori.length));
+        for (int i = 0; i < nodo.migliori.length && i < numero; i++)
+            nomi.add(nodo.migliori[i].nome);
+
+        return nomi;
+    }
+
+    private List<Nodo> trovaPercorso(String chiave){
+        List<Nodo> percorso = new ArrayList<>();
+        Nodo nodo = radice;
+        int posizione = 0;
+        percorso.add(nodo);
+
+        while (posizione < chiave.length()){
+            int indice = nodo.indiceFiglio(chiave.charAt(posizione));
+            if (indice < 0)
+                return null;
+
+            nodo = nodo.figli[indice];
+            if (!chiave.startsWith(nodo.etichetta, posizione))
+                return null;
+
+            posizione += nodo.etichetta.length();
+            percorso.add(nodo);
+        }
+
+        return percorso;
+    }
+
+    private void aggiornaPercorso(List<Nodo> percorso){
+        for (int i = percorso.size() - 1; i >= 0; i--)
+            percorso.get(i).aggiornaMigliori(maxSuggerimenti);
+    }
+
+    private static int prefissoComune(String etichetta, String testo, int inizio){
+        int massimo = Math.min(etichetta.length(), testo.length() - inizio), i = 0;
+
+        while (i < massimo && etichetta.charAt(i) == testo.charAt(inizio + i))
+            i++;
+
+        return i;
+    }
+
+    private static class Voce {
+        private final String nome;
+        private int popolarita, occorrenze;
+
+        Voce(String nome){
+            this.nome = nome;
+        }
+    }
+
+    private static class Nodo {
+        private static final Nodo[] NESSUN_FIGLIO = new Nodo[0];
+        private static final Voce[] NESSUNA_VOCE = new Voce[0];
+
+        private String etichetta;
+        private Nodo[] figli = NESSUN_FIGLIO;
+        private Voce voce;
+        private Voce[] migliori = NESSUNA_VOCE;
+
+        Nodo(String etichetta){
+            this.etichetta = etichetta;
+        }
+
+        int indiceFiglio(char carattere){
+            int basso = 0, alto = figli.length - 1;
+
+            while (basso <= alto){
+                int medio = (basso + alto) >>> 1;
+                char corrente = figli[medio].etichetta.charAt(0);
+
+                if (corrente < carattere)
+                    basso = medio + 1;
+                else if (corrente > carattere)
+                    alto = medio - 1;
+                else
+                    return medio;
+            }
+
+            return -(basso + 1);
+        }
+
+        void aggiungiFiglio(Nodo figlio){
+            int indice = -indiceFiglio(figlio.etichetta.charAt(0)) - 1;
+            Nodo[] nuoviFigli = new Nodo[figli.length + 1];
+
+            System.arraycopy(figli, 0, nuoviFigli, 0, indice);
+            nuoviFigli[indice] = figlio;
+            System.arraycopy(figli, indice, nuoviFigli, indice + 1, figli.length - indice);
+            figli = nuoviFigli;
+        }
+
+        void rimuoviFiglio(Nodo figlio){
+            int indice = indiceFiglio(figlio.etichetta.charAt(0));
+            Nodo[] nuoviFigli = new Nodo[figli.length - 1];
+
+            System.arraycopy(figli, 0, nuoviFigli, 0, indice);
+            System.arraycopy(figli, indice + 1, nuoviFigli, indice, figli.length - indice - 1);
+            figli = nuoviFigli;
+        }
+
+        void aggiornaMigliori(int massimo){
+            List<Voce> candidate = new ArrayList<>();
+
+            if (voce != null)
+                candidate.add(voce);
+
+            for (Nodo figlio : figli)
+                candidate.addAll(Arrays.asList(figlio.migliori));
+
+            candidate.sort((a, b) -> a.popolarita != b.popolarita ?
+                    Integer.compare(b.popolarita, a.popolarita) : a.nome.compareTo(b.nome));
+
+            migliori = candidate.subList(0, Math.min(massimo, candidate.size())).toArray(NESSUNA_VOCE);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package ricerca.controller;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.List;
+
+import ricerca.CatalogoCarte;
+import utils.Json;
+
+/**
+ * La classe permette l' autocompletamento della barra di ricerca tramite
+ * una servlet che viene richiamata ad ogni carattere digitato
+ */
+
+@WebServlet("/autocompletamento-servlet")
+public class AutocompletamentoServlet extends HttpServlet {
+    private static final int SUGGERIMENTI_PREDEFINITI = 8;
+
+    /**
+     * Il metodo permette di gestire la richiesta del client tramite una response JSON
+     * che contiene i nomi di carta piu' popolari che iniziano con il prefisso digitato
+     * @param request oggetto che modella una richiesta HTTP
+     * @param response oggetto che modella una risposta HTTP
+     * */
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        String prefix = request.getParameter("prefisso");
+        int number = SUGGERIMENTI_PREDEFINITI;
+
+        try {
+            if (request.getParameter("n") != null)
+                number = Math.max(1, Integer.parseInt(request.getParameter("n")));
+        }
+
+        catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        List<String> suggestions = CatalogoCarte.getInstance().suggerimenti(prefix, number);
+
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < suggestions.size(); i++){
+            if (i > 0)
+                json.append(',');
+
+            json.append(Json.stringa(suggestions.get(i)));
+        }
+        json.append(']');
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "private, max-age=60");
+        response.getWriter().write(json.toString());
+    }
+}
@@ -8,12 +8,18 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import acquisto.Carta;
-import storage.CartaDAO;
+import ricerca.CacheRicerche;
+import ricerca.CatalogoCarte;
+import ricerca.RisultatoRicerca;
 import storage.FacadeDAO;
+import storage.Pagina;
 
 /**
  * La classe permette la ricerca di una carta tramite
@@ -28,6 +34,16 @@ public class RicercaServlet extends HttpServlet {
     /**
      * Il metodo permette di gestire la richiesta del client tramite una response che contiene una lista
      * di carte, il cui nome combacia con la stringa ricercata con la funzione di ricerca.
+     * Le carte vengono cercate nell' indice in memoria del catalogo, senza leggere
+     * l' intera tabella Carta ad ogni richiesta, e possono essere filtrate per
+     * categoria e rarita'. Insieme alle carte vengono restituiti i conteggi delle faccette.
+     * Se il parametro approssimata vale true, oppure se la ricerca esatta non trova
+     * alcuna carta, vengono cercate le carte con un nome simile al testo ricercato.
+     * Le carte vengono restituite una pagina alla volta: il parametro cursore indica
+     * l' id dell' ultima carta della pagina precedente.
+     * Se il parametro di contesto ricerca.indice-in-memoria vale false la ricerca
+     * viene eseguita direttamente nel database, senza faccette ne' ricerca approssimata.
+     * I risultati vengono conservati nella cache delle ricerche fino alla modifica di una carta corrispondente.
      * @param request oggetto che modella una richiesta HTTP
      * @param response oggetto che modella una risposta HTTP
      * */
@@ -35,26 +51,93 @@ public class RicercaServlet extends HttpServlet {
     public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         String researchText = request.getParameter("carta");
 
-        FacadeDAO facadeDAO = new FacadeDAO();
-        List<Carta> cardsList = (List<Carta>) facadeDAO.doRetrieveAll(Carta.class), matches = new ArrayList<>();
+        List<String> categories = parameterValues(request, "categoria");
+        List<String> rarities = parameterValues(request, "rarita");
 
-        for (Carta card: cardsList){
-            String formattedCardName = card.getNome().toLowerCase().trim();
-            String formattedResearchText = researchText.toLowerCase().trim();
+        int cursor, pageSize;
+        try {
+            cursor = intParameter(request, "cursore", 0);
+            pageSize = intParameter(request, "dimensione", Pagina.DIMENSIONE_PREDEFINITA);
+        }
+
+        catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        boolean requestedFuzzy = "true".equals(request.getParameter("approssimata"));
+        RisultatoRicerca result;
+
+        if ("false".equals(getServletContext().getInitParameter("ricerca.indice-in-memoria"))){
+            result = CacheRicerche.getInstance().cerca(researchText, Collections.emptyList(), Collections.emptyList(), false,
+                    cursor, pageSize, () -> {
+                        Pagina<Carta> page = (Pagina<Carta>) new FacadeDAO().doRetrieveByNome(Carta.class, researchText, cursor, pageSize);
+                        return new RisultatoRicerca(page, -1, Collections.emptyMap(), Collections.emptyMap(), false);
+                    });
+        }
+
+        else {
+            result = CacheRicerche.getInstance().cerca(researchText, categories, rarities, requestedFuzzy, cursor, pageSize, () -> {
+                CatalogoCarte catalog = CatalogoCarte.getInstance();
+
+                if (requestedFuzzy)
+                    return catalog.cercaApprossimata(researchText, categories, rarities, cursor, pageSize);
 
-            if(formattedCardName.contains(formattedResearchText))
-                matches.add(card);
+                RisultatoRicerca exact = catalog.cerca(researchText, categories, rarities, cursor, pageSize);
+                if (exact.getCarte().size() == 0 && cursor == 0)
+                    return catalog.cercaApprossimata(researchText, categories, rarities, cursor, pageSize);
+
+                return exact;
+            });
         }
 
-        if (matches.size() == 0){
+        boolean fuzzy = result.isApprossimata();
+
+        if (result.getCarte().size() == 0){
             RequestDispatcher dispatcher = request.getRequestDispatcher("/WEB-INF/results/ricerca-senza-risultati.jsp");
             dispatcher.forward(request, response);
+            return;
         }
 
-        request.setAttribute("card-matches", matches);
+        request.setAttribute("card-matches", result.getCarte());
+        request.setAttribute("category-facets", result.getFaccetteCategoria());
+        request.setAttribute("rarity-facets", result.getFaccetteRarita());
+        request.setAttribute("selected-categories", categories);
+        request.setAttribute("selected-rarities", rarities);
+        request.setAttribute("fuzzy-search", fuzzy);
+        request.setAttribute("total-matches", result.getTotale());
+
+        if (result.getPagina().getCursoreSuccessivo() != null)
+            request.setAttribute("next-page", nextPageQuery(researchText, categories, rarities, fuzzy,
+                    result.getPagina().getCursoreSuccessivo(), pageSize));
 
         RequestDispatcher dispatcher = request.getRequestDispatcher("/WEB-INF/results/ricerca-risultati.jsp");
         dispatcher.forward(request, response);
     }
 
+    private static int intParameter(HttpServletRequest request, String name, int defaultValue){
+        String value = request.getParameter(name);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static String nextPageQuery(String researchText, List<String> categories, List<String> rarities,
+                                        boolean fuzzy, int cursor, int pageSize) throws UnsupportedEncodingException {
+        StringBuilder query = new StringBuilder("ricerca-servlet?carta=")
+                .append(URLEncoder.encode(researchText == null ? "" : researchText, "UTF-8"));
+
+        for (String category : categories)
+            query.append("&categoria=").append(URLEncoder.encode(category, "UTF-8"));
+        for (String rarity : rarities)
+            query.append("&rarita=").append(URLEncoder.encode(rarity, "UTF-8"));
+        if (fuzzy)
+            query.append("&approssimata=true");
+
+        return query.append("&cursore=").append(cursor).append("&dimensione=").append(pageSize).toString();
+    }
+
+    private static List<String> parameterValues(HttpServletRequest request, String name){
+        String[] values = request.getParameterValues(name);
+        return values == null ? Collections.emptyList() : Arrays.asList(values);
+    }
+
 }
@@ -0,0 +1,166 @@
+package storage;
+
+import monitoraggio.FormatoPrometheus;
+import monitoraggio.RegistroMetriche;
+import utils.CacheLRU;
+import utils.Configurazione;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * La classe modella la cache di secondo livello dei DAO per le entita' che cambiano
+ * di rado, indicizzate per id. Le voci sono divise in segmenti CacheLRU, ognuno con
+ * il proprio lock, cosi' che letture concorrenti di id diversi non si blocchino a vicenda;
+ * ogni segmento elimina la voce usata meno di recente quando e' pieno e ogni voce scade
+ * dopo il tempo di vita. Capacita' e tempo di vita si configurano in database.properties
+ * con le chiavi cache.&lt;nome&gt;.capacita e cache.&lt;nome&gt;.vitaMillis.
+ * I DAO eliminano la voce nei metodi doUpdate e doDelete; i valori vengono copiati
+ * in ingresso e in uscita, cosi' che chi li modifica non alteri la cache.
+ * La lettura passata a ottieni deve usare il database primario: un valore letto da una
+ * replica in ritardo resterebbe nella cache per tutto il tempo di vita
+ * @param <V> il tipo delle entita'
+ */
+
+final class CacheEntita<V> {
+    private static final String CONFIGURAZIONE = "database.properties";
+    private static final int SEGMENTI = 16;
+    private static final List<CacheEntita<?>> ISTANZE = new CopyOnWriteArrayList<>();
+
+    static {
+        //una sola sorgente per tutte le cache, cosi' che ogni metrica abbia una sola intestazione
+        RegistroMetriche.getInstance().registra(CacheEntita::scriviTutte);
+    }
+
+    private final String nome;
+    private final UnaryOperator<V> copia;
+    private final List<CacheLRU<Integer, V>> segmenti;
+    private final AtomicLong versione = new AtomicLong();
+    private final LongAdder successi = new LongAdder();
+    private final LongAdder mancati = new LongAdder();
+    private final LongAdder invalidazioni = new LongAdder();
+
+    /**
+     * Costruttore della classe CacheEntita
+     * @param nome nome della cache, usato nelle chiavi di configurazione e nelle metriche
+     * @param copia restituisce una copia dell' entita'
+     * */
+    @SuppressWarnings("unchecked")
+    CacheEntita(String nome, UnaryOperator<V> copia) {
+        Configurazione configurazione = new Configurazione(CONFIGURAZIONE);
+        int capacita = Math.max(SEGMENTI, configurazione.intero("cache." + nome + ".capacita", 10000));
+        long vitaMillis = configurazione.intero("cache." + nome + ".vitaMillis", 5 * 60 * 1000);
+
+        this.nome = nome;
+        this.copia = copia;
+        this.segmenti = new ArrayList<>(SEGMENTI);
+        for (int i = 0; i < SEGMENTI; i++)
+            segmenti.add(new CacheLRU<>((capacita + SEGMENTI - 1) / SEGMENTI, vitaMillis));
+
+        ISTANZE.add(this);
+    }
+
+    /**
+     * Il metodo permette di ottenere un' entita' dalla cache, oppure di leggerla e memorizzarla se non e' presente
+     * @param id id dell' entita'
+     * @param lettura legge l' entita' dal database primario, restituisce null se non esiste
+     * @return una copia dell' entita', null se non esiste
+     * */
+    V ottieni(int id, IntFunction<V> lettura) {
+        CacheLRU<Integer, V> segmento = segmento(id);
+        V valore = segmento.get(id);
+
+        if (valore != null) {
+            successi.increment();
+            return copia.apply(valore);
+        }
+
+        mancati.increment();
+        long versioneLettura = versione.get();
+        valore = lettura.apply(id);
+
+        //le entita' inesistenti non vengono memorizzate: potrebbero essere inserite a breve
+        if (valore == null)
+            return null;
+
+        //se nel frattempo un' entita' e' stata modificata il valore letto potrebbe essere gia' superato;
+        //un' invalidazione arrivata tra il controllo e l' inserimento viene vista dal secondo controllo
+        if (versione.get() == versioneLettura) {
+            segmento.put(id, copia.apply(valore));
+            if (versione.get() != versioneLettura)
+                segmento.rimuovi(id);
+        }
+
+        return valore;
+    }
+
+    /**
+     * Il metodo permette di eliminare l' entita' dalla cache dopo una modifica o una cancellazione
+     * @param id id dell' entita'
+     * */
+    void invalida(int id) {
+        versione.incrementAndGet();
+        segmento(id).rimuovi(id);
+        invalidazioni.increment();
+    }
+
+    /**
+     * Il metodo permette di eliminare tutte le entita' memorizzate
+     * */
+    void svuota() {
+        versione.incrementAndGet();
+        for (CacheLRU<Integer, V> segmento : segmenti)
+            segmento.svuota();
+    }
+
+    /**
+     * Il metodo permette di svuotare le cache di tutte le entita', ad esempio dopo una modifica
+     * del database fatta senza passare dai DAO
+     * */
+    static void svuotaTutte() {
+        for (CacheEntita<?> cache : ISTANZE)
+            cache.svuota();
+    }
+
+    private CacheLRU<Integer, V> segmento(int id) {
+        //gli id sono consecutivi: il modulo li distribuisce uniformemente tra i segmenti
+        return segmenti.get(Math.floorMod(id, SEGMENTI));
+    }
+
+    private int dimensione() {
+        int dimensione = 0;
+        for (CacheLRU<Integer, V> segmento : segmenti)
+            dimensione += segmento.dimensione();
+
+        return dimensione;
+    }
+
+    private static void scriviTutte(FormatoPrometheus formato) {
+        formato.intestazione("cardexchange_cache_hits_total", "counter", "Entita' trovate nella cache dei DAO");
+        for (CacheEntita<?> cache : ISTANZE)
+            formato.campione("cardexchange_cache_hits_total", cache.etichette(), cache.successi.sum());
+
+        formato.intestazione("cardexchange_cache_misses_total", "counter", "Entita' lette dal database perche' assenti dalla cache dei DAO");
+        for (CacheEntita<?> cache : ISTANZE)
+            formato.campione("cardexchange_cache_misses_total", cache.etichette(), cache.mancati.sum());
+
+        formato.intestazione("cardexchange_cache_invalidations_total", "counter", "Entita' eliminate dalla cache dei DAO per una modifica");
+        for (CacheEntita<?> cache : ISTANZE)
+            formato.campione("cardexchange_cache_invalidations_total", cache.etichette(), cache.invalidazioni.sum());
+
+        formato.intestazione("cardexchange_cache_size", "gauge", "Entita' nella cache dei DAO");
+        for (CacheEntita<?> cache : ISTANZE)
+            formato.campione("cardexchange_cache_size", cache.etichette(), cache.dimensione());
+    }
+
+    private Map<String, String> etichette() {
+        return Collections.singletonMap("cache", nome);
+    }
+}
@@ -8,24 +8,32 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 
 public class CarrelloDAO {
-    private static final String INSERT_CARRELLO_QUERY = "INSERT INTO Carrello (idCarrello, idUtente, totale) VALUES (?, ?, ?)";
+    private static final String INSERT_CARRELLO_QUERY = "INSERT INTO Carrello (idUtente, totale) VALUES (?, ?)";
     private static final String SELECT_CARRELLO_BY_ID_QUERY = "SELECT * FROM Carrello WHERE idCarrello = ?";
     private static final String SELECT_CARRELLO_BY_ID_UTENTE_QUERY = "SELECT * FROM Carrello WHERE idUtente = ?";
+    private static final String SELECT_CARRELLO_BY_ID_UTENTE_FOR_UPDATE_QUERY = "SELECT * FROM Carrello WHERE idUtente = ? FOR UPDATE";
     private static final String SELECT_ALL_CARRELLI_QUERY = "SELECT * FROM Carrello";
-    private static final String UPDATE_CARRELLO_QUERY ="UPDATE Carrello SET id Carrello=?, idUtente=?, totale=? WHERE idCarrello=? ";
+    private static final String UPDATE_CARRELLO_QUERY ="UPDATE Carrello SET idUtente=?, totale=? WHERE idCarrello=?";
     private static final String DELETE_CARRELLO_QUERY = "DELETE FROM Carrello WHERE idCarrello = ?";
+    private static final String DELETE_OFFERTE_CARRELLO_QUERY = "DELETE FROM CarrelloContieneOfferta WHERE idCarrello = ?";
+    private static final String AZZERA_TOTALE_CARRELLO_QUERY = "UPDATE Carrello SET totale = 0 WHERE idCarrello = ?";
 
-    // Inserisce un nuovo carrello nel database
+    // Inserisce un nuovo carrello nel database e gli assegna l'id generato
     public void doSave(Carrello carrello) {
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement statement = con.prepareStatement(INSERT_CARRELLO_QUERY);
-            statement.setInt(1, carrello.getIdCarrello());
-            statement.setInt(2, carrello.getIdUtente());
-            statement.setDouble(3, carrello.getTotale());
+        try (Connection con = ConPool.getConnection();
+             PreparedStatement statement = con.prepareStatement(INSERT_CARRELLO_QUERY, Statement.RETURN_GENERATED_KEYS)) {
+            statement.setInt(1, carrello.getIdUtente());
+            statement.setDouble(2, carrello.getTotale());
+            statement.executeUpdate();
+            try (ResultSet chiavi = statement.getGeneratedKeys()) {
+                if (chiavi.next())
+                    carrello.setIdCarrello(chiavi.getInt(1));
+            }
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -33,13 +41,11 @@ public class CarrelloDAO {
 
     // Restituisce il carrello con l'ID specificato, null se non esiste
     public Carrello doRetrieveById(int idCarrello) {
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement statement = con.prepareStatement(SELECT_CARRELLO_BY_ID_QUERY);
+        try (Connection con = ConPool.getConnectionLettura();
+             PreparedStatement statement = con.prepareStatement(SELECT_CARRELLO_BY_ID_QUERY)) {
             statement.setInt(1, idCarrello);
-            ResultSet resultSet = statement.executeQuery();
-            if (resultSet.next()) {
-                int idUtente = resultSet.getInt("idUtente");
-                return new Carrello(idCarrello, idUtente);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return Mappatori.CARRELLO.primo(SELECT_CARRELLO_BY_ID_QUERY, resultSet);
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -51,24 +57,16 @@ public class CarrelloDAO {
     Restituisce il carrello associato all'ID dell'utente specificato, null se non esiste
     Questo metodo recupera il carrello dell'utente dal database utilizzando l'id dell'utente come parametro
     e utilizzando la stringa di query SELECT_CARRELLO_BY_ID_UTENTE_QUERY
-    Una volta recuperato il carrello, viene chiamato il metodo getOfferteByIdUtente del DAO OffertaDAO
-    per recuperare le offerte presenti nel carrello dell'utente
-    infine viene restituito un oggetto Carrello con l'id del carrello e l'id dell'utente specificati
+    Le offerte presenti nel carrello non vengono lette qui: le recupera Carrello.getOfferte
+    tramite il metodo getOfferteByIdUtente del DAO OffertaDAO, solo quando servono
     Se il carrello non viene trovato, viene restituito null.
      */
     public Carrello getCarrelloByIdUtente(int idUtente) {
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement statement = con.prepareStatement(SELECT_CARRELLO_BY_ID_UTENTE_QUERY);
+        try (Connection con = ConPool.getConnectionLettura();
+             PreparedStatement statement = con.prepareStatement(SELECT_CARRELLO_BY_ID_UTENTE_QUERY)) {
             statement.setInt(1, idUtente);
-            ResultSet resultSet = statement.executeQuery();
-            OffertaDAO offertaDAO = new OffertaDAO();
-            if (resultSet.next()) {
-                int idCarrello = resultSet.getInt("idCarrello");
-                // Recupera le offerte presenti nel carrello dal database
-                // utilizzando il metodo getOfferteByIdUtente del DAO OffertaDAO
-                List < Offerta > offerte = offertaDAO.getOfferteByIdUtente(idUtente);
-                // Crea un oggetto Carrello con l'ID del carrello e l'ID dell'utente
-                return new Carrello(idCarrello, idUtente);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return Mappatori.CARRELLO.primo(SELECT_CARRELLO_BY_ID_UTENTE_QUERY, resultSet);
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -77,27 +75,40 @@ public class CarrelloDAO {
     }
 
 
+    /*
+    Come getCarrelloByIdUtente, ma il carrello resta bloccato fino al termine della transazione:
+    va usato in un'UnitaDiLavoro, ad esempio nel checkout, perche' due richieste contemporanee
+    dello stesso utente non acquistino due volte le stesse offerte
+     */
+    public Carrello bloccaCarrelloByIdUtente(int idUtente) {
+        try (Connection con = ConPool.getConnection();
+             PreparedStatement statement = con.prepareStatement(SELECT_CARRELLO_BY_ID_UTENTE_FOR_UPDATE_QUERY)) {
+            statement.setInt(1, idUtente);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return Mappatori.CARRELLO.primo(SELECT_CARRELLO_BY_ID_UTENTE_FOR_UPDATE_QUERY, resultSet);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
     // Restituisce tutti i carrelli presenti nel database
     public List<Carrello> doRetrieveAll() {
-        List<Carrello> carrelli = new ArrayList<>();
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement statement = con.prepareStatement(SELECT_ALL_CARRELLI_QUERY);
-            ResultSet resultSet = statement.executeQuery();
-            while (resultSet.next()) {
-                int idCarrello = resultSet.getInt("idCarrello");
-                int idUtente = resultSet.getInt("idUtente");
-                carrelli.add(new Carrello(idCarrello, idUtente));
-            }
+        try (Connection con = ConPool.getConnectionLettura();
+             PreparedStatement statement = con.prepareStatement(SELECT_ALL_CARRELLI_QUERY);
+             ResultSet resultSet = statement.executeQuery()) {
+            return Mappatori.CARRELLO.tutti(SELECT_ALL_CARRELLI_QUERY, resultSet);
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return carrelli;
+        return new ArrayList<>();
     }
 
     // Aggiorna il carrello nel database
     public void doUpdate(Carrello carrello) {
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement statement = con.prepareStatement(UPDATE_CARRELLO_QUERY);
+        try (Connection con = ConPool.getConnection();
+             PreparedStatement statement = con.prepareStatement(UPDATE_CARRELLO_QUERY)) {
             statement.setInt(1, carrello.getIdUtente());
             statement.setDouble(2, carrello.getTotale());
             statement.setInt(3, carrello.getIdCarrello());
@@ -107,10 +118,43 @@ public class CarrelloDAO {
         }
     }
 
+    /*
+    Scrive le offerte aggiunte al carrello o rimosse dall'ultima scrittura, in ritardo: le modifiche
+    successive della stessa offerta sostituiscono questa se non e' ancora stata scritta, cosi' piu'
+    aggiunte e rimozioni ravvicinate costano una sola scrittura (vedi ScritturaCarrelli).
+    Le offerte non modificate da questa sessione restano come sono nel database
+     */
+    public void doUpdateOfferte(Carrello carrello) {
+        ScritturaCarrelli.rimanda(carrello.getIdCarrello(), carrello.prelevaModifiche());
+    }
+
+    /*
+    Come doUpdateOfferte, ma scrive subito, insieme alle modifiche ancora in attesa, nella transazione
+    dell'UnitaDiLavoro se ce n'e' una aperta. Le modifiche restano anche nel carrello, che dopo il commit
+    va riletto o impostato con setOfferte
+     */
+    public void doUpdateOfferteSubito(Carrello carrello) {
+        ScritturaCarrelli.scriviSubito(carrello.getIdCarrello(), carrello.getModifiche());
+    }
+
+    // Rimuove tutte le offerte dal carrello con l'ID specificato e ne azzera il totale
+    public void svuotaCarrello(int idCarrello) {
+        try (Connection con = ConPool.getConnection();
+             PreparedStatement offerte = con.prepareStatement(DELETE_OFFERTE_CARRELLO_QUERY);
+             PreparedStatement totale = con.prepareStatement(AZZERA_TOTALE_CARRELLO_QUERY)) {
+            offerte.setInt(1, idCarrello);
+            offerte.executeUpdate();
+            totale.setInt(1, idCarrello);
+            totale.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
     // Elimina il carrello con l'ID specificato dal database
     public void doDelete(int idCarrello) {
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement statement = con.prepareStatement(DELETE_CARRELLO_QUERY);
+        try (Connection con = ConPool.getConnection();
+             PreparedStatement statement = con.prepareStatement(DELETE_CARRELLO_QUERY)) {
             statement.setInt(1, idCarrello);
             statement.executeUpdate();
         } catch (SQLException e) {
@@ -1,75 +1,150 @@
 package storage;
 
 import acquisto.Carta;
+import ricerca.CacheRicerche;
+import ricerca.CatalogoCarte;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
+import java.sql.Statement;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class CartaDAO {
+    //lunghezza minima delle parole indicizzate da InnoDB (innodb_ft_min_token_size)
+    private static final int LUNGHEZZA_MINIMA_FULLTEXT = 3;
+
+    private static final String SELECT_ALL_QUERY = "SELECT * FROM carta ORDER BY idCarta;";
+    private static final String SELECT_BY_ID_QUERY = "SELECT * FROM carta WHERE idCarta=?";
+    private static final String SELECT_PAGINA_QUERY = "SELECT * FROM carta WHERE idCarta > ? ORDER BY idCarta LIMIT ?";
+
+    //le carte cambiano di rado e vengono lette per id da molte pagine
+    private static final CacheEntita<Carta> CACHE = new CacheEntita<>("carta",
+            carta -> new Carta(carta.getIdCarta(), carta.getNome(), carta.getCategoria(), carta.getRarita(), carta.getImmagine()));
+
     public List<Carta> doRetrieveAll(){//Metodo che permette di restituire tutte le carte presenti nel DB
-        try(Connection con=ConPool.getConnection()){
-            List<Carta> carte=new ArrayList<>();
-            PreparedStatement ps= con.prepareStatement("SELECT * FROM carta;");
-            ResultSet rs=ps.executeQuery();
-            while(rs.next()){
-                Carta c=new Carta();
-                c.setIdCarta(rs.getInt(1));
-                c.setNome(rs.getString(2));
-                c.setCategoria(rs.getString(3));
-                c.setRarita(rs.getString(4));
-                c.setImmagine(rs.getString(5));
-                carte.add(c);
+        try(Connection con=ConPool.getConnectionLettura();
+            PreparedStatement ps= con.prepareStatement(SELECT_ALL_QUERY);
+            ResultSet rs=ps.executeQuery()){
+            return Mappatori.CARTA.tutti(SELECT_ALL_QUERY, rs);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //Metodo che passa al consumatore tutte le carte presenti nel DB, una alla volta, senza caricarle tutte in memoria
+    public void doRetrieveAll(Consumer<? super Carta> consumatore){
+        try {
+            LetturaContinua.perOgni(SELECT_ALL_QUERY, Mappatori.CARTA, consumatore);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //Metodo che restituisce tutte le carte presenti nel DB come Stream, letto dal DB man mano; lo Stream tiene una connessione e va chiuso
+    public Stream<Carta> doStreamAll(){
+        try {
+            return LetturaContinua.flusso(SELECT_ALL_QUERY, Mappatori.CARTA);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //Metodo che restituisce una pagina delle carte presenti nel DB, ordinate per id, a partire dalla carta successiva al cursore
+    public Pagina<Carta> doRetrievePagina(int dopoIdCarta, int dimensione){
+        try{
+            return Paginazione.leggi(SELECT_PAGINA_QUERY, Mappatori.CARTA, Carta::getIdCarta, dopoIdCarta, dimensione);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /*
+    Metodo che permette di cercare le carte per nome direttamente nel DB, una pagina alla volta.
+    Ogni parola del testo viene cercata come prefisso nell'indice FULLTEXT sul nome; se il testo contiene
+    parole piu' corte della lunghezza minima indicizzata da MySQL, o se il database non supporta FULLTEXT, si usa un LIKE sul nome.
+    Le carte sono ordinate per id e la pagina successiva parte dalla carta successiva al cursore.
+     */
+    public Pagina<Carta> doRetrieveByNome(String testo, int dopoIdCarta, int dimensione){
+        String ricerca = testoFullText(testo);
+
+        try{
+            String sql;
+            if(ricerca==null || !ConPool.supportaFullText()){
+                sql="SELECT * FROM carta WHERE nome LIKE ? AND idCarta > ? ORDER BY idCarta LIMIT ?";
+                ricerca="%"+(testo==null ? "" : testo.trim().replace("\\","\\\\").replace("%","\\%").replace("_","\\_"))+"%";
             }
-            con.close();
-            return carte;
+            else{
+                sql="SELECT * FROM carta WHERE MATCH(nome) AGAINST(? IN BOOLEAN MODE) AND idCarta > ? ORDER BY idCarta LIMIT ?";
+            }
+
+            return Paginazione.leggi(sql, Mappatori.CARTA, Carta::getIdCarta, dopoIdCarta, dimensione, ricerca);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
+    //Trasforma il testo ricercato in una ricerca booleana FULLTEXT in cui ogni parola e' un prefisso obbligatorio
+    private static String testoFullText(String testo){
+        if(testo==null)
+            return null;
+
+        StringBuilder ricerca=new StringBuilder();
+        for(String parola: testo.trim().split("\\s+")){
+            parola=parola.replaceAll("[+\\-<>()~*\"@]", "");
+            if(parola.length()<LUNGHEZZA_MINIMA_FULLTEXT)
+                return null;
+
+            ricerca.append(ricerca.length()==0 ? "+" : " +").append(parola).append('*');
+        }
+        return ricerca.toString();
+    }
+
     public Carta doRetrieveById(int idCarta){//Metodo che permette di trovare e restituire una carta presente nel DB tramite id
-        try(Connection con= ConPool.getConnection()){
-            PreparedStatement ps=con.prepareStatement("SELECT * FROM carta WHERE idCarta=?");
+        return CACHE.ottieni(idCarta, this::leggi);
+    }
+
+    //Legge la carta dal DB senza passare dalla cache, dal primario: una replica in ritardo
+    //restituirebbe una carta gia' modificata, che la cache conserverebbe per minuti
+    private Carta leggi(int idCarta){
+        try(Connection con= ConPool.getConnectionPrimario();
+            PreparedStatement ps=con.prepareStatement(SELECT_BY_ID_QUERY)){
             ps.setInt(1,idCarta);
-            ResultSet rs= ps.executeQuery();
-            if(rs.next()){
-                Carta c=new Carta();
-                c.setIdCarta(rs.getInt(1));
-                c.setNome(rs.getString(2));
-                c.setCategoria(rs.getString(3));
-                c.setRarita(rs.getString(4));
-                c.setImmagine(rs.getString(5));
-
-                return c;
+            try(ResultSet rs= ps.executeQuery()){
+                return Mappatori.CARTA.primo(SELECT_BY_ID_QUERY, rs);
             }
-            con.close();
-            return null;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
     public void doUpdate(int idCarta,Carta carta){//Metodo che permette di modificare una carta presente nel DB.
-        try (Connection con=ConPool.getConnection()){
-            PreparedStatement ps=con.prepareStatement("UPDATE Carta set nome=?, categoria=?, rarita=?, immagine=? where idCarta=?");
+        Carta precedente=leggi(idCarta);
+        try (Connection con=ConPool.getConnection();
+             PreparedStatement ps=con.prepareStatement("UPDATE Carta set nome=?, categoria=?, rarita=?, immagine=? where idCarta=?")){
             ps.setString(1, carta.getNome());
             ps.setString(2, carta.getCategoria());
             ps.setString(3, carta.getRarita());
-            ps.setInt(4,idCarta);
-            ps.setString(5, carta.getImmagine());
-            ps.executeUpdate();
+            ps.setString(4, carta.getImmagine());
+            ps.setInt(5,idCarta);
+            //una carta inesistente non va aggiunta al catalogo ne' registrata per gli altri nodi
+            if(ps.executeUpdate()!=1 ){
+                throw new RuntimeException("errore nella modifica");
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        CACHE.invalida(idCarta);
+        notificaModifica(precedente, new Carta(idCarta, carta.getNome(), carta.getCategoria(), carta.getRarita(), carta.getImmagine()));
     }
 
     public void doDelete(int idCarta){//Metodo che permette di eliminare nel DB una carta tramite id
-        try (Connection con=ConPool.getConnection()){
-            PreparedStatement ps=con.prepareStatement("DELETE FROM Carta where idCarta=?");
+        Carta precedente=leggi(idCarta);
+        try (Connection con=ConPool.getConnection();
+             PreparedStatement ps=con.prepareStatement("DELETE FROM Carta where idCarta=?")){
             ps.setInt(1,idCarta);
             if(ps.executeUpdate()!=1 ){
                 throw new RuntimeException("errore nella cancellazione");
@@ -78,11 +153,13 @@ public class CartaDAO {
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        CACHE.invalida(idCarta);
+        notificaModifica(precedente, null);
     }
 
     public void doSave(Carta carta){//Metodo che permette di inserire una nuova carta nel DB
-        try(Connection con=ConPool.getConnection()){
-            PreparedStatement ps=con.prepareStatement("INSERT into carta(nome,categoria,rarita,immagine) values (?,?,?,?)");
+        try(Connection con=ConPool.getConnection();
+            PreparedStatement ps=con.prepareStatement("INSERT into carta(nome,categoria,rarita,immagine) values (?,?,?,?)", Statement.RETURN_GENERATED_KEYS)){
             ps.setString(1, carta.getNome());
             ps.setString(2, carta.getCategoria());
             ps.setString(3, carta.getRarita());
@@ -90,9 +167,49 @@ public class CartaDAO {
             if (ps.executeUpdate() != 1) {
                 throw new RuntimeException("Errore nell'inserimento");
             }
+            try(ResultSet rs=ps.getGeneratedKeys()){
+                if(rs.next()){
+                    carta.setIdCarta(rs.getInt(1));
+                }
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        notificaModifica(null, carta);
+    }
+
+    //Aggiorna le strutture in memoria dopo una modifica alla tabella Carta e la registra per gli altri nodi
+    private static void notificaModifica(Carta precedente, Carta nuova){
+        aggiornaCatalogo(precedente, nuova);
+        RegistroModifiche.registra(RegistroModifiche.CARTA, nuova!=null ? nuova.getIdCarta() : precedente.getIdCarta());
+    }
+
+    //Applica la modifica di una carta fatta da un altro nodo (vedi RegistroModifiche)
+    static void applicaModifica(int idCarta){
+        CACHE.invalida(idCarta);
+        Carta precedente=CatalogoCarte.getInstance().getCarta(idCarta);
+        Carta nuova=new CartaDAO().leggi(idCarta);
+
+        //senza la carta precedente non si sa quali ricerche la contenevano
+        if(precedente==null)
+            CacheRicerche.getInstance().svuota();
+        aggiornaCatalogo(precedente, nuova);
+    }
+
+    //Scarta le strutture in memoria dopo un' importazione del catalogo, fatta da questo nodo o da un altro (vedi ImportazioneCarte)
+    static void applicaImportazione(){
+        CACHE.svuota();
+        CatalogoCarte.getInstance().ricarica();
+        CacheRicerche.getInstance().svuota();
     }
 
+    //Aggiorna il catalogo in memoria e la cache delle ricerche dopo una modifica alla tabella Carta
+    private static void aggiornaCatalogo(Carta precedente, Carta nuova){
+        if(nuova!=null)
+            CatalogoCarte.getInstance().aggiorna(nuova);
+        else if(precedente!=null)
+            CatalogoCarte.getInstance().rimuovi(precedente.getIdCarta());
+
+        CacheRicerche.getInstance().invalida(precedente, nuova);
+    }
 }
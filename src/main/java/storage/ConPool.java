@@ -1,31 +1,339 @@
 package storage;
 
+import monitoraggio.RegistroMetriche;
+import monitoraggio.SorgenteMetriche;
+import org.apache.tomcat.jdbc.pool.PoolExhaustedException;
 import org.apache.tomcat.jdbc.pool.PoolProperties;
 import org.apache.tomcat.jdbc.pool.DataSource;
+import utils.Configurazione;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.TimeZone;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * La classe gestisce il pool di connessioni al database. La configurazione
+ * viene letta dal file database.properties, con le chiavi sovrascrivibili da
+ * proprieta' di sistema e variabili d' ambiente (vedi utils.Configurazione).
+ * Il database da usare e' scelto dal profilo indicato dalla chiave db.profilo
+ * (vedi ProfiloDatabase): MySQL in esercizio, H2 in memoria per benchmark e test di carico.
+ * Il pool viene creato una sola volta, all' avvio dell' applicazione da
+ * ConPoolListener oppure alla prima richiesta di connessione.
+ * Gli statement preparati vengono conservati per connessione dall' intercettore
+ * StatementCache, quindi i DAO devono chiuderli (try-with-resources) per renderli riusabili.
+ * Se la chiave db.repliche indica delle repliche di sola lettura, ConPool crea un pool
+ * per ognuna e i metodi di lettura dei DAO ottengono la connessione da getConnectionLettura,
+ * che le alterna; dopo una scrittura le letture dello stesso utente restano sul primario
+ * per db.repliche.ritardoMassimo millisecondi (vedi ConsistenzaLetture)
+ */
 
 public class ConPool {
-    private static DataSource dataSource;
+    private static final String CONFIGURAZIONE = "database.properties";
+    private static final String NOME_JMX = "cardexchange:type=ConPool";
+    //ogni connessione conserva gli statement preparati chiusi dai DAO, che vengono riusati senza nuova compilazione;
+    //IntercettoreMetriche precede la cache per misurare anche gli statement riusati
+    private static final String INTERCETTORI = "ConnectionState;StatementFinalizer;storage.IntercettoreMetriche;StatementCache(prepared=true,callable=false,max=200)";
+
+    private static volatile DataSource dataSource;
+    private static volatile StatistichePool statistiche;
+    private static volatile DataSource[] repliche = new DataSource[0];
+    private static volatile StatistichePool[] statisticheRepliche = new StatistichePool[0];
+    private static volatile SorgenteMetriche metriche;
+    private static volatile long ritardoMassimoRepliche;
+    private static final AtomicInteger prossimaReplica = new AtomicInteger();
+    private static volatile ProfiloDatabase profiloAttivo;
+    private static volatile int dimensioneFetch;
 
+    /**
+     * Il metodo permette di ottenere una connessione dal database primario, da usare per le scritture.
+     * Le letture successive dello stesso utente vengono lette dal primario (vedi ConsistenzaLetture).
+     * Se nel thread e' aperta un' unita' di lavoro restituisce la sua connessione (vedi UnitaDiLavoro)
+     * @return la connessione
+     * */
     public static Connection getConnection() throws SQLException{
-        if (dataSource==null){
-            PoolProperties p= new PoolProperties();
-            p.setUrl("jdbc:mysql://localhost:3306/CardExchange?serverTimezone=" + TimeZone.getDefault().getID());
-            p.setDriverClassName("com.mysql.jdbc.Driver");
-            p.setUsername("root");
-            p.setPassword("michelemenzione");
-            p.setMaxActive(100);
-            p.setInitialSize(10);
-            p.setMinIdle(10);
-            p.setRemoveAbandonedTimeout(60);
-            p.setRemoveAbandoned(true);
-
-            dataSource = new org.apache.tomcat.jdbc.pool.DataSource();
-            dataSource.setPoolProperties(p);
-        }
-        return dataSource.getConnection();
+        Connection unita = UnitaDiLavoro.connessione();
+        if (unita != null)
+            return unita;
+
+        DataSource pool = dataSource;
+        if (pool == null)
+            pool = inizializza();
+
+        if (repliche.length > 0)
+            ConsistenzaLetture.registraScrittura();
+        return presta(pool, statistiche);
+    }
+
+    /**
+     * Il metodo permette di ottenere una connessione per una lettura: da una replica, a turno,
+     * oppure dal primario se non ci sono repliche, se l' utente ha scritto da poco o se la replica non risponde.
+     * Se nel thread e' aperta un' unita' di lavoro restituisce la sua connessione, che vede le scritture non ancora confermate
+     * @return la connessione
+     * */
+    public static Connection getConnectionLettura() throws SQLException{
+        Connection unita = UnitaDiLavoro.connessione();
+        if (unita != null)
+            return unita;
+
+        DataSource pool = dataSource;
+        if (pool == null)
+            pool = inizializza();
+
+        DataSource[] disponibili = repliche;
+        StatistichePool[] statisticheDisponibili = statisticheRepliche;
+        if (disponibili.length == 0 || ConsistenzaLetture.richiedePrimario(ritardoMassimoRepliche))
+            return presta(pool, statistiche);
+
+        int indice = Math.floorMod(prossimaReplica.getAndIncrement(), disponibili.length);
+        try {
+            return presta(disponibili[indice], statisticheDisponibili[indice]);
+        }
+
+        catch (SQLException e) {
+            //una replica non raggiungibile non deve impedire la lettura
+            return presta(pool, statistiche);
+        }
+    }
+
+    /**
+     * Il metodo permette di ottenere una connessione dal database primario per una lettura che non puo'
+     * essere in ritardo, ad esempio per riempire una cache, senza registrare una scrittura dell' utente.
+     * Se nel thread e' aperta un' unita' di lavoro restituisce la sua connessione
+     * @return la connessione
+     * */
+    static Connection getConnectionPrimario() throws SQLException{
+        Connection unita = UnitaDiLavoro.connessione();
+        if (unita != null)
+            return unita;
+
+        DataSource pool = dataSource;
+        if (pool == null)
+            pool = inizializza();
+
+        return presta(pool, statistiche);
+    }
+
+    private static Connection presta(DataSource pool, StatistichePool statistichePool) throws SQLException{
+        long inizio = System.nanoTime();
+        try {
+            Connection connessione = pool.getConnection();
+            statistichePool.registraPrestito(System.nanoTime() - inizio);
+            return connessione;
+        }
+
+        catch (PoolExhaustedException e) {
+            statistichePool.registraTimeout();
+            throw e;
+        }
+    }
+
+    /**
+     * Il metodo permette di creare il pool di connessioni, se non e' gia' stato creato,
+     * e di registrarne le statistiche come MBean JMX e nella servlet delle metriche.
+     * Le migrazioni dello schema non vengono applicate qui, ma da ConPoolListener (vedi Migrazioni)
+     * @return il DataSource del pool
+     * @throws SQLException se il database non e' raggiungibile: i pool gia' creati vengono chiusi
+     * e il pool verra' creato di nuovo alla prossima richiesta di connessione
+     * */
+    public static synchronized DataSource inizializza() throws SQLException{
+        if (dataSource != null)
+            return dataSource;
+
+        Configurazione configurazione = new Configurazione(CONFIGURAZIONE);
+        ProfiloDatabase profiloScelto = profilo(configurazione.stringa("db.profilo", "mysql"));
+        List<DataSource> creati = new ArrayList<>();
+
+        try {
+            DataSource pool = crea(configurazione, profiloScelto, null);
+            creati.add(pool);
+
+            String[] url = configurazione.stringa("db.repliche", "").split(",");
+            List<DataSource> nuoveRepliche = new ArrayList<>();
+            for (String urlReplica : url) {
+                if (urlReplica.trim().isEmpty())
+                    continue;
+
+                DataSource replica = crea(configurazione, profiloScelto, urlReplica.trim());
+                creati.add(replica);
+                nuoveRepliche.add(replica);
+            }
+
+            List<StatistichePool> tutte = new ArrayList<>();
+            statistiche = new StatistichePool("primario", pool);
+            tutte.add(statistiche);
+            registraMBean(statistiche, NOME_JMX);
+
+            StatistichePool[] nuoveStatistiche = new StatistichePool[nuoveRepliche.size()];
+            for (int i = 0; i < nuoveStatistiche.length; i++) {
+                nuoveStatistiche[i] = new StatistichePool("replica" + (i + 1), nuoveRepliche.get(i));
+                tutte.add(nuoveStatistiche[i]);
+                registraMBean(nuoveStatistiche[i], nomeJmxReplica(i));
+            }
+
+            //una sola sorgente, cosi' che ogni metrica abbia una sola intestazione con un valore per pool
+            metriche = formato -> StatistichePool.scrivi(formato, tutte);
+            RegistroMetriche.getInstance().registra(metriche);
+
+            profiloAttivo = profiloScelto;
+            dimensioneFetch = configurazione.intero("db.fetchSize", 500);
+            ritardoMassimoRepliche = configurazione.intero("db.repliche.ritardoMassimo", 5000);
+            statisticheRepliche = nuoveStatistiche;
+            repliche = nuoveRepliche.toArray(new DataSource[0]);
+            dataSource = pool;
+            return pool;
+        }
+
+        catch (SQLException | RuntimeException e) {
+            for (DataSource creato : creati)
+                creato.close(true);
+            throw e;
+        }
+    }
+
+    //urlReplica e' null per il primario
+    private static DataSource crea(Configurazione configurazione, ProfiloDatabase profiloScelto, String urlReplica) throws SQLException{
+        PoolProperties p = new PoolProperties();
+
+        p.setMaxActive(configurazione.intero("pool.maxActive", 100));
+        p.setMaxIdle(configurazione.intero("pool.maxIdle", p.getMaxActive()));
+        p.setMinIdle(configurazione.intero("pool.minIdle", 10));
+        p.setInitialSize(configurazione.intero("pool.initialSize", 10));
+        p.setMaxWait(configurazione.intero("pool.maxWait", 30000));
+        p.setValidationQuery(configurazione.stringa("pool.validationQuery", "SELECT 1"));
+        p.setValidationQueryTimeout(configurazione.intero("pool.validationQueryTimeout", 5));
+        p.setTestOnBorrow(configurazione.booleano("pool.testOnBorrow", true));
+        p.setTestWhileIdle(configurazione.booleano("pool.testWhileIdle", true));
+        p.setValidationInterval(configurazione.intero("pool.validationInterval", 30000));
+        p.setTimeBetweenEvictionRunsMillis(configurazione.intero("pool.timeBetweenEvictionRunsMillis", 5000));
+        p.setMinEvictableIdleTimeMillis(configurazione.intero("pool.minEvictableIdleTimeMillis", 60000));
+        p.setRemoveAbandoned(configurazione.booleano("pool.removeAbandoned", true));
+        p.setRemoveAbandonedTimeout(configurazione.intero("pool.removeAbandonedTimeout", 60));
+        p.setLogAbandoned(configurazione.booleano("pool.logAbandoned", false));
+        p.setJdbcInterceptors(configurazione.stringa("pool.jdbcInterceptors", INTERCETTORI));
+        profiloScelto.configura(p, configurazione);
+
+        if (urlReplica != null) {
+            p.setUrl(profiloScelto.urlReplica(urlReplica));
+            p.setDefaultReadOnly(true);
+        }
+
+        DataSource pool = new DataSource();
+        pool.setPoolProperties(p);
+
+        try {
+            profiloScelto.prepara(pool, configurazione);
+        }
+
+        catch (SQLException | RuntimeException e) {
+            pool.close(true);
+            throw e;
+        }
+
+        return pool;
+    }
+
+    /**
+     * @return true se il database in uso supporta la ricerca FULLTEXT, false se i DAO devono usare LIKE
+     * */
+    public static boolean supportaFullText() throws SQLException{
+        if (dataSource == null)
+            inizializza();
+
+        return profiloAttivo.supportaFullText();
+    }
+
+    /**
+     * @return il profilo del database in uso
+     * */
+    static ProfiloDatabase getProfilo() throws SQLException{
+        if (dataSource == null)
+            inizializza();
+
+        return profiloAttivo;
+    }
+
+    /**
+     * @return il numero di righe che le letture in streaming chiedono al database per volta
+     * */
+    public static int getDimensioneFetch() throws SQLException{
+        if (dataSource == null)
+            inizializza();
+
+        return dimensioneFetch;
+    }
+
+    /**
+     * Il metodo permette di chiudere il pool di connessioni e di rimuoverne le statistiche
+     * */
+    public static synchronized void chiudi(){
+        if (dataSource == null)
+            return;
+
+        RegistroMetriche.getInstance().rimuovi(metriche);
+        rimuoviMBean(NOME_JMX);
+        for (int i = 0; i < repliche.length; i++) {
+            rimuoviMBean(nomeJmxReplica(i));
+            repliche[i].close(true);
+        }
+
+        repliche = new DataSource[0];
+        statisticheRepliche = new StatistichePool[0];
+        dataSource.close(true);
+        dataSource = null;
+    }
+
+    private static ProfiloDatabase profilo(String nome){
+        if ("mysql".equalsIgnoreCase(nome))
+            return new ProfiloMySQL();
+        if ("h2".equalsIgnoreCase(nome))
+            return new ProfiloH2();
+
+        try {
+            return (ProfiloDatabase) Class.forName(nome).getDeclaredConstructor().newInstance();
+        }
+
+        catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalStateException("Profilo del database non valido: " + nome, e);
+        }
+    }
+
+    private static String nomeJmxReplica(int indice){
+        return NOME_JMX + ",replica=" + (indice + 1);
+    }
+
+    private static void registraMBean(StatistichePool statistiche, String nomeJmx){
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName nome = new ObjectName(nomeJmx);
+
+            //dopo un redeploy senza chiusura del pool resta registrata l' istanza precedente
+            if (server.isRegistered(nome))
+                server.unregisterMBean(nome);
+
+            server.registerMBean(statistiche, nome);
+        }
+
+        catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void rimuoviMBean(String nomeJmx){
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName nome = new ObjectName(nomeJmx);
+            if (server.isRegistered(nome))
+                server.unregisterMBean(nome);
+        }
+
+        catch (JMException e) {
+            e.printStackTrace();
+        }
     }
 }
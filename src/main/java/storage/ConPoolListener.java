@@ -0,0 +1,62 @@
+package storage;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+
+import utils.Configurazione;
+
+import java.sql.SQLException;
+
+/**
+ * La classe crea il pool di connessioni all' avvio dell' applicazione,
+ * prima che arrivino le richieste, applica le migrazioni dello schema,
+ * avvia la lettura del registro delle modifiche degli altri nodi, il
+ * registro delle query lente e la scrittura rimandata dei carrelli.
+ * Un database non raggiungibile all' avvio non impedisce il deploy: l' errore
+ * viene registrato e il pool verra' creato alla prima richiesta.
+ * Allo spegnimento scrive i carrelli in attesa, ferma i registri e
+ * l' esecutore di FacadeDAOAsincrona e chiude il pool
+ */
+
+@WebListener
+public class ConPoolListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        try {
+            //apre subito le connessioni iniziali, cosi' le prime richieste non attendono la creazione del pool
+            ConPool.inizializza().createPool();
+        }
+
+        catch (SQLException | RuntimeException e) {
+            //il pool verra' creato alla prima richiesta di connessione
+            event.getServletContext().log("Impossibile aprire le connessioni iniziali al database", e);
+        }
+
+        if (new Configurazione("database.properties").booleano("db.migrazioni.automatiche", true)) {
+            try {
+                Migrazioni.esegui();
+            }
+
+            catch (SQLException | RuntimeException e) {
+                //le richieste che usano lo schema nuovo falliranno finche' le migrazioni non saranno applicate
+                event.getServletContext().log("Impossibile applicare le migrazioni dello schema", e);
+            }
+        }
+
+        RegistroModifiche.avvia();
+        RegistroQueryLente.avvia();
+        ScritturaCarrelli.avvia();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        //prima di chiudere il pool, perche' i carrelli si ritrovino dopo il riavvio
+        ScritturaCarrelli.ferma();
+        RegistroModifiche.ferma();
+        FacadeDAOAsincrona.chiudi();
+        RegistroQueryLente.ferma();
+        ConPool.chiudi();
+    }
+}
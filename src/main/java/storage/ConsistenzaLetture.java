@@ -0,0 +1,59 @@
+package storage;
+
+/**
+ * La classe ricorda, per il thread corrente, l' istante dell' ultima scrittura
+ * sul database primario. ConPool la usa per garantire che un utente legga le
+ * proprie scritture: finche' le repliche potrebbero non averle ancora ricevute
+ * (db.repliche.ritardoMassimo), le letture vanno al primario.
+ * Per le richieste HTTP l' istante viene conservato nella sessione da
+ * FiltroConsistenzaLetture, cosi' che valga anche per le richieste successive
+ * dello stesso utente
+ */
+
+public final class ConsistenzaLetture {
+    private static final ThreadLocal<Long> ULTIMA_SCRITTURA = new ThreadLocal<>();
+
+    private ConsistenzaLetture(){}
+
+    /**
+     * Il metodo permette di impostare l' istante dell' ultima scrittura nota all' inizio di un' unita' di lavoro
+     * @param ultimaScrittura istante in millisecondi, 0 se non ci sono scritture precedenti
+     * */
+    public static void inizia(long ultimaScrittura) {
+        if (ultimaScrittura > 0)
+            ULTIMA_SCRITTURA.set(ultimaScrittura);
+        else
+            ULTIMA_SCRITTURA.remove();
+    }
+
+    /**
+     * Il metodo permette di terminare l' unita' di lavoro del thread corrente
+     * @return l' istante dell' ultima scrittura, 0 se non ce ne sono state
+     * */
+    public static long termina() {
+        long ultimaScrittura = getUltimaScrittura();
+        ULTIMA_SCRITTURA.remove();
+        return ultimaScrittura;
+    }
+
+    /**
+     * @return l' istante in millisecondi dell' ultima scrittura del thread corrente, 0 se non ce ne sono state
+     * */
+    public static long getUltimaScrittura() {
+        Long ultimaScrittura = ULTIMA_SCRITTURA.get();
+        return ultimaScrittura == null ? 0 : ultimaScrittura;
+    }
+
+    /**
+     * Il metodo permette di registrare una scrittura, o l' inizio di un' operazione che scrivera',
+     * cosi' che le letture successive del thread vadano al primario
+     * */
+    public static void registraScrittura() {
+        ULTIMA_SCRITTURA.set(System.currentTimeMillis());
+    }
+
+    static boolean richiedePrimario(long ritardoMassimoMillis) {
+        Long ultimaScrittura = ULTIMA_SCRITTURA.get();
+        return ultimaScrittura != null && System.currentTimeMillis() - ultimaScrittura < ritardoMassimoMillis;
+    }
+}
@@ -6,8 +6,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * La classe permette le operazioni riguardanti gli oggetti Discussione
@@ -16,6 +17,9 @@ import java.util.List;
  */
 
 public class DiscussioneDAO {
+    private static final String SELECT_ALL_QUERY = "SELECT * FROM Discussione;";
+    private static final String SELECT_BY_ID_QUERY = "SELECT * FROM Discussione WHERE idDiscussione = ?;";
+    private static final String SELECT_PAGINA_QUERY = "SELECT * FROM Discussione WHERE idDiscussione > ? ORDER BY idDiscussione LIMIT ?";
 
     /**
      * Il metodo permette di ottenere tutti gli oggetti Discussione
@@ -24,24 +28,63 @@ public class DiscussioneDAO {
      *                      le istanze di oggetti Discussione nel database
      */
     public List<Discussione> doRetrieveAll(){
+        try (Connection connection = ConPool.getConnectionLettura();
+             PreparedStatement preparedStatement = connection.prepareStatement(SELECT_ALL_QUERY);
+             ResultSet resultSet = preparedStatement.executeQuery()) {
+            return Mappatori.DISCUSSIONE.tutti(SELECT_ALL_QUERY, resultSet);
+        }
+
+        catch (SQLException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Il metodo permette di passare a un consumatore tutti gli oggetti Discussione
+     * memorizzati nel database, uno alla volta, senza caricarli tutti in memoria
+     * @param consumatore riceve le discussioni, nell' ordine in cui vengono letti
+     */
+    public void doRetrieveAll(Consumer<? super Discussione> consumatore){
         try {
-            Connection connection = ConPool.getConnection();
-            List<Discussione> topics = new ArrayList<>();
-            PreparedStatement preparedStatement = connection.prepareStatement("SELECT * FROM Discussione;");
-            ResultSet resultSet = preparedStatement.executeQuery();
+            LetturaContinua.perOgni(SELECT_ALL_QUERY, Mappatori.DISCUSSIONE, consumatore);
+        }
 
-            while(resultSet.next()){
-                Discussione topic = new Discussione();
+        catch (SQLException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
 
-                topic.setIdDiscussione(resultSet.getInt(1));
-                topic.setIdUtente(resultSet.getInt(2));
-                topic.setTitolo(resultSet.getString(3));
+    /**
+     * Il metodo permette di ottenere tutti gli oggetti Discussione memorizzati
+     * nel database come Stream, letto dal database man mano che viene consumato.
+     * Lo Stream tiene occupata una connessione e va chiuso dopo l' uso
+     * @return uno Stream di oggetti Discussione
+     */
+    public Stream<Discussione> doStreamAll(){
+        try {
+            return LetturaContinua.flusso(SELECT_ALL_QUERY, Mappatori.DISCUSSIONE);
+        }
 
-                topics.add(topic);
-            }
+        catch (SQLException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
 
-            connection.close();
-            return topics;
+    /**
+     * Il metodo permette di ottenere una pagina degli oggetti Discussione
+     * memorizzati nel database, ordinati per id
+     * @param dopoIdDiscussione id dell' ultima discussione della pagina
+     *                      precedente, 0 per la prima pagina
+     * @param dimensione numero di discussioni della pagina
+     * @return una pagina di oggetti Discussione
+     */
+    public Pagina<Discussione> doRetrievePagina(int dopoIdDiscussione, int dimensione){
+        try {
+            return Paginazione.leggi(SELECT_PAGINA_QUERY, Mappatori.DISCUSSIONE, Discussione::getIdDiscussione,
+                    dopoIdDiscussione, dimensione);
         }
 
         catch (SQLException e) {
@@ -59,25 +102,15 @@ public class DiscussioneDAO {
      *                      come parametro
      */
     public Discussione doRetrieveById(int topicId){
-        try {
-            Connection connection = ConPool.getConnection();
-            PreparedStatement preparedStatement =
-                    connection.prepareStatement("SELECT * FROM Discussione WHERE idDiscussione = ?;");
+        try (Connection connection = ConPool.getConnectionLettura();
+             PreparedStatement preparedStatement =
+                     connection.prepareStatement(SELECT_BY_ID_QUERY)) {
 
             preparedStatement.setInt(1, topicId);
-            ResultSet resultSet = preparedStatement.executeQuery();
-
-            if (resultSet.next()) {
-                Discussione topic = new Discussione();
 
-                topic.setIdDiscussione(resultSet.getInt(1));
-                topic.setIdUtente(resultSet.getInt(2));
-                topic.setTitolo(resultSet.getString(3));
-
-                return topic;
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                return Mappatori.DISCUSSIONE.primo(SELECT_BY_ID_QUERY, resultSet);
             }
-
-            return null;
         }
 
         catch (SQLException e) {
@@ -92,10 +125,9 @@ public class DiscussioneDAO {
      * @param topic la discussione da memorizzare nel database
      * */
     public void doSave(Discussione topic){
-        try {
-            Connection connection = ConPool.getConnection();
-            PreparedStatement preparedStatement =
-                    connection.prepareStatement("INSERT INTO Discussione(idUtente, titolo) VALUES (?, ?);");
+        try (Connection connection = ConPool.getConnection();
+             PreparedStatement preparedStatement =
+                     connection.prepareStatement("INSERT INTO Discussione(idUtente, titolo) VALUES (?, ?);")) {
 
             preparedStatement.setInt(1, topic.getIdUtente());
             preparedStatement.setString(2, topic.getTitolo());
@@ -118,10 +150,9 @@ public class DiscussioneDAO {
      *                      eliminare dal database
      * */
     public void doDelete(int topicId){
-        try {
-            Connection connection = ConPool.getConnection();
-            PreparedStatement preparedStatement =
-                    connection.prepareStatement("DELETE FROM Discussione WHERE idDiscussione = ?;");
+        try (Connection connection = ConPool.getConnection();
+             PreparedStatement preparedStatement =
+                     connection.prepareStatement("DELETE FROM Discussione WHERE idDiscussione = ?;")) {
 
             preparedStatement.setInt(1, topicId);
 
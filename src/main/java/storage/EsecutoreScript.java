@@ -0,0 +1,101 @@
+package storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * La classe permette di eseguire uno script SQL dal classpath, un' istruzione
+ * alla volta. Le istruzioni sono separate da punto e virgola, ignorando quelli
+ * dentro stringhe e commenti
+ */
+
+class EsecutoreScript {
+
+    private EsecutoreScript(){}
+
+    /**
+     * Il metodo permette di eseguire le istruzioni di uno script
+     * @param connessione la connessione su cui eseguire lo script
+     * @param risorsa percorso dello script nel classpath
+     * @param daSaltare condizione sulle istruzioni, in minuscolo, da non eseguire
+     * */
+    static void esegui(Connection connessione, String risorsa, Predicate<String> daSaltare) throws SQLException {
+        try (Statement statement = connessione.createStatement()) {
+            for (String istruzione : istruzioni(risorsa)) {
+                if (!daSaltare.test(istruzione.toLowerCase(Locale.ROOT)))
+                    statement.execute(istruzione);
+            }
+        }
+    }
+
+    private static List<String> istruzioni(String risorsa) throws SQLException {
+        try (InputStream input = EsecutoreScript.class.getClassLoader().getResourceAsStream(risorsa)) {
+            if (input == null)
+                throw new SQLException("Script non trovato nel classpath: " + risorsa);
+
+            Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8);
+            List<String> istruzioni = new ArrayList<>();
+            StringBuilder corrente = new StringBuilder();
+            char apice = 0;
+            boolean commento = false;
+            int carattere, precedente = 0;
+
+            while ((carattere = reader.read()) != -1) {
+                char c = (char) carattere;
+
+                if (commento) {
+                    if (c == '\n')
+                        commento = false;
+                }
+
+                else if (apice != 0) {
+                    corrente.append(c);
+                    if (c == apice)
+                        apice = 0;
+                }
+
+                else if (c == '-' && precedente == '-') {
+                    corrente.setLength(corrente.length() - 1);
+                    commento = true;
+                }
+
+                else if (c == ';') {
+                    aggiungi(istruzioni, corrente);
+                }
+
+                else {
+                    corrente.append(c);
+                    if (c == '\'' || c == '"' || c == '`')
+                        apice = c;
+                }
+
+                precedente = commento ? 0 : c;
+            }
+
+            aggiungi(istruzioni, corrente);
+            return istruzioni;
+        }
+
+        catch (IOException e) {
+            throw new SQLException("Impossibile leggere lo script " + risorsa, e);
+        }
+    }
+
+    private static void aggiungi(List<String> istruzioni, StringBuilder corrente) {
+        String istruzione = corrente.toString().trim();
+        if (!istruzione.isEmpty())
+            istruzioni.add(istruzione);
+
+        corrente.setLength(0);
+    }
+}
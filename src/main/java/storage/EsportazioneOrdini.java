@@ -0,0 +1,335 @@
+package storage;
+
+import acquisto.Offerta;
+import acquisto.Ordine;
+import utils.Configurazione;
+import utils.Json;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * La classe esporta gli ordini, con le offerte acquistate, in un file CSV o JSON Lines
+ * compresso con gzip, ad esempio per la contabilita'. Ordini e offerte sono letti con una
+ * sola query, ordinata per ordine, tramite LetturaContinua e scritti man mano sull' uscita:
+ * in memoria c' e' solo la riga corrente, qualunque sia il numero degli ordini.
+ * Nel CSV c' e' una riga per ogni offerta acquistata, con i dati dell' ordine ripetuti, e una
+ * riga senza offerta per gli ordini vuoti; nel JSON Lines c' e' un oggetto per ordine con
+ * l' array delle offerte.
+ * Se la lettura si interrompe a meta' il gzip resta senza chiusura, quindi un' esportazione
+ * incompleta viene riconosciuta come file danneggiato invece di sembrare completa.
+ * Uso: java storage.EsportazioneOrdini ordini.csv.gz | ordini.jsonl.gz [dal al], con le date aaaa-mm-gg
+ */
+
+public final class EsportazioneOrdini {
+    private static final String CONFIGURAZIONE = "database.properties";
+    private static final String ESPORTA_QUERY = "SELECT o.idOrdine, o.data, o.indirizzo, o.idUtente, o.totale, " +
+            "f.idOfferta, f.condizione, f.prezzo, f.idUtente AS idVenditore, f.idCarta, c.nome AS nomeCarta " +
+            "FROM Ordine o LEFT JOIN OrdineContieneOfferta oco ON oco.idOrdine = o.idOrdine " +
+            "LEFT JOIN Offerta f ON f.idOfferta = oco.idOfferta LEFT JOIN Carta c ON c.idCarta = f.idCarta " +
+            "WHERE o.data BETWEEN ? AND ? ORDER BY o.idOrdine, oco.idOfferta";
+    //il primo e l' ultimo giorno ammessi dal tipo DATE di MySQL
+    private static final Date PRIMO_GIORNO = Date.valueOf("1000-01-01");
+    private static final Date ULTIMO_GIORNO = Date.valueOf("9999-12-31");
+    private static final int DIMENSIONE_BUFFER = 64 * 1024;
+
+    private static final Mappatore<Riga> RIGA = new Mappatore<>((rs, c) -> {
+        Ordine ordine = new Ordine(rs.getInt(c[0]), rs.getDate(c[1]), rs.getString(c[2]), rs.getInt(c[3]), rs.getDouble(c[4]));
+        int idOfferta = rs.getInt(c[5]);
+        if (rs.wasNull())
+            return new Riga(ordine, null, null);
+
+        return new Riga(ordine, new Offerta(idOfferta, rs.getString(c[6]), rs.getDouble(c[7]), rs.getInt(c[8]), rs.getInt(c[9])),
+                rs.getString(c[10]));
+    }, "idOrdine", "data", "indirizzo", "idUtente", "totale", "idOfferta", "condizione", "prezzo", "idVenditore", "idCarta", "nomeCarta");
+
+    /**
+     * L'enumerazione modella i formati dell' esportazione
+     */
+    public enum Formato {
+        CSV(".csv.gz"), JSONL(".jsonl.gz");
+
+        private final String estensione;
+
+        Formato(String estensione) {
+            this.estensione = estensione;
+        }
+
+        public String getEstensione() {
+            return estensione;
+        }
+
+        /**
+         * @param nome il nome del formato, csv o jsonl, senza distinzione tra maiuscole e minuscole
+         * @return il formato, null se il nome non e' valido
+         * */
+        public static Formato perNome(String nome) {
+            for (Formato formato : values()) {
+                if (formato.name().equalsIgnoreCase(nome))
+                    return formato;
+            }
+
+            return null;
+        }
+    }
+
+    private EsportazioneOrdini(){}
+
+    public static void main(String[] args) throws IOException, SQLException {
+        Formato formato = args.length == 1 || args.length == 3 ? perFile(args[0]) : null;
+        if (formato == null) {
+            System.out.println("Uso: java storage.EsportazioneOrdini <ordini.csv.gz | ordini.jsonl.gz> [dal al]");
+            return;
+        }
+
+        Date dal = args.length == 3 ? Date.valueOf(args[1]) : null;
+        Date al = args.length == 3 ? Date.valueOf(args[2]) : null;
+        Path file = Paths.get(args[0]);
+
+        try (OutputStream uscita = Files.newOutputStream(file)) {
+            long inizio = System.nanoTime();
+            long ordini = esporta(uscita, formato, dal, al);
+            System.out.println(String.format(Locale.ROOT, "== %d ordini esportati in %.1f s, %.1f MB compressi",
+                    ordini, (System.nanoTime() - inizio) / 1e9, Files.size(file) / 1e6));
+        }
+
+        finally {
+            ConPool.chiudi();
+        }
+    }
+
+    private static Formato perFile(String nome) {
+        for (Formato formato : Formato.values()) {
+            if (nome.toLowerCase(Locale.ROOT).endsWith(formato.getEstensione()))
+                return formato;
+        }
+
+        return null;
+    }
+
+    /**
+     * Il metodo permette di sapere se un utente puo' esportare gli ordini di tutti gli utenti:
+     * gli id ammessi sono nella chiave esportazione.utenti di database.properties
+     * @param idUtente id dell' utente autenticato
+     * @return true se l' utente e' ammesso
+     * */
+    public static boolean ammesso(int idUtente) {
+        String utenti = new Configurazione(CONFIGURAZIONE).stringa("esportazione.utenti", "1");
+        return Arrays.stream(utenti.split(",")).map(String::trim).anyMatch(String.valueOf(idUtente)::equals);
+    }
+
+    /**
+     * Il metodo permette di esportare gli ordini, compressi con gzip, su un flusso di uscita.
+     * Il flusso non viene chiuso, ma alla fine contiene il gzip completo
+     * @param uscita il flusso su cui scrivere, ad esempio la risposta di una servlet
+     * @param formato il formato dell' esportazione
+     * @param dal il primo giorno degli ordini esportati, null per non limitarlo
+     * @param al l' ultimo giorno degli ordini esportati, compreso, null per non limitarlo
+     * @return il numero di ordini esportati
+     * */
+    public static long esporta(OutputStream uscita, Formato formato, Date dal, Date al) throws IOException, SQLException {
+        GZIPOutputStream gzip = new GZIPOutputStream(new NonChiudibile(uscita), DIMENSIONE_BUFFER);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8), DIMENSIONE_BUFFER);
+        Scrittore scrittore = formato == Formato.CSV ? new ScrittoreCsv(writer) : new ScrittoreJsonLines(writer);
+
+        try {
+            LetturaContinua.perOgni(ESPORTA_QUERY, RIGA, riga -> {
+                try {
+                    scrittore.scrivi(riga);
+                }
+
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, dal != null ? dal : PRIMO_GIORNO, al != null ? al : ULTIMO_GIORNO);
+        }
+
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        scrittore.termina();
+        //chiude il gzip scrivendone la coda, ma non l' uscita del chiamante
+        writer.close();
+        return scrittore.ordini;
+    }
+
+    private static final class Riga {
+        private final Ordine ordine;
+        private final Offerta offerta;
+        private final String nomeCarta;
+
+        Riga(Ordine ordine, Offerta offerta, String nomeCarta) {
+            this.ordine = ordine;
+            this.offerta = offerta;
+            this.nomeCarta = nomeCarta;
+        }
+    }
+
+    private abstract static class Scrittore {
+        final Writer writer;
+        long ordini;
+        private int ultimoIdOrdine = -1;
+
+        Scrittore(Writer writer) {
+            this.writer = writer;
+        }
+
+        //le righe dello stesso ordine sono consecutive, perche' la query e' ordinata per idOrdine
+        void scrivi(Riga riga) throws IOException {
+            boolean nuovo = riga.ordine.getIdOrdine() != ultimoIdOrdine;
+            if (nuovo) {
+                if (ultimoIdOrdine != -1)
+                    chiudiOrdine();
+                ultimoIdOrdine = riga.ordine.getIdOrdine();
+                ordini++;
+            }
+
+            scriviRiga(riga, nuovo);
+        }
+
+        void termina() throws IOException {
+            if (ultimoIdOrdine != -1)
+                chiudiOrdine();
+        }
+
+        abstract void scriviRiga(Riga riga, boolean nuovoOrdine) throws IOException;
+
+        abstract void chiudiOrdine() throws IOException;
+    }
+
+    private static final class ScrittoreCsv extends Scrittore {
+
+        ScrittoreCsv(Writer writer) throws IOException {
+            super(writer);
+            writer.write("idOrdine,data,indirizzo,idUtente,totale,idOfferta,idCarta,nomeCarta,idVenditore,condizione,prezzo\r\n");
+        }
+
+        @Override
+        void scriviRiga(Riga riga, boolean nuovoOrdine) throws IOException {
+            Ordine ordine = riga.ordine;
+            writer.write(String.valueOf(ordine.getIdOrdine()));
+            writer.write(',');
+            writer.write(String.valueOf(ordine.getData()));
+            writer.write(',');
+            testo(ordine.getIndirizzo());
+            writer.write(',');
+            writer.write(String.valueOf(ordine.getIdUtente()));
+            writer.write(',');
+            writer.write(numero(ordine.getTotale()));
+
+            Offerta offerta = riga.offerta;
+            if (offerta == null)
+                writer.write(",,,,,,");
+            else {
+                writer.write(',');
+                writer.write(String.valueOf(offerta.getIdOfferta()));
+                writer.write(',');
+                writer.write(String.valueOf(offerta.getIdCarta()));
+                writer.write(',');
+                testo(riga.nomeCarta);
+                writer.write(',');
+                writer.write(String.valueOf(offerta.getIdUtente()));
+                writer.write(',');
+                testo(offerta.getCondizione());
+                writer.write(',');
+                writer.write(numero(offerta.getPrezzo()));
+            }
+
+            writer.write("\r\n");
+        }
+
+        @Override
+        void chiudiOrdine() {
+        }
+
+        //i testi che iniziano con = + - @ verrebbero eseguiti come formule dai fogli di calcolo
+        private void testo(String valore) throws IOException {
+            if (valore == null)
+                return;
+
+            if (!valore.isEmpty() && "=+-@".indexOf(valore.charAt(0)) >= 0)
+                valore = "'" + valore;
+
+            if (valore.indexOf(',') < 0 && valore.indexOf('"') < 0 && valore.indexOf('\n') < 0 && valore.indexOf('\r') < 0) {
+                writer.write(valore);
+                return;
+            }
+
+            writer.write('"');
+            writer.write(valore.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+
+    private static final class ScrittoreJsonLines extends Scrittore {
+
+        ScrittoreJsonLines(Writer writer) {
+            super(writer);
+        }
+
+        @Override
+        void scriviRiga(Riga riga, boolean nuovoOrdine) throws IOException {
+            if (nuovoOrdine) {
+                Ordine ordine = riga.ordine;
+                writer.write("{\"idOrdine\":" + ordine.getIdOrdine() +
+                        ",\"data\":" + Json.stringa(String.valueOf(ordine.getData())) +
+                        ",\"indirizzo\":" + Json.stringa(ordine.getIndirizzo()) +
+                        ",\"idUtente\":" + ordine.getIdUtente() +
+                        ",\"totale\":" + numero(ordine.getTotale()) +
+                        ",\"offerte\":[");
+            }
+
+            Offerta offerta = riga.offerta;
+            if (offerta == null)
+                return;
+
+            if (!nuovoOrdine)
+                writer.write(',');
+            writer.write("{\"idOfferta\":" + offerta.getIdOfferta() +
+                    ",\"idCarta\":" + offerta.getIdCarta() +
+                    ",\"nomeCarta\":" + Json.stringa(riga.nomeCarta) +
+                    ",\"idVenditore\":" + offerta.getIdUtente() +
+                    ",\"condizione\":" + Json.stringa(offerta.getCondizione()) +
+                    ",\"prezzo\":" + numero(offerta.getPrezzo()) + "}");
+        }
+
+        @Override
+        void chiudiOrdine() throws IOException {
+            writer.write("]}\n");
+        }
+    }
+
+    //senza notazione esponenziale e senza ".0" per gli interi
+    private static String numero(double valore) {
+        return BigDecimal.valueOf(valore).stripTrailingZeros().toPlainString();
+    }
+
+    //lascia aperta l' uscita del chiamante quando si chiude il gzip
+    private static final class NonChiudibile extends BufferedOutputStream {
+
+        NonChiudibile(OutputStream uscita) {
+            super(uscita, DIMENSIONE_BUFFER);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package storage;
 
+import acquisto.Carrello;
 import acquisto.Carta;
 import acquisto.Offerta;
 import acquisto.Ordine;
@@ -9,7 +10,10 @@ import recensione.Recensione;
 import registrazione.Utente;
 import scambio.Scambio;
 
+import java.sql.SQLException;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * La classe realizza il design pattern Facade,
@@ -59,6 +63,134 @@ public class FacadeDAO {
         }
     }
 
+    /**
+     * Il metodo permette di passare a un consumatore tutte le istanze degli
+     * oggetti memorizzate nel database, una alla volta, senza caricarle
+     * tutte in memoria
+     * @param entityClass la classe dell' oggetto di cui si vuole
+     *                    recuperare tutte le istanze
+     * @param consumatore riceve le istanze nell' ordine in cui vengono lette
+     * */
+    public void doRetrieveAll(Class<?> entityClass, Consumer<Object> consumatore){
+        switch(entityClass.getName()){
+            case "acquisto.Carta":
+                new CartaDAO().doRetrieveAll(consumatore);
+                break;
+
+            case "creazioneDiscussione.Discussione":
+                new DiscussioneDAO().doRetrieveAll(consumatore);
+                break;
+
+            case "creazioneDiscussione.Messaggio":
+                new MessaggioDAO().doRetrieveAll(consumatore);
+                break;
+
+            case "acquisto.Offerta":
+                new OffertaDAO().doRetrieveAll(consumatore);
+                break;
+
+            case "acquisto.Ordine":
+                new OrdineDAO().doRetrieveAll(consumatore);
+                break;
+
+            case "recensione.Recensione":
+                new RecensioneDAO().doRetrieveAll(consumatore);
+                break;
+
+            case "scambio.Scambio":
+                new ScambioDAO().doRetrieveAll(consumatore);
+                break;
+
+            case "registrazione.Utente":
+                new UtenteDAO().doRetrieveAll(consumatore);
+                break;
+        }
+    }
+
+    /**
+     * Il metodo permette di ottenere tutte le istanze degli oggetti
+     * memorizzate nel database come Stream, letto dal database man mano
+     * che viene consumato. Lo Stream tiene occupata una connessione e va
+     * chiuso dopo l' uso, ad esempio con un try-with-resources
+     * @param entityClass la classe dell' oggetto di cui si vuole
+     *                    recuperare tutte le istanze
+     * @return uno Stream di oggetti che estendono la classe Object,
+     *                    null se la classe non e' gestita
+     * */
+    public Stream<?> doStreamAll(Class<?> entityClass){
+        switch(entityClass.getName()){
+            case "acquisto.Carta":
+                return new CartaDAO().doStreamAll();
+
+            case "creazioneDiscussione.Discussione":
+                return new DiscussioneDAO().doStreamAll();
+
+            case "creazioneDiscussione.Messaggio":
+                return new MessaggioDAO().doStreamAll();
+
+            case "acquisto.Offerta":
+                return new OffertaDAO().doStreamAll();
+
+            case "acquisto.Ordine":
+                return new OrdineDAO().doStreamAll();
+
+            case "recensione.Recensione":
+                return new RecensioneDAO().doStreamAll();
+
+            case "scambio.Scambio":
+                return new ScambioDAO().doStreamAll();
+
+            case "registrazione.Utente":
+                return new UtenteDAO().doStreamAll();
+
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Il metodo permette di ottenere una pagina delle istanze degli oggetti
+     * memorizzate nel database, ordinate per id, con la paginazione per
+     * chiave: ogni pagina costa quanto la prima
+     * @param entityClass la classe dell' oggetto di cui si vuole
+     *                    recuperare la pagina
+     * @param cursore id dell' ultimo oggetto della pagina precedente,
+     *                    0 per la prima pagina
+     * @param dimensione numero di oggetti della pagina, al massimo
+     *                    Pagina.DIMENSIONE_MASSIMA
+     * @return una pagina di oggetti, null se la classe non e' gestita
+     * */
+    public Pagina<?> doRetrievePagina(Class<?> entityClass, int cursore, int dimensione){
+        switch(entityClass.getName()){
+            case "acquisto.Carta":
+                return new CartaDAO().doRetrievePagina(cursore, dimensione);
+
+            case "creazioneDiscussione.Discussione":
+                return new DiscussioneDAO().doRetrievePagina(cursore, dimensione);
+
+            case "creazioneDiscussione.Messaggio":
+                return new MessaggioDAO().doRetrievePagina(cursore, dimensione);
+
+            case "acquisto.Offerta":
+                return new OffertaDAO().doRetrievePagina(cursore, dimensione);
+
+            case "acquisto.Ordine":
+                return new OrdineDAO().doRetrievePagina(cursore, dimensione);
+
+            case "recensione.Recensione":
+                return new RecensioneDAO().doRetrievePagina(cursore, dimensione);
+
+            case "scambio.Scambio":
+                return new ScambioDAO().doRetrievePagina(cursore, dimensione);
+
+            case "registrazione.Utente":
+                return new UtenteDAO().doRetrievePagina(cursore, dimensione);
+
+            default:
+                return null;
+        }
+    }
+
     /**
      * Il metodo permette di ottenere un oggetto memorizzato nel database
      * grazie al suo id
@@ -142,6 +274,44 @@ public class FacadeDAO {
         }
     }
 
+    /**
+     * Il metodo permette di memorizzare piu' oggetti nel database con un' unica
+     * connessione e in un' unica transazione, inviandoli a blocchi con il batch
+     * JDBC. A ogni oggetto viene assegnato l' id generato dal database
+     * @param entityClass la classe degli oggetti che si vogliono memorizzare,
+     *                    Offerta oppure Messaggio
+     * @param entities gli oggetti che si vogliono memorizzare
+     * @throws SQLException se l' inserimento fallisce: nessun oggetto viene memorizzato
+     * */
+    @SuppressWarnings("unchecked")
+    public void doSaveAll(Class<?> entityClass, List<?> entities) throws SQLException {
+        switch(entityClass.getName()){
+            case "creazioneDiscussione.Messaggio":
+                new MessaggioDAO().doSaveAll((List<Messaggio>) entities);
+                break;
+
+            case "acquisto.Offerta":
+                new OffertaDAO().doSaveAll((List<Offerta>) entities);
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Il metodo permette di memorizzare le righe di un ordine, una per offerta,
+     * con un unico batch JDBC e in un' unica transazione
+     * @param entityClass la classe Ordine
+     * @param idOrdine id dell' ordine
+     * @param idOfferte id delle offerte acquistate con l' ordine
+     * @throws SQLException se l' inserimento fallisce: nessuna riga viene memorizzata
+     * */
+    public void addOfferteToOrdine(Class<?> entityClass, int idOrdine, List<Integer> idOfferte) throws SQLException {
+        if(entityClass.getName().equals("acquisto.Ordine"))
+            new OrdineDAO().addOfferteToOrdine(idOrdine, idOfferte);
+    }
+
     /**
      * Il metodo permette di eliminare un oggetto memorizzato nel database
      * grazie al suo id
@@ -225,6 +395,154 @@ public class FacadeDAO {
         }
     }
 
+    /**
+     * Il metodo permette di cercare nel database gli oggetti il cui nome contiene
+     * il testo ricercato, una pagina alla volta
+     * @param entityClass la classe degli oggetti da cercare
+     * @param testo il testo ricercato
+     * @param cursore l' id dell' ultimo oggetto della pagina precedente, 0 per la prima pagina
+     * @param dimensione il numero massimo di oggetti della pagina
+     * @return una pagina di oggetti ordinati per id, oppure null se la classe non prevede la ricerca
+     * */
+    public Pagina<?> doRetrieveByNome(Class<?> entityClass, String testo, int cursore, int dimensione){
+        if(entityClass.getName().equals("acquisto.Carta"))
+            return new CartaDAO().doRetrieveByNome(testo, cursore, dimensione);
+
+        return null;
+    }
+
+    /**
+     * Il metodo permette di ottenere una pagina degli oggetti di un utente:
+     * lo storico degli ordini oppure le offerte messe in vendita
+     * @param entityClass la classe dell' oggetto, Ordine oppure Offerta
+     * @param idUtente id dell' utente
+     * @param cursore id dell' ultimo oggetto della pagina precedente, 0 per la prima pagina
+     * @param dimensione numero di oggetti della pagina
+     * @return una pagina di oggetti, null se la classe non e' gestita
+     * */
+    public Pagina<?> doRetrievePaginaByIdUtente(Class<?> entityClass, int idUtente, int cursore, int dimensione){
+        switch(entityClass.getName()){
+            case "acquisto.Ordine":
+                return new OrdineDAO().doRetrievePaginaByIdUtente(idUtente, cursore, dimensione);
+
+            case "acquisto.Offerta":
+                return new OffertaDAO().doRetrievePaginaByIdUtente(idUtente, cursore, dimensione);
+
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Il metodo permette di ottenere tutti gli oggetti di un utente:
+     * lo storico degli ordini oppure le offerte messe in vendita
+     * @param entityClass la classe dell' oggetto, Ordine oppure Offerta
+     * @param idUtente id dell' utente
+     * @return una lista di oggetti, null se la classe non e' gestita
+     * */
+    public List<?> doRetrieveByIdUtente(Class<?> entityClass, int idUtente){
+        switch(entityClass.getName()){
+            case "acquisto.Ordine":
+                return new OrdineDAO().doRetrieveByIdUtente(idUtente);
+
+            case "acquisto.Offerta":
+                return new OffertaDAO().getOfferteByIdUtente(idUtente);
+
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Il metodo permette di ottenere le offerte acquistate con un ordine
+     * @param entityClass la classe dell' oggetto, Offerta
+     * @param idOrdine id dell' ordine
+     * @return una lista di offerte, null se la classe non e' gestita
+     * */
+    public List<?> doRetrieveByIdOrdine(Class<?> entityClass, int idOrdine){
+        if(entityClass.getName().equals("acquisto.Offerta")){
+            try {
+                return new OffertaDAO().getOfferteByIdOrdine(idOrdine);
+            }
+
+            catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Il metodo permette di ottenere lo storico degli ordini di un utente,
+     * come doRetrieveByIdUtente ma con il tipo degli elementi
+     * @param entityClass la classe dell' oggetto, Ordine
+     * @param idUtente id dell' utente
+     * @return una lista di ordini, null se la classe non e' gestita
+     * */
+    public List<Ordine> getOrdiniByIdUtente(Class<?> entityClass, int idUtente){
+        if(entityClass.getName().equals("acquisto.Ordine"))
+            return new OrdineDAO().doRetrieveByIdUtente(idUtente);
+
+        return null;
+    }
+
+    /**
+     * Il metodo permette di ottenere le offerte acquistate con un ordine,
+     * come doRetrieveByIdOrdine ma con il tipo degli elementi
+     * @param entityClass la classe dell' oggetto, Offerta
+     * @param idOrdine id dell' ordine
+     * @return una lista di offerte, null se la classe non e' gestita
+     * */
+    public List<Offerta> getOfferteByIdOrdine(Class<?> entityClass, int idOrdine){
+        if(entityClass.getName().equals("acquisto.Offerta")){
+            try {
+                return new OffertaDAO().getOfferteByIdOrdine(idOrdine);
+            }
+
+            catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        return null;
+    }
+
+    public Carrello getCarrelloByIdUtente(Class<?> entityClass, int idUtente){
+        if(entityClass.getName().equals("acquisto.Carrello"))
+            return new CarrelloDAO().getCarrelloByIdUtente(idUtente);
+
+        return null;
+    }
+
+    public Pagina<?> doRetrievePaginaByIdCarta(Class<?> entityClass, int idCarta, int cursore, int dimensione){
+        if(entityClass.getName().equals("acquisto.Offerta"))
+            return new OffertaDAO().doRetrievePaginaByIdCarta(idCarta, cursore, dimensione);
+
+        return null;
+    }
+
+    public Pagina<?> doRetrievePaginaByIdDiscussione(Class<?> entityClass, int idDiscussione, int cursore, int dimensione){
+        if(entityClass.getName().equals("creazioneDiscussione.Messaggio"))
+            return new MessaggioDAO().doRetrievePaginaByIdDiscussione(idDiscussione, cursore, dimensione);
+
+        return null;
+    }
+
+    public Pagina<?> getPaginaScambiByIdMittente(Class<?> entityClass, int idUtenteMittente, int cursore, int dimensione){
+        if(entityClass.getName().equals("scambio.Scambio"))
+            return new ScambioDAO().getPaginaScambiByIdMittente(idUtenteMittente, cursore, dimensione);
+
+        return null;
+    }
+
+    public Pagina<?> getPaginaScambiByIdDestinatario(Class<?> entityClass, int idUtenteDestinatario, int cursore, int dimensione){
+        if(entityClass.getName().equals("scambio.Scambio"))
+            return new ScambioDAO().getPaginaScambiByIdDestinatario(idUtenteDestinatario, cursore, dimensione);
+
+        return null;
+    }
+
     public boolean getUtenteByEmail(Class<?> entityClass, String email){
         if(entityClass.getName().equals("registrazione.Utente"))
             return new UtenteDAO().getUtenteByEmail(email);
@@ -0,0 +1,204 @@
+package storage;
+
+import acquisto.Carrello;
+import acquisto.Offerta;
+import utils.Configurazione;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * La classe affianca FacadeDAO con metodi che restituiscono un CompletableFuture,
+ * cosi' che una servlet possa eseguire in parallelo letture indipendenti e
+ * attenderle insieme. Le operazioni vengono eseguite da un esecutore condiviso
+ * con al massimo db.asincrono.parallelismo operazioni contemporanee (per
+ * impostazione predefinita meta' di pool.maxActive, cosi' da lasciare
+ * connessioni alle richieste sincrone): su un JDK con i virtual thread ogni
+ * operazione ha il suo virtual thread, altrimenti un pool di thread di quella
+ * dimensione. Quando la coda dell' esecutore e' piena l' operazione viene
+ * eseguita dal thread chiamante. Ogni operazione legge con la stessa consistenza
+ * del thread che l' ha richiesta (vedi ConsistenzaLetture); un' operazione eseguita
+ * dal thread chiamante usa e aggiorna l' istante dell' ultima scrittura del chiamante
+ */
+
+public class FacadeDAOAsincrona {
+    private static final String CONFIGURAZIONE = "database.properties";
+    private static final int OPERAZIONI_IN_CODA_PER_THREAD = 50;
+
+    private static volatile Executor esecutore;
+    private static ExecutorService servizio;
+
+    private final FacadeDAO facade = new FacadeDAO();
+
+    /**
+     * Il metodo permette di eseguire un' operazione qualsiasi sull' esecutore della classe
+     * @param operazione l' operazione, ad esempio una chiamata a un DAO
+     * @return il risultato dell' operazione, completato eccezionalmente se l' operazione fallisce
+     * */
+    public <T> CompletableFuture<T> esegui(Supplier<T> operazione){
+        long ultimaScrittura = ConsistenzaLetture.getUltimaScrittura();
+        Thread chiamante = Thread.currentThread();
+
+        return CompletableFuture.supplyAsync(() -> {
+            //con la coda piena l' operazione viene eseguita dal chiamante, il cui istante non va cancellato
+            if (Thread.currentThread() == chiamante)
+                return operazione.get();
+
+            ConsistenzaLetture.inizia(ultimaScrittura);
+            try {
+                return operazione.get();
+            }
+
+            finally {
+                ConsistenzaLetture.termina();
+            }
+        }, esecutore());
+    }
+
+    /**
+     * @see FacadeDAO#doRetrieveAll(Class)
+     * */
+    public CompletableFuture<List<?>> doRetrieveAll(Class<?> entityClass){
+        return esegui(() -> facade.doRetrieveAll(entityClass));
+    }
+
+    /**
+     * @see FacadeDAO#doRetrieveById(Class, int)
+     * */
+    public CompletableFuture<Object> doRetrieveById(Class<?> entityClass, int entityId){
+        return esegui(() -> facade.doRetrieveById(entityClass, entityId));
+    }
+
+    /**
+     * @see FacadeDAO#doRetrievePagina(Class, int, int)
+     * */
+    public CompletableFuture<Pagina<?>> doRetrievePagina(Class<?> entityClass, int cursore, int dimensione){
+        return esegui(() -> facade.doRetrievePagina(entityClass, cursore, dimensione));
+    }
+
+    /**
+     * @see FacadeDAO#doRetrievePaginaByIdUtente(Class, int, int, int)
+     * */
+    public CompletableFuture<Pagina<?>> doRetrievePaginaByIdUtente(Class<?> entityClass, int idUtente, int cursore, int dimensione){
+        return esegui(() -> facade.doRetrievePaginaByIdUtente(entityClass, idUtente, cursore, dimensione));
+    }
+
+    /**
+     * @see FacadeDAO#doRetrieveByIdUtente(Class, int)
+     * */
+    public CompletableFuture<List<?>> doRetrieveByIdUtente(Class<?> entityClass, int idUtente){
+        return esegui(() -> facade.doRetrieveByIdUtente(entityClass, idUtente));
+    }
+
+    /**
+     * @see FacadeDAO#doRetrieveByIdOrdine(Class, int)
+     * */
+    public CompletableFuture<List<?>> doRetrieveByIdOrdine(Class<?> entityClass, int idOrdine){
+        return esegui(() -> facade.doRetrieveByIdOrdine(entityClass, idOrdine));
+    }
+
+    /**
+     * @see FacadeDAO#getOfferteByIdOrdine(Class, int)
+     * */
+    public CompletableFuture<List<Offerta>> getOfferteByIdOrdine(Class<?> entityClass, int idOrdine){
+        return esegui(() -> facade.getOfferteByIdOrdine(entityClass, idOrdine));
+    }
+
+    /**
+     * @see FacadeDAO#getCarrelloByIdUtente(Class, int)
+     * */
+    public CompletableFuture<Carrello> getCarrelloByIdUtente(Class<?> entityClass, int idUtente){
+        return esegui(() -> facade.getCarrelloByIdUtente(entityClass, idUtente));
+    }
+
+    /**
+     * Il metodo permette di fermare l' esecutore allo spegnimento dell' applicazione,
+     * attendendo per poco le operazioni in corso
+     * */
+    public static synchronized void chiudi(){
+        if (servizio == null)
+            return;
+
+        servizio.shutdown();
+        try {
+            servizio.awaitTermination(5, TimeUnit.SECONDS);
+        }
+
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        servizio = null;
+        esecutore = null;
+    }
+
+    private static Executor esecutore(){
+        Executor corrente = esecutore;
+        if (corrente == null)
+            corrente = crea();
+
+        return corrente;
+    }
+
+    private static synchronized Executor crea(){
+        if (esecutore != null)
+            return esecutore;
+
+        Configurazione configurazione = new Configurazione(CONFIGURAZIONE);
+        int parallelismo = Math.max(1, configurazione.intero("db.asincrono.parallelismo",
+                configurazione.intero("pool.maxActive", 100) / 2));
+
+        ExecutorService virtuali = threadVirtuali();
+        if (virtuali != null) {
+            //i virtual thread non hanno un limite: il semaforo limita le connessioni occupate
+            Semaphore permessi = new Semaphore(parallelismo);
+            servizio = virtuali;
+            esecutore = operazione -> virtuali.execute(() -> {
+                permessi.acquireUninterruptibly();
+                try {
+                    operazione.run();
+                }
+
+                finally {
+                    permessi.release();
+                }
+            });
+        }
+
+        else {
+            AtomicInteger numero = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelismo, parallelismo, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(parallelismo * OPERAZIONI_IN_CODA_PER_THREAD), operazione -> {
+                        Thread thread = new Thread(operazione, "facade-asincrona-" + numero.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }, new ThreadPoolExecutor.CallerRunsPolicy());
+            pool.allowCoreThreadTimeOut(true);
+            servizio = pool;
+            esecutore = pool;
+        }
+
+        return esecutore;
+    }
+
+    //Executors.newVirtualThreadPerTaskExecutor esiste da Java 21, il progetto compila per Java 8
+    private static ExecutorService threadVirtuali(){
+        try {
+            Method metodo = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) metodo.invoke(null);
+        }
+
+        catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package storage;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+
+import java.io.IOException;
+
+/**
+ * La classe porta l' istante dell' ultima scrittura di un utente da una richiesta
+ * alla successiva attraverso la sessione, cosi' che dopo una propria scrittura
+ * l' utente legga dal database primario e non da una replica ancora in ritardo
+ * (vedi ConsistenzaLetture)
+ */
+
+@WebFilter("/*")
+public class FiltroConsistenzaLetture extends HttpFilter {
+    private static final String ATTRIBUTO = "storage.ultimaScrittura";
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpSession session = httpRequest.getSession(false);
+        Long precedente = session == null ? null : (Long) session.getAttribute(ATTRIBUTO);
+
+        ConsistenzaLetture.inizia(precedente == null ? 0 : precedente);
+        try {
+            chain.doFilter(request, response);
+        }
+
+        finally {
+            long ultimaScrittura = ConsistenzaLetture.termina();
+
+            //la sessione puo' essere stata creata (login) o invalidata (logout) durante la richiesta
+            session = httpRequest.getSession(false);
+            if (session != null && ultimaScrittura > 0 && (precedente == null || ultimaScrittura != precedente)) {
+                try {
+                    session.setAttribute(ATTRIBUTO, ultimaScrittura);
+                }
+
+                catch (IllegalStateException e) {
+                    //sessione invalidata: non c'e' piu' nulla da ricordare
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package storage;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * La classe permette di popolare il database con dati sintetici di dimensione
+ * scelta: utenti, carte, offerte e ordini con le relative offerte, poi carrelli,
+ * richieste di scambio, discussioni e messaggi. A parita' di seme i dati generati
+ * sono sempre gli stessi, cosi' che i benchmark siano ripetibili.
+ * Le offerte si concentrano su poche carte, come accade per le carte piu' richieste
+ */
+
+public class GeneratoreDati {
+    private static final int DIMENSIONE_BATCH = 1000;
+
+    private static final String[] NOMI = {"Francesco", "Michele", "Raffaele", "Salvatore", "Giulia", "Chiara", "Marco", "Sara"};
+    private static final String[] COGNOMI = {"Rossi", "Bianchi", "Esposito", "Russo", "Romano", "Ferrari", "Greco", "Conti"};
+    private static final String[] SOGGETTI = {"Drago", "Mago", "Maga", "Guerriero", "Elfo", "Golem", "Fenice", "Cavaliere", "Spirito", "Titano"};
+    private static final String[] ATTRIBUTI = {"bianco", "nero", "oscuro", "celeste", "di fuoco", "delle ombre", "antico", "mistico", "d'acciaio", "occhi blu"};
+    private static final String[] CATEGORIE = {"Yu-Gi-Oh", "Pokemon", "Magic"};
+    private static final String[] RARITA = {"Comune", "Non comune", "Rara", "Ultra rara", "Segreta"};
+    private static final String[] CONDIZIONI = {"Mint", "Near Mint", "Excellent", "Good", "Played", "Poor"};
+    private static final String[] VIE = {"via Roma", "via Napoli", "corso Italia", "via Garibaldi", "piazza Dante"};
+
+    private final Random random;
+
+    /**
+     * Costruttore della classe GeneratoreDati
+     * @param seme seme del generatore di numeri casuali
+     * */
+    public GeneratoreDati(long seme) {
+        this.random = new Random(seme);
+    }
+
+    /**
+     * Il metodo permette di inserire i dati generati, in un' unica transazione
+     * @param connessione connessione al database, con lo schema gia' creato
+     * @param utenti numero di utenti
+     * @param carte numero di carte
+     * @param offerte numero di offerte
+     * @param ordini numero di ordini, ciascuno con da una a tre offerte
+     * */
+    public void genera(Connection connessione, int utenti, int carte, int offerte, int ordini) throws SQLException {
+        inTransazione(connessione, () -> {
+            generaUtenti(connessione, utenti);
+            generaCarte(connessione, carte);
+            generaOfferte(connessione, offerte);
+            generaOrdini(connessione, ordini);
+        });
+    }
+
+    /**
+     * Il metodo permette di inserire, in un' unica transazione, un carrello con da zero a tre offerte
+     * per ogni utente che non ne ha uno, richieste di scambio tra le offerte e discussioni con i loro messaggi
+     * @param connessione connessione al database, con utenti e offerte gia' generati
+     * @param scambi numero di richieste di scambio
+     * @param discussioni numero di discussioni
+     * @param messaggi numero di messaggi, distribuiti tra le discussioni
+     * */
+    public void generaInterazioni(Connection connessione, int scambi, int discussioni, int messaggi) throws SQLException {
+        inTransazione(connessione, () -> {
+            generaCarrelli(connessione);
+            generaScambi(connessione, scambi);
+            generaDiscussioni(connessione, discussioni, messaggi);
+        });
+    }
+
+    @FunctionalInterface
+    private interface Operazione {
+        void esegui() throws SQLException;
+    }
+
+    private static void inTransazione(Connection connessione, Operazione operazione) throws SQLException {
+        boolean autoCommit = connessione.getAutoCommit();
+        connessione.setAutoCommit(false);
+
+        try {
+            operazione.esegui();
+            connessione.commit();
+        }
+
+        catch (SQLException e) {
+            connessione.rollback();
+            throw e;
+        }
+
+        finally {
+            connessione.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void generaUtenti(Connection connessione, int utenti) throws SQLException {
+        int primo = massimo(connessione, "SELECT MAX(idUtente) FROM Utente") + 1;
+
+        try (PreparedStatement ps = connessione.prepareStatement(
+                "INSERT INTO Utente(username, passwordhash, nome, cognome, email) VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < utenti; i++) {
+                ps.setString(1, "utente" + (primo + i));
+                ps.setString(2, Integer.toHexString(random.nextInt()));
+                ps.setString(3, scegli(NOMI));
+                ps.setString(4, scegli(COGNOMI));
+                ps.setString(5, "utente" + (primo + i) + "@cardexchange.it");
+                aggiungi(ps, i);
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void generaCarte(Connection connessione, int carte) throws SQLException {
+        try (PreparedStatement ps = connessione.prepareStatement(
+                "INSERT INTO Carta(nome, categoria, rarita, immagine) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < carte; i++) {
+                ps.setString(1, scegli(SOGGETTI) + " " + scegli(ATTRIBUTI) + " " + (i + 1));
+                ps.setString(2, scegli(CATEGORIE));
+                //le carte comuni sono piu' numerose di quelle rare
+                ps.setString(3, RARITA[(int) (Math.pow(random.nextDouble(), 2) * RARITA.length)]);
+                ps.setString(4, "");
+                aggiungi(ps, i);
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void generaOfferte(Connection connessione, int offerte) throws SQLException {
+        int utenti = massimo(connessione, "SELECT MAX(idUtente) FROM Utente");
+        int carte = massimo(connessione, "SELECT MAX(idCarta) FROM Carta");
+
+        try (PreparedStatement ps = connessione.prepareStatement(
+                "INSERT INTO Offerta(condizione, prezzo, idUtente, idCarta) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < offerte; i++) {
+                ps.setString(1, scegli(CONDIZIONI));
+                ps.setInt(2, 1 + (int) (Math.pow(random.nextDouble(), 3) * 500));
+                ps.setInt(3, 1 + random.nextInt(utenti));
+                ps.setInt(4, 1 + (int) (Math.pow(random.nextDouble(), 3) * carte));
+                aggiungi(ps, i);
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void generaOrdini(Connection connessione, int ordini) throws SQLException {
+        int utenti = massimo(connessione, "SELECT MAX(idUtente) FROM Utente");
+        int offerte = massimo(connessione, "SELECT MAX(idOfferta) FROM Offerta");
+        int primo = massimo(connessione, "SELECT MAX(idOrdine) FROM Ordine") + 1;
+        LocalDate oggi = LocalDate.now();
+
+        try (PreparedStatement ordine = connessione.prepareStatement(
+                "INSERT INTO Ordine(data, indirizzo, idUtente, totale) VALUES (?, ?, ?, ?)");
+             PreparedStatement contiene = connessione.prepareStatement(
+                "INSERT INTO OrdineContieneOfferta(idOrdine, idOfferta) VALUES (?, ?)")) {
+            int righe = 0;
+
+            for (int i = 0; i < ordini; i++) {
+                ordine.setDate(1, Date.valueOf(oggi.minusDays(random.nextInt(3 * 365))));
+                ordine.setString(2, scegli(VIE) + " " + (1 + random.nextInt(200)));
+                ordine.setInt(3, 1 + random.nextInt(utenti));
+                ordine.setDouble(4, 1 + random.nextInt(1500));
+                aggiungi(ordine, i);
+
+                if (offerte == 0)
+                    continue;
+
+                Set<Integer> incluse = new HashSet<>();
+                for (int j = 1 + random.nextInt(3); j > 0; j--)
+                    incluse.add(1 + random.nextInt(offerte));
+
+                for (int idOfferta : incluse) {
+                    contiene.setInt(1, primo + i);
+                    contiene.setInt(2, idOfferta);
+                    contiene.addBatch();
+                    righe++;
+                }
+            }
+
+            //gli ordini devono esistere prima delle righe che li referenziano
+            ordine.executeBatch();
+            if (righe > 0)
+                contiene.executeBatch();
+        }
+    }
+
+    private void generaCarrelli(Connection connessione) throws SQLException {
+        int offerte = massimo(connessione, "SELECT MAX(idOfferta) FROM Offerta");
+        int primo = massimo(connessione, "SELECT MAX(idCarrello) FROM Carrello") + 1;
+        int idCarrello = primo;
+
+        try (Statement statement = connessione.createStatement();
+             ResultSet senzaCarrello = statement.executeQuery(
+                     "SELECT idUtente FROM Utente u WHERE NOT EXISTS (SELECT * FROM Carrello c WHERE c.idUtente = u.idUtente) ORDER BY idUtente");
+             PreparedStatement carrello = connessione.prepareStatement(
+                     "INSERT INTO Carrello(idCarrello, idUtente, totale) VALUES (?, ?, ?)");
+             PreparedStatement contiene = connessione.prepareStatement(
+                     "INSERT INTO CarrelloContieneOfferta(idCarrello, idOfferta) VALUES (?, ?)")) {
+            int righe = 0;
+
+            while (senzaCarrello.next()) {
+                carrello.setInt(1, idCarrello);
+                carrello.setInt(2, senzaCarrello.getInt(1));
+                carrello.setDouble(3, 0);
+                aggiungi(carrello, idCarrello - primo);
+
+                Set<Integer> incluse = new HashSet<>();
+                for (int j = offerte == 0 ? 0 : random.nextInt(4); j > 0; j--)
+                    incluse.add(1 + random.nextInt(offerte));
+
+                for (int idOfferta : incluse) {
+                    contiene.setInt(1, idCarrello);
+                    contiene.setInt(2, idOfferta);
+                    contiene.addBatch();
+                    righe++;
+                }
+
+                idCarrello++;
+            }
+
+            carrello.executeBatch();
+            if (righe > 0)
+                contiene.executeBatch();
+        }
+    }
+
+    private void generaScambi(Connection connessione, int scambi) throws SQLException {
+        int utenti = massimo(connessione, "SELECT MAX(idUtente) FROM Utente");
+        int offerte = massimo(connessione, "SELECT MAX(idOfferta) FROM Offerta");
+        if (offerte == 0)
+            return;
+
+        try (PreparedStatement ps = connessione.prepareStatement("INSERT INTO RichiestaDiScambio(idUtenteMittente, " +
+                "idUtenteDestinatario, idOffertaMittente, idOffertaDestinatario, conguaglio) VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < scambi; i++) {
+                ps.setInt(1, 1 + random.nextInt(utenti));
+                ps.setInt(2, 1 + random.nextInt(utenti));
+                ps.setInt(3, 1 + random.nextInt(offerte));
+                ps.setInt(4, 1 + random.nextInt(offerte));
+                ps.setDouble(5, random.nextInt(100));
+                aggiungi(ps, i);
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void generaDiscussioni(Connection connessione, int discussioni, int messaggi) throws SQLException {
+        int utenti = massimo(connessione, "SELECT MAX(idUtente) FROM Utente");
+        int primo = massimo(connessione, "SELECT MAX(idDiscussione) FROM Discussione") + 1;
+
+        try (PreparedStatement discussione = connessione.prepareStatement(
+                "INSERT INTO Discussione(idUtente, titolo) VALUES (?, ?)");
+             PreparedStatement messaggio = connessione.prepareStatement(
+                "INSERT INTO Messaggio(oggetto, corpo, idUtente, idDiscussione) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < discussioni; i++) {
+                discussione.setInt(1, 1 + random.nextInt(utenti));
+                discussione.setString(2, "Cerco " + scegli(SOGGETTI) + " " + scegli(ATTRIBUTI));
+                aggiungi(discussione, i);
+            }
+            discussione.executeBatch();
+
+            if (discussioni == 0)
+                return;
+
+            for (int i = 0; i < messaggi; i++) {
+                messaggio.setString(1, "Risposta " + (i + 1));
+                messaggio.setString(2, "Disponibile in condizione " + scegli(CONDIZIONI));
+                messaggio.setInt(3, 1 + random.nextInt(utenti));
+                //come le offerte, i messaggi si concentrano sulle discussioni piu' attive
+                messaggio.setInt(4, primo + (int) (Math.pow(random.nextDouble(), 2) * discussioni));
+                aggiungi(messaggio, i);
+            }
+            messaggio.executeBatch();
+        }
+    }
+
+    private void aggiungi(PreparedStatement ps, int indice) throws SQLException {
+        ps.addBatch();
+        if ((indice + 1) % DIMENSIONE_BATCH == 0)
+            ps.executeBatch();
+    }
+
+    private String scegli(String[] valori) {
+        return valori[random.nextInt(valori.length)];
+    }
+
+    private static int massimo(Connection connessione, String query) throws SQLException {
+        try (Statement statement = connessione.createStatement();
+             ResultSet resultSet = statement.executeQuery(query)) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+}
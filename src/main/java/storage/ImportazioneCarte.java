@@ -0,0 +1,613 @@
+package storage;
+
+import acquisto.Carta;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * La classe importa nella tabella Carta un catalogo di carte da un file CSV o JSON, ad esempio
+ * l' uscita di una nuova espansione. Il file viene letto in streaming da un FileChannel e le
+ * carte vengono scritte a blocchi di DIMENSIONE_BLOCCO con un' unica connessione: in memoria
+ * c' e' un solo blocco alla volta, qualunque sia la dimensione del file.
+ * Ogni carta e' una riga con le colonne idCarta, nome, categoria, rarita e immagine: idCarta e
+ * immagine sono facoltative. Le carte con un id gia' presente vengono aggiornate; una carta senza
+ * id aggiorna quella con gli stessi nome, categoria e rarita, se esiste, altrimenti viene inserita
+ * con un id nuovo (INSERT ... ON DUPLICATE KEY UPDATE; su MySQL, con rewriteBatchedStatements=true,
+ * ogni blocco diventa una sola INSERT con piu' VALUES). Per questo la stessa espansione puo' essere
+ * importata piu' volte senza duplicare le carte; le righe ripetute nello stesso blocco diventano una.
+ * Le carte esistenti vengono cercate per nome, un blocco alla volta: la tabella non ha una chiave
+ * unica su nome, categoria e rarita, quindi due importazioni contemporanee possono ancora duplicarle.
+ * Le righe non valide vengono scartate e riportate nel risultato; ogni blocco e' una
+ * transazione, quindi se il database rifiuta un blocco quelli precedenti restano importati.
+ * Il CSV ha una riga di intestazione con i nomi delle colonne, separate da virgola o punto e
+ * virgola; il JSON e' un array di oggetti oppure un oggetto per riga (JSON Lines).
+ * Alla fine il catalogo in memoria, la cache delle ricerche e quella delle carte vengono
+ * ricaricati, su questo nodo e sugli altri (vedi RegistroModifiche).
+ * Uso: java storage.ImportazioneCarte catalogo.csv
+ */
+
+public final class ImportazioneCarte {
+    private static final String UPSERT_QUERY = "INSERT INTO Carta (idCarta, nome, categoria, rarita, immagine) VALUES (?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE nome = VALUES(nome), categoria = VALUES(categoria), rarita = VALUES(rarita), immagine = VALUES(immagine)";
+    private static final int DIMENSIONE_BLOCCO = InserimentoMultiplo.DIMENSIONE_BLOCCO;
+    private static final String SELECT_ESISTENTI_QUERY = "SELECT idCarta, nome, categoria, rarita FROM Carta WHERE nome IN (" +
+            String.join(", ", Collections.nCopies(DIMENSIONE_BLOCCO, "?")) + ") ORDER BY idCarta";
+    private static final int LUNGHEZZA_MASSIMA = 255;
+    private static final int LUNGHEZZA_MASSIMA_IMMAGINE = 1024;
+    private static final int ERRORI_RIPORTATI = 100;
+
+    /**
+     * L'interfaccia modella chi riceve l' avanzamento dell' importazione, dopo ogni blocco
+     */
+    @FunctionalInterface
+    public interface Avanzamento {
+        /**
+         * @param righe righe lette finora
+         * @param frazione frazione del file letta, tra 0 e 1
+         * @param righeAlSecondo righe lette al secondo dall' inizio dell' importazione
+         * */
+        void aggiorna(long righe, double frazione, double righeAlSecondo);
+    }
+
+    /**
+     * La classe modella l' esito di un' importazione
+     */
+    public static final class Risultato {
+        private long righe, importate, scartate;
+        private long durataNanosecondi;
+        private final List<String> errori = new ArrayList<>();
+
+        public long getRighe() {
+            return righe;
+        }
+
+        public long getImportate() {
+            return importate;
+        }
+
+        public long getScartate() {
+            return scartate;
+        }
+
+        /**
+         * @return i primi ERRORI_RIPORTATI errori di validazione, con il numero della riga
+         * */
+        public List<String> getErrori() {
+            return Collections.unmodifiableList(errori);
+        }
+
+        public double getSecondi() {
+            return durataNanosecondi / 1e9;
+        }
+
+        public double getRigheAlSecondo() {
+            return durataNanosecondi == 0 ? 0 : righe / getSecondi();
+        }
+
+        private void scarta(long riga, String motivo) {
+            scartate++;
+            if (errori.size() < ERRORI_RIPORTATI)
+                errori.add("riga " + riga + ": " + motivo);
+        }
+    }
+
+    private ImportazioneCarte(){}
+
+    public static void main(String[] args) throws IOException, SQLException {
+        if (args.length != 1) {
+            System.out.println("Uso: java storage.ImportazioneCarte <catalogo.csv | catalogo.json>");
+            System.out.println("Le carte senza idCarta aggiornano quelle con gli stessi nome, categoria e rarita: " +
+                    "la stessa espansione puo' essere importata di nuovo");
+            return;
+        }
+
+        try {
+            Risultato risultato = importa(Paths.get(args[0]), (righe, frazione, righeAlSecondo) ->
+                    System.out.println(String.format(Locale.ROOT, "%10d righe  %5.1f%%  %10.0f righe/s",
+                            righe, frazione * 100, righeAlSecondo)));
+
+            System.out.println(String.format(Locale.ROOT, "== %d righe in %.1f s (%.0f righe/s): %d importate, %d scartate",
+                    risultato.getRighe(), risultato.getSecondi(), risultato.getRigheAlSecondo(),
+                    risultato.getImportate(), risultato.getScartate()));
+            for (String errore : risultato.getErrori())
+                System.out.println(errore);
+        }
+
+        finally {
+            ConPool.chiudi();
+        }
+    }
+
+    /**
+     * Il metodo permette di importare un catalogo, nel formato indicato dall' estensione del file
+     * (.csv, oppure .json o .jsonl)
+     * @param file il file del catalogo, in UTF-8
+     * @param avanzamento riceve l' avanzamento dopo ogni blocco, null se non serve
+     * @return l' esito dell' importazione
+     * */
+    public static Risultato importa(Path file, Avanzamento avanzamento) throws IOException, SQLException {
+        String nome = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        boolean json = nome.endsWith(".json") || nome.endsWith(".jsonl");
+        if (!json && !nome.endsWith(".csv"))
+            throw new IOException("Formato del catalogo non riconosciuto: " + file.getFileName() + " (atteso .csv, .json o .jsonl)");
+
+        Risultato risultato = new Risultato();
+        long inizio = System.nanoTime();
+
+        //le letture successive all' importazione devono vedere le carte importate
+        ConsistenzaLetture.registraScrittura();
+        try (FileChannel canale = FileChannel.open(file, StandardOpenOption.READ);
+             BufferedReader reader = new BufferedReader(Channels.newReader(canale, StandardCharsets.UTF_8.newDecoder(), -1));
+             Connection connessione = ConPool.getConnection()) {
+            LettoreRighe lettore = json ? new LettoreJson(reader) : new LettoreCsv(reader);
+            long dimensione = Math.max(1, canale.size());
+            List<Carta> blocco = new ArrayList<>(DIMENSIONE_BLOCCO);
+            Map<String, String> valori;
+
+            while ((valori = lettore.prossima()) != null) {
+                risultato.righe++;
+                Carta carta = valida(valori, lettore.getRiga(), risultato);
+                if (carta != null)
+                    blocco.add(carta);
+
+                if (blocco.size() == DIMENSIONE_BLOCCO) {
+                    scrivi(connessione, blocco, risultato, lettore.getRiga());
+                    if (avanzamento != null)
+                        avanzamento.aggiorna(risultato.righe, Math.min(1, (double) canale.position() / dimensione),
+                                risultato.righe / ((System.nanoTime() - inizio) / 1e9));
+                }
+            }
+
+            scrivi(connessione, blocco, risultato, lettore.getRiga());
+            if (avanzamento != null)
+                avanzamento.aggiorna(risultato.righe, 1, risultato.righe / ((System.nanoTime() - inizio) / 1e9));
+        }
+
+        finally {
+            risultato.durataNanosecondi = System.nanoTime() - inizio;
+            //anche un' importazione interrotta puo' aver scritto dei blocchi
+            if (risultato.importate > 0) {
+                CartaDAO.applicaImportazione();
+                RegistroModifiche.registra(RegistroModifiche.CATALOGO, 0);
+            }
+        }
+
+        return risultato;
+    }
+
+    private static void scrivi(Connection connessione, List<Carta> blocco, Risultato risultato, long riga) throws SQLException {
+        try {
+            List<Carta> carte = risolvi(connessione, blocco);
+            InserimentoMultiplo.esegui(connessione, UPSERT_QUERY, carte, (statement, carta) -> {
+                if (carta.getIdCarta() > 0)
+                    statement.setInt(1, carta.getIdCarta());
+                else
+                    statement.setNull(1, Types.INTEGER);
+                statement.setString(2, carta.getNome());
+                statement.setString(3, carta.getCategoria());
+                statement.setString(4, carta.getRarita());
+                statement.setString(5, carta.getImmagine());
+            }, null);
+        }
+
+        catch (SQLException e) {
+            throw new SQLException("Importazione interrotta nel blocco che termina alla riga " + riga + ": " +
+                    risultato.importate + " carte dei blocchi precedenti sono state importate", e);
+        }
+
+        risultato.importate += blocco.size();
+        blocco.clear();
+    }
+
+    /*
+    Le carte senza id del blocco prendono l' id della carta con gli stessi nome, categoria e rarita gia' presente,
+    cosi' che l' upsert la aggiorni invece di inserirne una nuova; tra le righe ripetute resta l' ultima
+    */
+    private static List<Carta> risolvi(Connection connessione, List<Carta> blocco) throws SQLException {
+        List<Carta> carte = new ArrayList<>(blocco.size());
+        Map<String, Carta> senzaId = new HashMap<>();
+        Map<String, Integer> posizioni = new HashMap<>();
+        Set<String> nomi = new LinkedHashSet<>();
+        for (Carta carta : blocco) {
+            if (carta.getIdCarta() > 0) {
+                carte.add(carta);
+                continue;
+            }
+
+            String chiave = chiave(carta.getNome(), carta.getCategoria(), carta.getRarita());
+            Integer posizione = posizioni.putIfAbsent(chiave, carte.size());
+            if (posizione == null)
+                carte.add(carta);
+            else
+                carte.set(posizione, carta);
+
+            senzaId.put(chiave, carta);
+            nomi.add(carta.getNome());
+        }
+
+        if (senzaId.isEmpty())
+            return carte;
+
+        List<String> daCercare = new ArrayList<>(nomi);
+        try (PreparedStatement statement = connessione.prepareStatement(SELECT_ESISTENTI_QUERY)) {
+            //gli ultimi segnaposto ripetono l' ultimo nome, cosi' il testo della query non cambia
+            for (int i = 0; i < DIMENSIONE_BLOCCO; i++)
+                statement.setString(i + 1, daCercare.get(Math.min(i, daCercare.size() - 1)));
+
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    //con piu' carte uguali gia' presenti viene aggiornata quella con l' id minore
+                    Carta carta = senzaId.remove(chiave(rs.getString(2), rs.getString(3), rs.getString(4)));
+                    if (carta != null)
+                        carta.setIdCarta(rs.getInt(1));
+                }
+            }
+        }
+
+        return carte;
+    }
+
+    private static String chiave(String nome, String categoria, String rarita) {
+        return nome + '\u0000' + categoria + '\u0000' + rarita;
+    }
+
+    //restituisce null e registra l' errore se la riga non e' valida
+    private static Carta valida(Map<String, String> valori, long riga, Risultato risultato) {
+        String id = pulisci(valori.get("idcarta"));
+        String nome = pulisci(valori.get("nome"));
+        String categoria = pulisci(valori.get("categoria"));
+        String rarita = pulisci(valori.get("rarita"));
+        String immagine = pulisci(valori.get("immagine"));
+
+        int idCarta = 0;
+        if (!id.isEmpty()) {
+            try {
+                idCarta = Integer.parseInt(id);
+            }
+
+            catch (NumberFormatException e) {
+                idCarta = -1;
+            }
+
+            if (idCarta <= 0) {
+                risultato.scarta(riga, "idCarta non valido: " + id);
+                return null;
+            }
+        }
+
+        if (nome.isEmpty() || categoria.isEmpty() || rarita.isEmpty()) {
+            risultato.scarta(riga, "nome, categoria e rarita sono obbligatori");
+            return null;
+        }
+
+        if (nome.length() > LUNGHEZZA_MASSIMA || categoria.length() > LUNGHEZZA_MASSIMA || rarita.length() > LUNGHEZZA_MASSIMA ||
+                immagine.length() > LUNGHEZZA_MASSIMA_IMMAGINE) {
+            risultato.scarta(riga, "valore troppo lungo");
+            return null;
+        }
+
+        return new Carta(idCarta, nome, categoria, rarita, immagine);
+    }
+
+    private static String pulisci(String valore) {
+        return valore == null ? "" : valore.trim();
+    }
+
+    /**
+     * L'interfaccia modella la lettura delle righe del catalogo, come mappe dal nome
+     * della colonna in minuscolo al valore
+     */
+    private interface LettoreRighe {
+        /**
+         * @return i valori della riga successiva, null alla fine del file
+         * */
+        Map<String, String> prossima() throws IOException;
+
+        /**
+         * @return il numero della riga del file in cui inizia l' ultima riga letta
+         * */
+        long getRiga();
+    }
+
+    private static final class LettoreCsv implements LettoreRighe {
+        private final Reader reader;
+        private final List<String> colonne;
+        private final char separatore;
+        private final List<String> campi = new ArrayList<>();
+        private final StringBuilder campo = new StringBuilder();
+        private long riga = 1, inizioRiga;
+        private int successivo = -2;
+
+        LettoreCsv(Reader reader) throws IOException {
+            this.reader = reader;
+            String intestazione = leggiRigaIntestazione();
+            if (intestazione == null)
+                throw new IOException("Il catalogo CSV e' vuoto");
+
+            //il punto e virgola e' il separatore dei CSV esportati dai fogli di calcolo con impostazioni italiane
+            separatore = intestazione.indexOf(';') >= 0 && intestazione.indexOf(',') < 0 ? ';' : ',';
+            colonne = new ArrayList<>();
+            for (String colonna : intestazione.split(String.valueOf(separatore), -1))
+                colonne.add(colonna.trim().replace("\"", "").toLowerCase(Locale.ROOT));
+
+            for (String obbligatoria : new String[]{"nome", "categoria", "rarita"}) {
+                if (!colonne.contains(obbligatoria))
+                    throw new IOException("Manca la colonna " + obbligatoria + " nell' intestazione del catalogo CSV");
+            }
+        }
+
+        private String leggiRigaIntestazione() throws IOException {
+            StringBuilder intestazione = new StringBuilder();
+            int c = reader.read();
+            if (c == '﻿')
+                c = reader.read();
+
+            while (c != -1 && c != '\n') {
+                if (c != '\r')
+                    intestazione.append((char) c);
+                c = reader.read();
+            }
+
+            return c == -1 && intestazione.length() == 0 ? null : intestazione.toString();
+        }
+
+        @Override
+        public Map<String, String> prossima() throws IOException {
+            List<String> valori;
+            do {
+                valori = leggiCampi();
+                if (valori == null)
+                    return null;
+            } while (valori.size() == 1 && valori.get(0).isEmpty());
+
+            Map<String, String> riga = new HashMap<>();
+            for (int i = 0; i < Math.min(valori.size(), colonne.size()); i++)
+                riga.put(colonne.get(i), valori.get(i));
+
+            return riga;
+        }
+
+        @Override
+        public long getRiga() {
+            return inizioRiga;
+        }
+
+        private int leggi() throws IOException {
+            if (successivo != -2) {
+                int c = successivo;
+                successivo = -2;
+                return c;
+            }
+
+            return reader.read();
+        }
+
+        //i campi tra virgolette possono contenere separatori, a capo e virgolette raddoppiate
+        private List<String> leggiCampi() throws IOException {
+            riga++;
+            inizioRiga = riga;
+            campi.clear();
+            campo.setLength(0);
+            boolean virgolette = false;
+            int c = leggi();
+            if (c == -1)
+                return null;
+
+            while (true) {
+                if (virgolette) {
+                    if (c == -1)
+                        throw new IOException("Virgolette non chiuse nel campo iniziato alla riga " + inizioRiga);
+
+                    if (c == '"') {
+                        int dopo = leggi();
+                        if (dopo == '"')
+                            campo.append('"');
+                        else {
+                            virgolette = false;
+                            c = dopo;
+                            continue;
+                        }
+                    }
+
+                    else {
+                        if (c == '\n')
+                            riga++;
+                        campo.append((char) c);
+                    }
+                }
+
+                else if (c == '"' && campo.length() == 0)
+                    virgolette = true;
+
+                else if (c == separatore) {
+                    campi.add(campo.toString());
+                    campo.setLength(0);
+                }
+
+                else if (c == '\n' || c == -1) {
+                    campi.add(campo.toString());
+                    return new ArrayList<>(campi);
+                }
+
+                else if (c == '\r') {
+                    int dopo = leggi();
+                    if (dopo != '\n')
+                        successivo = dopo;
+                    campi.add(campo.toString());
+                    return new ArrayList<>(campi);
+                }
+
+                else
+                    campo.append((char) c);
+
+                c = leggi();
+            }
+        }
+    }
+
+    //legge in streaming un array di oggetti piatti, o un oggetto per riga, senza costruire l' intero documento
+    private static final class LettoreJson implements LettoreRighe {
+        private final Reader reader;
+        private final StringBuilder testo = new StringBuilder();
+        private long riga = 1, inizioRiga;
+        private int successivo = -2;
+
+        LettoreJson(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Map<String, String> prossima() throws IOException {
+            int c;
+            //tra un oggetto e l' altro ci sono solo parentesi dell' array, virgole e spazi
+            while ((c = leggiSignificativo()) != -1 && c != '{') {
+                if (c != '[' && c != ']' && c != ',')
+                    throw new IOException("Carattere inatteso '" + (char) c + "' alla riga " + riga + " del catalogo JSON");
+            }
+
+            if (c == -1)
+                return null;
+
+            inizioRiga = riga;
+            Map<String, String> valori = new HashMap<>();
+            c = leggiSignificativo();
+            if (c == '}')
+                return valori;
+
+            while (true) {
+                if (c != '"')
+                    throw errore("nome di un campo");
+                String nome = leggiStringa();
+
+                if (leggiSignificativo() != ':')
+                    throw errore("':'");
+                valori.put(nome.toLowerCase(Locale.ROOT), leggiValore());
+
+                c = leggiSignificativo();
+                if (c == '}')
+                    return valori;
+                if (c != ',')
+                    throw errore("',' o '}'");
+                c = leggiSignificativo();
+            }
+        }
+
+        @Override
+        public long getRiga() {
+            return inizioRiga;
+        }
+
+        private IOException errore(String atteso) {
+            return new IOException("Atteso " + atteso + " alla riga " + riga + " del catalogo JSON");
+        }
+
+        private int leggi() throws IOException {
+            int c;
+            if (successivo != -2) {
+                c = successivo;
+                successivo = -2;
+            }
+
+            else
+                c = reader.read();
+
+            if (c == '\n')
+                riga++;
+            return c;
+        }
+
+        private int leggiSignificativo() throws IOException {
+            int c;
+            do {
+                c = leggi();
+            } while (c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '﻿');
+
+            return c;
+        }
+
+        //numeri, true, false e null vengono restituiti come testo; null come valore assente
+        private String leggiValore() throws IOException {
+            int c = leggiSignificativo();
+            if (c == '"')
+                return leggiStringa();
+            if (c == '{' || c == '[')
+                throw errore("un valore semplice, non un oggetto o un array,");
+
+            testo.setLength(0);
+            while (c != -1 && c != ',' && c != '}' && c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                testo.append((char) c);
+                c = leggi();
+            }
+
+            if (c == '\n')
+                riga--;
+            successivo = c;
+
+            String valore = testo.toString();
+            if (valore.isEmpty())
+                throw errore("un valore");
+            return valore.equals("null") ? null : valore;
+        }
+
+        private String leggiStringa() throws IOException {
+            testo.setLength(0);
+            int c;
+
+            while ((c = leggi()) != '"') {
+                if (c == -1)
+                    throw errore("'\"' di chiusura di una stringa");
+
+                if (c == '\\') {
+                    c = leggi();
+                    switch (c) {
+                        case 'n': testo.append('\n'); break;
+                        case 't': testo.append('\t'); break;
+                        case 'r': testo.append('\r'); break;
+                        case 'b': testo.append('\b'); break;
+                        case 'f': testo.append('\f'); break;
+                        case 'u':
+                            char[] cifre = new char[4];
+                            for (int i = 0; i < 4; i++)
+                                cifre[i] = (char) leggi();
+                            try {
+                                testo.append((char) Integer.parseInt(new String(cifre), 16));
+                            }
+
+                            catch (NumberFormatException e) {
+                                throw errore("una sequenza \\u valida");
+                            }
+                            break;
+                        case -1: throw errore("'\"' di chiusura di una stringa");
+                        default: testo.append((char) c);
+                    }
+                }
+
+                else
+                    testo.append((char) c);
+            }
+
+            return testo.toString();
+        }
+    }
+}
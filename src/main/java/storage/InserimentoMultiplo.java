@@ -0,0 +1,131 @@
+package storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * La classe permette ai DAO di inserire piu' righe con un' unica connessione e in
+ * un' unica transazione, inviando le righe al database a blocchi con il batch JDBC.
+ * Su MySQL, con rewriteBatchedStatements=true, ogni blocco diventa una sola INSERT
+ * con piu' VALUES, cioe' un solo round trip. Se una riga fallisce nessuna viene inserita.
+ * Se la connessione e' gia' in una transazione, ad esempio quella di UnitaDiLavoro, le righe
+ * ne fanno parte: commit e rollback restano a chi l' ha aperta.
+ * Le chiavi generate vengono assegnate agli oggetti solo dopo il commit (in un' UnitaDiLavoro
+ * alla sua conferma): se l' inserimento viene annullato gli oggetti restano senza id
+ */
+
+final class InserimentoMultiplo {
+    static final int DIMENSIONE_BLOCCO = 500;
+
+    /**
+     * L'interfaccia modella l' impostazione dei parametri dell' INSERT per un oggetto
+     * @param <T> tipo degli oggetti inseriti
+     */
+    @FunctionalInterface
+    interface Parametri<T> {
+        void imposta(PreparedStatement statement, T oggetto) throws SQLException;
+    }
+
+    private InserimentoMultiplo(){}
+
+    /**
+     * Il metodo permette di inserire tutti gli oggetti
+     * @param query l' INSERT di una riga
+     * @param oggetti gli oggetti da inserire
+     * @param parametri imposta i parametri dell' INSERT per ogni oggetto
+     * @param chiave riceve ogni oggetto con la chiave generata dal database, dopo il commit; null se non serve
+     * @return le chiavi generate, nell' ordine degli oggetti; null se chiave e' null
+     * */
+    static <T> int[] esegui(String query, List<T> oggetti, Parametri<? super T> parametri,
+                            ObjIntConsumer<? super T> chiave) throws SQLException {
+        if (oggetti.isEmpty())
+            return chiave == null ? null : new int[0];
+
+        try (Connection connessione = ConPool.getConnection()) {
+            return esegui(connessione, query, oggetti, parametri, chiave);
+        }
+    }
+
+    /**
+     * Il metodo permette di inserire tutti gli oggetti con una connessione gia' ottenuta, ad esempio
+     * per inserire a blocchi i dati letti da un file senza prendere una connessione per blocco
+     * @param connessione la connessione da usare, in auto-commit oppure in una transazione gia' aperta
+     * @param query l' INSERT di una riga
+     * @param oggetti gli oggetti da inserire
+     * @param parametri imposta i parametri dell' INSERT per ogni oggetto
+     * @param chiave riceve ogni oggetto con la chiave generata dal database, dopo il commit; null se non serve
+     * @return le chiavi generate, nell' ordine degli oggetti; null se chiave e' null
+     * */
+    static <T> int[] esegui(Connection connessione, String query, List<T> oggetti, Parametri<? super T> parametri,
+                            ObjIntConsumer<? super T> chiave) throws SQLException {
+        if (oggetti.isEmpty())
+            return chiave == null ? null : new int[0];
+
+        int[] chiavi = chiave == null ? null : new int[oggetti.size()];
+
+        boolean autoCommit = connessione.getAutoCommit();
+        if (autoCommit)
+            connessione.setAutoCommit(false);
+
+        try (PreparedStatement statement = chiave == null ? connessione.prepareStatement(query) :
+                connessione.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+            for (int inizio = 0; inizio < oggetti.size(); inizio += DIMENSIONE_BLOCCO) {
+                List<T> blocco = oggetti.subList(inizio, Math.min(oggetti.size(), inizio + DIMENSIONE_BLOCCO));
+                for (T oggetto : blocco) {
+                    parametri.imposta(statement, oggetto);
+                    statement.addBatch();
+                }
+
+                statement.executeBatch();
+                if (chiave != null)
+                    leggiChiavi(statement, chiavi, inizio, blocco.size());
+            }
+
+            if (autoCommit)
+                connessione.commit();
+        }
+
+        catch (SQLException | RuntimeException e) {
+            if (autoCommit)
+                connessione.rollback();
+            throw e;
+        }
+
+        finally {
+            if (autoCommit)
+                connessione.setAutoCommit(true);
+        }
+
+        //senza auto-commit la transazione e' di chi l' ha aperta: le chiavi valgono solo dopo la sua conferma
+        if (chiave != null) {
+            Runnable assegna = () -> {
+                for (int i = 0; i < chiavi.length; i++)
+                    chiave.accept(oggetti.get(i), chiavi[i]);
+            };
+
+            if (autoCommit)
+                assegna.run();
+            else
+                UnitaDiLavoro.dopoConferma(assegna);
+        }
+
+        return chiavi;
+    }
+
+    //le chiavi generate arrivano nell' ordine delle righe del blocco
+    private static void leggiChiavi(PreparedStatement statement, int[] chiavi, int inizio, int righe) throws SQLException {
+        try (ResultSet rs = statement.getGeneratedKeys()) {
+            for (int i = inizio; i < inizio + righe; i++) {
+                if (!rs.next())
+                    throw new SQLException("Il database ha restituito meno chiavi generate delle righe inserite");
+
+                chiavi[i] = rs.getInt(1);
+            }
+        }
+    }
+}
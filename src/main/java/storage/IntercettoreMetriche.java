@@ -0,0 +1,151 @@
+package storage;
+
+import org.apache.tomcat.jdbc.pool.ConnectionPool;
+import org.apache.tomcat.jdbc.pool.PooledConnection;
+import org.apache.tomcat.jdbc.pool.interceptor.AbstractCreateStatementInterceptor;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * La classe e' un intercettore JDBC del pool che misura le istruzioni SQL: ogni statement
+ * creato da una connessione viene avvolto da un proxy che registra in StatisticheSql la
+ * durata di ogni esecuzione, le righe modificate e gli errori, con il testo SQL passato a
+ * prepareStatement o al metodo execute. Va configurato in pool.jdbcInterceptors prima di
+ * StatementCache, cosi' che misuri anche gli statement riusati dalla cache.
+ * Se il registro delle query lente e' attivo il proxy conserva anche i parametri passati
+ * ai metodi set, e le esecuzioni oltre la soglia vengono passate a RegistroQueryLente,
+ * che decide quali valori possono essere scritti nel file.
+ * Il costo per esecuzione e' una chiamata riflessiva, una lettura da una mappa e
+ * qualche incremento senza lock; i ResultSet non vengono avvolti
+ */
+
+public class IntercettoreMetriche extends AbstractCreateStatementInterceptor {
+
+    @Override
+    public Object createStatement(Object proxy, Method method, Object[] args, Object statement, long time) {
+        //per prepareStatement e prepareCall il testo SQL e' il primo argomento, per createStatement arriva con execute
+        String sql = compare(CREATE_STATEMENT, method) ? null : (String) args[0];
+
+        return Proxy.newProxyInstance(IntercettoreMetriche.class.getClassLoader(), new Class<?>[]{method.getReturnType()},
+                new Misuratore(statement, sql));
+    }
+
+    @Override
+    public void closeInvoked() {
+    }
+
+    @Override
+    public void reset(ConnectionPool parent, PooledConnection con) {
+    }
+
+    private final class Misuratore implements InvocationHandler {
+        private final Object statement;
+        private final String sql;
+        private Object[] parametri;
+
+        Misuratore(Object statement, String sql) {
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!isExecute(method, false)) {
+                if (RegistroQueryLente.attivo())
+                    conserva(method, args);
+
+                return chiama(method, args);
+            }
+
+            String testo = sql != null ? sql : args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+            StatisticheSql.Voce voce = StatisticheSql.voce(testo);
+            long inizio = System.nanoTime();
+            Object risultato;
+
+            try {
+                risultato = method.invoke(statement, args);
+            }
+
+            catch (InvocationTargetException e) {
+                long durata = System.nanoTime() - inizio;
+                voce.registraErrore(durata);
+                if (RegistroQueryLente.lenta(durata))
+                    RegistroQueryLente.registra(testo, copia(), durata, e.getCause());
+                throw e.getCause();
+            }
+
+            long durata = System.nanoTime() - inizio;
+            voce.registraEsecuzione(durata);
+            if (RegistroQueryLente.lenta(durata))
+                RegistroQueryLente.registra(testo, copia(), durata, null);
+            if (risultato instanceof Integer || risultato instanceof Long)
+                voce.registraRighe(((Number) risultato).longValue());
+            else if (risultato instanceof int[])
+                voce.registraRighe(somma((int[]) risultato));
+            //execute restituisce false per le modifiche, che riportano le righe in getUpdateCount
+            else if (Boolean.FALSE.equals(risultato))
+                voce.registraRighe(Math.max(0, ((Statement) statement).getUpdateCount()));
+
+            return risultato;
+        }
+
+        //setInt(1, ...), setString(2, ...) e simili: con executeBatch restano i parametri dell' ultima riga
+        private void conserva(Method method, Object[] args) {
+            String nome = method.getName();
+            if (nome.equals("clearParameters")) {
+                parametri = null;
+                return;
+            }
+
+            if (!nome.startsWith("set") || args == null || args.length < 2 || !(args[0] instanceof Integer))
+                return;
+
+            int indice = (Integer) args[0] - 1;
+            if (indice < 0)
+                return;
+
+            if (parametri == null)
+                parametri = new Object[Math.max(4, indice + 1)];
+            else if (indice >= parametri.length)
+                parametri = Arrays.copyOf(parametri, Math.max(indice + 1, parametri.length * 2));
+
+            parametri[indice] = nome.equals("setNull") ? null : args[1];
+        }
+
+        //i parametri dell' esecuzione, fino all' ultimo impostato: lo statement puo' essere riusato
+        private Object[] copia() {
+            if (parametri == null)
+                return null;
+
+            int numero = parametri.length;
+            while (numero > 0 && parametri[numero - 1] == null)
+                numero--;
+
+            return Arrays.copyOf(parametri, numero);
+        }
+
+        private Object chiama(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(statement, args);
+            }
+
+            catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    //executeBatch restituisce SUCCESS_NO_INFO (-2) per le righe di cui il driver non conosce il numero
+    private static long somma(int[] righe) {
+        long somma = 0;
+        for (int riga : righe)
+            somma += Math.max(0, riga);
+
+        return somma;
+    }
+}
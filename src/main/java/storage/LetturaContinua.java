@@ -0,0 +1,190 @@
+package storage;
+
+import org.apache.tomcat.jdbc.pool.PooledConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * La classe permette ai DAO di leggere il risultato di una query una riga alla volta,
+ * senza caricarlo tutto in memoria. Lo statement e' di sola lettura e in avanti, con
+ * fetch size ConPool.getDimensioneFetch(): su MySQL, con useCursorFetch=true, il
+ * driver legge il risultato da un cursore lato server a blocchi di quella dimensione.
+ * La connessione resta occupata fino alla fine della lettura, percio' il timer delle
+ * connessioni abbandonate del pool viene azzerato a ogni blocco di righe
+ */
+
+final class LetturaContinua {
+
+    private LetturaContinua(){}
+
+    /**
+     * Il metodo permette di passare a un consumatore gli oggetti costruiti dalle righe di una query
+     * @param query la query da eseguire
+     * @param mappatore costruisce gli oggetti dalle righe
+     * @param consumatore riceve gli oggetti, uno alla volta e nell' ordine delle righe
+     * @param parametri valori dei parametri della query, nell' ordine
+     * */
+    static <T> void perOgni(String query, Mappatore<T> mappatore, Consumer<? super T> consumatore,
+                            Object... parametri) throws SQLException {
+        try (Connection connessione = ConPool.getConnectionLettura();
+             PreparedStatement statement = prepara(connessione, query, parametri);
+             ResultSet rs = statement.executeQuery()) {
+            PooledConnection pooled = pooled(connessione);
+            int dimensioneFetch = Math.max(1, statement.getFetchSize());
+            int[] colonne = null;
+            long righe = 0;
+
+            while (rs.next()) {
+                if (colonne == null)
+                    colonne = mappatore.colonne(query, rs);
+
+                consumatore.accept(mappatore.riga(rs, colonne));
+                if (++righe % dimensioneFetch == 0)
+                    mantieni(pooled);
+            }
+
+            StatisticheSql.registraRighe(query, righe);
+        }
+    }
+
+    /**
+     * Il metodo permette di ottenere uno Stream degli oggetti costruiti dalle righe di una query.
+     * Lo Stream tiene occupata una connessione e va chiuso, ad esempio con un try-with-resources;
+     * viene comunque chiuso quando l' ultima riga e' stata letta
+     * @param query la query da eseguire
+     * @param mappatore costruisce gli oggetti dalle righe
+     * @param parametri valori dei parametri della query, nell' ordine
+     * @return lo Stream degli oggetti, nell' ordine delle righe
+     * */
+    static <T> Stream<T> flusso(String query, Mappatore<T> mappatore, Object... parametri) throws SQLException {
+        Connection connessione = ConPool.getConnectionLettura();
+        PreparedStatement statement = null;
+
+        try {
+            statement = prepara(connessione, query, parametri);
+            Lettore<T> lettore = new Lettore<>(query, mappatore, connessione, statement, statement.executeQuery());
+            return StreamSupport.stream(lettore, false).onClose(lettore::chiudi);
+        }
+
+        catch (SQLException | RuntimeException e) {
+            if (statement != null)
+                statement.close();
+            connessione.close();
+            throw e;
+        }
+    }
+
+    private static PreparedStatement prepara(Connection connessione, String query, Object[] parametri) throws SQLException {
+        PreparedStatement statement = connessione.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(ConPool.getDimensioneFetch());
+        for (int i = 0; i < parametri.length; i++)
+            statement.setObject(i + 1, parametri[i]);
+
+        return statement;
+    }
+
+    //la connessione del pool sotto quella restituita da ConPool, null se non e' del pool tomcat
+    private static PooledConnection pooled(Connection connessione) {
+        try {
+            return connessione.unwrap(PooledConnection.class);
+        }
+
+        catch (SQLException e) {
+            return null;
+        }
+    }
+
+    //fa come l' intercettore ResetAbandonedTimer, che pero' non vede le chiamate al ResultSet
+    private static void mantieni(PooledConnection pooled) {
+        if (pooled != null)
+            pooled.setTimestamp(System.currentTimeMillis());
+    }
+
+    private static final class Lettore<T> extends Spliterators.AbstractSpliterator<T> {
+        private final String query;
+        private final Mappatore<T> mappatore;
+        private final Connection connessione;
+        private final PreparedStatement statement;
+        private final ResultSet rs;
+        private final PooledConnection pooled;
+        private final int dimensioneFetch;
+        private int[] colonne;
+        private long righe;
+        private boolean chiuso;
+
+        Lettore(String query, Mappatore<T> mappatore, Connection connessione, PreparedStatement statement,
+                ResultSet rs) throws SQLException {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.query = query;
+            this.mappatore = mappatore;
+            this.connessione = connessione;
+            this.statement = statement;
+            this.rs = rs;
+            this.pooled = pooled(connessione);
+            this.dimensioneFetch = Math.max(1, statement.getFetchSize());
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> consumatore) {
+            if (chiuso)
+                return false;
+
+            try {
+                if (!rs.next()) {
+                    chiudi();
+                    return false;
+                }
+
+                if (colonne == null)
+                    colonne = mappatore.colonne(query, rs);
+
+                consumatore.accept(mappatore.riga(rs, colonne));
+                if (++righe % dimensioneFetch == 0)
+                    mantieni(pooled);
+
+                return true;
+            }
+
+            catch (SQLException e) {
+                chiudi();
+                throw new RuntimeException(e);
+            }
+        }
+
+        void chiudi() {
+            if (chiuso)
+                return;
+
+            chiuso = true;
+            StatisticheSql.registraRighe(query, righe);
+            //in ordine inverso di apertura, anche se una chiusura fallisce
+            try {
+                try {
+                    rs.close();
+                }
+
+                finally {
+                    try {
+                        statement.close();
+                    }
+
+                    finally {
+                        connessione.close();
+                    }
+                }
+            }
+
+            catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
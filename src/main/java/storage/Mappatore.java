@@ -0,0 +1,135 @@
+package storage;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * La classe permette di costruire un oggetto da ogni riga di un ResultSet.
+ * Le colonne richieste sono indicate per nome, ma la loro posizione viene cercata
+ * nei metadati una sola volta per ogni query e poi conservata: le righe si leggono
+ * per indice, senza cercare ogni valore per nome. Se una colonna manca dal risultato,
+ * ad esempio dopo una modifica allo schema, viene sollevata una SQLException invece
+ * di leggere in silenzio la colonna sbagliata.
+ * Le istanze per le entita' del sistema sono in {@link Mappatori}
+ * @param <T> tipo degli oggetti costruiti
+ */
+
+public final class Mappatore<T> {
+    private static final List<Mappatore<?>> ISTANZE = new CopyOnWriteArrayList<>();
+
+    /**
+     * L'interfaccia modella la costruzione di un oggetto dalla riga corrente
+     * @param <T> tipo degli oggetti costruiti
+     */
+    @FunctionalInterface
+    public interface Costruttore<T> {
+        /**
+         * @param rs il ResultSet posizionato sulla riga da leggere
+         * @param colonne posizioni delle colonne, nell' ordine in cui sono state dichiarate
+         * @return l' oggetto costruito dalla riga
+         * */
+        T costruisci(ResultSet rs, int[] colonne) throws SQLException;
+    }
+
+    private final String[] nomi;
+    private final Costruttore<T> costruttore;
+    private final Map<String, int[]> posizioni = new ConcurrentHashMap<>();
+
+    /**
+     * Costruttore della classe Mappatore
+     * @param costruttore costruisce l' oggetto leggendo le colonne per posizione
+     * @param nomi nomi delle colonne lette dal costruttore
+     * */
+    public Mappatore(Costruttore<T> costruttore, String... nomi) {
+        this.costruttore = costruttore;
+        this.nomi = nomi.clone();
+        ISTANZE.add(this);
+    }
+
+    /**
+     * Il metodo permette di ottenere le posizioni delle colonne nel risultato di una query,
+     * risolte alla prima esecuzione della query e poi lette dalla cache
+     * @param query testo della query che ha prodotto il ResultSet
+     * @param rs il ResultSet prodotto dalla query
+     * @return le posizioni delle colonne, da passare a {@link #riga(ResultSet, int[])}
+     * */
+    public int[] colonne(String query, ResultSet rs) throws SQLException {
+        int[] colonne = posizioni.get(query);
+        if (colonne == null) {
+            colonne = risolvi(query, rs.getMetaData());
+            posizioni.put(query, colonne);
+        }
+        return colonne;
+    }
+
+    /**
+     * Il metodo permette di costruire l' oggetto della riga corrente
+     * @param rs il ResultSet posizionato sulla riga da leggere
+     * @param colonne posizioni ottenute da {@link #colonne(String, ResultSet)}
+     * */
+    public T riga(ResultSet rs, int[] colonne) throws SQLException {
+        return costruttore.costruisci(rs, colonne);
+    }
+
+    /**
+     * Il metodo permette di costruire l' oggetto della prima riga del risultato
+     * @return l' oggetto costruito, null se il risultato e' vuoto
+     * */
+    public T primo(String query, ResultSet rs) throws SQLException {
+        if (!rs.next())
+            return null;
+
+        StatisticheSql.registraRighe(query, 1);
+        return riga(rs, colonne(query, rs));
+    }
+
+    /**
+     * Il metodo permette di costruire gli oggetti di tutte le righe rimanenti del risultato
+     * @return la lista degli oggetti, nell' ordine delle righe
+     * */
+    public List<T> tutti(String query, ResultSet rs) throws SQLException {
+        List<T> oggetti = new ArrayList<>();
+        if (!rs.next())
+            return oggetti;
+
+        int[] colonne = colonne(query, rs);
+        do {
+            oggetti.add(riga(rs, colonne));
+        } while (rs.next());
+
+        StatisticheSql.registraRighe(query, oggetti.size());
+        return oggetti;
+    }
+
+    /**
+     * Il metodo permette di dimenticare le posizioni risolte da tutti i mappatori,
+     * da chiamare dopo una modifica allo schema del database
+     * */
+    public static void svuotaCache() {
+        for (Mappatore<?> mappatore : ISTANZE)
+            mappatore.posizioni.clear();
+    }
+
+    private int[] risolvi(String query, ResultSetMetaData metadati) throws SQLException {
+        int[] colonne = new int[nomi.length];
+
+        //come ResultSet.findColumn, a parita' di nome vale la prima colonna
+        for (int i = 0; i < nomi.length; i++) {
+            for (int j = metadati.getColumnCount(); j >= 1; j--) {
+                if (nomi[i].equalsIgnoreCase(metadati.getColumnLabel(j)))
+                    colonne[i] = j;
+            }
+
+            if (colonne[i] == 0)
+                throw new SQLException("La colonna " + nomi[i] + " non e' presente nel risultato della query: " + query);
+        }
+
+        return colonne;
+    }
+}
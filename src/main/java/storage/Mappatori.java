@@ -0,0 +1,80 @@
+package storage;
+
+import acquisto.Carrello;
+import acquisto.Carta;
+import acquisto.Offerta;
+import acquisto.Ordine;
+import creazioneDiscussione.Discussione;
+import creazioneDiscussione.Messaggio;
+import recensione.Recensione;
+import registrazione.Utente;
+import scambio.Scambio;
+
+/**
+ * La classe raccoglie i mappatori delle entita' del sistema, usati dai DAO
+ * per costruire gli oggetti dalle righe delle tabelle omonime
+ */
+
+public final class Mappatori {
+
+    public static final Mappatore<Carta> CARTA = new Mappatore<>((rs, c) -> {
+        Carta carta = new Carta();
+        carta.setIdCarta(rs.getInt(c[0]));
+        carta.setNome(rs.getString(c[1]));
+        carta.setCategoria(rs.getString(c[2]));
+        carta.setRarita(rs.getString(c[3]));
+        carta.setImmagine(rs.getString(c[4]));
+        return carta;
+    }, "idCarta", "nome", "categoria", "rarita", "immagine");
+
+    public static final Mappatore<Utente> UTENTE = new Mappatore<>((rs, c) -> {
+        Utente utente = new Utente();
+        utente.setIdUtente(rs.getInt(c[0]));
+        utente.setUsername(rs.getString(c[1]));
+        utente.setPassword(rs.getString(c[2]));
+        utente.setNome(rs.getString(c[3]));
+        utente.setCognome(rs.getString(c[4]));
+        utente.setEmail(rs.getString(c[5]));
+        return utente;
+    }, "idUtente", "username", "passwordhash", "nome", "cognome", "email");
+
+    public static final Mappatore<Offerta> OFFERTA = new Mappatore<>((rs, c) ->
+            new Offerta(rs.getInt(c[0]), rs.getString(c[1]), rs.getDouble(c[2]), rs.getInt(c[3]), rs.getInt(c[4])),
+            "idOfferta", "condizione", "prezzo", "idUtente", "idCarta");
+
+    public static final Mappatore<Ordine> ORDINE = new Mappatore<>((rs, c) ->
+            new Ordine(rs.getInt(c[0]), rs.getDate(c[1]), rs.getString(c[2]), rs.getInt(c[3]), rs.getDouble(c[4])),
+            "idOrdine", "data", "indirizzo", "idUtente", "totale");
+
+    public static final Mappatore<Carrello> CARRELLO = new Mappatore<>((rs, c) ->
+            new Carrello(rs.getInt(c[0]), rs.getInt(c[1])),
+            "idCarrello", "idUtente");
+
+    public static final Mappatore<Scambio> SCAMBIO = new Mappatore<>((rs, c) ->
+            new Scambio(rs.getInt(c[0]), rs.getInt(c[1]), rs.getInt(c[2]), rs.getInt(c[3]), rs.getInt(c[4]), rs.getDouble(c[5])),
+            "idRichiestaScambio", "idUtenteMittente", "idUtenteDestinatario", "idOffertaMittente", "idOffertaDestinatario", "conguaglio");
+
+    public static final Mappatore<Discussione> DISCUSSIONE = new Mappatore<>((rs, c) -> {
+        Discussione discussione = new Discussione();
+        discussione.setIdDiscussione(rs.getInt(c[0]));
+        discussione.setIdUtente(rs.getInt(c[1]));
+        discussione.setTitolo(rs.getString(c[2]));
+        return discussione;
+    }, "idDiscussione", "idUtente", "titolo");
+
+    public static final Mappatore<Messaggio> MESSAGGIO = new Mappatore<>((rs, c) -> {
+        Messaggio messaggio = new Messaggio();
+        messaggio.setIdMessaggio(rs.getInt(c[0]));
+        messaggio.setOggetto(rs.getString(c[1]));
+        messaggio.setCorpo(rs.getString(c[2]));
+        messaggio.setIdUtente(rs.getInt(c[3]));
+        messaggio.setIdDiscussione(rs.getInt(c[4]));
+        return messaggio;
+    }, "idMessaggio", "oggetto", "corpo", "idUtente", "idDiscussione");
+
+    public static final Mappatore<Recensione> RECENSIONE = new Mappatore<>((rs, c) ->
+            new Recensione(rs.getInt(c[0]), rs.getInt(c[1]), rs.getString(c[2]), rs.getInt(c[3]), rs.getInt(c[4])),
+            "idRecensione", "valutazione", "testo", "idUtente", "idOrdine");
+
+    private Mappatori(){}
+}
@@ -6,8 +6,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * La classe permette le operazioni riguardanti gli oggetti Messaggio
@@ -16,6 +17,12 @@ import java.util.List;
  */
 
 public class MessaggioDAO {
+    private static final String SELECT_ALL_QUERY = "SELECT * FROM Messaggio;";
+    private static final String SELECT_BY_ID_QUERY = "SELECT * FROM Messaggio WHERE idMessaggio = ?;";
+    private static final String INSERT_QUERY = "INSERT INTO Messaggio(oggetto, corpo, idUtente, idDiscussione) VALUES (?, ?, ?, ?)";
+    private static final String SELECT_PAGINA_QUERY = "SELECT * FROM Messaggio WHERE idMessaggio > ? ORDER BY idMessaggio LIMIT ?";
+    private static final String SELECT_PAGINA_BY_ID_DISCUSSIONE_QUERY =
+            "SELECT * FROM Messaggio WHERE idDiscussione = ? AND idMessaggio > ? ORDER BY idMessaggio LIMIT ?";
 
     /**
      * Il metodo permette di ottenere tutti gli oggetti Messaggio
@@ -24,26 +31,84 @@ public class MessaggioDAO {
      *                      le istanze di oggetti Messaggio nel database
      */
     public List<Messaggio> doRetrieveAll(){
+        try (Connection connection = ConPool.getConnectionLettura();
+             PreparedStatement preparedStatement = connection.prepareStatement(SELECT_ALL_QUERY);
+             ResultSet resultSet = preparedStatement.executeQuery()) {
+            return Mappatori.MESSAGGIO.tutti(SELECT_ALL_QUERY, resultSet);
+        }
+
+        catch (SQLException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Il metodo permette di passare a un consumatore tutti gli oggetti Messaggio
+     * memorizzati nel database, uno alla volta, senza caricarli tutti in memoria
+     * @param consumatore riceve i messaggi, nell' ordine in cui vengono letti
+     */
+    public void doRetrieveAll(Consumer<? super Messaggio> consumatore){
         try {
-            Connection connection = ConPool.getConnection();
-            List<Messaggio> messages = new ArrayList<>();
-            PreparedStatement preparedStatement = connection.prepareStatement("SELECT * FROM Messaggio;");
-            ResultSet resultSet = preparedStatement.executeQuery();
+            LetturaContinua.perOgni(SELECT_ALL_QUERY, Mappatori.MESSAGGIO, consumatore);
+        }
 
-            while(resultSet.next()){
-                Messaggio message = new Messaggio();
+        catch (SQLException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
 
-                message.setIdMessaggio(resultSet.getInt(1));
-                message.setOggetto(resultSet.getString(2));
-                message.setCorpo(resultSet.getString(3));
-                message.setIdUtente(resultSet.getInt(4));
-                message.setIdDiscussione(resultSet.getInt(5));
+    /**
+     * Il metodo permette di ottenere tutti gli oggetti Messaggio memorizzati
+     * nel database come Stream, letto dal database man mano che viene consumato.
+     * Lo Stream tiene occupata una connessione e va chiuso dopo l' uso
+     * @return uno Stream di oggetti Messaggio
+     */
+    public Stream<Messaggio> doStreamAll(){
+        try {
+            return LetturaContinua.flusso(SELECT_ALL_QUERY, Mappatori.MESSAGGIO);
+        }
 
-                messages.add(message);
-            }
+        catch (SQLException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
 
-            connection.close();
-            return messages;
+    /**
+     * Il metodo permette di ottenere una pagina degli oggetti Messaggio
+     * memorizzati nel database, ordinati per id
+     * @param dopoIdMessaggio id dell' ultimo messaggio della pagina
+     *                      precedente, 0 per la prima pagina
+     * @param dimensione numero di messaggi della pagina
+     * @return una pagina di oggetti Messaggio
+     */
+    public Pagina<Messaggio> doRetrievePagina(int dopoIdMessaggio, int dimensione){
+        try {
+            return Paginazione.leggi(SELECT_PAGINA_QUERY, Mappatori.MESSAGGIO, Messaggio::getIdMessaggio,
+                    dopoIdMessaggio, dimensione);
+        }
+
+        catch (SQLException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Il metodo permette di ottenere una pagina dei messaggi di una
+     * discussione, nell' ordine in cui sono stati scritti
+     * @param idDiscussione id della discussione
+     * @param dopoIdMessaggio id dell' ultimo messaggio della pagina
+     *                      precedente, 0 per la prima pagina
+     * @param dimensione numero di messaggi della pagina
+     * @return una pagina di oggetti Messaggio
+     */
+    public Pagina<Messaggio> doRetrievePaginaByIdDiscussione(int idDiscussione, int dopoIdMessaggio, int dimensione){
+        try {
+            return Paginazione.leggi(SELECT_PAGINA_BY_ID_DISCUSSIONE_QUERY, Mappatori.MESSAGGIO, Messaggio::getIdMessaggio,
+                    dopoIdMessaggio, dimensione, idDiscussione);
         }
 
         catch (SQLException e) {
@@ -61,26 +126,14 @@ public class MessaggioDAO {
      *                      come parametro
      */
     public Messaggio doRetrieveById(int idMessaggio){
-        try {
-            Connection connection = ConPool.getConnection();
-            PreparedStatement preparedStatement =
-                    connection.prepareStatement("SELECT * FROM Messaggio WHERE idMessaggio = ?;");
+        try (Connection connection = ConPool.getConnectionLettura();
+             PreparedStatement preparedStatement =
+                     connection.prepareStatement(SELECT_BY_ID_QUERY)) {
             preparedStatement.setInt(1, idMessaggio);
-            ResultSet resultSet = preparedStatement.executeQuery();
-
-            if (resultSet.next()) {
-                Messaggio message = new Messaggio();
 
-                message.setIdMessaggio(resultSet.getInt(1));
-                message.setOggetto(resultSet.getString(2));
-                message.setCorpo(resultSet.getString(3));
-                message.setIdUtente(resultSet.getInt(4));
-                message.setIdDiscussione(resultSet.getInt(5));
-
-                return message;
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                return Mappatori.MESSAGGIO.primo(SELECT_BY_ID_QUERY, resultSet);
             }
-
-            return null;
         }
 
         catch (SQLException e) {
@@ -95,11 +148,9 @@ public class MessaggioDAO {
      * @param message il messaggio da memorizzare nel database
      * */
     public void doSave(Messaggio message){
-        try {
-            Connection connection = ConPool.getConnection();
-            PreparedStatement preparedStatement =
-                    connection.prepareStatement(
-                            "INSERT INTO Messaggio(oggetto, corpo, idUtente, idDiscussione) VALUES (?, ?, ?, ?)");
+        try (Connection connection = ConPool.getConnection();
+             PreparedStatement preparedStatement =
+                     connection.prepareStatement(INSERT_QUERY)) {
 
             preparedStatement.setString(1, message.getOggetto());
             preparedStatement.setString(2, message.getCorpo());
@@ -117,6 +168,24 @@ public class MessaggioDAO {
         }
     }
 
+    /**
+     * Il metodo permette di memorizzare piu' oggetti Messaggio nel
+     * database con un' unica connessione e in un' unica transazione:
+     * se il salvataggio di un messaggio fallisce non ne viene salvato nessuno.
+     * A ogni messaggio viene assegnato l' id generato dal database dopo il commit,
+     * in un' UnitaDiLavoro alla sua conferma
+     * @param messages i messaggi da memorizzare nel database
+     * @throws SQLException se l' inserimento fallisce: nessun messaggio viene salvato
+     * */
+    public void doSaveAll(List<Messaggio> messages) throws SQLException {
+        InserimentoMultiplo.esegui(INSERT_QUERY, messages, (preparedStatement, message) -> {
+            preparedStatement.setString(1, message.getOggetto());
+            preparedStatement.setString(2, message.getCorpo());
+            preparedStatement.setInt(3, message.getIdUtente());
+            preparedStatement.setInt(4, message.getIdDiscussione());
+        }, Messaggio::setIdMessaggio);
+    }
+
     /**
      * Il metodo permette di eliminare un oggetto Messaggio
      * memorizzato nel database
@@ -124,10 +193,9 @@ public class MessaggioDAO {
      *                      eliminare dal database
      * */
     public void doDelete(int messageId){
-        try {
-            Connection connection = ConPool.getConnection();
-            PreparedStatement preparedStatement =
-                    connection.prepareStatement("DELETE FROM Messaggio WHERE idMessaggio = ?;");
+        try (Connection connection = ConPool.getConnection();
+             PreparedStatement preparedStatement =
+                     connection.prepareStatement("DELETE FROM Messaggio WHERE idMessaggio = ?;")) {
 
             preparedStatement.setInt(1, messageId);
 
@@ -149,15 +217,15 @@ public class MessaggioDAO {
      * @param messagge oggetto che contiene i campi da modificare
      * */
     public void doUpdate(int messageId, Messaggio messagge){
-        try {
-            Connection connection = ConPool.getConnection();
-            PreparedStatement preparedStatement =
-                    connection.prepareStatement(
-                            "UPDATE Messaggio SET oggetto = ?, corpo = ? " +
-                                    "WHERE idMessaggio = ? " +
-                                    "AND idUtente = ? and idDiscussione = ?;");
-
-            Messaggio oldMessage = (Messaggio) new FacadeDAO().doRetrieveById(Messaggio.class, messageId);
+        //il messaggio originale viene letto prima di occupare una seconda connessione
+        Messaggio oldMessage = (Messaggio) new FacadeDAO().doRetrieveById(Messaggio.class, messageId);
+
+        try (Connection connection = ConPool.getConnection();
+             PreparedStatement preparedStatement =
+                     connection.prepareStatement(
+                             "UPDATE Messaggio SET oggetto = ?, corpo = ? " +
+                                     "WHERE idMessaggio = ? " +
+                                     "AND idUtente = ? and idDiscussione = ?;")) {
 
             preparedStatement.setString(1, messagge.getOggetto());
             preparedStatement.setString(2, messagge.getCorpo());
@@ -0,0 +1,186 @@
+package storage;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * La classe applica le migrazioni dello schema: gli script in database/migrazioni, nel
+ * classpath, successivi alla versione registrata nella tabella VersioneSchema. Ogni script
+ * ha nome V&lt;versione&gt;__&lt;descrizione&gt;.sql, va aggiunto in fondo a SCRIPT e non va
+ * modificato dopo il rilascio: le modifiche successive sono un nuovo script.
+ * ConPoolListener applica le migrazioni all' avvio dell' applicazione, dopo aver creato il pool,
+ * a meno che db.migrazioni.automatiche sia false; se il database non e' raggiungibile l' errore
+ * viene registrato e l' applicazione parte comunque. Con MySQL un lock con nome impedisce a
+ * due nodi di applicarle insieme; le istruzioni DDL non sono transazionali, percio' se uno
+ * script fallisce a meta' le istruzioni gia' eseguite vanno annullate a mano prima del riavvio.
+ * Gli indici FULLTEXT vengono saltati sui database che non li supportano (vedi ProfiloDatabase).
+ * Prima di uno script che non potrebbe riuscire con i dati presenti, ad esempio una chiave unica su
+ * una colonna con valori ripetuti, un controllo in Java solleva una SQLException con i valori da
+ * correggere a mano, senza eseguire nessuna istruzione dello script
+ */
+
+public final class Migrazioni {
+    private static final String CARTELLA = "database/migrazioni/";
+    //in ordine di versione
+    private static final String[] SCRIPT = {
+            "V1__registro_modifiche.sql",
+            "V2__indici_filtri.sql",
+            "V3__chiavi_utente.sql",
+            "V4__fulltext_carta.sql"
+    };
+
+    private static final int VALORI_RIPORTATI = 10;
+
+    private static final String NOME_LOCK = "cardexchange.migrazioni";
+    private static final int ATTESA_LOCK_SECONDI = 600;
+    private static final String CREATE_VERSIONE_QUERY = "CREATE TABLE IF NOT EXISTS VersioneSchema (" +
+            "versione int not null primary key, script varchar(255) not null, applicata bigint not null, durataMillis bigint not null)";
+    private static final String SELECT_VERSIONE_QUERY = "SELECT MAX(versione) FROM VersioneSchema";
+    private static final String INSERT_VERSIONE_QUERY =
+            "INSERT INTO VersioneSchema (versione, script, applicata, durataMillis) VALUES (?, ?, ?, ?)";
+
+    private Migrazioni(){}
+
+    /**
+     * Il metodo permette di applicare le migrazioni mancanti al database del pool di ConPool,
+     * ad esempio quando db.migrazioni.automatiche e' false
+     * @return il numero di migrazioni applicate
+     * */
+    public static int esegui() throws SQLException {
+        DataSource dataSource = ConPool.inizializza();
+        return esegui(dataSource, ConPool.getProfilo());
+    }
+
+    /**
+     * Il metodo permette di applicare le migrazioni mancanti
+     * @param dataSource il pool del database primario
+     * @param profilo il profilo del database, che indica se sono disponibili i lock con nome
+     * @return il numero di migrazioni applicate
+     * */
+    static int esegui(DataSource dataSource, ProfiloDatabase profilo) throws SQLException {
+        try (Connection connessione = dataSource.getConnection()) {
+            boolean lock = profilo.supportaLockConNome();
+            if (lock)
+                acquisisci(connessione);
+
+            try {
+                return applica(connessione, profilo);
+            }
+
+            finally {
+                if (lock)
+                    rilascia(connessione);
+            }
+        }
+    }
+
+    private static int applica(Connection connessione, ProfiloDatabase profilo) throws SQLException {
+        try (Statement statement = connessione.createStatement()) {
+            statement.execute(CREATE_VERSIONE_QUERY);
+        }
+
+        //letta dopo il lock: un altro nodo potrebbe aver appena applicato le stesse migrazioni
+        int versione = versione(connessione);
+        int applicate = 0;
+
+        for (String script : SCRIPT) {
+            int numero = versione(script);
+            if (numero <= versione)
+                continue;
+
+            long inizio = System.currentTimeMillis();
+            try {
+                controlla(connessione, script);
+                EsecutoreScript.esegui(connessione, CARTELLA + script,
+                        istruzione -> !profilo.supportaFullText() && istruzione.startsWith("create fulltext"));
+            }
+
+            catch (SQLException e) {
+                throw new SQLException("Migrazione " + script + " non riuscita: lo schema e' alla versione " + versione, e);
+            }
+
+            try (PreparedStatement statement = connessione.prepareStatement(INSERT_VERSIONE_QUERY)) {
+                statement.setInt(1, numero);
+                statement.setString(2, script);
+                statement.setLong(3, inizio);
+                statement.setLong(4, System.currentTimeMillis() - inizio);
+                statement.executeUpdate();
+            }
+
+            versione = numero;
+            applicate++;
+        }
+
+        //le posizioni delle colonne risolte dai mappatori potrebbero non valere piu'
+        if (applicate > 0)
+            Mappatore.svuotaCache();
+
+        return applicate;
+    }
+
+    //i controlli sui dati richiesti dagli script, prima di eseguirne le istruzioni
+    private static void controlla(Connection connessione, String script) throws SQLException {
+        if (script.equals("V3__chiavi_utente.sql")) {
+            for (String colonna : new String[]{"email", "username"}) {
+                richiediNessuno(connessione, "SELECT " + colonna + " FROM Utente GROUP BY " + colonna + " HAVING COUNT(*) > 1",
+                        "Utente." + colonna + " ha valori ripetuti, da correggere prima della chiave unica");
+                richiediNessuno(connessione, "SELECT " + colonna + " FROM Utente WHERE CHAR_LENGTH(" + colonna + ") > 255",
+                        "Utente." + colonna + " ha valori piu' lunghi di 255 caratteri, da accorciare prima della conversione in varchar");
+            }
+        }
+    }
+
+    private static void richiediNessuno(Connection connessione, String query, String messaggio) throws SQLException {
+        List<String> valori = new ArrayList<>();
+        try (Statement statement = connessione.createStatement()) {
+            statement.setMaxRows(VALORI_RIPORTATI);
+
+            try (ResultSet rs = statement.executeQuery(query)) {
+                while (rs.next())
+                    valori.add(rs.getString(1));
+            }
+        }
+
+        if (!valori.isEmpty())
+            throw new SQLException(messaggio + ": " + String.join(", ", valori) +
+                    (valori.size() == VALORI_RIPORTATI ? " e forse altri" : ""));
+    }
+
+    private static int versione(Connection connessione) throws SQLException {
+        try (Statement statement = connessione.createStatement();
+             ResultSet rs = statement.executeQuery(SELECT_VERSIONE_QUERY)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    //V12__descrizione.sql -> 12
+    private static int versione(String script) {
+        return Integer.parseInt(script.substring(1, script.indexOf("__")));
+    }
+
+    private static void acquisisci(Connection connessione) throws SQLException {
+        try (PreparedStatement statement = connessione.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            statement.setString(1, NOME_LOCK);
+            statement.setInt(2, ATTESA_LOCK_SECONDI);
+
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1)
+                    throw new SQLException("Un altro nodo sta applicando le migrazioni da oltre " + ATTESA_LOCK_SECONDI + " secondi");
+            }
+        }
+    }
+
+    private static void rilascia(Connection connessione) throws SQLException {
+        try (PreparedStatement statement = connessione.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, NOME_LOCK);
+            statement.executeQuery().close();
+        }
+    }
+}
@@ -4,9 +4,15 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import acquisto.MercatoOfferte;
 import acquisto.Offerta;
 import acquisto.Ordine;
 /*
@@ -25,19 +31,25 @@ public class OffertaDAO {
     //elenco delle query
     private static final String INSERT_OFFERTA_QUERY = "INSERT INTO Offerta(condizione, prezzo, idUtente, idCarta) VALUES (?, ?, ?, ?)";
     private static final String SELECT_OFFERTA_BY_ID_QUERY = "SELECT * FROM Offerta WHERE idOfferta = ?";
-    private static final String SELECT_OFFERTE_BY_ID_ORDINE_QUERY = "SELECT o.* FROM Offerta o JOIN OrdineContieneOfferte oco ON o.idOfferta = oco.idOfferta WHERE oco.idOrdine = ?";
+    private static final String SELECT_OFFERTE_BY_ID_ORDINE_QUERY = "SELECT o.* FROM Offerta o JOIN OrdineContieneOfferta oco ON o.idOfferta = oco.idOfferta WHERE oco.idOrdine = ?";
     /*
-    la query seleziona tutte le colonne (*) dalla tabella "Offerta" o,
+    la query seleziona tutte le colonne della tabella "Offerta" o,
     che vengono unite alle colonne della tabella "CarrelloContieneOfferta" cco sulla base dell'uguaglianza dell'idOfferta,
     che a sua volta vengono unite alle colonne della tabella "Carrello" c sulla base dell'uguaglianza dell'idCarrello.
     Infine, la query filtra i risultati utilizzando il parametro idUtente fornito.
      */
     private static final String SELECT_OFFERTE_BY_ID_UTENTE_QUERY =
-            "SELECT * FROM Offerta o\n" +
+            "SELECT o.* FROM Offerta o\n" +
                     "JOIN CarrelloContieneOfferta cco ON o.idOfferta = cco.idOfferta\n" +
                     "JOIN Carrello c ON cco.idCarrello = c.idCarrello\n" +
                     "WHERE c.idUtente = ?";
     private static final String SELECT_ALL_OFFERTE_QUERY = "SELECT * FROM Offerta";
+    private static final String SELECT_PAGINA_OFFERTE_QUERY = "SELECT * FROM Offerta WHERE idOfferta > ? ORDER BY idOfferta LIMIT ?";
+    private static final String SELECT_PAGINA_OFFERTE_BY_ID_CARTA_QUERY =
+            "SELECT * FROM Offerta WHERE idCarta = ? AND idOfferta > ? ORDER BY idOfferta LIMIT ?";
+    private static final String SELECT_PAGINA_OFFERTE_BY_ID_UTENTE_QUERY =
+            "SELECT * FROM Offerta WHERE idUtente = ? AND idOfferta > ? ORDER BY idOfferta LIMIT ?";
+    private static final String COUNT_OFFERTE_BY_ID_CARTA_QUERY = "SELECT idCarta, COUNT(*) FROM Offerta GROUP BY idCarta";
     //private static final String SELECT_OFFERTE_BY_ID_CARRELLO_QUERY = "SELECT * FROM Offerta o INNER JOIN CarrelloContieneOfferta cco ON o.idOfferta = cco.idOfferta WHERE cco.idCarrello = ?";
 
     private static final String UPDATE_OFFERTA_QUERY = "UPDATE Offerta SET condizione = ?, prezzo = ?, idUtente = ?, idCarta = ? WHERE idOfferta = ?";
@@ -47,37 +59,63 @@ public class OffertaDAO {
     addOfferta(Offerta offerta): inserisce una nuova offerta nel database
     questo metodo prende in input un oggetto di tipo Offerta e lo inserisce nel database, utilizzando la query 'INSERT_OFFERTA_QUERY'.
     I valori dei campi vengono impostati utilizzando i metodi get dell'oggetto Offerta.
+    L'id generato dal database viene assegnato all'offerta, che viene poi aggiunta al mercato in memoria
+    (dopo il commit, se il salvataggio fa parte di un'UnitaDiLavoro).
     */
     public void doSave(Offerta offerta) {
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement statement = con.prepareStatement(INSERT_OFFERTA_QUERY);
+        try (Connection con = ConPool.getConnection();
+             PreparedStatement statement = con.prepareStatement(INSERT_OFFERTA_QUERY, Statement.RETURN_GENERATED_KEYS)) {
             statement.setString(1, offerta.getCondizione());
             statement.setDouble(2, offerta.getPrezzo());
             statement.setInt(3, offerta.getIdUtente());
             statement.setInt(4, offerta.getIdCarta());
 
             statement.executeUpdate();
+            try (ResultSet chiavi = statement.getGeneratedKeys()) {
+                if (chiavi.next()) {
+                    offerta.setIdOfferta(chiavi.getInt(1));
+                    UnitaDiLavoro.dopoConferma(() -> MercatoOfferte.getInstance().aggiorna(offerta));
+                    RegistroModifiche.registra(RegistroModifiche.OFFERTA, offerta.getIdOfferta());
+                }
+            }
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
+    /*
+    doSaveAll(List<Offerta> offerte): inserisce piu' offerte nel database, ad esempio un intero raccoglitore messo in vendita.
+    Le offerte vengono inviate a blocchi con il batch JDBC su un'unica connessione e in un'unica transazione:
+    se l'inserimento di una fallisce non ne viene inserita nessuna. Dopo il commit gli id generati vengono assegnati alle offerte,
+    che vengono poi aggiunte al mercato in memoria. In un'UnitaDiLavoro le offerte fanno parte della sua transazione e ricevono
+    gli id alla sua conferma. Se l'inserimento fallisce, o l'unita' viene annullata, le offerte restano senza id.
+    */
+    public void doSaveAll(List<Offerta> offerte) throws SQLException {
+        int[] chiavi = InserimentoMultiplo.esegui(INSERT_OFFERTA_QUERY, offerte, (statement, offerta) -> {
+            statement.setString(1, offerta.getCondizione());
+            statement.setDouble(2, offerta.getPrezzo());
+            statement.setInt(3, offerta.getIdUtente());
+            statement.setInt(4, offerta.getIdCarta());
+        }, Offerta::setIdOfferta);
+
+        List<Integer> idOfferte = new ArrayList<>(chiavi.length);
+        for (int idOfferta : chiavi)
+            idOfferte.add(idOfferta);
+        UnitaDiLavoro.dopoConferma(() -> offerte.forEach(MercatoOfferte.getInstance()::aggiorna));
+        RegistroModifiche.registraTutte(RegistroModifiche.OFFERTA, idOfferte);
+    }
+
     /*
     getOffertaById(int id): recupera un'offerta dal database in base all'id specificato
     questo metodo prende in input un intero id e restituisce l'offerta presente nel database con quell'id, utilizzando la query 'SELECT_OFFERTA_BY_ID_QUERY'.
-    I risultati vengono estratti dal ResultSet e utilizzati per costruire un nuovo oggetto Offerta da restituire.
+    Il risultato viene convertito in un nuovo oggetto Offerta da restituire dal mappatore Mappatori.OFFERTA.
     */
     public Offerta doRetrieveById(int idOfferta) {
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement statement = con.prepareStatement(SELECT_OFFERTA_BY_ID_QUERY);
+        try (Connection con = ConPool.getConnectionLettura();
+             PreparedStatement statement = con.prepareStatement(SELECT_OFFERTA_BY_ID_QUERY)) {
             statement.setInt(1, idOfferta);
-            ResultSet resultSet = statement.executeQuery();
-            if (resultSet.next()) {
-                String condizione = resultSet.getString("condizione");
-                double prezzo = resultSet.getDouble("prezzo");
-                int idUtente = resultSet.getInt("idUtente");
-                int idCarta = resultSet.getInt("idCarta");
-                return new Offerta(idOfferta, condizione, prezzo, idUtente, idCarta);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return Mappatori.OFFERTA.primo(SELECT_OFFERTA_BY_ID_QUERY, resultSet);
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -88,89 +126,147 @@ public class OffertaDAO {
     /*
     getAllOfferte(): recupera tutte le offerta presenti nel database.
     questo metodo restituisce la lista di tutte le offerte presenti nel database, utilizzando la query 'SELECT_ALL_OFFERTE_QUERY'.
-    I risultati vengono estratti dal ResultSet e utilizzati per costruire una lista di oggetti Offerta da restituire.
+    Le righe del ResultSet vengono convertite in una lista di oggetti Offerta dal mappatore Mappatori.OFFERTA.
     */
     public List < Offerta > doRetrieveAll() {
-        List < Offerta > offerte = new ArrayList < > ();
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement statement = con.prepareStatement(SELECT_ALL_OFFERTE_QUERY);
-            ResultSet resultSet = statement.executeQuery();
+        try (Connection con = ConPool.getConnectionLettura();
+             PreparedStatement statement = con.prepareStatement(SELECT_ALL_OFFERTE_QUERY);
+             ResultSet resultSet = statement.executeQuery()) {
+            return Mappatori.OFFERTA.tutti(SELECT_ALL_OFFERTE_QUERY, resultSet);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+
+    /*
+    doRetrieveAll(Consumer consumatore): come doRetrieveAll(), ma tutte le offerte vengono passate al consumatore
+    una alla volta man mano che vengono letti dal database, senza costruire la lista in memoria.
+    */
+    public void doRetrieveAll(Consumer<? super Offerta> consumatore) {
+        try {
+            LetturaContinua.perOgni(SELECT_ALL_OFFERTE_QUERY, Mappatori.OFFERTA, consumatore);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /*
+    doStreamAll(): restituisce tutte le offerte come Stream, letto dal database man mano che viene consumato.
+    Lo Stream tiene occupata una connessione e va chiuso dopo l'uso, ad esempio con un try-with-resources.
+    */
+    public Stream<Offerta> doStreamAll() {
+        try {
+            return LetturaContinua.flusso(SELECT_ALL_OFFERTE_QUERY, Mappatori.OFFERTA);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return Stream.empty();
+    }
+
+    /*
+    doRetrievePagina(int dopoIdOfferta, int dimensione): recupera una pagina delle offerte presenti nel database.
+    Le offerte sono ordinate per id e la pagina parte dall'offerta successiva al cursore dopoIdOfferta (0 per la prima pagina),
+    cosi' che leggere una pagina lontana costi quanto leggere la prima. La dimensione e' limitata da Pagina.limita.
+    */
+    public Pagina<Offerta> doRetrievePagina(int dopoIdOfferta, int dimensione) {
+        try {
+            return Paginazione.leggi(SELECT_PAGINA_OFFERTE_QUERY, Mappatori.OFFERTA, Offerta::getIdOfferta, dopoIdOfferta, dimensione);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new Pagina<>(new ArrayList<>(), null);
+    }
+
+    /*
+    doRetrievePaginaByIdCarta(int idCarta, ...): come doRetrievePagina, ma solo le offerte della carta indicata.
+    */
+    public Pagina<Offerta> doRetrievePaginaByIdCarta(int idCarta, int dopoIdOfferta, int dimensione) {
+        try {
+            return Paginazione.leggi(SELECT_PAGINA_OFFERTE_BY_ID_CARTA_QUERY, Mappatori.OFFERTA, Offerta::getIdOfferta,
+                    dopoIdOfferta, dimensione, idCarta);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new Pagina<>(new ArrayList<>(), null);
+    }
+
+    /*
+    doRetrievePaginaByIdUtente(int idUtente, ...): come doRetrievePagina, ma solo le offerte messe in vendita dall'utente indicato.
+    */
+    public Pagina<Offerta> doRetrievePaginaByIdUtente(int idUtente, int dopoIdOfferta, int dimensione) {
+        try {
+            return Paginazione.leggi(SELECT_PAGINA_OFFERTE_BY_ID_UTENTE_QUERY, Mappatori.OFFERTA, Offerta::getIdOfferta,
+                    dopoIdOfferta, dimensione, idUtente);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new Pagina<>(new ArrayList<>(), null);
+    }
+
+    /*
+    countOfferteByIdCarta(): conta le offerte presenti nel database per ciascuna carta.
+    questo metodo restituisce una mappa che associa all'id di ogni carta con almeno un'offerta il numero delle sue offerte,
+    utilizzando la query 'COUNT_OFFERTE_BY_ID_CARTA_QUERY'. Viene usato come misura di popolarita' delle carte.
+    */
+    public Map<Integer, Integer> countOfferteByIdCarta() {
+        Map<Integer, Integer> conteggi = new HashMap<>();
+        try (Connection con = ConPool.getConnectionLettura();
+             PreparedStatement statement = con.prepareStatement(COUNT_OFFERTE_BY_ID_CARTA_QUERY);
+             ResultSet resultSet = statement.executeQuery()) {
             while (resultSet.next()) {
-                int idOfferta = resultSet.getInt("idOfferta");
-                String condizione = resultSet.getString("condizione");
-                double prezzo = resultSet.getDouble("prezzo");
-                int idUtente = resultSet.getInt("idUtente");
-                int idCarta = resultSet.getInt("idCarta");
-                Offerta offerta = new Offerta(idOfferta, condizione, prezzo, idUtente, idCarta);
-                offerte.add(offerta);
+                conteggi.put(resultSet.getInt(1), resultSet.getInt(2));
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return offerte;
+        return conteggi;
     }
 
     public List<Offerta> getOfferteByIdUtente(int idUtente) {
-        List<Offerta> offerte = new ArrayList<>();
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement statement = con.prepareStatement(SELECT_OFFERTE_BY_ID_UTENTE_QUERY);
+        try (Connection con = ConPool.getConnectionLettura();
+             PreparedStatement statement = con.prepareStatement(SELECT_OFFERTE_BY_ID_UTENTE_QUERY)) {
             statement.setInt(1, idUtente);
-            ResultSet resultSet = statement.executeQuery();
-            while (resultSet.next()) {
-                int idOfferta = resultSet.getInt("idOfferta");
-                String condizione = resultSet.getString("condizione");
-                double prezzo = resultSet.getInt("prezzo");
-                int idCarta = resultSet.getInt("idCarta");
-                Offerta offerta = new Offerta(idOfferta, condizione, prezzo, idUtente, idCarta);
-                offerte.add(offerta);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return Mappatori.OFFERTA.tutti(SELECT_OFFERTE_BY_ID_UTENTE_QUERY, resultSet);
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return offerte;
+        return new ArrayList<>();
     }
 
     public List<Offerta> getOfferteByIdOrdine(int idOrdine) throws SQLException {
-        // Crea una lista vuota di offerte
-        List<Offerta> offerte = new ArrayList<>();
-
-        // Apre una connessione al database
-        Connection conn = ConPool.getConnection();
-
-        // Crea un PreparedStatement utilizzando la query creata in precedenza
-        PreparedStatement stmt = conn.prepareStatement(SELECT_OFFERTE_BY_ID_ORDINE_QUERY);
-
-        // Imposta il parametro della query con l'id dell'ordine passato come argomento
-        stmt.setInt(1, idOrdine);
-
-        // Esegue la query e ottiene il risultato
-        ResultSet rs = stmt.executeQuery();
+        // Apre una connessione al database e crea un PreparedStatement utilizzando la query creata in precedenza,
+        // entrambi chiusi al termine del blocco
+        try (Connection conn = ConPool.getConnectionLettura();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_OFFERTE_BY_ID_ORDINE_QUERY)) {
 
-        // Itera sui risultati della query e crea un oggetto Offerta per ogni riga del risultato
-        while (rs.next()) {
-            int idOfferta = rs.getInt("idOfferta");
-            String condizione = rs.getString("condizione");
-            double prezzo = rs.getDouble("prezzo");
-            int idUtente = rs.getInt("idUtente");
-            int idCarta = rs.getInt("idCarta");
+            // Imposta il parametro della query con l'id dell'ordine passato come argomento
+            stmt.setInt(1, idOrdine);
 
-
-            Offerta offerta = new Offerta(idOfferta, condizione, prezzo, idUtente, idCarta);
-            offerte.add(offerta);
+            // Esegue la query e crea un oggetto Offerta per ogni riga del risultato
+            try (ResultSet rs = stmt.executeQuery()) {
+                return Mappatori.OFFERTA.tutti(SELECT_OFFERTE_BY_ID_ORDINE_QUERY, rs);
+            }
         }
-
-        return offerte;
     }
 
     public void doUpdate(int idOfferta, Offerta offerta){
-            try (Connection con = ConPool.getConnection()) {
-                PreparedStatement statement = con.prepareStatement(UPDATE_OFFERTA_QUERY);
-                statement.setInt(1,  offerta.getIdOfferta());
-                statement.setString(2, offerta.getCondizione());
-                statement.setDouble(3, offerta.getPrezzo());
-                statement.setInt(4, offerta.getIdUtente());
-                statement.setDouble(5, offerta.getIdCarta());
-                statement.executeUpdate();
+            try (Connection con = ConPool.getConnection();
+                 PreparedStatement statement = con.prepareStatement(UPDATE_OFFERTA_QUERY)) {
+                statement.setString(1, offerta.getCondizione());
+                statement.setDouble(2, offerta.getPrezzo());
+                statement.setInt(3, offerta.getIdUtente());
+                statement.setInt(4, offerta.getIdCarta());
+                statement.setInt(5, idOfferta);
+                //un'offerta inesistente non va aggiunta al mercato ne' registrata per gli altri nodi
+                if (statement.executeUpdate() != 1)
+                    return;
+                Offerta modificata = new Offerta(idOfferta, offerta.getCondizione(), offerta.getPrezzo(),
+                        offerta.getIdUtente(), offerta.getIdCarta());
+                UnitaDiLavoro.dopoConferma(() -> MercatoOfferte.getInstance().aggiorna(modificata));
+                RegistroModifiche.registra(RegistroModifiche.OFFERTA, idOfferta);
             } catch (SQLException e) {
                 e.printStackTrace();
             }
@@ -182,15 +278,30 @@ public class OffertaDAO {
     questo metodo prende in input un intero id e cancella dal database l'offerta con quell'id, utilizzando la query 'DELETE_OFFERTA_QUERY'.
     */
     public void doDelete(int idOfferta) {
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement statement = con.prepareStatement(DELETE_OFFERTA_QUERY);
+        try (Connection con = ConPool.getConnection();
+             PreparedStatement statement = con.prepareStatement(DELETE_OFFERTA_QUERY)) {
             statement.setInt(1, idOfferta);
-            statement.executeUpdate();
+            if (statement.executeUpdate() != 1)
+                return;
+            UnitaDiLavoro.dopoConferma(() -> MercatoOfferte.getInstance().rimuovi(idOfferta));
+            RegistroModifiche.registra(RegistroModifiche.OFFERTA, idOfferta);
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
+    /*
+    applicaModifica(int idOfferta): applica al mercato in memoria la modifica di un'offerta fatta da un altro nodo
+    (vedi RegistroModifiche), rileggendo l'offerta dal database.
+    */
+    static void applicaModifica(int idOfferta) {
+        Offerta offerta = new OffertaDAO().doRetrieveById(idOfferta);
+        if (offerta != null)
+            MercatoOfferte.getInstance().aggiorna(offerta);
+        else
+            MercatoOfferte.getInstance().rimuovi(idOfferta);
+    }
+
 
 
 }
@@ -4,7 +4,10 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import storage.ConPool;
 import acquisto.Ordine;
@@ -16,34 +19,37 @@ public class OrdineDAO {
 
     private static final String SELECT_ALL_ORDINI = " SELECT * FROM Ordine";
     private static final String SELECT_ORDINI_BY_ID_UTENTE_QUERY = "SELECT * FROM Ordine WHERE idUtente = ?";
+    private static final String SELECT_PAGINA_ORDINI_QUERY = "SELECT * FROM Ordine WHERE idOrdine > ? ORDER BY idOrdine LIMIT ?";
+    private static final String SELECT_PAGINA_ORDINI_BY_ID_UTENTE_QUERY =
+            "SELECT * FROM Ordine WHERE idUtente = ? AND idOrdine > ? ORDER BY idOrdine LIMIT ?";
     private static final String UPDATE_ORDINE_QUERY = "UPDATE Ordine SET data = ?, indirizzo = ?, idUtente = ?, totale = ? WHERE idOrdine = ?";
     private static final String DELETE_ORDINE_QUERY = "DELETE FROM Ordine WHERE idOrdine = ?";
     private static final String UPDATE_ORDINECONTIENEOFFERTA_QUERY= "INSERT INTO OrdineContieneOfferta (idOrdine, idOfferta) VALUES (?, ?)";
 
+    // Inserisce l'ordine e gli assegna l'id generato dal database
     public void doSave(Ordine ordine) {
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement statement = con.prepareStatement(INSERT_ORDINE_QUERY);
-            statement.setDate(1, (java.sql.Date) ordine.getData());
+        try (Connection con = ConPool.getConnection();
+             PreparedStatement statement = con.prepareStatement(INSERT_ORDINE_QUERY, Statement.RETURN_GENERATED_KEYS)) {
+            statement.setDate(1, new java.sql.Date(ordine.getData().getTime()));
             statement.setString(2, ordine.getIndirizzo());
             statement.setInt(3, ordine.getIdUtente());
+            statement.setDouble(4, ordine.getTotale());
             statement.executeUpdate();
+            try (ResultSet chiavi = statement.getGeneratedKeys()) {
+                if (chiavi.next())
+                    ordine.setIdOrdine(chiavi.getInt(1));
+            }
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
     public Ordine doRetrieveById(int idOrdine) {
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement statement = con.prepareStatement(SELECT_ORDINE_BY_ID_QUERY);
+        try (Connection con = ConPool.getConnectionLettura();
+             PreparedStatement statement = con.prepareStatement(SELECT_ORDINE_BY_ID_QUERY)) {
             statement.setInt(1, idOrdine);
-            ResultSet resultSet = statement.executeQuery();
-            if (resultSet.next()) {
-                int idUtente = resultSet.getInt("idUtente");
-                Date data = resultSet.getDate("data");
-                String indirizzo = resultSet.getString("indirizzo");
-                double totale = resultSet.getDouble("totale");
-
-                return new Ordine(idOrdine, data, indirizzo, idUtente, totale);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return Mappatori.ORDINE.primo(SELECT_ORDINE_BY_ID_QUERY, resultSet);
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -51,86 +57,104 @@ public class OrdineDAO {
         return null;
     }
     public List<Ordine> doRetrieveByIdUtente(int idUtente) {
-        List<Ordine> ordini = new ArrayList<>();
-        try (Connection conn = ConPool.getConnection();
+        try (Connection conn = ConPool.getConnectionLettura();
              PreparedStatement stmt = conn.prepareStatement(SELECT_ORDINI_BY_ID_UTENTE_QUERY)) {
             stmt.setInt(1, idUtente);
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                int idOrdine = rs.getInt("idOrdine");
-                Date data = rs.getDate("data");
-                String indirizzo = rs.getString("indirizzo");
-
-                double totale = rs.getDouble("totale");
-                Ordine ordine = new Ordine(idOrdine, data, indirizzo, idUtente, totale);
-                ordini.add(ordine);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return Mappatori.ORDINE.tutti(SELECT_ORDINI_BY_ID_UTENTE_QUERY, rs);
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return ordini;
+        return new ArrayList<>();
+    }
+
+    // Restituisce una pagina degli ordini, ordinati per id, a partire dall'ordine successivo al cursore (0 per la prima pagina)
+    public Pagina<Ordine> doRetrievePagina(int dopoIdOrdine, int dimensione) {
+        try {
+            return Paginazione.leggi(SELECT_PAGINA_ORDINI_QUERY, Mappatori.ORDINE, Ordine::getIdOrdine, dopoIdOrdine, dimensione);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new Pagina<>(new ArrayList<>(), null);
+    }
+
+    // Restituisce una pagina dello storico degli ordini di un utente, ordinati per id
+    public Pagina<Ordine> doRetrievePaginaByIdUtente(int idUtente, int dopoIdOrdine, int dimensione) {
+        try {
+            return Paginazione.leggi(SELECT_PAGINA_ORDINI_BY_ID_UTENTE_QUERY, Mappatori.ORDINE, Ordine::getIdOrdine,
+                    dopoIdOrdine, dimensione, idUtente);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new Pagina<>(new ArrayList<>(), null);
     }
 
 
     public void doUpdate(int idOrdine, Ordine ordine) {
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement statement = con.prepareStatement(UPDATE_ORDINE_QUERY);
-            statement.setDate(1, (java.sql.Date) ordine.getData());
+        try (Connection con = ConPool.getConnection();
+             PreparedStatement statement = con.prepareStatement(UPDATE_ORDINE_QUERY)) {
+            statement.setDate(1, new java.sql.Date(ordine.getData().getTime()));
             statement.setString(2, ordine.getIndirizzo());
             statement.setInt(3, ordine.getIdUtente());
-            statement.setInt(4, ordine.getIdOrdine());
-            statement.setDouble(5, ordine.getTotale());
+            statement.setDouble(4, ordine.getTotale());
+            statement.setInt(5, idOrdine);
             statement.executeUpdate();
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
-    public void addOfferteToOrdine(int idOrdine, List<Integer> idOfferte){
-        // Apertura della connessione
-        try (Connection conn = ConPool.getConnection()) {
-            // Creazione del PreparedStatement
-            PreparedStatement stmt = conn.prepareStatement(UPDATE_ORDINECONTIENEOFFERTA_QUERY);
-            // Imposta i parametri della query
+    // Inserisce le righe dell'ordine, una per offerta, con un unico batch JDBC e in un'unica transazione;
+    // se l'inserimento fallisce la SQLException arriva al chiamante e nessuna riga viene inserita
+    public void addOfferteToOrdine(int idOrdine, List<Integer> idOfferte) throws SQLException {
+        InserimentoMultiplo.esegui(UPDATE_ORDINECONTIENEOFFERTA_QUERY, idOfferte, (stmt, idOfferta) -> {
             stmt.setInt(1, idOrdine);
+            stmt.setInt(2, idOfferta);
+        }, null);
+    }
 
-            // Esegue la query per ogni offerta presente nella lista
-            for (Integer idOfferta : idOfferte) {
-                stmt.setInt(2, idOfferta);
-                stmt.executeUpdate();
-            }
+    public List < Ordine > doRetrieveAll() {
+        try (Connection con = ConPool.getConnectionLettura();
+             PreparedStatement statement = con.prepareStatement(SELECT_ALL_ORDINI);
+             ResultSet resultSet = statement.executeQuery()) {
+            return Mappatori.ORDINE.tutti(SELECT_ALL_ORDINI, resultSet);
         } catch (SQLException e) {
             e.printStackTrace();
         }
-    }
+        return new ArrayList<>();
 
-    public List < Ordine > doRetrieveAll() {
-        List < Ordine > ordini = new ArrayList < > ();
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement statement = con.prepareStatement(SELECT_ALL_ORDINI);
-            ResultSet resultSet = statement.executeQuery();
-            while (resultSet.next()) {
-                int idOrdine = resultSet.getInt("idOrdine");
-                Date data = resultSet.getDate("data");
-                String indirizzo = resultSet.getString("indirizzo");
-                int idUtente = resultSet.getInt("idUtente");
-                double totale = resultSet.getDouble("totale");
-
-                Ordine ordine = new Ordine(idOrdine, data, indirizzo, idUtente,totale);
-                ordini.add(ordine);
+    }
 
-            }
+    /*
+    doRetrieveAll(Consumer consumatore): come doRetrieveAll(), ma tutti gli ordini vengono passati al consumatore
+    uno alla volta man mano che vengono letti dal database, senza costruire la lista in memoria.
+    */
+    public void doRetrieveAll(Consumer<? super Ordine> consumatore) {
+        try {
+            LetturaContinua.perOgni(SELECT_ALL_ORDINI, Mappatori.ORDINE, consumatore);
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return ordini;
+    }
 
+    /*
+    doStreamAll(): restituisce tutti gli ordini come Stream, letto dal database man mano che viene consumato.
+    Lo Stream tiene occupata una connessione e va chiuso dopo l'uso, ad esempio con un try-with-resources.
+    */
+    public Stream<Ordine> doStreamAll() {
+        try {
+            return LetturaContinua.flusso(SELECT_ALL_ORDINI, Mappatori.ORDINE);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return Stream.empty();
     }
 
 
         public void doDelete(int idOrdine) {
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement statement = con.prepareStatement(DELETE_ORDINE_QUERY);
+        try (Connection con = ConPool.getConnection();
+             PreparedStatement statement = con.prepareStatement(DELETE_ORDINE_QUERY)) {
             statement.setInt(1, idOrdine);
             statement.executeUpdate();
         } catch (SQLException e) {
@@ -0,0 +1,48 @@
+package storage;
+
+import java.util.List;
+
+/**
+ * La classe modella una pagina di risultati ottenuta con la paginazione
+ * per chiave (keyset): la pagina successiva si richiede passando il cursore,
+ * cioe' l' id dell' ultimo elemento della pagina corrente, cosi' che ogni
+ * pagina costi quanto la prima
+ * @param <T> il tipo degli elementi della pagina
+ */
+
+public class Pagina<T> {
+    public static final int DIMENSIONE_PREDEFINITA = 24;
+    public static final int DIMENSIONE_MASSIMA = 100;
+
+    private final List<T> elementi;
+    private final Integer cursoreSuccessivo;
+
+    /**
+     * Costruttore della classe Pagina
+     * @param elementi gli elementi della pagina
+     * @param cursoreSuccessivo l' id dell' ultimo elemento della pagina se esistono
+     *                          altri elementi, null se questa e' l' ultima pagina
+     * */
+    public Pagina(List<T> elementi, Integer cursoreSuccessivo) {
+        this.elementi = elementi;
+        this.cursoreSuccessivo = cursoreSuccessivo;
+    }
+
+    public List<T> getElementi() {
+        return elementi;
+    }
+
+    public Integer getCursoreSuccessivo() {
+        return cursoreSuccessivo;
+    }
+
+    /**
+     * Il metodo permette di riportare la dimensione di pagina richiesta dal client
+     * nell' intervallo consentito dal server
+     * @param dimensione la dimensione richiesta
+     * @return una dimensione compresa tra 1 e DIMENSIONE_MASSIMA
+     * */
+    public static int limita(int dimensione) {
+        return Math.max(1, Math.min(DIMENSIONE_MASSIMA, dimensione));
+    }
+}
@@ -0,0 +1,57 @@
+package storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * La classe permette ai DAO di leggere una pagina di risultati con la paginazione
+ * per chiave (keyset). La query deve terminare con "... id > ? ORDER BY id LIMIT ?",
+ * dove id e' la chiave primaria della tabella: i parametri del filtro vengono
+ * impostati per primi, poi il cursore e infine il limite. Viene chiesta una riga
+ * in piu' della dimensione della pagina per sapere se esiste una pagina successiva
+ */
+
+final class Paginazione {
+
+    private Paginazione(){}
+
+    /**
+     * Il metodo permette di leggere una pagina di risultati
+     * @param query la query da eseguire, con cursore e limite come ultimi parametri
+     * @param mappatore costruisce gli oggetti dalle righe
+     * @param chiave restituisce l' id di un oggetto, usato come cursore della pagina successiva
+     * @param cursore id dell' ultimo elemento della pagina precedente, 0 per la prima pagina
+     * @param dimensione dimensione richiesta, riportata nei limiti di {@link Pagina#limita(int)}
+     * @param parametri valori dei parametri del filtro, nell' ordine
+     * @return la pagina letta
+     * */
+    static <T> Pagina<T> leggi(String query, Mappatore<T> mappatore, ToIntFunction<T> chiave, int cursore,
+                               int dimensione, Object... parametri) throws SQLException {
+        dimensione = Pagina.limita(dimensione);
+
+        try (Connection connessione = ConPool.getConnectionLettura();
+             PreparedStatement statement = connessione.prepareStatement(query)) {
+            int indice = 1;
+            for (Object parametro : parametri)
+                statement.setObject(indice++, parametro);
+            statement.setInt(indice++, cursore);
+            statement.setInt(indice, dimensione + 1);
+
+            List<T> elementi;
+            try (ResultSet rs = statement.executeQuery()) {
+                elementi = mappatore.tutti(query, rs);
+            }
+
+            //se la query ha restituito una riga in piu' della dimensione esiste una pagina successiva
+            if (elementi.size() > dimensione) {
+                elementi.remove(dimensione);
+                return new Pagina<>(elementi, chiave.applyAsInt(elementi.get(dimensione - 1)));
+            }
+            return new Pagina<>(elementi, null);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package storage;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import utils.Configurazione;
+
+import java.sql.SQLException;
+
+/**
+ * L' interfaccia modella il database usato da ConPool: il profilo sceglie driver,
+ * URL e credenziali e puo' preparare il database appena creato il pool.
+ * Il profilo si seleziona con la chiave db.profilo: mysql (predefinito), h2,
+ * oppure il nome completo di una classe che implementa l' interfaccia
+ */
+
+public interface ProfiloDatabase {
+
+    /**
+     * Il metodo permette di impostare le proprieta' di connessione del pool
+     * @param proprieta le proprieta' del pool, con dimensionamento e validazione gia' impostati
+     * @param configurazione la configurazione letta da database.properties
+     * */
+    void configura(PoolProperties proprieta, Configurazione configurazione);
+
+    /**
+     * Il metodo permette di preparare il database dopo la creazione del pool,
+     * ad esempio creando lo schema e i dati
+     * @param dataSource il pool appena creato
+     * @param configurazione la configurazione letta da database.properties
+     * */
+    default void prepara(DataSource dataSource, Configurazione configurazione) throws SQLException {
+    }
+
+    /**
+     * Il metodo permette di adattare l' URL di una replica di sola lettura, che usa
+     * driver e credenziali impostati da configura
+     * @param url l' URL della replica indicato in db.repliche
+     * @return l' URL da usare per il pool della replica
+     * */
+    default String urlReplica(String url) {
+        return url;
+    }
+
+    /**
+     * @return true se il database supporta la ricerca MATCH ... AGAINST sull' indice FULLTEXT
+     * */
+    boolean supportaFullText();
+
+    /**
+     * @return true se il database supporta i lock con nome GET_LOCK e RELEASE_LOCK, usati per
+     * applicare le migrazioni dello schema da un solo nodo alla volta
+     * */
+    default boolean supportaLockConNome() {
+        return false;
+    }
+}
@@ -0,0 +1,68 @@
+package storage;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import utils.Configurazione;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * La classe modella il profilo H2: un database in memoria in modalita' di
+ * compatibilita' MySQL, creato dallo script database/database.sql e popolato
+ * con dati sintetici, cosi' che benchmark e test di carico non richiedano un
+ * server MySQL. Lo schema creato riceve subito le migrazioni (vedi Migrazioni), a meno che
+ * db.migrazioni.automatiche sia false, cosi' che sia completo anche fuori dall' applicazione web. Richiede il driver H2 nel classpath (profilo Maven h2).
+ * Le quantita' di dati generati si impostano con le chiavi h2.utenti,
+ * h2.carte, h2.offerte, h2.ordini, h2.scambi, h2.discussioni, h2.messaggi e h2.seme
+ */
+
+class ProfiloH2 implements ProfiloDatabase {
+    private static final String URL_PREDEFINITO =
+            "jdbc:h2:mem:cardexchange;MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String SCHEMA = "database/database.sql";
+
+    @Override
+    public void configura(PoolProperties p, Configurazione configurazione) {
+        p.setUrl(configurazione.stringa("h2.url", URL_PREDEFINITO));
+        p.setDriverClassName("org.h2.Driver");
+        p.setUsername(configurazione.stringa("h2.username", "sa"));
+        p.setPassword(configurazione.stringa("h2.password", ""));
+    }
+
+    @Override
+    public void prepara(DataSource dataSource, Configurazione configurazione) throws SQLException {
+        try (Connection connessione = dataSource.getConnection()) {
+            //il database in memoria sopravvive alla chiusura del pool: lo schema si crea una sola volta
+            if (esisteTabella(connessione.getMetaData(), "utente"))
+                return;
+
+            //H2 non gestisce database multipli
+            EsecutoreScript.esegui(connessione, SCHEMA, istruzione -> istruzione.startsWith("drop database") ||
+                    istruzione.startsWith("create database") || istruzione.startsWith("use "));
+
+            GeneratoreDati generatore = new GeneratoreDati(configurazione.intero("h2.seme", 42));
+            generatore.genera(connessione,
+                    configurazione.intero("h2.utenti", 1000), configurazione.intero("h2.carte", 5000),
+                    configurazione.intero("h2.offerte", 20000), configurazione.intero("h2.ordini", 2000));
+            generatore.generaInterazioni(connessione, configurazione.intero("h2.scambi", 5000),
+                    configurazione.intero("h2.discussioni", 500), configurazione.intero("h2.messaggi", 10000));
+        }
+
+        if (configurazione.booleano("db.migrazioni.automatiche", true))
+            Migrazioni.esegui(dataSource, this);
+    }
+
+    @Override
+    public boolean supportaFullText() {
+        return false;
+    }
+
+    private static boolean esisteTabella(DatabaseMetaData metadati, String tabella) throws SQLException {
+        try (ResultSet tabelle = metadati.getTables(null, null, tabella, null)) {
+            return tabelle.next();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package storage;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import utils.Configurazione;
+
+import java.util.TimeZone;
+
+/**
+ * La classe modella il profilo predefinito: il database MySQL indicato
+ * dalle chiavi db.* di database.properties
+ */
+
+class ProfiloMySQL implements ProfiloDatabase {
+
+    @Override
+    public void configura(PoolProperties p, Configurazione configurazione) {
+        p.setUrl(conFusoOrario(configurazione.stringa("db.url", "jdbc:mysql://localhost:3306/CardExchange")));
+        p.setDriverClassName(configurazione.stringa("db.driver", "com.mysql.cj.jdbc.Driver"));
+        p.setUsername(configurazione.stringa("db.username", "root"));
+        p.setPassword(configurazione.stringa("db.password", ""));
+        p.setConnectionProperties(configurazione.stringa("db.connectionProperties", null));
+    }
+
+    @Override
+    public String urlReplica(String url) {
+        return conFusoOrario(url);
+    }
+
+    //il driver deve conoscere il fuso orario del server per convertire le date
+    private static String conFusoOrario(String url) {
+        if (url.startsWith("jdbc:mysql:") && !url.contains("serverTimezone="))
+            url += (url.contains("?") ? "&" : "?") + "serverTimezone=" + TimeZone.getDefault().getID();
+
+        return url;
+    }
+
+    @Override
+    public boolean supportaFullText() {
+        return true;
+    }
+
+    @Override
+    public boolean supportaLockConNome() {
+        return true;
+    }
+}
@@ -6,34 +6,57 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class RecensioneDAO {
+    private static final String SELECT_ALL_QUERY = "SELECT * FROM Recensione";
+    private static final String SELECT_BY_ID_QUERY = "SELECT*FROM Recensione WHERE idRecensione=?";
+    private static final String SELECT_PAGINA_QUERY = "SELECT * FROM Recensione WHERE idRecensione > ? ORDER BY idRecensione LIMIT ?";
+
     //Metodo che permette di restituire tutte le recensioni presenti nel DB
     public List<Recensione> doRetrieveAll(){
-        try (Connection con=ConPool.getConnection()){
-            PreparedStatement ps=con.prepareStatement("SELECT * FROM Recensione");
-            List<Recensione> recensioni=new ArrayList<>();
-            ResultSet rs=ps.executeQuery();
-            while (rs.next()){
-                Recensione r=new Recensione();
-                r.setIdRecensione(rs.getInt(1));
-                r.setValutazione(rs.getInt(2));
-                r.setTesto(rs.getString(3));
-
-                recensioni.add(r);
+        try (Connection con=ConPool.getConnectionLettura();
+             PreparedStatement ps = con.prepareStatement(SELECT_ALL_QUERY)) {
+            try (ResultSet rs = ps.executeQuery()) {
+                return Mappatori.RECENSIONE.tutti(SELECT_ALL_QUERY, rs);
             }
-            con.close();
-            return recensioni;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //Metodo che passa al consumatore tutte le recensioni presenti nel DB, una alla volta, senza caricarle tutte in memoria
+    public void doRetrieveAll(Consumer<? super Recensione> consumatore){
+        try {
+            LetturaContinua.perOgni(SELECT_ALL_QUERY, Mappatori.RECENSIONE, consumatore);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //Metodo che restituisce tutte le recensioni presenti nel DB come Stream, letto dal DB man mano; lo Stream tiene una connessione e va chiuso
+    public Stream<Recensione> doStreamAll(){
+        try {
+            return LetturaContinua.flusso(SELECT_ALL_QUERY, Mappatori.RECENSIONE);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //Metodo che restituisce una pagina delle recensioni presenti nel DB, ordinate per id, a partire dalla recensione successiva al cursore
+    public Pagina<Recensione> doRetrievePagina(int dopoIdRecensione, int dimensione){
+        try {
+            return Paginazione.leggi(SELECT_PAGINA_QUERY, Mappatori.RECENSIONE, Recensione::getIdRecensione, dopoIdRecensione, dimensione);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
     public void doUpdate(int idRecensione,Recensione r){
-        try(Connection con=ConPool.getConnection()) {
-            PreparedStatement ps = con.prepareStatement("UPDATE Recensione set valutazione=?,testo=? where idRecensione=?;");
+        try (Connection con=ConPool.getConnection();
+             PreparedStatement ps = con.prepareStatement("UPDATE Recensione set valutazione=?,testo=? where idRecensione=?;")) {
             ps.setInt(1, r.getValutazione());
             ps.setString(2, r.getTesto());
             ps.setInt(3, idRecensione);
@@ -44,8 +67,8 @@ public class RecensioneDAO {
     }
     //Metodo che permette di eliminare nel DB una recensione tramite id
     public void doDelete(int idRecensione){
-        try (Connection con=ConPool.getConnection()){
-            PreparedStatement ps=con.prepareStatement("DELETE FROM Recensione where idRecensione=?");
+        try (Connection con=ConPool.getConnection();
+             PreparedStatement ps = con.prepareStatement("DELETE FROM Recensione where idRecensione=?")) {
             ps.setInt(1,idRecensione);
             if (ps.executeUpdate() != 1) {
                 throw new RuntimeException("Errore durante la cancellazione della recensione");
@@ -56,27 +79,20 @@ public class RecensioneDAO {
     }
     //Metodo che permette di trovare e restituire una recensione nel DB  tramite id
     public Recensione doRetrieveById(int idRecensione) {
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement ps = con.prepareStatement("SELECT*FROM Recensione WHERE idRecensione=?");
+        try (Connection con = ConPool.getConnectionLettura();
+             PreparedStatement ps = con.prepareStatement(SELECT_BY_ID_QUERY)) {
             ps.setInt(1, idRecensione);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                Recensione r = new Recensione();
-                r.setIdRecensione(rs.getInt(1));
-                r.setValutazione(rs.getInt(2));
-                r.setTesto(rs.getString(3));
-                return r;
+            try (ResultSet rs = ps.executeQuery()) {
+                return Mappatori.RECENSIONE.primo(SELECT_BY_ID_QUERY, rs);
             }
-            con.close();
-            return null;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
     //Metodo che permette inserire una recensione nel DB
     public void doSave(Recensione r){
-        try (Connection con=ConPool.getConnection()){
-            PreparedStatement ps=con.prepareStatement("INSERT into Recensione(valutazione,testo,idUtente,idOrdine)VALUES(?,?,?,?);");
+        try (Connection con=ConPool.getConnection();
+             PreparedStatement ps = con.prepareStatement("INSERT into Recensione(valutazione,testo,idUtente,idOrdine)VALUES(?,?,?,?);")) {
             ps.setInt(1,r.getValutazione());
             ps.setString(2,r.getTesto());
             ps.setInt(3,r.getIdUtente());
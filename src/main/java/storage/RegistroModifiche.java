@@ -0,0 +1,270 @@
+package storage;
+
+import utils.Configurazione;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * La classe mantiene coerenti tra piu' nodi le strutture in memoria costruite sui dati
+ * del database: la cache di carte e utenti (CacheEntita), il catalogo delle carte con la
+ * cache delle ricerche e il mercato delle offerte. Dopo ogni scrittura i DAO aggiungono
+ * una riga alla tabella RegistroModifiche con il nodo, l' entita' e il suo id; ogni nodo
+ * legge periodicamente le righe successive all' ultima letta e aggiorna le proprie strutture
+ * per le modifiche fatte dagli altri nodi.
+ * Gli id vengono assegnati all' inserimento ma le righe diventano visibili al commit, quindi
+ * una riga puo' comparire dopo una con id maggiore: gli id mancanti vengono cercati di nuovo,
+ * per id e separatamente dalle righe nuove, per ATTESA_LACUNE_MILLIS, poi considerati inserimenti
+ * annullati (ad esempio da un' UnitaDiLavoro non confermata).
+ * L' intervallo di lettura si configura con cache.sincronizzazione.intervalloMillis
+ * (0 disattiva il registro, ad esempio con un solo nodo) e le righe piu' vecchie di
+ * cache.sincronizzazione.conservazioneMinuti vengono cancellate
+ */
+
+public final class RegistroModifiche {
+    static final String CARTA = "carta";
+    static final String OFFERTA = "offerta";
+    static final String UTENTE = "utente";
+    //un' importazione del catalogo (vedi ImportazioneCarte), senza id
+    static final String CATALOGO = "catalogo";
+
+    private static final String CONFIGURAZIONE = "database.properties";
+    private static final String INSERT_QUERY = "INSERT INTO RegistroModifiche (nodo, entita, idEntita, istante) VALUES (?, ?, ?, ?)";
+    private static final String SELECT_ULTIMA_QUERY = "SELECT MAX(idModifica) FROM RegistroModifiche";
+    private static final String SELECT_SUCCESSIVE_QUERY =
+            "SELECT idModifica, nodo, entita, idEntita FROM RegistroModifiche WHERE idModifica > ? ORDER BY idModifica LIMIT ?";
+    private static final int LACUNE_PER_LETTURA = 100;
+    private static final String SELECT_LACUNE_QUERY = "SELECT idModifica, nodo, entita, idEntita FROM RegistroModifiche WHERE idModifica IN (" +
+            String.join(", ", Collections.nCopies(LACUNE_PER_LETTURA, "?")) + ")";
+    private static final String DELETE_VECCHIE_QUERY = "DELETE FROM RegistroModifiche WHERE istante < ?";
+    private static final int RIGHE_PER_LETTURA = 1000;
+    private static final long ATTESA_LACUNE_MILLIS = 30000;
+    private static final long INTERVALLO_PULIZIA_MILLIS = 60000;
+
+    //identifica le righe scritte da questo nodo, che non vanno applicate di nuovo
+    static final String NODO = UUID.randomUUID().toString();
+
+    private static volatile boolean attivo = new Configurazione(CONFIGURAZIONE).intero("cache.sincronizzazione.intervalloMillis", 1000) > 0;
+    private static ScheduledExecutorService esecutore;
+
+    //stato della lettura, usato solo dal thread dell' esecutore
+    private static long ultimaLetta = -1;
+    private static final TreeMap<Long, Long> lacune = new TreeMap<>();
+    private static long ultimaPulizia;
+    private static long conservazioneMillis;
+
+    private RegistroModifiche(){}
+
+    /**
+     * Il metodo permette di avviare la lettura periodica del registro
+     * */
+    public static synchronized void avvia(){
+        Configurazione configurazione = new Configurazione(CONFIGURAZIONE);
+        int intervallo = configurazione.intero("cache.sincronizzazione.intervalloMillis", 1000);
+        attivo = intervallo > 0;
+        if (!attivo || esecutore != null)
+            return;
+
+        conservazioneMillis = TimeUnit.MINUTES.toMillis(configurazione.intero("cache.sincronizzazione.conservazioneMinuti", 60));
+        esecutore = Executors.newSingleThreadScheduledExecutor(operazione -> {
+            Thread thread = new Thread(operazione, "registro-modifiche");
+            thread.setDaemon(true);
+            return thread;
+        });
+        esecutore.scheduleWithFixedDelay(RegistroModifiche::sincronizza, 0, intervallo, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Il metodo permette di fermare la lettura periodica del registro
+     * */
+    public static synchronized void ferma(){
+        if (esecutore == null)
+            return;
+
+        esecutore.shutdownNow();
+        try {
+            esecutore.awaitTermination(5, TimeUnit.SECONDS);
+        }
+
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        esecutore = null;
+    }
+
+    /**
+     * Il metodo permette di registrare la modifica di un' entita', dopo che e' stata scritta nel database.
+     * Se la registrazione fallisce gli altri nodi vedranno la modifica alla scadenza delle loro cache.
+     * In un' UnitaDiLavoro la riga viene scritta dopo la conferma, con una connessione separata:
+     * un errore del registro non annulla mai la transazione dell' unita'
+     * @param entita il tipo dell' entita', una delle costanti della classe
+     * @param idEntita id dell' entita' inserita, modificata o cancellata
+     * */
+    static void registra(String entita, int idEntita){
+        registraTutte(entita, Collections.singletonList(idEntita));
+    }
+
+    /**
+     * Il metodo permette di registrare la modifica di piu' entita' dello stesso tipo
+     * @param entita il tipo delle entita', una delle costanti della classe
+     * @param idEntita gli id delle entita' inserite, modificate o cancellate
+     * */
+    static void registraTutte(String entita, List<Integer> idEntita){
+        if (!attivo)
+            return;
+
+        //fuori dall' unita', che altrimenti verrebbe segnata da annullare se l' inserimento fallisce
+        UnitaDiLavoro.dopoConferma(() -> scrivi(entita, idEntita));
+    }
+
+    private static void scrivi(String entita, List<Integer> idEntita){
+        long istante = System.currentTimeMillis();
+        try {
+            InserimentoMultiplo.esegui(INSERT_QUERY, idEntita, (statement, id) -> {
+                statement.setString(1, NODO);
+                statement.setString(2, entita);
+                statement.setInt(3, id);
+                statement.setLong(4, istante);
+            }, null);
+        }
+
+        //dopo la conferma un' eccezione fermerebbe anche le altre azioni dell' unita'
+        catch (SQLException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void sincronizza(){
+        long adesso = System.currentTimeMillis();
+
+        //le entita' modificate vanno rilette dal primario, non da una replica in ritardo
+        ConsistenzaLetture.inizia(adesso);
+        try (Connection connessione = ConPool.getConnection()) {
+            if (ultimaLetta < 0) {
+                //le modifiche precedenti all' avvio sono gia' nel database letto dal nodo
+                ultimaLetta = ultima(connessione);
+                ultimaPulizia = adesso;
+                return;
+            }
+
+            leggi(connessione, adesso);
+            lacune.values().removeIf(scoperta -> adesso - scoperta > ATTESA_LACUNE_MILLIS);
+
+            if (adesso - ultimaPulizia > INTERVALLO_PULIZIA_MILLIS) {
+                pulisci(connessione, adesso - conservazioneMillis);
+                ultimaPulizia = adesso;
+            }
+        }
+
+        //un errore non deve fermare le letture successive
+        catch (SQLException | RuntimeException e) {
+            e.printStackTrace();
+        }
+
+        finally {
+            ConsistenzaLetture.termina();
+        }
+    }
+
+    private static void leggi(Connection connessione, long adesso) throws SQLException {
+        if (!lacune.isEmpty())
+            leggiLacune(connessione);
+
+        //le righe successive all' ultima letta, a pagine, fino alla fine del registro
+        int lette;
+        do {
+            lette = 0;
+            try (PreparedStatement statement = connessione.prepareStatement(SELECT_SUCCESSIVE_QUERY)) {
+                statement.setLong(1, ultimaLetta);
+                statement.setInt(2, RIGHE_PER_LETTURA);
+
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        lette++;
+                        long idModifica = rs.getLong(1);
+
+                        //un salto troppo ampio non e' una scrittura in corso ma un salto del contatore
+                        if (idModifica - ultimaLetta <= RIGHE_PER_LETTURA) {
+                            for (long mancante = ultimaLetta + 1; mancante < idModifica; mancante++)
+                                lacune.put(mancante, adesso);
+                        }
+
+                        ultimaLetta = idModifica;
+                        applica(rs);
+                    }
+                }
+            }
+        } while (lette == RIGHE_PER_LETTURA);
+    }
+
+    //le lacune vengono cercate per id: quante righe siano state scritte dopo non conta
+    private static void leggiLacune(Connection connessione) throws SQLException {
+        List<Long> mancanti = new ArrayList<>(lacune.keySet());
+
+        try (PreparedStatement statement = connessione.prepareStatement(SELECT_LACUNE_QUERY)) {
+            for (int inizio = 0; inizio < mancanti.size(); inizio += LACUNE_PER_LETTURA) {
+                //gli ultimi segnaposto ripetono l' ultimo id, cosi' il testo della query non cambia e lo statement viene riusato
+                for (int i = 0; i < LACUNE_PER_LETTURA; i++)
+                    statement.setLong(i + 1, mancanti.get(Math.min(inizio + i, mancanti.size() - 1)));
+
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        if (lacune.remove(rs.getLong(1)) != null)
+                            applica(rs);
+                    }
+                }
+            }
+        }
+    }
+
+    //le righe scritte da questo nodo sono gia' state applicate
+    private static void applica(ResultSet rs) throws SQLException {
+        if (!NODO.equals(rs.getString(2)))
+            applica(rs.getString(3), rs.getInt(4));
+    }
+
+    private static void applica(String entita, int idEntita){
+        switch (entita) {
+            case CARTA:
+                CartaDAO.applicaModifica(idEntita);
+                break;
+
+            case OFFERTA:
+                OffertaDAO.applicaModifica(idEntita);
+                break;
+
+            case UTENTE:
+                UtenteDAO.applicaModifica(idEntita);
+                break;
+
+            case CATALOGO:
+                CartaDAO.applicaImportazione();
+                break;
+        }
+    }
+
+    private static long ultima(Connection connessione) throws SQLException {
+        try (PreparedStatement statement = connessione.prepareStatement(SELECT_ULTIMA_QUERY);
+             ResultSet rs = statement.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static void pulisci(Connection connessione, long prima) throws SQLException {
+        try (PreparedStatement statement = connessione.prepareStatement(DELETE_VECCHIE_QUERY)) {
+            statement.setLong(1, prima);
+            statement.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package storage;
+
+import monitoraggio.FormatoPrometheus;
+import monitoraggio.RegistroMetriche;
+import utils.Configurazione;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.temporal.Temporal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * La classe scrive il registro delle query lente: le istruzioni SQL che durano piu' di
+ * db.queryLente.sogliaMillis, con i parametri, il metodo del DAO che le ha eseguite e,
+ * se db.queryLente.explain e' attivo, il piano di esecuzione restituito da EXPLAIN.
+ * I valori dei parametri possono contenere dati personali e credenziali: vengono scritti
+ * solo per le istruzioni sulle tabelle elencate in db.queryLente.parametri, e mai per quelle
+ * che usano la tabella Utente; per le altre il registro riporta solo il tipo di ogni valore.
+ * Le esecuzioni sono misurate da IntercettoreMetriche, che raccoglie i parametri solo
+ * quando il registro e' attivo; la scrittura del file e l' EXPLAIN avvengono in un thread
+ * dedicato, cosi' che il thread della richiesta non attenda mai il disco o il database.
+ * Se la coda e' piena l' esecuzione non viene registrata ma solo contata.
+ * Il file ruota raggiunti db.queryLente.dimensioneFile byte, conservandone db.queryLente.numeroFile
+ */
+
+public final class RegistroQueryLente {
+    private static final String CONFIGURAZIONE = "database.properties";
+    private static final String NOME_THREAD = "query-lente";
+    private static final int DIMENSIONE_CODA = 1000;
+    private static final int LUNGHEZZA_MASSIMA_VALORE = 100;
+    //email e password degli utenti non vengono mai scritte, qualunque sia la configurazione
+    private static final Pattern TABELLE_RISERVATE = Pattern.compile("\\bUtente\\b", Pattern.CASE_INSENSITIVE);
+    //lo stesso piano non viene chiesto al database piu' di una volta al minuto
+    private static final long INTERVALLO_EXPLAIN_MILLIS = 60000;
+    private static final int MASSIMO_EXPLAIN_RICORDATI = 1000;
+
+    private static final Logger LOGGER = Logger.getLogger(RegistroQueryLente.class.getName());
+    private static final LongAdder REGISTRATE = new LongAdder();
+    private static final LongAdder SCARTATE = new LongAdder();
+
+    //0 se il registro non e' attivo
+    private static volatile long sogliaNanos;
+    private static volatile boolean explain;
+    //null se i valori dei parametri non vanno mai scritti
+    private static volatile Pattern tabelleVisibili;
+    private static ThreadPoolExecutor esecutore;
+    private static FileHandler file;
+
+    //istante dell' ultimo EXPLAIN per ogni testo SQL, usato solo dal thread del registro
+    private static final Map<String, Long> ULTIMI_EXPLAIN = new HashMap<>();
+
+    static {
+        RegistroMetriche.getInstance().registra(RegistroQueryLente::scrivi);
+    }
+
+    private RegistroQueryLente(){}
+
+    /**
+     * Il metodo permette di avviare il registro, se db.queryLente.sogliaMillis e' maggiore di 0
+     * */
+    public static synchronized void avvia(){
+        Configurazione configurazione = new Configurazione(CONFIGURAZIONE);
+        long sogliaMillis = configurazione.intero("db.queryLente.sogliaMillis", 500);
+        if (sogliaMillis <= 0 || esecutore != null)
+            return;
+
+        try {
+            file = new FileHandler(configurazione.stringa("db.queryLente.file", filePredefinito()),
+                    configurazione.intero("db.queryLente.dimensioneFile", 10 * 1024 * 1024),
+                    configurazione.intero("db.queryLente.numeroFile", 5), true);
+        }
+
+        catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        file.setFormatter(new Formatter() {
+            @Override
+            public String format(LogRecord record) {
+                return record.getMessage() + System.lineSeparator();
+            }
+        });
+        LOGGER.setUseParentHandlers(false);
+        LOGGER.addHandler(file);
+
+        esecutore = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(DIMENSIONE_CODA),
+                operazione -> {
+                    Thread thread = new Thread(operazione, NOME_THREAD);
+                    thread.setDaemon(true);
+                    return thread;
+                }, (operazione, pool) -> SCARTATE.increment());
+
+        explain = configurazione.booleano("db.queryLente.explain", false);
+        tabelleVisibili = tabelle(configurazione.stringa("db.queryLente.parametri", ""));
+        sogliaNanos = TimeUnit.MILLISECONDS.toNanos(sogliaMillis);
+    }
+
+    /**
+     * Il metodo permette di fermare il registro, dopo aver scritto le esecuzioni in coda
+     * */
+    public static synchronized void ferma(){
+        if (esecutore == null)
+            return;
+
+        sogliaNanos = 0;
+        esecutore.shutdown();
+        try {
+            esecutore.awaitTermination(5, TimeUnit.SECONDS);
+        }
+
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        LOGGER.removeHandler(file);
+        file.close();
+        esecutore = null;
+        file = null;
+    }
+
+    /**
+     * Il metodo permette di sapere se IntercettoreMetriche deve raccogliere i parametri degli statement
+     * @return true se il registro e' attivo
+     * */
+    static boolean attivo(){
+        return sogliaNanos > 0;
+    }
+
+    /**
+     * Il metodo permette di sapere se un' esecuzione va registrata
+     * @param nanosecondi la durata dell' esecuzione
+     * @return true se il registro e' attivo e la durata supera la soglia
+     * */
+    static boolean lenta(long nanosecondi){
+        long soglia = sogliaNanos;
+        return soglia > 0 && nanosecondi >= soglia;
+    }
+
+    /**
+     * Il metodo permette di registrare un' esecuzione, se e' piu' lenta della soglia.
+     * Va chiamato dal thread che ha eseguito l' istruzione, per individuare il metodo chiamante
+     * @param sql il testo dell' istruzione
+     * @param parametri i valori dei parametri, nell' ordine; null se l' istruzione non ne ha
+     * @param nanosecondi la durata dell' esecuzione
+     * @param errore l' eccezione sollevata dall' esecuzione, null se e' terminata correttamente
+     * */
+    static void registra(String sql, Object[] parametri, long nanosecondi, Throwable errore){
+        //le istruzioni del thread del registro sono gli EXPLAIN, che non vanno registrati
+        if (!lenta(nanosecondi) || sql == null || Thread.currentThread().getName().equals(NOME_THREAD))
+            return;
+
+        String chiamante = chiamante(new Throwable().getStackTrace());
+        String valori = parametri == null ? "[]" : visibili(sql) ? descrivi(parametri) : nascondi(parametri);
+        long istante = System.currentTimeMillis();
+        ThreadPoolExecutor pool = esecutore;
+        if (pool != null)
+            pool.execute(() -> scrivi(istante, sql, valori, parametri, nanosecondi, chiamante, errore));
+    }
+
+    private static void scrivi(long istante, String sql, String valori, Object[] parametri, long nanosecondi,
+                               String chiamante, Throwable errore){
+        StringBuilder voce = new StringBuilder();
+        voce.append(Instant.ofEpochMilli(istante)).append(' ')
+                .append(String.format(Locale.ROOT, "%.1f ms", nanosecondi / 1e6)).append(' ').append(chiamante);
+        if (errore != null)
+            voce.append(" errore: ").append(errore);
+
+        voce.append(System.lineSeparator()).append("  sql: ").append(sql.replaceAll("\\s+", " ").trim());
+        voce.append(System.lineSeparator()).append("  parametri: ").append(valori);
+        if (explain)
+            aggiungiExplain(voce, sql, parametri, istante);
+
+        LOGGER.log(Level.INFO, voce.toString());
+        REGISTRATE.increment();
+    }
+
+    private static void aggiungiExplain(StringBuilder voce, String sql, Object[] parametri, long istante){
+        String modello = sql.trim().toUpperCase(Locale.ROOT);
+        if (!(modello.startsWith("SELECT") || modello.startsWith("UPDATE") || modello.startsWith("DELETE") ||
+                modello.startsWith("INSERT")))
+            return;
+
+        Long ultimo = ULTIMI_EXPLAIN.get(sql);
+        if (ultimo != null && istante - ultimo < INTERVALLO_EXPLAIN_MILLIS)
+            return;
+
+        if (ULTIMI_EXPLAIN.size() >= MASSIMO_EXPLAIN_RICORDATI)
+            ULTIMI_EXPLAIN.clear();
+        ULTIMI_EXPLAIN.put(sql, istante);
+
+        try (Connection connessione = ConPool.getConnectionLettura();
+             PreparedStatement statement = connessione.prepareStatement("EXPLAIN " + sql)) {
+            if (parametri != null) {
+                for (int i = 0; i < parametri.length; i++)
+                    statement.setObject(i + 1, parametri[i]);
+            }
+
+            try (ResultSet rs = statement.executeQuery()) {
+                ResultSetMetaData metadati = rs.getMetaData();
+                voce.append(System.lineSeparator()).append("  explain:");
+                while (rs.next()) {
+                    voce.append(System.lineSeparator()).append("   ");
+                    for (int i = 1; i <= metadati.getColumnCount(); i++)
+                        voce.append(' ').append(metadati.getColumnLabel(i)).append('=')
+                                .append(String.valueOf(rs.getString(i)).replaceAll("\\R", System.lineSeparator() + "      "));
+                }
+            }
+        }
+
+        catch (SQLException | RuntimeException e) {
+            voce.append(System.lineSeparator()).append("  explain non disponibile: ").append(e.getMessage());
+        }
+    }
+
+    //il primo metodo di un DAO nella pila, altrimenti il primo metodo fuori da pool, driver e JDK
+    private static String chiamante(StackTraceElement[] pila){
+        StackTraceElement esterno = null;
+
+        for (StackTraceElement elemento : pila) {
+            String classe = elemento.getClassName();
+            if (classe.endsWith("DAO") || classe.endsWith("DAOAsincrona"))
+                return elemento.toString();
+
+            if (esterno == null && !interno(classe))
+                esterno = elemento;
+        }
+
+        return esterno == null ? "sconosciuto" : esterno.toString();
+    }
+
+    private static boolean interno(String classe){
+        return classe.startsWith("java.") || classe.startsWith("jdk.") || classe.startsWith("sun.") ||
+                classe.startsWith("com.sun.") || classe.startsWith("org.apache.tomcat.jdbc.") || classe.contains("$Proxy") ||
+                classe.equals(RegistroQueryLente.class.getName()) || classe.startsWith(IntercettoreMetriche.class.getName()) ||
+                classe.startsWith(LetturaContinua.class.getName()) || classe.equals(InserimentoMultiplo.class.getName());
+    }
+
+    //la cartella dei log di Tomcat, o la cartella dell' utente: non la cartella temporanea condivisa
+    private static String filePredefinito(){
+        String catalina = System.getProperty("catalina.base");
+        String cartella = catalina != null ? catalina.replace("%", "%%") + "/logs" : "%h";
+        return cartella + "/cardexchange-query-lente.%g.log";
+    }
+
+    private static Pattern tabelle(String elenco){
+        StringBuilder alternative = new StringBuilder();
+        for (String tabella : elenco.split(",")) {
+            tabella = tabella.trim();
+            if (tabella.isEmpty())
+                continue;
+
+            if (alternative.length() > 0)
+                alternative.append('|');
+            alternative.append(Pattern.quote(tabella));
+        }
+
+        return alternative.length() == 0 ? null :
+                Pattern.compile("\\b(?:" + alternative + ")\\b", Pattern.CASE_INSENSITIVE);
+    }
+
+    private static boolean visibili(String sql){
+        Pattern tabelle = tabelleVisibili;
+        return tabelle != null && tabelle.matcher(sql).find() && !TABELLE_RISERVATE.matcher(sql).find();
+    }
+
+    //solo il tipo dei valori, che resta utile per capire quale piano ha scelto il database
+    private static String nascondi(Object[] parametri){
+        String[] tipi = new String[parametri.length];
+        for (int i = 0; i < parametri.length; i++)
+            tipi[i] = parametri[i] == null ? "null" : parametri[i].getClass().getSimpleName();
+
+        return Arrays.toString(tipi);
+    }
+
+    private static String descrivi(Object[] parametri){
+        String[] valori = new String[parametri.length];
+        for (int i = 0; i < parametri.length; i++)
+            valori[i] = descrivi(parametri[i]);
+
+        return Arrays.toString(valori);
+    }
+
+    private static String descrivi(Object valore){
+        if (valore == null)
+            return "null";
+        if (valore instanceof Number || valore instanceof Boolean)
+            return valore.toString();
+        if (!(valore instanceof CharSequence || valore instanceof Date || valore instanceof Temporal))
+            return valore.getClass().getSimpleName();
+
+        String testo = valore.toString();
+        if (testo.length() > LUNGHEZZA_MASSIMA_VALORE)
+            testo = testo.substring(0, LUNGHEZZA_MASSIMA_VALORE) + "...";
+        return "'" + testo + "'";
+    }
+
+    private static void scrivi(FormatoPrometheus formato){
+        formato.contatore("cardexchange_sql_slow_queries_total", "Esecuzioni scritte nel registro delle query lente",
+                REGISTRATE.sum());
+        formato.contatore("cardexchange_sql_slow_queries_dropped_total",
+                "Esecuzioni lente non registrate perche' la coda del registro era piena", SCARTATE.sum());
+    }
+}
@@ -10,14 +10,27 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class ScambioDAO {
+    private static final String SELECT_BY_ID_OFFERTA_QUERY = "SELECT * FROM RichiestaDiScambio WHERE idOffertaDestinatario=?";
+    private static final String SELECT_BY_ID_MITTENTE_QUERY = "SELECT * FROM RichiestaDiScambio WHERE idUtenteMittente=?";
+    private static final String SELECT_BY_ID_DESTINATARIO_QUERY = "SELECT * FROM RichiestaDiScambio WHERE idUtenteDestinatario=?";
+    private static final String SELECT_ALL_QUERY = "SELECT * FROM RichiestaDiScambio";
+    private static final String SELECT_BY_ID_QUERY = "SELECT * FROM RichiestaDiScambio WHERE IdRichiestaScambio=?";
+    private static final String SELECT_PAGINA_QUERY = "SELECT * FROM RichiestaDiScambio WHERE idRichiestaScambio > ? ORDER BY idRichiestaScambio LIMIT ?";
+    private static final String SELECT_PAGINA_BY_ID_MITTENTE_QUERY =
+            "SELECT * FROM RichiestaDiScambio WHERE idUtenteMittente=? AND idRichiestaScambio > ? ORDER BY idRichiestaScambio LIMIT ?";
+    private static final String SELECT_PAGINA_BY_ID_DESTINATARIO_QUERY =
+            "SELECT * FROM RichiestaDiScambio WHERE idUtenteDestinatario=? AND idRichiestaScambio > ? ORDER BY idRichiestaScambio LIMIT ?";
+
     /**
      * @param idRichiestaScambio - ID della richiesta di scambio da eliminare
      */
     public void doDelete(int idRichiestaScambio) {
-        try(Connection con=ConPool.getConnection()){
-            PreparedStatement ps= con.prepareStatement("DELETE FROM RichiestaDiScambio WHERE idRichiestaScambio=?");
+        try (Connection con=ConPool.getConnection();
+             PreparedStatement ps = con.prepareStatement("DELETE FROM RichiestaDiScambio WHERE idRichiestaScambio=?")) {
             ps.setInt(1,idRichiestaScambio);
             if(ps.executeUpdate()!=1){
                 throw new RuntimeException("Errore durante la cancellazione dello scambio");
@@ -32,9 +45,9 @@ public class ScambioDAO {
      * @param richiestaDiScambio - Lo scambio che verrà memorizzato all'interno del DB
      */
     public void doSave(Scambio richiestaDiScambio){
-        try (Connection con=ConPool.getConnection()){
-            PreparedStatement ps=con.prepareStatement("INSERT into RichiestaDiScambio(idUtenteMittente,idUtenteDestinatario,idOffertaMittente,idOffertaDestinatario, conguaglio)" +
-                    " VALUES (?,?,?,?,?);");
+        try (Connection con=ConPool.getConnection();
+             PreparedStatement ps = con.prepareStatement("INSERT into RichiestaDiScambio(idUtenteMittente,idUtenteDestinatario,idOffertaMittente,idOffertaDestinatario, conguaglio)" +
+                     " VALUES (?,?,?,?,?);")) {
             ps.setInt(1,richiestaDiScambio.getIdUtenteMittente());
             ps.setInt(2,richiestaDiScambio.getIdUtenteDestinatario());
             ps.setInt(3,richiestaDiScambio.getIdOffertaMittente());
@@ -58,30 +71,15 @@ public class ScambioDAO {
      */
     // Permette di recuperare tutte le richieste di scambio per una determinata offerta
     public ArrayList<Scambio> getAllScambiByIdOfferta(int idOfferta){
-        try(Connection con = ConPool.getConnection()){
-
-            //Preparo la query
-            PreparedStatement ps = con.prepareStatement("SELECT * FROM RichiestaDiScambio WHERE idOfferta=?");
-            ps.setString(1, String.valueOf(idOfferta));
-
-            // Inizializzo l'ArrayList che conterrà tutte le richieste di scambio
-            ArrayList<Scambio> scambio = new ArrayList<>();
-
-
-            //Eseguo la query sul DB
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()){
-                Scambio u = new Scambio();
-                u.setIdRichiestaScambio(rs.getInt(1));
-                u.setIdUtenteMittente(rs.getInt(2));
-                u.setIdUtenteDestinatario(rs.getInt(3));
-                u.setIdOffertaMittente(rs.getInt(4));
-                u.setIdUtenteDestinatario(rs.getInt(5));
-                u.setConguaglio(rs.getDouble(6));
-                scambio.add(u);
+        try (Connection con = ConPool.getConnectionLettura();
+             //Preparo la query
+             PreparedStatement ps = con.prepareStatement(SELECT_BY_ID_OFFERTA_QUERY)) {
+            ps.setInt(1, idOfferta);
+
+            //Eseguo la query sul DB e costruisco l'ArrayList che contiene tutte le richieste di scambio
+            try (ResultSet rs = ps.executeQuery()) {
+                return new ArrayList<>(Mappatori.SCAMBIO.tutti(SELECT_BY_ID_OFFERTA_QUERY, rs));
             }
-            con.close();
-            return scambio;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -93,30 +91,15 @@ public class ScambioDAO {
      */
     // Permette di recuperare tutte le richieste scambio effettuate da un utente
     public ArrayList<Scambio> getAllScambiByIdMittente(int idUtenteMittente){
-        try(Connection con = ConPool.getConnection()){
-
-            //Preparo la query
-            PreparedStatement ps = con.prepareStatement("SELECT * FROM RichiestaDiScambio WHERE idUtenteMittente=?");
+        try (Connection con = ConPool.getConnectionLettura();
+             //Preparo la query
+             PreparedStatement ps = con.prepareStatement(SELECT_BY_ID_MITTENTE_QUERY)) {
             ps.setInt(1, idUtenteMittente);
 
-            // Inizializzo l'ArrayList che conterrà tutte le richieste di scambio
-            ArrayList<Scambio> scambio = new ArrayList<>();
-
-
-            //Eseguo la query sul DB
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()){
-                Scambio u = new Scambio();
-                u.setIdRichiestaScambio(rs.getInt(1));
-                u.setIdUtenteMittente(rs.getInt(2));
-                u.setIdUtenteDestinatario(rs.getInt(3));
-                u.setIdOffertaMittente(rs.getInt(4));
-                u.setIdUtenteDestinatario(rs.getInt(5));
-                u.setConguaglio(rs.getDouble(6));
-                scambio.add(u);
+            //Eseguo la query sul DB e costruisco l'ArrayList che contiene tutte le richieste di scambio
+            try (ResultSet rs = ps.executeQuery()) {
+                return new ArrayList<>(Mappatori.SCAMBIO.tutti(SELECT_BY_ID_MITTENTE_QUERY, rs));
             }
-            con.close();
-            return scambio;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -128,79 +111,101 @@ public class ScambioDAO {
      */
     // Permette di recuperare tutte le richieste scambio ricevute da un utente
     public ArrayList<Scambio> getAllScambiByIdDestinatario(int idUtenteDestinatario){
-        try(Connection con = ConPool.getConnection()){
-
-            //Preparo la query
-            PreparedStatement ps = con.prepareStatement("SELECT * FROM RichiestaDiScambio WHERE idUtenteDestinatario=?");
+        try (Connection con = ConPool.getConnectionLettura();
+             //Preparo la query
+             PreparedStatement ps = con.prepareStatement(SELECT_BY_ID_DESTINATARIO_QUERY)) {
             ps.setInt(1, idUtenteDestinatario);
 
-            // Inizializzo l'ArrayList che conterrà tutte le richieste di scambio
-            ArrayList<Scambio> scambio = new ArrayList<>();
-
-
-            //Eseguo la query sul DB
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()){
-                Scambio u = new Scambio();
-                u.setIdRichiestaScambio(rs.getInt(1));
-                u.setIdUtenteMittente(rs.getInt(2));
-                u.setIdUtenteDestinatario(rs.getInt(3));
-                u.setIdOffertaMittente(rs.getInt(4));
-                u.setIdUtenteDestinatario(rs.getInt(5));
-                u.setConguaglio(rs.getDouble(6));
-                scambio.add(u);
+            //Eseguo la query sul DB e costruisco l'ArrayList che contiene tutte le richieste di scambio
+            try (ResultSet rs = ps.executeQuery()) {
+                return new ArrayList<>(Mappatori.SCAMBIO.tutti(SELECT_BY_ID_DESTINATARIO_QUERY, rs));
             }
-            con.close();
-            return scambio;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param idUtenteMittente - ID dell'utente che ha inviato le richieste di scambio
+     * @param dopoIdRichiestaScambio - ID dell'ultima richiesta della pagina precedente, 0 per la prima pagina
+     * @param dimensione - numero di richieste della pagina
+     * @return una pagina delle richieste di scambio effettuate, ordinate per id
+     */
+    public Pagina<Scambio> getPaginaScambiByIdMittente(int idUtenteMittente, int dopoIdRichiestaScambio, int dimensione){
+        try {
+            return Paginazione.leggi(SELECT_PAGINA_BY_ID_MITTENTE_QUERY, Mappatori.SCAMBIO, Scambio::getIdRichiestaScambio,
+                    dopoIdRichiestaScambio, dimensione, idUtenteMittente);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param idUtenteDestinatario - ID dell'utente Destinatario
+     * @param dopoIdRichiestaScambio - ID dell'ultima richiesta della pagina precedente, 0 per la prima pagina
+     * @param dimensione - numero di richieste della pagina
+     * @return una pagina delle richieste di scambio ricevute, ordinate per id
+     */
+    public Pagina<Scambio> getPaginaScambiByIdDestinatario(int idUtenteDestinatario, int dopoIdRichiestaScambio, int dimensione){
+        try {
+            return Paginazione.leggi(SELECT_PAGINA_BY_ID_DESTINATARIO_QUERY, Mappatori.SCAMBIO, Scambio::getIdRichiestaScambio,
+                    dopoIdRichiestaScambio, dimensione, idUtenteDestinatario);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //Permette di recuperare una pagina di tutte le richieste di scambio, ordinate per id
+    public Pagina<Scambio> doRetrievePagina(int dopoIdRichiestaScambio, int dimensione){
+        try {
+            return Paginazione.leggi(SELECT_PAGINA_QUERY, Mappatori.SCAMBIO, Scambio::getIdRichiestaScambio, dopoIdRichiestaScambio, dimensione);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
     public List<Scambio> doRetrieveAll(){
-        try(Connection con = ConPool.getConnection()){
-            List<Scambio> scambioList = new ArrayList<>();
-            PreparedStatement ps = con.prepareStatement("SELECT * FROM carta;");
-            ResultSet rs = ps.executeQuery();
-            while(rs.next()){
-                Scambio u = new Scambio();
-                u.setIdRichiestaScambio(rs.getInt(1));
-                u.setIdUtenteMittente(rs.getInt(2));
-                u.setIdUtenteDestinatario(rs.getInt(3));
-                u.setIdOffertaMittente(rs.getInt(4));
-                u.setIdUtenteDestinatario(rs.getInt(5));
-                u.setConguaglio(rs.getDouble(6));
-                scambioList.add(u);
+        try (Connection con = ConPool.getConnectionLettura();
+             PreparedStatement ps = con.prepareStatement(SELECT_ALL_QUERY)) {
+            try (ResultSet rs = ps.executeQuery()) {
+                return Mappatori.SCAMBIO.tutti(SELECT_ALL_QUERY, rs);
             }
-            con.close();
-            return scambioList;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
 
     }
 
-    public Scambio doRetrieveById(int IdRichiestaScambio){
-        try(Connection con = ConPool.getConnection()){
+    //Metodo che passa al consumatore tutte le richieste di scambio presenti nel DB, una alla volta, senza caricarle tutte in memoria
+    public void doRetrieveAll(Consumer<? super Scambio> consumatore){
+        try {
+            LetturaContinua.perOgni(SELECT_ALL_QUERY, Mappatori.SCAMBIO, consumatore);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //Metodo che restituisce tutte le richieste di scambio presenti nel DB come Stream, letto dal DB man mano; lo Stream tiene una connessione e va chiuso
+    public Stream<Scambio> doStreamAll(){
+        try {
+            return LetturaContinua.flusso(SELECT_ALL_QUERY, Mappatori.SCAMBIO);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-            //Preparo la query
-            PreparedStatement ps = con.prepareStatement("SELECT * FROM RichiestaDiScambio WHERE IdRichiestaScambio=?");
+    public Scambio doRetrieveById(int IdRichiestaScambio){
+        try (Connection con = ConPool.getConnectionLettura();
+             //Preparo la query
+             PreparedStatement ps = con.prepareStatement(SELECT_BY_ID_QUERY)) {
             ps.setInt(1, IdRichiestaScambio);
 
 
-            Scambio u = new Scambio();
-            //Eseguo la query sul DB
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()){
-                u.setIdRichiestaScambio(rs.getInt(1));
-                u.setIdUtenteMittente(rs.getInt(2));
-                u.setIdUtenteDestinatario(rs.getInt(3));
-                u.setIdOffertaMittente(rs.getInt(4));
-                u.setIdUtenteDestinatario(rs.getInt(5));
-                u.setConguaglio(rs.getDouble(6));
+            //Eseguo la query sul DB; se la richiesta non esiste restituisco uno scambio vuoto
+            try (ResultSet rs = ps.executeQuery()) {
+                Scambio u = Mappatori.SCAMBIO.primo(SELECT_BY_ID_QUERY, rs);
+                return u != null ? u : new Scambio();
             }
-            con.close();
-            return u;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -208,9 +213,9 @@ public class ScambioDAO {
     }
 
     void doUpdate (int idScambio,Scambio richiestaDiScambio){
-        try (Connection con = ConPool.getConnection()){
-            PreparedStatement ps=con.prepareStatement("UPDATE richiestaDiScambio set IdUtenteMittente=?,IdUtenteDestinatario=?,IdOffertaMittente=?, " +
-                    "IdOffertaDestinatario=?, conguaglio=? where idRichiestaDiScambio=?");
+        try (Connection con = ConPool.getConnection();
+             PreparedStatement ps = con.prepareStatement("UPDATE richiestaDiScambio set IdUtenteMittente=?,IdUtenteDestinatario=?,IdOffertaMittente=?, " +
+                     "IdOffertaDestinatario=?, conguaglio=? where idRichiestaDiScambio=?")) {
             ps.setInt(1,richiestaDiScambio.getIdUtenteMittente());
             ps.setInt(2,richiestaDiScambio.getIdUtenteDestinatario());
             ps.setInt(3,richiestaDiScambio.getIdOffertaMittente());
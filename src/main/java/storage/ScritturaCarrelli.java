@@ -0,0 +1,289 @@
+package storage;
+
+import monitoraggio.FormatoPrometheus;
+import monitoraggio.RegistroMetriche;
+import utils.Configurazione;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * La classe scrive nel database le modifiche ai carrelli tenuti nelle sessioni, in ritardo
+ * e accorpandole: per ogni carrello si ricorda solo l' ultima modifica di ogni offerta, aggiunta
+ * o rimozione, e ogni carrello.scrittura.intervalloMillis tutti i carrelli modificati vengono
+ * scritti con un' unica transazione, a blocchi con il batch JDBC. Aggiungere e togliere piu'
+ * offerte tra due scritture costa quindi una sola scrittura per carrello.
+ * Vengono scritte solo le offerte modificate, non l' intero contenuto del carrello: due sessioni
+ * dello stesso utente, anche su nodi diversi, non cancellano le aggiunte l' una dell' altra, e il
+ * totale viene ricalcolato dalle offerte presenti nel database.
+ * Allo spegnimento dell' applicazione le modifiche in attesa vengono scritte prima di chiudere
+ * il pool, cosi' il carrello si ritrova dopo il riavvio; se invece il nodo si arresta di colpo si
+ * perdono al massimo le modifiche dell' ultimo intervallo. Con intervalloMillis a 0, o se la
+ * scrittura non e' stata avviata o e' gia' stata fermata, ogni modifica viene scritta subito
+ */
+
+public final class ScritturaCarrelli {
+    private static final String CONFIGURAZIONE = "database.properties";
+    private static final String DELETE_OFFERTA_QUERY = "DELETE FROM CarrelloContieneOfferta WHERE idCarrello = ? AND idOfferta = ?";
+    //un' offerta cancellata nel frattempo viene saltata invece di far fallire la scrittura dell' intero carrello,
+    //e un' offerta gia' presente, ad esempio aggiunta da un' altra sessione, non viene inserita di nuovo
+    private static final String INSERT_OFFERTA_QUERY =
+            "INSERT INTO CarrelloContieneOfferta (idCarrello, idOfferta) SELECT ?, idOfferta FROM Offerta WHERE idOfferta = ? " +
+            "AND NOT EXISTS (SELECT 1 FROM CarrelloContieneOfferta WHERE idCarrello = ? AND idOfferta = ?)";
+    private static final String UPDATE_TOTALE_QUERY = "UPDATE Carrello SET totale = (SELECT COALESCE(SUM(o.prezzo), 0) " +
+            "FROM CarrelloContieneOfferta c JOIN Offerta o ON o.idOfferta = c.idOfferta WHERE c.idCarrello = ?) WHERE idCarrello = ?";
+
+    private static final Map<Integer, Modifiche> IN_ATTESA = new ConcurrentHashMap<>();
+    private static final LongAdder SCRITTI = new LongAdder();
+    private static final LongAdder ACCORPATI = new LongAdder();
+    private static final LongAdder ERRORI = new LongAdder();
+    //letto senza lock da rimanda: null se la scrittura non e' avviata o e' stata fermata
+    private static volatile ScheduledExecutorService esecutore;
+
+    static {
+        RegistroMetriche.getInstance().registra(ScritturaCarrelli::scrivi);
+    }
+
+    /**
+     * La classe modella le modifiche di un carrello da scrivere: per ogni offerta
+     * true se e' stata aggiunta, false se e' stata rimossa
+     */
+    static final class Modifiche {
+        private final int idCarrello;
+        private final Map<Integer, Boolean> offerte;
+
+        Modifiche(int idCarrello, Map<Integer, Boolean> offerte) {
+            this.idCarrello = idCarrello;
+            this.offerte = offerte;
+        }
+
+        //le modifiche successive prevalgono su queste per le stesse offerte
+        Modifiche unisci(Modifiche successive) {
+            Map<Integer, Boolean> unite = new LinkedHashMap<>(offerte);
+            unite.putAll(successive.offerte);
+            return new Modifiche(idCarrello, unite);
+        }
+    }
+
+    private ScritturaCarrelli(){}
+
+    /**
+     * Il metodo permette di avviare la scrittura periodica, se carrello.scrittura.intervalloMillis e' maggiore di 0
+     * */
+    public static synchronized void avvia(){
+        int intervallo = new Configurazione(CONFIGURAZIONE).intero("carrello.scrittura.intervalloMillis", 1000);
+        if (intervallo <= 0 || esecutore != null)
+            return;
+
+        ScheduledExecutorService nuovo = Executors.newSingleThreadScheduledExecutor(operazione -> {
+            Thread thread = new Thread(operazione, "scrittura-carrelli");
+            thread.setDaemon(true);
+            return thread;
+        });
+        nuovo.scheduleWithFixedDelay(ScritturaCarrelli::scriviInAttesa, intervallo, intervallo, TimeUnit.MILLISECONDS);
+        esecutore = nuovo;
+    }
+
+    /**
+     * Il metodo permette di fermare la scrittura periodica, dopo aver scritto le modifiche in attesa
+     * */
+    public static synchronized void ferma(){
+        ScheduledExecutorService corrente = esecutore;
+        if (corrente == null)
+            return;
+
+        //da qui rimanda scrive subito: le modifiche rimandate prima vengono scritte qui sotto
+        esecutore = null;
+        //una scrittura in corso viene completata, non interrotta
+        corrente.shutdown();
+        try {
+            corrente.awaitTermination(30, TimeUnit.SECONDS);
+        }
+
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        scriviInAttesa();
+    }
+
+    /**
+     * Il metodo permette di rimandare la scrittura delle modifiche di un carrello
+     * @param idCarrello l' id del carrello
+     * @param offerte le offerte aggiunte (true) o rimosse (false), che prevalgono su quelle ancora in attesa
+     * */
+    static void rimanda(int idCarrello, Map<Integer, Boolean> offerte){
+        if (offerte.isEmpty())
+            return;
+
+        Modifiche modifiche = new Modifiche(idCarrello, offerte);
+        if (esecutore == null) {
+            scriviSubito(modifiche);
+            return;
+        }
+
+        IN_ATTESA.merge(idCarrello, modifiche, (inAttesa, successive) -> {
+            ACCORPATI.increment();
+            return inAttesa.unisci(successive);
+        });
+
+        //ferma puo' aver svuotato la coda tra il controllo e l' inserimento: la modifica non resta in attesa
+        if (esecutore == null) {
+            Modifiche rimaste = IN_ATTESA.remove(idCarrello);
+            if (rimaste != null)
+                scriviSubito(rimaste);
+        }
+    }
+
+    /**
+     * Il metodo permette di scrivere subito le modifiche di un carrello insieme a quelle ancora
+     * in attesa, nella transazione dell' UnitaDiLavoro se ce n' e' una aperta. Le modifiche in
+     * attesa smettono di esserlo solo dopo il commit: se la transazione viene annullata restano
+     * in attesa e vengono scritte dalla scrittura periodica
+     * @param idCarrello l' id del carrello
+     * @param offerte le offerte aggiunte (true) o rimosse (false), che prevalgono su quelle ancora in attesa
+     * */
+    static void scriviSubito(int idCarrello, Map<Integer, Boolean> offerte){
+        Modifiche inAttesa = IN_ATTESA.get(idCarrello);
+        Modifiche modifiche = new Modifiche(idCarrello, offerte);
+        if (inAttesa != null)
+            modifiche = inAttesa.unisci(modifiche);
+
+        //scrivere due volte le stesse modifiche non cambia il risultato: non serve toglierle dalla coda prima
+        if (scriviSubito(modifiche) && inAttesa != null)
+            UnitaDiLavoro.dopoConferma(() -> IN_ATTESA.remove(idCarrello, inAttesa));
+    }
+
+    private static boolean scriviSubito(Modifiche modifiche){
+        if (modifiche.offerte.isEmpty())
+            return true;
+
+        try (Connection connessione = ConPool.getConnection()) {
+            scrivi(connessione, Collections.singletonList(modifiche));
+            return true;
+        }
+
+        catch (SQLException e) {
+            ERRORI.increment();
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static void scriviInAttesa(){
+        if (IN_ATTESA.isEmpty())
+            return;
+
+        //le modifiche arrivate durante la scrittura restano in attesa per la prossima
+        List<Modifiche> tutte = new ArrayList<>();
+        for (Integer idCarrello : new ArrayList<>(IN_ATTESA.keySet())) {
+            Modifiche modifiche = IN_ATTESA.remove(idCarrello);
+            if (modifiche != null)
+                tutte.add(modifiche);
+        }
+
+        try (Connection connessione = ConPool.getConnection()) {
+            try {
+                scrivi(connessione, tutte);
+            }
+
+            catch (SQLException e) {
+                //un solo carrello non valido non deve impedire la scrittura degli altri
+                for (Modifiche modifiche : tutte) {
+                    try {
+                        scrivi(connessione, Collections.singletonList(modifiche));
+                    }
+
+                    catch (SQLException errore) {
+                        ERRORI.increment();
+                        errore.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        catch (SQLException | RuntimeException e) {
+            //database non raggiungibile: le modifiche tornano in attesa, sotto quelle arrivate nel frattempo
+            ERRORI.increment();
+            e.printStackTrace();
+            for (Modifiche modifiche : tutte)
+                IN_ATTESA.merge(modifiche.idCarrello, modifiche, (successive, fallite) -> fallite.unisci(successive));
+        }
+    }
+
+    private static void scrivi(Connection connessione, Collection<Modifiche> tutte) throws SQLException {
+        boolean autoCommit = connessione.getAutoCommit();
+        if (autoCommit)
+            connessione.setAutoCommit(false);
+
+        try (PreparedStatement delete = connessione.prepareStatement(DELETE_OFFERTA_QUERY);
+             PreparedStatement insert = connessione.prepareStatement(INSERT_OFFERTA_QUERY);
+             PreparedStatement update = connessione.prepareStatement(UPDATE_TOTALE_QUERY)) {
+            int rimosse = 0, aggiunte = 0;
+            for (Modifiche modifiche : tutte) {
+                for (Map.Entry<Integer, Boolean> offerta : modifiche.offerte.entrySet()) {
+                    if (offerta.getValue()) {
+                        insert.setInt(1, modifiche.idCarrello);
+                        insert.setInt(2, offerta.getKey());
+                        insert.setInt(3, modifiche.idCarrello);
+                        insert.setInt(4, offerta.getKey());
+                        insert.addBatch();
+                        if (++aggiunte % InserimentoMultiplo.DIMENSIONE_BLOCCO == 0)
+                            insert.executeBatch();
+                    }
+
+                    else {
+                        delete.setInt(1, modifiche.idCarrello);
+                        delete.setInt(2, offerta.getKey());
+                        delete.addBatch();
+                        if (++rimosse % InserimentoMultiplo.DIMENSIONE_BLOCCO == 0)
+                            delete.executeBatch();
+                    }
+                }
+
+                update.setInt(1, modifiche.idCarrello);
+                update.setInt(2, modifiche.idCarrello);
+                update.addBatch();
+            }
+            //il totale viene ricalcolato dopo aver scritto tutte le offerte
+            delete.executeBatch();
+            insert.executeBatch();
+            update.executeBatch();
+
+            if (autoCommit)
+                connessione.commit();
+            SCRITTI.add(tutte.size());
+        }
+
+        catch (SQLException | RuntimeException e) {
+            if (autoCommit)
+                connessione.rollback();
+            throw e;
+        }
+
+        finally {
+            if (autoCommit)
+                connessione.setAutoCommit(true);
+        }
+    }
+
+    private static void scrivi(FormatoPrometheus formato){
+        formato.gauge("cardexchange_cart_writes_pending", "Carrelli modificati in attesa di essere scritti", IN_ATTESA.size());
+        formato.contatore("cardexchange_cart_writes_total", "Carrelli scritti nel database", SCRITTI.sum());
+        formato.contatore("cardexchange_cart_writes_coalesced_total",
+                "Modifiche ai carrelli sostituite da una successiva prima di essere scritte", ACCORPATI.sum());
+        formato.contatore("cardexchange_cart_writes_errors_total", "Scritture dei carrelli fallite", ERRORI.sum());
+    }
+}
@@ -0,0 +1,152 @@
+package storage;
+
+import monitoraggio.FormatoPrometheus;
+import monitoraggio.IstogrammaLatenze;
+import monitoraggio.SorgenteMetriche;
+import org.apache.tomcat.jdbc.pool.DataSource;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * La classe raccoglie le statistiche del pool di connessioni: lo stato corrente
+ * del pool, letto dal DataSource, e la distribuzione dei tempi di attesa per
+ * ottenere una connessione, misurati da ConPool. Le statistiche sono esposte
+ * come MBean JMX e attraverso la servlet delle metriche, con l' etichetta pool
+ * che distingue il primario dalle repliche di sola lettura
+ */
+
+public class StatistichePool implements StatistichePoolMBean, SorgenteMetriche {
+    private final String nome;
+    private final DataSource dataSource;
+    private final IstogrammaLatenze attesa = new IstogrammaLatenze();
+    private final LongAdder timeout = new LongAdder();
+
+    StatistichePool(String nome, DataSource dataSource) {
+        this.nome = nome;
+        this.dataSource = dataSource;
+    }
+
+    String getNome() {
+        return nome;
+    }
+
+    void registraPrestito(long nanosecondi) {
+        attesa.registra(nanosecondi);
+    }
+
+    void registraTimeout() {
+        timeout.increment();
+    }
+
+    @Override
+    public int getAttive() {
+        return dataSource.getActive();
+    }
+
+    @Override
+    public int getInattive() {
+        return dataSource.getIdle();
+    }
+
+    @Override
+    public int getInAttesa() {
+        return dataSource.getWaitCount();
+    }
+
+    @Override
+    public int getDimensione() {
+        return dataSource.getSize();
+    }
+
+    @Override
+    public int getMassimoAttive() {
+        return dataSource.getMaxActive();
+    }
+
+    @Override
+    public long getPrestiti() {
+        return attesa.getNumero();
+    }
+
+    @Override
+    public long getTimeoutPrestito() {
+        return timeout.sum();
+    }
+
+    @Override
+    public long getAbbandonate() {
+        return dataSource.getRemoveAbandonedCount();
+    }
+
+    @Override
+    public double getAttesaP50Millis() {
+        return attesa.percentileMillisecondi(0.5);
+    }
+
+    @Override
+    public double getAttesaP95Millis() {
+        return attesa.percentileMillisecondi(0.95);
+    }
+
+    @Override
+    public double getAttesaP99Millis() {
+        return attesa.percentileMillisecondi(0.99);
+    }
+
+    @Override
+    public double getAttesaMassimaMillis() {
+        return attesa.getMassimoNanosecondi() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public void scrivi(FormatoPrometheus formato) {
+        scrivi(formato, Collections.singletonList(this));
+    }
+
+    /**
+     * Il metodo permette di scrivere le statistiche di piu' pool, con una sola intestazione per metrica
+     * @param formato il formato in cui scrivere
+     * @param pool le statistiche dei pool, distinte dall' etichetta pool
+     * */
+    static void scrivi(FormatoPrometheus formato, List<StatistichePool> pool) {
+        formato.intestazione("cardexchange_pool_active", "gauge", "Connessioni in uso");
+        for (StatistichePool p : pool)
+            formato.campione("cardexchange_pool_active", p.etichette(), p.getAttive());
+
+        formato.intestazione("cardexchange_pool_idle", "gauge", "Connessioni inattive nel pool");
+        for (StatistichePool p : pool)
+            formato.campione("cardexchange_pool_idle", p.etichette(), p.getInattive());
+
+        formato.intestazione("cardexchange_pool_waiters", "gauge", "Thread in attesa di una connessione");
+        for (StatistichePool p : pool)
+            formato.campione("cardexchange_pool_waiters", p.etichette(), p.getInAttesa());
+
+        formato.intestazione("cardexchange_pool_size", "gauge", "Connessioni aperte dal pool");
+        for (StatistichePool p : pool)
+            formato.campione("cardexchange_pool_size", p.etichette(), p.getDimensione());
+
+        formato.intestazione("cardexchange_pool_max_active", "gauge", "Numero massimo di connessioni in uso");
+        for (StatistichePool p : pool)
+            formato.campione("cardexchange_pool_max_active", p.etichette(), p.getMassimoAttive());
+
+        formato.intestazione("cardexchange_pool_borrow_timeouts_total", "counter", "Richieste di connessione fallite per timeout");
+        for (StatistichePool p : pool)
+            formato.campione("cardexchange_pool_borrow_timeouts_total", p.etichette(), p.getTimeoutPrestito());
+
+        formato.intestazione("cardexchange_pool_abandoned_total", "counter", "Connessioni abbandonate rimosse dal pool");
+        for (StatistichePool p : pool)
+            formato.campione("cardexchange_pool_abandoned_total", p.etichette(), p.getAbbandonate());
+
+        formato.intestazione("cardexchange_pool_borrow_wait_seconds", "summary", "Attesa per ottenere una connessione dal pool");
+        for (StatistichePool p : pool)
+            formato.riepilogo("cardexchange_pool_borrow_wait_seconds", p.etichette(), p.attesa);
+    }
+
+    private Map<String, String> etichette() {
+        return Collections.singletonMap("pool", nome);
+    }
+}
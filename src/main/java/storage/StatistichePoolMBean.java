@@ -0,0 +1,32 @@
+package storage;
+
+/**
+ * L' interfaccia definisce gli attributi JMX del pool di connessioni
+ */
+
+public interface StatistichePoolMBean {
+
+    int getAttive();
+
+    int getInattive();
+
+    int getInAttesa();
+
+    int getDimensione();
+
+    int getMassimoAttive();
+
+    long getPrestiti();
+
+    long getTimeoutPrestito();
+
+    long getAbbandonate();
+
+    double getAttesaP50Millis();
+
+    double getAttesaP95Millis();
+
+    double getAttesaP99Millis();
+
+    double getAttesaMassimaMillis();
+}
@@ -0,0 +1,139 @@
+package storage;
+
+import monitoraggio.FormatoPrometheus;
+import monitoraggio.IstogrammaLatenze;
+import monitoraggio.RegistroMetriche;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * La classe raccoglie le statistiche delle istruzioni SQL eseguite attraverso il pool:
+ * distribuzione delle durate, righe lette o modificate ed errori, per modello di istruzione.
+ * Il modello e' il testo SQL con spazi normalizzati e valori letterali sostituiti da ?,
+ * cosi' che le istruzioni costruite con valori diversi finiscano nella stessa serie; il
+ * modello di ogni testo viene calcolato una sola volta. I modelli sono al massimo
+ * MASSIMO_MODELLI, oltre i quali le istruzioni vengono contate come "altre".
+ * Le durate e gli errori sono registrati da IntercettoreMetriche; le righe delle
+ * modifiche dal valore restituito da executeUpdate ed executeBatch, quelle delle letture
+ * dai mappatori che le convertono in oggetti (Mappatore e LetturaContinua)
+ */
+
+final class StatisticheSql {
+    private static final int MASSIMO_MODELLI = 500;
+    private static final int MASSIMO_TESTI = 5000;
+    private static final int LUNGHEZZA_MASSIMA = 200;
+    private static final String ALTRE = "altre";
+
+    private static final Pattern SPAZI = Pattern.compile("\\s+");
+    private static final Pattern STRINGHE = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMERI = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?");
+    private static final Pattern LISTE = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern RIGHE = Pattern.compile("\\(\\?\\)(?:\\s*,\\s*\\(\\?\\))+");
+
+    //testo SQL -> statistiche del suo modello, per evitare di normalizzare il testo a ogni esecuzione
+    private static final Map<String, Voce> PER_TESTO = new ConcurrentHashMap<>();
+    private static final Map<String, Voce> PER_MODELLO = new ConcurrentHashMap<>();
+
+    static {
+        RegistroMetriche.getInstance().registra(StatisticheSql::scrivi);
+    }
+
+    private StatisticheSql(){}
+
+    /**
+     * Il metodo permette di ottenere le statistiche del modello di un' istruzione
+     * @param sql il testo dell' istruzione, null se non e' noto (ad esempio un batch di Statement)
+     * @return le statistiche del modello
+     * */
+    static Voce voce(String sql) {
+        String testo = sql == null ? "batch" : sql;
+        Voce voce = PER_TESTO.get(testo);
+        if (voce != null)
+            return voce;
+
+        String modello = modello(testo);
+        voce = PER_MODELLO.get(modello);
+        if (voce == null)
+            voce = PER_MODELLO.size() < MASSIMO_MODELLI ? PER_MODELLO.computeIfAbsent(modello, Voce::new) :
+                    PER_MODELLO.computeIfAbsent(ALTRE, Voce::new);
+
+        if (PER_TESTO.size() < MASSIMO_TESTI)
+            PER_TESTO.putIfAbsent(testo, voce);
+        return voce;
+    }
+
+    /**
+     * Il metodo permette di registrare le righe lette da una query
+     * @param sql il testo della query
+     * @param righe il numero di righe lette
+     * */
+    static void registraRighe(String sql, long righe) {
+        voce(sql).righe.add(righe);
+    }
+
+    static String modello(String sql) {
+        String modello = SPAZI.matcher(sql.trim()).replaceAll(" ");
+        if (modello.endsWith(";"))
+            modello = modello.substring(0, modello.length() - 1).trim();
+
+        modello = STRINGHE.matcher(modello).replaceAll("?");
+        modello = NUMERI.matcher(modello).replaceAll("?");
+        //le liste IN e gli inserimenti di piu' righe hanno lo stesso modello qualunque sia la loro lunghezza
+        modello = LISTE.matcher(modello).replaceAll("(?)");
+        modello = RIGHE.matcher(modello).replaceAll("(?)");
+        return modello.length() > LUNGHEZZA_MASSIMA ? modello.substring(0, LUNGHEZZA_MASSIMA) + "..." : modello;
+    }
+
+    private static void scrivi(FormatoPrometheus formato) {
+        //ordinati per modello, cosi' che le serie compaiano sempre nello stesso ordine
+        Map<String, Voce> voci = new TreeMap<>(PER_MODELLO);
+
+        formato.intestazione("cardexchange_sql_duration_seconds", "summary", "Durata delle istruzioni SQL per modello");
+        for (Voce voce : voci.values())
+            formato.riepilogo("cardexchange_sql_duration_seconds", voce.etichette(), voce.durate);
+
+        formato.intestazione("cardexchange_sql_rows_total", "counter", "Righe lette o modificate dalle istruzioni SQL per modello");
+        for (Voce voce : voci.values())
+            formato.campione("cardexchange_sql_rows_total", voce.etichette(), voce.righe.sum());
+
+        formato.intestazione("cardexchange_sql_errors_total", "counter", "Istruzioni SQL terminate con un errore per modello");
+        for (Voce voce : voci.values())
+            formato.campione("cardexchange_sql_errors_total", voce.etichette(), voce.errori.sum());
+    }
+
+    /**
+     * La classe modella le statistiche di un modello di istruzione
+     */
+    static final class Voce {
+        private final String modello;
+        private final IstogrammaLatenze durate = new IstogrammaLatenze();
+        private final LongAdder righe = new LongAdder();
+        private final LongAdder errori = new LongAdder();
+
+        private Voce(String modello) {
+            this.modello = modello;
+        }
+
+        void registraEsecuzione(long nanosecondi) {
+            durate.registra(nanosecondi);
+        }
+
+        void registraRighe(long numero) {
+            righe.add(numero);
+        }
+
+        void registraErrore(long nanosecondi) {
+            durate.registra(nanosecondi);
+            errori.increment();
+        }
+
+        private Map<String, String> etichette() {
+            return Collections.singletonMap("query", modello);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package storage;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * La classe modella un' unita' di lavoro: una connessione del database primario e una
+ * transazione condivise da tutti i DAO chiamati dal thread che la apre, ad esempio durante
+ * una richiesta. Finche' l' unita' e' aperta ConPool.getConnection e getConnectionLettura
+ * restituiscono la sua connessione, che i DAO chiudono come al solito senza che torni al
+ * pool: le scritture usano una sola connessione e diventano visibili tutte insieme con
+ * conferma, oppure vengono annullate se l' unita' viene chiusa senza conferma.
+ * I DAO spesso stampano le SQLException invece di sollevarle: perche' una transazione
+ * incompleta non venga confermata, l' errore di uno statement dell' unita' la segna da
+ * annullare e conferma solleva una SQLException. Le modifiche alle strutture in memoria
+ * passate a dopoConferma vengono applicate solo dopo il commit.
+ * Le letture fatte da altri thread, ad esempio con FacadeDAOAsincrona, non partecipano.
+ * Uso: try (UnitaDiLavoro unita = UnitaDiLavoro.inizia()) { ...; unita.conferma(); }
+ */
+
+public final class UnitaDiLavoro implements AutoCloseable {
+    private static final ThreadLocal<UnitaDiLavoro> CORRENTE = new ThreadLocal<>();
+
+    private final Connection connessione;
+    private final Connection condivisa;
+    private final List<Runnable> dopoConferma = new ArrayList<>();
+    private SQLException errore;
+    private boolean chiusa;
+
+    private UnitaDiLavoro(Connection connessione) {
+        this.connessione = connessione;
+        this.condivisa = (Connection) Proxy.newProxyInstance(UnitaDiLavoro.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, this::suConnessione);
+    }
+
+    /**
+     * Il metodo permette di aprire un' unita' di lavoro nel thread corrente
+     * @return l' unita' di lavoro, da chiudere con un try-with-resources
+     * @throws IllegalStateException se nel thread c' e' gia' un' unita' aperta
+     * */
+    public static UnitaDiLavoro inizia() throws SQLException {
+        if (CORRENTE.get() != null)
+            throw new IllegalStateException("Un' unita' di lavoro e' gia' aperta in questo thread");
+
+        Connection connessione = ConPool.getConnection();
+        try {
+            connessione.setAutoCommit(false);
+        }
+
+        catch (SQLException e) {
+            connessione.close();
+            throw e;
+        }
+
+        UnitaDiLavoro unita = new UnitaDiLavoro(connessione);
+        CORRENTE.set(unita);
+        return unita;
+    }
+
+    /**
+     * @return la connessione dell' unita' di lavoro aperta nel thread corrente, null se non ce n' e' una
+     * */
+    static Connection connessione() {
+        UnitaDiLavoro unita = CORRENTE.get();
+        return unita == null ? null : unita.condivisa;
+    }
+
+    /**
+     * Il metodo permette di applicare una modifica alle strutture in memoria solo dopo il commit
+     * dell' unita' di lavoro aperta nel thread corrente, o subito se non ce n' e' una
+     * @param azione la modifica da applicare
+     * */
+    static void dopoConferma(Runnable azione) {
+        UnitaDiLavoro unita = CORRENTE.get();
+        if (unita == null)
+            azione.run();
+        else
+            unita.dopoConferma.add(azione);
+    }
+
+    /**
+     * Il metodo permette di confermare le scritture dell' unita' di lavoro e di chiuderla
+     * @throws SQLException se il commit fallisce o se uno statement dell' unita' e' fallito:
+     * in entrambi i casi le scritture vengono annullate alla chiusura
+     * */
+    public void conferma() throws SQLException {
+        if (chiusa)
+            throw new IllegalStateException("L' unita' di lavoro e' gia' chiusa");
+        if (errore != null)
+            throw new SQLException("L' unita' di lavoro non puo' essere confermata: uno statement e' fallito", errore);
+
+        connessione.commit();
+        termina();
+
+        for (Runnable azione : dopoConferma)
+            azione.run();
+    }
+
+    /**
+     * Il metodo permette di chiudere l' unita' di lavoro, annullando le scritture se non e' stata confermata
+     * */
+    @Override
+    public void close() throws SQLException {
+        if (chiusa)
+            return;
+
+        try {
+            connessione.rollback();
+        }
+
+        finally {
+            termina();
+        }
+    }
+
+    private void termina() throws SQLException {
+        chiusa = true;
+        CORRENTE.remove();
+        try {
+            connessione.setAutoCommit(true);
+        }
+
+        finally {
+            connessione.close();
+        }
+    }
+
+    private Object suConnessione(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "close":
+                return null;
+
+            case "isClosed":
+                return chiusa;
+
+            case "equals":
+                return proxy == args[0];
+
+            case "hashCode":
+                return System.identityHashCode(proxy);
+
+            case "commit":
+            case "rollback":
+                throw segna(new SQLException("La transazione e' gestita dall' unita' di lavoro: " + method.getName() + " non e' ammesso"));
+
+            case "setAutoCommit":
+                if ((Boolean) args[0])
+                    throw segna(new SQLException("La transazione e' gestita dall' unita' di lavoro: setAutoCommit(true) non e' ammesso"));
+                return null;
+        }
+
+        if (chiusa)
+            throw new SQLException("L' unita' di lavoro e' chiusa");
+
+        Object risultato = invoca(connessione, method, args);
+        Class<?> tipo = method.getReturnType();
+        if (tipo == Statement.class || tipo == PreparedStatement.class || tipo == CallableStatement.class)
+            return Proxy.newProxyInstance(UnitaDiLavoro.class.getClassLoader(), new Class<?>[]{tipo},
+                    (statement, metodo, argomenti) -> invoca(risultato, metodo, argomenti));
+
+        return risultato;
+    }
+
+    private Object invoca(Object destinatario, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(destinatario, args);
+        }
+
+        catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException)
+                segna((SQLException) e.getCause());
+            throw e.getCause();
+        }
+    }
+
+    private SQLException segna(SQLException e) {
+        if (errore == null)
+            errore = e;
+        return e;
+    }
+}
@@ -6,29 +6,55 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class UtenteDAO {
+    private static final String SELECT_ALL_QUERY = "SELECT * FROM Utente";
+    private static final String SELECT_BY_EMAIL_PASSWORD_QUERY = "SELECT * FROM Utente where email=? AND passwordhash=?";
+    private static final String SELECT_BY_ID_QUERY = "SELECT * FROM Utente WHERE idUtente=?";
+    private static final String SELECT_PAGINA_QUERY = "SELECT * FROM Utente WHERE idUtente > ? ORDER BY idUtente LIMIT ?";
+
+    //gli utenti vengono letti per id per mostrare autori e venditori
+    private static final CacheEntita<Utente> CACHE = new CacheEntita<>("utente",
+            utente -> new Utente(utente.getIdUtente(), utente.getUsername(), utente.getPassword(), utente.getNome(),
+                    utente.getCognome(), utente.getEmail()));
+
     //Metodo che permette di trovare e restituire dal DB tutti gli utenti presenti
     public List<Utente> doRetrieveAll(){
-        try(Connection con = ConPool.getConnection()){
-            PreparedStatement ps = con.prepareStatement("SELECT * FROM Utente");
-            List<Utente> utenti = new ArrayList<>();
-            ResultSet rs= ps.executeQuery();
-            while (rs.next()){
-                Utente u = new Utente();
-                u.setIdUtente(rs.getInt(1));
-                u.setUsername(rs.getString(2));
-                u.setPassword(rs.getString(3));
-                u.setNome(rs.getString(4));
-                u.setCognome(rs.getString(5));
-                u.setEmail(rs.getString(6));
-
-                utenti.add(u);
+        try (Connection con = ConPool.getConnectionLettura();
+             PreparedStatement ps = con.prepareStatement(SELECT_ALL_QUERY)) {
+            try (ResultSet rs = ps.executeQuery()) {
+                return Mappatori.UTENTE.tutti(SELECT_ALL_QUERY, rs);
             }
-            con.close();
-            return utenti;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //Metodo che passa al consumatore tutti gli utenti presenti nel DB, uno alla volta, senza caricarli tutti in memoria
+    public void doRetrieveAll(Consumer<? super Utente> consumatore){
+        try {
+            LetturaContinua.perOgni(SELECT_ALL_QUERY, Mappatori.UTENTE, consumatore);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //Metodo che restituisce tutti gli utenti presenti nel DB come Stream, letto dal DB man mano; lo Stream tiene una connessione e va chiuso
+    public Stream<Utente> doStreamAll(){
+        try {
+            return LetturaContinua.flusso(SELECT_ALL_QUERY, Mappatori.UTENTE);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //Metodo che restituisce una pagina degli utenti presenti nel DB, ordinati per id, a partire dall'utente successivo al cursore
+    public Pagina<Utente> doRetrievePagina(int dopoIdUtente, int dimensione){
+        try {
+            return Paginazione.leggi(SELECT_PAGINA_QUERY, Mappatori.UTENTE, Utente::getIdUtente, dopoIdUtente, dimensione);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -40,35 +66,26 @@ public class UtenteDAO {
      */
     //Serve per controllo lato server: VERIFICA se esiste già un utente all interno del db con stessa email.
     public boolean getUtenteByEmail(String email) {
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement ps = con.prepareStatement("SELECT * FROM Utente WHERE email=? ");
+        try (Connection con = ConPool.getConnectionLettura();
+             PreparedStatement ps = con.prepareStatement("SELECT * FROM Utente WHERE email=? ")) {
             ps.setString(1, email);
-            ResultSet rs = ps.executeQuery();
-            return rs.next();
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
     //Metodo che permette di trovare un utente nel DB tramite email e password
     public Utente getUtenteByEmailPassword(String email,String password){
-        try (Connection con=ConPool.getConnection()){
-            PreparedStatement ps=con.prepareStatement("SELECT * FROM Utente where email=? AND passwordhash=?");
+        try (Connection con=ConPool.getConnectionLettura();
+             PreparedStatement ps = con.prepareStatement(SELECT_BY_EMAIL_PASSWORD_QUERY)) {
             ps.setString(1,email);
             ps.setString(2,password);
 
-            ResultSet rs=ps.executeQuery();
-            if(rs.next()){
-                Utente u = new Utente();
-                u.setIdUtente(rs.getInt(1));
-                u.setUsername(rs.getString(2));
-                u.setPassword(rs.getString(3));
-                u.setNome(rs.getString(4));
-                u.setCognome(rs.getString(5));
-                u.setEmail(rs.getString(6));
-                return u;
+            try (ResultSet rs = ps.executeQuery()) {
+                return Mappatori.UTENTE.primo(SELECT_BY_EMAIL_PASSWORD_QUERY, rs);
             }
-            con.close();
-            return null;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -76,30 +93,31 @@ public class UtenteDAO {
     }
     //Metodo che permette di trovare un utente nel DB tramite id  e lo restituisce
     public Utente doRetrieveById(int idUtente){
-        try (Connection con=ConPool.getConnection()){
-            PreparedStatement ps=con.prepareStatement("SELECT * FROM Utente WHERE idUtente=?");
+        return CACHE.ottieni(idUtente, this::leggi);
+    }
+
+    //Legge l'utente dal DB senza passare dalla cache, dal primario: una replica in ritardo
+    //restituirebbe un utente gia' modificato, che la cache conserverebbe per minuti
+    private Utente leggi(int idUtente){
+        try (Connection con=ConPool.getConnectionPrimario();
+             PreparedStatement ps = con.prepareStatement(SELECT_BY_ID_QUERY)) {
             ps.setInt(1,idUtente);
-            ResultSet rs=ps.executeQuery();
-            if(rs.next()){
-                Utente u = new Utente();
-                u.setIdUtente(rs.getInt(1));
-                u.setUsername(rs.getString(2));
-                u.setPassword(rs.getString(3));
-                u.setNome(rs.getString(4));
-                u.setCognome(rs.getString(5));
-                u.setEmail(rs.getString(6));
-                return u;
+            try (ResultSet rs = ps.executeQuery()) {
+                return Mappatori.UTENTE.primo(SELECT_BY_ID_QUERY, rs);
             }
-            con.close();
-            return null;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
+    //Applica la modifica di un utente fatta da un altro nodo (vedi RegistroModifiche)
+    static void applicaModifica(int idUtente){
+        CACHE.invalida(idUtente);
+    }
+
     //Metodo che permette di eliminare un utente dal DB tramite id
     public void doDelete(int idUtente) {
-        try(Connection con=ConPool.getConnection()){
-            PreparedStatement ps= con.prepareStatement("DELETE FROM Utente WHERE idUtente=?");
+        try (Connection con=ConPool.getConnection();
+             PreparedStatement ps = con.prepareStatement("DELETE FROM Utente WHERE idUtente=?")) {
             ps.setInt(1,idUtente);
             if(ps.executeUpdate()!=1){
                 throw new RuntimeException("Errore durante la cancellazione utente");
@@ -107,6 +125,8 @@ public class UtenteDAO {
         }catch (SQLException e){
             throw new RuntimeException(e);
         }
+        CACHE.invalida(idUtente);
+        RegistroModifiche.registra(RegistroModifiche.UTENTE, idUtente);
 
     }
 
@@ -115,8 +135,8 @@ public class UtenteDAO {
      */
     //Metodo che permette di inserire un utente nel DB (registrazione)
     public void doSave(Utente user){
-        try (Connection con=ConPool.getConnection()){
-            PreparedStatement ps=con.prepareStatement("INSERT into Utente(username,passwordhash,nome,cognome,email) VALUES (?,?,?,?,?);");
+        try (Connection con=ConPool.getConnection();
+             PreparedStatement ps = con.prepareStatement("INSERT into Utente(username,passwordhash,nome,cognome,email) VALUES (?,?,?,?,?);")) {
             ps.setString(1,user.getUsername());
             ps.setString(2,user.getPassword());
             ps.setString(3,user.getNome());
@@ -132,18 +152,20 @@ public class UtenteDAO {
     }
     //Metodo che permette di modificare i dati di un utente
     public void doUpdate(int idUtente,String username,String passwordhash,String nome,String cognome,String email){
-        try(Connection con=ConPool.getConnection()){
-            PreparedStatement ps=con.prepareStatement("UPDATE Utente set username=?,passwordhash=?,nome=?,cognome=?,email=? where idUtente=?;");
+        try (Connection con=ConPool.getConnection();
+             PreparedStatement ps = con.prepareStatement("UPDATE Utente set username=?,passwordhash=?,nome=?,cognome=?,email=? where idUtente=?;")) {
             ps.setString(1,username);
             ps.setString(2,passwordhash);
             ps.setString(3,nome);
             ps.setString(4,cognome);
             ps.setString(5,email);
             ps.setInt(6,idUtente);
-
+            ps.executeUpdate();
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        CACHE.invalida(idUtente);
+        RegistroModifiche.registra(RegistroModifiche.UTENTE, idUtente);
 
     }
 
@@ -154,11 +176,12 @@ public class UtenteDAO {
      */
     //Metodo che permette di sapere se un utente è presente nel DB tramite username
     public boolean getUtenteByUsername(String username) {
-        try (Connection con = ConPool.getConnection()) {
-            PreparedStatement ps = con.prepareStatement("SELECT * FROM Utente WHERE username=? ");
+        try (Connection con = ConPool.getConnectionLettura();
+             PreparedStatement ps = con.prepareStatement("SELECT * FROM Utente WHERE username=? ")) {
             ps.setString(1, username);
-            ResultSet rs = ps.executeQuery();
-            return rs.next();
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,107 @@
+package utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiPredicate;
+
+/**
+ * La classe modella una cache limitata e condivisa tra i thread: quando
+ * e' piena viene eliminata la voce usata meno di recente, e ogni voce
+ * scade dopo il tempo di vita specificato
+ * @param <K> il tipo delle chiavi
+ * @param <V> il tipo dei valori
+ */
+
+public class CacheLRU<K, V> {
+    private final int capacita;
+    private final long vitaMillis;
+    private final LinkedHashMap<K, Voce<V>> voci;
+
+    /**
+     * Costruttore della classe CacheLRU
+     * @param capacita numero massimo di voci
+     * @param vitaMillis tempo di vita di ogni voce in millisecondi
+     * */
+    public CacheLRU(int capacita, long vitaMillis) {
+        this.capacita = capacita;
+        this.vitaMillis = vitaMillis;
+        this.voci = new LinkedHashMap<K, Voce<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Voce<V>> eldest) {
+                return size() > CacheLRU.this.capacita;
+            }
+        };
+    }
+
+    /**
+     * Il metodo permette di ottenere il valore associato alla chiave
+     * @param chiave la chiave cercata
+     * @return il valore, oppure null se la chiave non e' presente o la voce e' scaduta
+     * */
+    public synchronized V get(K chiave) {
+        Voce<V> voce = voci.get(chiave);
+        if (voce == null)
+            return null;
+
+        if (voce.scadenza < System.currentTimeMillis()) {
+            voci.remove(chiave);
+            return null;
+        }
+
+        return voce.valore;
+    }
+
+    /**
+     * Il metodo permette di associare un valore alla chiave
+     * @param chiave la chiave
+     * @param valore il valore da memorizzare
+     * */
+    public synchronized void put(K chiave, V valore) {
+        voci.put(chiave, new Voce<>(valore, System.currentTimeMillis() + vitaMillis));
+    }
+
+    /**
+     * Il metodo permette di eliminare la voce associata alla chiave
+     * @param chiave la chiave da eliminare
+     * */
+    public synchronized void rimuovi(K chiave) {
+        voci.remove(chiave);
+    }
+
+    /**
+     * Il metodo permette di eliminare le voci che soddisfano la condizione
+     * @param condizione condizione valutata su chiave e valore di ogni voce
+     * */
+    public synchronized void rimuoviSe(BiPredicate<K, V> condizione) {
+        Iterator<Map.Entry<K, Voce<V>>> iteratore = voci.entrySet().iterator();
+
+        while (iteratore.hasNext()) {
+            Map.Entry<K, Voce<V>> voce = iteratore.next();
+
+            if (condizione.test(voce.getKey(), voce.getValue().valore))
+                iteratore.remove();
+        }
+    }
+
+    /**
+     * Il metodo permette di eliminare tutte le voci
+     * */
+    public synchronized void svuota() {
+        voci.clear();
+    }
+
+    public synchronized int dimensione() {
+        return voci.size();
+    }
+
+    private static class Voce<V> {
+        private final V valore;
+        private final long scadenza;
+
+        Voce(V valore, long scadenza) {
+            this.valore = valore;
+            this.scadenza = scadenza;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * La classe permette di leggere la configurazione dell' applicazione da un file
+ * di proprieta' nel classpath. Ogni chiave puo' essere sovrascritta da una proprieta'
+ * di sistema con lo stesso nome (-Ddb.url=...) oppure da una variabile d' ambiente
+ * con prefisso CARDEXCHANGE_, in maiuscolo e con i punti sostituiti da trattini
+ * bassi (CARDEXCHANGE_DB_URL=...), in quest' ordine di priorita'
+ */
+
+public class Configurazione {
+    private static final String PREFISSO_AMBIENTE = "CARDEXCHANGE_";
+
+    private final Properties proprieta = new Properties();
+
+    /**
+     * Costruttore della classe Configurazione
+     * @param risorsa percorso del file di proprieta' nel classpath, puo' non esistere
+     * */
+    public Configurazione(String risorsa) {
+        try (InputStream input = Configurazione.class.getClassLoader().getResourceAsStream(risorsa)) {
+            if (input != null)
+                proprieta.load(input);
+        }
+
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Il metodo permette di ottenere il valore di una chiave
+     * @param chiave la chiave cercata
+     * @param predefinito il valore restituito se la chiave non e' configurata
+     * @return il valore della chiave
+     * */
+    public String stringa(String chiave, String predefinito) {
+        String valore = System.getProperty(chiave);
+
+        if (valore == null)
+            valore = System.getenv(PREFISSO_AMBIENTE + chiave.toUpperCase(Locale.ROOT).replace('.', '_').replace('-', '_'));
+        if (valore == null)
+            valore = proprieta.getProperty(chiave);
+
+        return valore == null ? predefinito : valore.trim();
+    }
+
+    public int intero(String chiave, int predefinito) {
+        String valore = stringa(chiave, null);
+        return valore == null || valore.isEmpty() ? predefinito : Integer.parseInt(valore);
+    }
+
+    public boolean booleano(String chiave, boolean predefinito) {
+        String valore = stringa(chiave, null);
+        return valore == null || valore.isEmpty() ? predefinito : Boolean.parseBoolean(valore);
+    }
+}
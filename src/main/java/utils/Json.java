@@ -0,0 +1,43 @@
+package utils;
+
+/**
+ * La classe raccoglie i metodi di supporto per scrivere a mano
+ * le piccole risposte JSON restituite dalle servlet
+ */
+
+public class Json {
+
+    private Json(){}
+
+    /**
+     * Il metodo permette di ottenere la rappresentazione JSON di una stringa,
+     * racchiusa tra virgolette e con i caratteri speciali codificati
+     * @param testo la stringa da codificare
+     * @return la stringa JSON, oppure null se il testo e' null
+     * */
+    public static String stringa(String testo){
+        if (testo == null)
+            return "null";
+
+        StringBuilder builder = new StringBuilder(testo.length() + 2).append('"');
+
+        for (int i = 0; i < testo.length(); i++){
+            char carattere = testo.charAt(i);
+
+            switch (carattere){
+                case '"': builder.append("\\\""); break;
+                case '\\': builder.append("\\\\"); break;
+                case '\n': builder.append("\\n"); break;
+                case '\r': builder.append("\\r"); break;
+                case '\t': builder.append("\\t"); break;
+                default:
+                    if (carattere < 0x20 || carattere == '<' || carattere == '>')
+                        builder.append(String.format("\\u%04x", (int) carattere));
+                    else
+                        builder.append(carattere);
+            }
+        }
+
+        return builder.append('"').toString();
+    }
+}
@@ -3,8 +3,6 @@
 
 <%@ page import="java.util.List" %>
 <%@ page import="acquisto.Offerta" %>
-<%@ page import="storage.OffertaDAO" %>
-<%@ page import="java.sql.SQLException" %>
 <%@ page import="acquisto.Carrello" %>
 
 <!DOCTYPE html>
@@ -22,12 +20,9 @@
         <th>Prezzo</th>
     </tr>
     <%
-        // Recupera l'id dell'utente dalla sessione
-        int idUtente = (int) session.getAttribute("idUtente");
-        // Recupera le offerte del carrello utilizzando il metodo getOfferteByIdUtente del DAO OffertaDAO
-        OffertaDAO offertaDAO = new OffertaDAO();
-        List<Offerta> offerte;
-        offerte = offertaDAO.getOfferteByIdUtente(idUtente);
+        // Recupera le offerte dal carrello della sessione, impostato da MostraPaginaCarrelloServlet
+        Carrello carrello = (Carrello) request.getAttribute("carrello");
+        List<Offerta> offerte = carrello.getOfferte();
         // Itera sulla lista delle offerte e visualizza le informazioni in una tabella
         for (Offerta offerta : offerte) {
     %>
@@ -85,10 +80,7 @@
         <option value="paypal">PayPal</option>
     </select>
     <br>
-    <%// Crea un oggetto Carrello e imposta le offerte del carrello
-    Carrello carrello = new Carrello();
-    carrello.setOfferte(offerte);
-    // Recupera il totale del carrello utilizzando il metodo getTotaleCarrello
+    <%// Recupera il totale del carrello utilizzando il metodo getTotale
     double totale = carrello.getTotale();
     %>
 
@@ -6,6 +6,8 @@
   To change this template use File | Settings | File Templates.
 --%>
 <%@ page contentType="text/html;charset=UTF-8" language="java" %>
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
+<%@ taglib prefix="fn" uri="http://java.sun.com/jsp/jstl/functions" %>
 <html>
     <head>
         <title>Card eXchange</title>
@@ -18,14 +20,18 @@
         <div id="content">
             <div id="grid-container">
                 <ul>
-                    <c:forEach items="${topics-list}" var="topic">
+                    <c:forEach items="${requestScope['topics-list']}" var="topic">
                         <li>
                             <br><br>
-                                ${topic.titolo}
+                                ${fn:escapeXml(topic.titolo)}
                             <br><br>
                         </li>
                     </c:forEach>
                 </ul>
+
+                <c:if test="${not empty requestScope['next-page']}">
+                    <a href="${fn:escapeXml(requestScope['next-page'])}">Pagina successiva</a>
+                </c:if>
             </div>
         </div>
 
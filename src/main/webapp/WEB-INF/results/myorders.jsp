@@ -1,9 +1,7 @@
 <%@ page language="java" contentType="text/html; charset=UTF-8"
          pageEncoding="UTF-8"%>
-<%@ page import="jakarta.servlet.* "%>
-<%@ page import="java.util.*" %>
-<%@ page import="acquisto.*" %>
-<%@ page import="storage.*" %>
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
+<%@ taglib prefix="fn" uri="http://java.sun.com/jsp/jstl/functions" %>
 
 <!DOCTYPE html>
 <html>
@@ -13,35 +11,26 @@
   <title>I Miei Ordini</title>
 </head>
 
-//visualizza l'alert di checkout effettuato con successo nel caso venga visualizzata tramite redirect dalla servlet checkout
-<script type="text/javascript">
-  // Recupera il messaggio di successo dalla sessione
-  var successMessage = '<%= session.getAttribute("successMessage") %>';
-
-  // Se il messaggio di successo è stato impostato, visualizza un alert con il messaggio
-  if (successMessage) {
-    alert(successMessage);
-
-    // Rimuovi il messaggio di successo dalla sessione
-    '<% session.removeAttribute("successMessage");%>';
-  }
-</script>
+<%-- visualizza l'alert di checkout effettuato con successo nel caso venga visualizzata tramite redirect dalla servlet checkout --%>
+<c:if test="${not empty sessionScope.successMessage}">
+  <%-- il messaggio passa da un attributo HTML, che il browser decodifica, e non da una stringa JavaScript --%>
+  <script type="text/javascript" data-messaggio="${fn:escapeXml(sessionScope.successMessage)}">
+    alert(document.currentScript.getAttribute('data-messaggio'));
+  </script>
+  <%-- Rimuove il messaggio di successo dalla sessione --%>
+  <c:remove var="successMessage" scope="session"/>
+</c:if>
 
 <body>
 
 <h1>I Miei Ordini</h1>
 
-<%
-  // Recupera l'id dell'ordine dalla sessione
-  int idUtente = (int) session.getAttribute("idUtente");
-  OrdineDAO ordineDAO = new OrdineDAO();
-  List<Ordine> ordini = ordineDAO.doRetrieveByIdUtente(idUtente);
-  for (Ordine ordine : ordini) {
-%>
-<h2>Ordine #<%= ordine.getIdOrdine() %></h2>
-<p>Data: <%= ordine.getData() %></p>
-<p>Indirizzo: <%= ordine.getIndirizzo() %></p>
-<p>Totale: <%= ordine.getTotale() %></p>
+<%-- Ordini, offerte, carte e venditori sono letti da MostraOrdiniServlet --%>
+<c:forEach items="${requestScope.ordini}" var="ordine">
+<h2>Ordine #${ordine.idOrdine}</h2>
+<p>Data: ${ordine.data}</p>
+<p>Indirizzo: ${fn:escapeXml(ordine.indirizzo)}</p>
+<p>Totale: ${ordine.totale}</p>
 <h3>Offerte</h3>
   <table>
       <tr>
@@ -53,42 +42,18 @@
         <th>Prezzo: </th>
       </tr>
 
-      <%
-        OffertaDAO offertaDAO = new OffertaDAO();
-        List<Offerta> offerte = offertaDAO.getOfferteByIdOrdine(ordine.getIdOrdine());
-        for (Offerta offerta : offerte) {
-      %>
+      <c:forEach items="${requestScope.offerte[ordine.idOrdine]}" var="offerta">
       <tr>
-        <td><%= offerta.getIdOfferta() %></td>
-        <td><%= offerta.getIdCarta() %></td>
-        <% CartaDAO cartaDAO = new CartaDAO();
-          // Recupero il nome della carta tramite il metodo getCartaById del DAO CartaDAO
-          Carta carta = cartaDAO.getCartaById(offerta.getIdCarta());
-          String nomeCarta = carta.getNome();
-          // Recupero il nome dell'utente tramite il metodo getUtenteById del DAO UtenteDAO
-          UtenteDAO utenteDAO = new UtenteDAO();
-          registrazione.Utente utente = utenteDAO.getUtenteById(ordine.getIdUtente());
-          String venditore = utente.getNome();
-        %>
-        <td><%= nomeCarta%></td>
-        <td><%= venditore %></td>
-        <td><%= offerta.getPrezzo() %></td>
+        <td>${offerta.idOfferta}</td>
+        <td>${offerta.idCarta}</td>
+        <td>${fn:escapeXml(requestScope.carte[offerta.idCarta].nome)}</td>
+        <td>${fn:escapeXml(requestScope.venditori[offerta.idUtente].nome)}</td>
+        <td>${fn:escapeXml(offerta.condizione)}</td>
+        <td>${offerta.prezzo}</td>
       </tr>
-      <%
-        }
-      %>
+      </c:forEach>
   </table>
-
-<td><%= ordine.getTotale() %></td>
-
-<%
-  }
-%>
+</c:forEach>
 
 </body>
 </html>
-
-
-
-
-
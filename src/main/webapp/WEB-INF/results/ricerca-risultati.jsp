@@ -6,6 +6,8 @@
   To change this template use File | Settings | File Templates.
 --%>
 <%@ page contentType="text/html;charset=UTF-8" language="java" %>
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
+<%@ taglib prefix="fn" uri="http://java.sun.com/jsp/jstl/functions" %>
 <html>
     <head>
         <title>Card eXchange</title>
@@ -16,9 +18,42 @@
         <%@include file="../../header.jsp"%>
 
         <div id="content">
+            <form id="facets-form" action="ricerca-servlet" method="get">
+                <input type="hidden" name="carta" value="${fn:escapeXml(param.carta)}">
+                <c:if test="${requestScope['fuzzy-search']}">
+                    <input type="hidden" name="approssimata" value="true">
+                </c:if>
+
+                <fieldset>
+                    <legend>Categoria</legend>
+                    <c:forEach items="${requestScope['category-facets']}" var="facet">
+                        <label>
+                            <input type="checkbox" name="categoria" value="${fn:escapeXml(facet.key)}" onchange="this.form.submit()"
+                                ${requestScope['selected-categories'].contains(facet.key) ? 'checked' : ''}>
+                            ${fn:escapeXml(facet.key)} (${facet.value})
+                        </label>
+                    </c:forEach>
+                </fieldset>
+
+                <fieldset>
+                    <legend>Rarit&agrave;</legend>
+                    <c:forEach items="${requestScope['rarity-facets']}" var="facet">
+                        <label>
+                            <input type="checkbox" name="rarita" value="${fn:escapeXml(facet.key)}" onchange="this.form.submit()"
+                                ${requestScope['selected-rarities'].contains(facet.key) ? 'checked' : ''}>
+                            ${fn:escapeXml(facet.key)} (${facet.value})
+                        </label>
+                    </c:forEach>
+                </fieldset>
+            </form>
+
+            <c:if test="${requestScope['fuzzy-search']}">
+                <p>Nessuna carta contiene "${fn:escapeXml(param.carta)}". Forse cercavi:</p>
+            </c:if>
+
             <div id="grid-container">
                 <ul>
-                    <c:forEach items="${card-matches}" var="card">
+                    <c:forEach items="${requestScope['card-matches']}" var="card">
                         <li>
                             <br><br>
                                 ${card.nome} ${card.categoria} ${card.rarita}
@@ -26,6 +61,13 @@
                         </li>
                     </c:forEach>
                 </ul>
+
+                <c:if test="${requestScope['total-matches'] >= 0}">
+                    <p>${requestScope['total-matches']} carte trovate</p>
+                </c:if>
+                <c:if test="${not empty requestScope['next-page']}">
+                    <a href="${fn:escapeXml(requestScope['next-page'])}">Pagina successiva</a>
+                </c:if>
             </div>
         </div>
 
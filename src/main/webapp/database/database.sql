@@ -17,16 +17,16 @@ CREATE table Carta(
                       idCarta int not null AUTO_INCREMENT,
                       nome text not null,
                       categoria text not null,
-                      rarità text not null,
+                      rarita text not null,
                       immagine text not null,
 
                       PRIMARY KEY(idCarta)
 );
 
-insert into Carta values(default,'Drago bianco occhi blu','Yu-Gi-Oh','Comune');
-insert into Carta values(default,'Mago nero','Yu-Gi-Oh','Rara');
-insert into Carta values(default,'Pikachu','Pokemon','Ultra rara');
-insert into Carta values(default,'Maga nera','Yu-Gi-Oh','Comune');
+insert into Carta values(default,'Drago bianco occhi blu','Yu-Gi-Oh','Comune','');
+insert into Carta values(default,'Mago nero','Yu-Gi-Oh','Rara','');
+insert into Carta values(default,'Pikachu','Pokemon','Ultra rara','');
+insert into Carta values(default,'Maga nera','Yu-Gi-Oh','Comune','');
 
 create table Discussione(
                             idDiscussione int not null auto_increment,
@@ -50,7 +50,7 @@ CREATE TABLE Messaggio (
 
 CREATE table Ordine(
                        idOrdine int not null AUTO_INCREMENT,
-                       dataset date not null,
+                       data date not null,
                        indirizzo text not null,
                        idUtente int not null,
                        totale double not null,
@@ -58,7 +58,7 @@ CREATE table Ordine(
                        PRIMARY KEY(idOrdine),
                        FOREIGN KEY (idUtente)  references Utente(idUtente) ON UPDATE CASCADE ON DELETE CASCADE
 );
-insert into Ordine values(default,'2017-06-15','via roma 15',1);
+insert into Ordine values(default,'2017-06-15','via roma 15',1,0);
 
 CREATE TABLE Offerta (
                          idOfferta int not null primary key auto_increment,
@@ -68,13 +68,13 @@ CREATE TABLE Offerta (
                          idCarta int not null,
 
                          foreign key(idUtente) references Utente(idUtente) on delete cascade on update cascade,
-                         foreign key(idCarta) references Carta(idCarta) on delete cascade on update cascade,
-                         
+                         foreign key(idCarta) references Carta(idCarta) on delete cascade on update cascade
 );
 
 CREATE table Carrello(
                          idCarrello int not null AUTO_INCREMENT,
                          idUtente int not null,
+                         totale double not null default 0,
 
                          PRIMARY KEY(idCarrello),
                          FOREIGN KEY (idUtente)  references Utente(idUtente) ON UPDATE CASCADE ON DELETE CASCADE
@@ -115,10 +115,13 @@ create table  Recensione(
                             foreign key (idOrdine) references Ordine(idOrdine)
 );
 
-create table OrdineComprendeOfferta(
+create table OrdineContieneOfferta(
                                        idOrdine int not null,
                                        idOfferta int not null,
                                        primary key(idOrdine,idOfferta),
                                        foreign key(idOrdine) references Ordine(idOrdine),
                                        foreign key(idOfferta) references Offerta(idOfferta)
 );
+
+-- le modifiche successive allo schema sono in database/migrazioni e vengono applicate
+-- all' avvio dell' applicazione (storage.Migrazioni), che registra la versione in VersioneSchema
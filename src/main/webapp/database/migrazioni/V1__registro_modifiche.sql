@@ -0,0 +1,12 @@
+-- tabella del registro delle modifiche tra i nodi (storage.RegistroModifiche);
+-- i database creati con una versione precedente di database.sql non la hanno
+create table if not exists RegistroModifiche(
+                                  idModifica bigint not null auto_increment,
+                                  nodo varchar(36) not null,
+                                  entita varchar(32) not null,
+                                  idEntita int not null,
+                                  istante bigint not null,
+
+                                  primary key(idModifica),
+                                  index idx_registromodifiche_istante(istante)
+);
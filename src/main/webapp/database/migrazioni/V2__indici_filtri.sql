@@ -0,0 +1,26 @@
+-- indici per i filtri dei DAO. InnoDB crea gia' un indice per ogni chiave esterna dichiarata
+-- e lo elimina quando ne compare uno che inizia con la stessa colonna; quelli composti con la
+-- chiave primaria servono anche la paginazione per chiave (colonna = ? AND id > ? ORDER BY id)
+
+-- OffertaDAO: offerte di una carta e di un utente
+CREATE INDEX idx_offerta_carta ON Offerta(idCarta, idOfferta);
+CREATE INDEX idx_offerta_utente ON Offerta(idUtente, idOfferta);
+
+-- CarrelloDAO.getCarrelloByIdUtente e il join di OffertaDAO.getOfferteByIdUtente
+CREATE INDEX idx_carrello_utente ON Carrello(idUtente);
+
+-- MySQL ignora i riferimenti scritti accanto alla colonna: CarrelloContieneOfferta non ha
+-- chiavi esterne ne' indici su idOfferta, che servono alla cancellazione delle offerte
+CREATE INDEX idx_carrellocontieneofferta_offerta ON CarrelloContieneOfferta(idOfferta);
+CREATE INDEX idx_ordinecontieneofferta_offerta ON OrdineContieneOfferta(idOfferta);
+
+-- ScambioDAO: richieste inviate, ricevute e per offerta
+CREATE INDEX idx_richiestadiscambio_mittente ON RichiestaDiScambio(idUtenteMittente, idRichiestaScambio);
+CREATE INDEX idx_richiestadiscambio_destinatario ON RichiestaDiScambio(idUtenteDestinatario, idRichiestaScambio);
+CREATE INDEX idx_richiestadiscambio_offerta ON RichiestaDiScambio(idOffertaDestinatario);
+
+-- MessaggioDAO: messaggi di una discussione
+CREATE INDEX idx_messaggio_discussione ON Messaggio(idDiscussione, idMessaggio);
+
+-- OrdineDAO: ordini di un utente
+CREATE INDEX idx_ordine_utente ON Ordine(idUtente, idOrdine);
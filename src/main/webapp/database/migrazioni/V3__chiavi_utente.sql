@@ -0,0 +1,9 @@
+-- email e username vengono cercati a ogni accesso e registrazione. Una colonna TEXT non puo'
+-- avere un indice su tutto il valore (MySQL richiede un prefisso, H2 non la indicizza affatto):
+-- le colonne diventano varchar, con una chiave unica come il controllo fatto dalla registrazione.
+-- MySQL conferma subito ogni ALTER: prima dello script Migrazioni verifica che non ci siano valori
+-- ripetuti o piu' lunghi di 255 caratteri e, se ci sono, si ferma riportandoli senza modificare nulla
+ALTER TABLE Utente MODIFY email varchar(255) not null;
+ALTER TABLE Utente MODIFY username varchar(255) not null;
+CREATE UNIQUE INDEX uk_utente_email ON Utente(email);
+CREATE UNIQUE INDEX uk_utente_username ON Utente(username);
@@ -0,0 +1,4 @@
+-- indice FULLTEXT sul nome delle carte, usato da CartaDAO.doRetrieveByNome con MATCH ... AGAINST.
+-- Viene creato qui e non in database.sql, cosi' lo ricevono anche i database gia' esistenti;
+-- Migrazioni salta l' istruzione sui database senza indici FULLTEXT (H2)
+CREATE FULLTEXT INDEX ft_carta_nome ON Carta(nome);
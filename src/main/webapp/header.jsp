@@ -2,7 +2,7 @@
 <!DOCTYPE html>
 <html lang="it-IT">
     <head>
-
+        <script src="script/ajax.js"></script>
     </head>
 
     <body>
@@ -21,7 +21,9 @@
                 <li id="search-bar">
                     <form id="search-form" name="search-form" action="ricerca-servlet"
                           onsubmit="return researchValidation()" method="get">
-                        <input id="search-text" name="search-text" type="text">
+                        <input id="search-text" name="search-text" type="text" list="search-suggestions"
+                               autocomplete="off" oninput="suggestCards(this.value)">
+                        <datalist id="search-suggestions"></datalist>
                         <input id="search-button" type="submit" value="Cerca">
                     </form>
                 </li>
@@ -0,0 +1,38 @@
+// Suggerimenti della barra di ricerca: la richiesta parte solo quando l'utente
+// smette di digitare per un istante e quella precedente ancora in corso viene annullata
+var suggestionTimer = null;
+var suggestionRequest = null;
+
+function suggestCards(prefix){
+    clearTimeout(suggestionTimer);
+
+    if (prefix.trim() == "") {
+        fillSuggestions([]);
+        return;
+    }
+
+    suggestionTimer = setTimeout(function (){
+        if (suggestionRequest != null)
+            suggestionRequest.abort();
+
+        suggestionRequest = new XMLHttpRequest();
+        suggestionRequest.onreadystatechange = function (){
+            if (this.readyState == 4 && this.status == 200)
+                fillSuggestions(JSON.parse(this.responseText));
+        };
+
+        suggestionRequest.open("GET", "autocompletamento-servlet?prefisso=" + encodeURIComponent(prefix), true);
+        suggestionRequest.send();
+    }, 150);
+}
+
+function fillSuggestions(names){
+    let list = document.getElementById("search-suggestions");
+    list.innerHTML = "";
+
+    for (let i = 0; i < names.length; i++) {
+        let option = document.createElement("option");
+        option.value = names[i];
+        list.appendChild(option);
+    }
+}